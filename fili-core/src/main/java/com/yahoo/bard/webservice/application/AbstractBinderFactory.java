@@ -41,6 +41,8 @@ import com.yahoo.bard.webservice.data.cache.HashDataCache;
 import com.yahoo.bard.webservice.data.cache.MemDataCache;
 import com.yahoo.bard.webservice.data.cache.MemTupleDataCache;
 import com.yahoo.bard.webservice.data.cache.StubDataCache;
+import com.yahoo.bard.webservice.data.cache.TieredTupleDataCache;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.data.config.ConfigurationLoader;
 import com.yahoo.bard.webservice.data.config.ResourceDictionaries;
 import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
@@ -63,6 +65,8 @@ import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.impl.AsyncDruidWebServiceImpl;
 import com.yahoo.bard.webservice.druid.client.impl.HeaderNestingJsonBuilderStrategy;
+import com.yahoo.bard.webservice.druid.client.impl.HedgingDruidWebServiceImpl;
+import com.yahoo.bard.webservice.druid.client.impl.PriorityDispatchDruidWebService;
 import com.yahoo.bard.webservice.druid.model.query.LookbackQuery;
 import com.yahoo.bard.webservice.druid.util.FieldConverterSupplier;
 import com.yahoo.bard.webservice.druid.util.FieldConverters;
@@ -211,6 +215,11 @@ public abstract class AbstractBinderFactory implements BinderFactory {
                 // As well as one for open ended, potentially long running queries
                 DruidWebService nonUiDruidWebService = buildNonUiDruidWebService(getMappers().getMapper());
 
+                if (BardFeatureFlag.DRUID_DISPATCH_LANES.isOn()) {
+                    uiDruidWebService = new PriorityDispatchDruidWebService(uiDruidWebService);
+                    nonUiDruidWebService = new PriorityDispatchDruidWebService(nonUiDruidWebService);
+                }
+
                 bind(uiDruidWebService).named("uiDruidWebService").to(DruidWebService.class);
                 bind(nonUiDruidWebService).named("nonUiDruidWebService").to(DruidWebService.class);
 
@@ -746,8 +755,15 @@ public abstract class AbstractBinderFactory implements BinderFactory {
     protected DataCache<?> buildCache() {
         if (BardFeatureFlag.DRUID_CACHE_V2.isOn()) {
             try {
-                MemTupleDataCache<String> cache = new MemTupleDataCache<>();
+                TupleDataCache<String, Long, String> cache = new MemTupleDataCache<>();
                 LOG.info("MemcachedClient Version 2 started {}", cache);
+                if (TieredTupleDataCache.LOCAL_CACHE_MAX_BYTES > 0) {
+                    cache = new TieredTupleDataCache(cache);
+                    LOG.info(
+                            "Keeping up to {} bytes of cached results in memory",
+                            TieredTupleDataCache.LOCAL_CACHE_MAX_BYTES
+                    );
+                }
                 return cache;
             } catch (IOException e) {
                 LOG.error("MemcachedClient Version 2 failed to start {}", e);
@@ -939,6 +955,18 @@ public abstract class AbstractBinderFactory implements BinderFactory {
      */
     protected DruidWebService buildDruidWebService(DruidServiceConfig druidServiceConfig, ObjectMapper mapper) {
         Supplier<Map<String, String>> supplier = buildDruidWebServiceHeaderSupplier();
+        if (BardFeatureFlag.DRUID_HEDGING.isOn()) {
+            return new HedgingDruidWebServiceImpl(
+                    druidServiceConfig,
+                    mapper,
+                    supplier,
+                    DRUID_UNCOVERED_INTERVAL_LIMIT > 0
+                            ? new HeaderNestingJsonBuilderStrategy(
+                                    AsyncDruidWebServiceImpl.DEFAULT_JSON_NODE_BUILDER_STRATEGY
+                            )
+                            : AsyncDruidWebServiceImpl.DEFAULT_JSON_NODE_BUILDER_STRATEGY
+            );
+        }
         return DRUID_UNCOVERED_INTERVAL_LIMIT > 0
                 ? new AsyncDruidWebServiceImpl(
                         druidServiceConfig,
@@ -8,6 +8,7 @@ import com.yahoo.bard.webservice.web.filters.BardLoggingFilter;
 import com.yahoo.bard.webservice.web.filters.HealthCheckFilter;
 import com.yahoo.bard.webservice.web.filters.QueryParameterNormalizationFilter;
 import com.yahoo.bard.webservice.web.filters.RateLimitFilter;
+import com.yahoo.bard.webservice.web.filters.ResponseCompressionFilter;
 import com.yahoo.bard.webservice.web.filters.ResponseCorsFilter;
 
 import com.codahale.metrics.jersey2.InstrumentedResourceMethodApplicationListener;
@@ -70,6 +71,9 @@ public class ResourceConfig extends org.glassfish.jersey.server.ResourceConfig {
         // Register query parameter normalization Filter
         register(QueryParameterNormalizationFilter.class, 4);
 
+        // Register response compression Filter, which chooses the encoding before BardLoggingFilter logs the response
+        register(ResponseCompressionFilter.class, 6);
+
         // Register HealthCheckFilter
         register(HealthCheckFilter.class, 5);
     }
@@ -0,0 +1,515 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.preresponses.stores;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.PreResponseDeserializer;
+import com.yahoo.bard.webservice.data.PreResponseSerializationProxy;
+import com.yahoo.bard.webservice.web.PreResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A PreResponseStore keeping PreResponses in a local directory, as gzip compressed chunks of their serialized JSON.
+ * <p>
+ * PreResponses are written straight to the compressed chunks and read straight back from them one result at a time,
+ * so neither their serialized JSON nor a tree of it is ever held in memory. Each ticket has a directory of chunks,
+ * which is written aside and moved into place once complete, so readers never see a partly written PreResponse.
+ * <p>
+ * PreResponses are dropped once they are older than the time to live: they are no longer returned, and a background
+ * thread, shared by all stores, deletes their chunks until the store is closed.
+ * <p>
+ * {@link #stream(String)} leaves the results of a PreResponse in its chunks until they are iterated, so that a
+ * response written row by row never holds all of them in memory.
+ */
+public class FileSystemPreResponseStore implements PreResponseStore, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileSystemPreResponseStore.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * The directory holding the PreResponses.
+     */
+    private static final String DIRECTORY_KEY = SYSTEM_CONFIG.getPackageVariableName("async_results_directory");
+
+    /**
+     * How long PreResponses are kept, in milliseconds.
+     */
+    private static final long TTL_MILLIS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("async_results_ttl"),
+            TimeUnit.DAYS.toMillis(1)
+    );
+
+    /**
+     * The most bytes of serialized JSON written to one chunk.
+     */
+    private static final long CHUNK_SIZE = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("async_results_chunk_size"),
+            64L * 1024 * 1024
+    );
+
+    /**
+     * How often expired PreResponses are deleted, in milliseconds.
+     */
+    private static final long CLEANUP_PERIOD_MILLIS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("async_results_cleanup_period"),
+            TimeUnit.MINUTES.toMillis(10)
+    );
+
+    /**
+     * Deletes the expired PreResponses of every store, so that stores do not each hold a thread.
+     */
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "preresponse-store-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final String TICKET_PREFIX = "ticket-";
+    private static final String PENDING_PREFIX = ".pending-";
+    private static final String CHUNK_FORMAT = "chunk-%05d.json.gz";
+
+    private final Path directory;
+    private final PreResponseDeserializer preResponseDeserializer;
+    private final long chunkSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ScheduledFuture<?> cleanup;
+
+    /**
+     * Constructor, storing PreResponses in the configured directory and deleting them once they expire.
+     *
+     * @param preResponseDeserializer  Deserializer of the stored PreResponses, whose mappers also serialize them
+     */
+    public FileSystemPreResponseStore(PreResponseDeserializer preResponseDeserializer) {
+        this(
+                Paths.get(SYSTEM_CONFIG.getStringProperty(DIRECTORY_KEY)),
+                preResponseDeserializer,
+                CHUNK_SIZE,
+                TTL_MILLIS,
+                System::currentTimeMillis,
+                CLEANUP_PERIOD_MILLIS
+        );
+    }
+
+    /**
+     * Constructor, leaving expired PreResponses to be deleted by calling {@link #deleteExpired()}.
+     *
+     * @param directory  The directory holding the PreResponses, created if it does not exist
+     * @param preResponseDeserializer  Deserializer of the stored PreResponses, whose mappers also serialize them
+     * @param chunkSize  The most bytes of serialized JSON written to one chunk
+     * @param ttlMillis  How long PreResponses are kept, in milliseconds
+     * @param clock  The source of the current time, in milliseconds
+     */
+    public FileSystemPreResponseStore(
+            Path directory,
+            PreResponseDeserializer preResponseDeserializer,
+            long chunkSize,
+            long ttlMillis,
+            LongSupplier clock
+    ) {
+        this(directory, preResponseDeserializer, chunkSize, ttlMillis, clock, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory  The directory holding the PreResponses, created if it does not exist
+     * @param preResponseDeserializer  Deserializer of the stored PreResponses, whose mappers also serialize them
+     * @param chunkSize  The most bytes of serialized JSON written to one chunk
+     * @param ttlMillis  How long PreResponses are kept, in milliseconds
+     * @param clock  The source of the current time, in milliseconds
+     * @param cleanupPeriodMillis  How often expired PreResponses are deleted, in milliseconds, or 0 to never delete
+     * them in the background
+     */
+    public FileSystemPreResponseStore(
+            Path directory,
+            PreResponseDeserializer preResponseDeserializer,
+            long chunkSize,
+            long ttlMillis,
+            LongSupplier clock,
+            long cleanupPeriodMillis
+    ) {
+        this.directory = directory;
+        this.preResponseDeserializer = preResponseDeserializer;
+        this.chunkSize = chunkSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.cleanup = cleanupPeriodMillis <= 0 ? null : CLEANER.scheduleWithFixedDelay(
+                this::deleteExpired,
+                cleanupPeriodMillis,
+                cleanupPeriodMillis,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @Override
+    public Observable<PreResponse> get(String ticket) {
+        return read(ticket, preResponseDeserializer::deserialize);
+    }
+
+    /**
+     * Returns an Observable over the PreResponse of a ticket, whose results are decompressed and decoded from its
+     * chunks one at a time as they are iterated.
+     * <p>
+     * The chunks are held open until all of the results have been read.
+     *
+     * @param ticket  The ticket used to identify a job and it's results
+     *
+     * @return An Observable over a PreResponse associated with the given ticket
+     */
+    @Override
+    public Observable<PreResponse> stream(String ticket) {
+        return read(ticket, preResponseDeserializer::stream);
+    }
+
+    /**
+     * Read the PreResponse of a ticket from its chunks.
+     *
+     * @param ticket  The ticket used to identify a job and it's results
+     * @param deserializer  Reads the PreResponse from the decompressed chunks, closing them once it has read them
+     *
+     * @return An Observable over the PreResponse, empty if there is none or it has expired
+     */
+    private Observable<PreResponse> read(String ticket, ChunkDeserializer deserializer) {
+        Path ticketDirectory = getTicketDirectory(ticket);
+        try {
+            if (isExpired(ticketDirectory)) {
+                delete(ticketDirectory);
+                return Observable.empty();
+            }
+            // Open every chunk up front, so that the chunks can still be read if they are replaced or deleted
+            List<InputStream> chunks = new ArrayList<>();
+            try {
+                for (Path chunk : listChunks(ticketDirectory)) {
+                    chunks.add(new FileInputStream(chunk.toFile()));
+                }
+            } catch (IOException e) {
+                closeAll(chunks);
+                throw e;
+            }
+            if (chunks.isEmpty()) {
+                return Observable.empty();
+            }
+            try {
+                return Observable.just(deserializer.deserialize(new BufferedInputStream(decompress(chunks))));
+            } catch (IOException | RuntimeException e) {
+                closeAll(chunks);
+                throw e;
+            }
+        } catch (NoSuchFileException e) {
+            return Observable.empty();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to read the results of ticket {} from {}", ticket, ticketDirectory, e);
+            return Observable.error(e);
+        }
+    }
+
+    @Override
+    public Observable<String> save(String ticket, PreResponse preResponse) {
+        Path pendingDirectory = directory.resolve(PENDING_PREFIX + UUID.randomUUID());
+        Path ticketDirectory = getTicketDirectory(ticket);
+        try {
+            Files.createDirectory(pendingDirectory);
+            try (OutputStream out = new ChunkedOutputStream(pendingDirectory)) {
+                preResponseDeserializer.getNonResponseContextMapper().writeValue(
+                        out,
+                        new PreResponseSerializationProxy(
+                                preResponse,
+                                preResponseDeserializer.getResponseContextMapper()
+                        )
+                );
+            }
+            delete(ticketDirectory);
+            Files.move(pendingDirectory, ticketDirectory);
+            // Record the write time by the clock of the store, which expiry is measured against
+            Files.setLastModifiedTime(ticketDirectory, FileTime.fromMillis(clock.getAsLong()));
+            return Observable.just(ticket);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to write the results of ticket {} to {}", ticket, ticketDirectory, e);
+            try {
+                delete(pendingDirectory);
+            } catch (IOException cleanupException) {
+                LOG.warn("Unable to delete {}", pendingDirectory, cleanupException);
+            }
+            return Observable.error(e);
+        }
+    }
+
+    /**
+     * Stop deleting expired PreResponses in the background.
+     */
+    @Override
+    public void close() {
+        if (cleanup != null) {
+            cleanup.cancel(false);
+        }
+    }
+
+    /**
+     * Delete the PreResponses, and the PreResponses left partly written, which are older than the time to live.
+     */
+    public void deleteExpired() {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                try {
+                    if (isExpired(entry)) {
+                        delete(entry);
+                    }
+                } catch (NoSuchFileException ignored) {
+                    // Deleted or replaced while we were looking at it
+                } catch (IOException e) {
+                    LOG.warn("Unable to delete expired results {}", entry, e);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to delete expired results from {}", directory, e);
+        }
+    }
+
+    /**
+     * Get the directory holding the chunks of the PreResponse of a ticket.
+     *
+     * @param ticket  The ticket used to identify a job and it's results
+     *
+     * @return the directory of the ticket
+     */
+    private Path getTicketDirectory(String ticket) {
+        try {
+            return directory.resolve(TICKET_PREFIX + URLEncoder.encode(ticket, StandardCharsets.UTF_8.name()));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether a PreResponse was written longer than the time to live ago.
+     * <p>
+     * A PreResponse is stamped with its write time once it is in place, while a PreResponse left partly written has
+     * the time its last chunk was written.
+     *
+     * @param path  The directory of the PreResponse
+     *
+     * @return true if the PreResponse has expired
+     *
+     * @throws IOException if the directory cannot be read
+     */
+    private boolean isExpired(Path path) throws IOException {
+        return clock.getAsLong() - Files.getLastModifiedTime(path).toMillis() > ttlMillis;
+    }
+
+    /**
+     * List the chunks of a PreResponse in the order they were written.
+     *
+     * @param ticketDirectory  The directory of the PreResponse
+     *
+     * @return the chunks of the PreResponse
+     *
+     * @throws IOException if the directory cannot be read
+     */
+    private static List<Path> listChunks(Path ticketDirectory) throws IOException {
+        List<Path> chunks = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(ticketDirectory)) {
+            entries.forEach(chunks::add);
+        }
+        Collections.sort(chunks);
+        return chunks;
+    }
+
+    /**
+     * Build one stream of the decompressed content of the chunks, decompressing each chunk as it is reached.
+     *
+     * @param chunks  The open chunks, in the order they were written
+     *
+     * @return the decompressed content of the chunks
+     */
+    private static InputStream decompress(List<InputStream> chunks) {
+        Iterator<InputStream> remaining = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return new GZIPInputStream(remaining.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Close streams, ignoring failures to close them.
+     *
+     * @param streams  The streams to close
+     */
+    private static void closeAll(List<InputStream> streams) {
+        for (InputStream stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close results chunk", e);
+            }
+        }
+    }
+
+    /**
+     * Delete a directory of chunks, if it exists.
+     *
+     * @param path  The directory to delete
+     *
+     * @throws IOException if the directory cannot be deleted
+     */
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> chunks = Files.list(path)) {
+            for (Iterator<Path> iterator = chunks.iterator(); iterator.hasNext();) {
+                Files.deleteIfExists(iterator.next());
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Reads a PreResponse from its decompressed chunks.
+     */
+    @FunctionalInterface
+    private interface ChunkDeserializer {
+
+        /**
+         * Read a PreResponse, closing the chunks once it has read them.
+         *
+         * @param serializedPreResponse  The decompressed chunks
+         *
+         * @return the PreResponse
+         *
+         * @throws IOException if the chunks cannot be read
+         */
+        PreResponse deserialize(InputStream serializedPreResponse) throws IOException;
+    }
+
+    /**
+     * Stream writing to gzip compressed chunks in a directory, starting a new chunk once a chunk holds the chunk size.
+     */
+    private final class ChunkedOutputStream extends OutputStream {
+        private final Path chunkDirectory;
+        private OutputStream chunk;
+        private long chunkBytes;
+        private int chunkCount;
+        private boolean closed;
+
+        /**
+         * Constructor.
+         *
+         * @param chunkDirectory  The directory to write the chunks to
+         */
+        private ChunkedOutputStream(Path chunkDirectory) {
+            this.chunkDirectory = chunkDirectory;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            nextChunkIfFull().write(b);
+            chunkBytes++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                OutputStream out = nextChunkIfFull();
+                int written = (int) Math.min(length, chunkSize - chunkBytes);
+                out.write(bytes, offset, written);
+                chunkBytes += written;
+                offset += written;
+                length -= written;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (chunk != null) {
+                chunk.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (chunk == null) {
+                // Write an empty chunk, so that an empty PreResponse still has a chunk to read
+                nextChunkIfFull();
+            }
+            chunk.close();
+        }
+
+        /**
+         * Get the chunk to write to, starting a new chunk if there is none or the current one is full.
+         *
+         * @return the chunk to write to
+         *
+         * @throws IOException if the new chunk cannot be created
+         */
+        private OutputStream nextChunkIfFull() throws IOException {
+            if (chunk == null || chunkBytes >= chunkSize) {
+                if (chunk != null) {
+                    chunk.close();
+                }
+                Path path = chunkDirectory.resolve(String.format(CHUNK_FORMAT, chunkCount++));
+                chunk = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(path)));
+                chunkBytes = 0;
+            }
+            return chunk;
+        }
+    }
+}
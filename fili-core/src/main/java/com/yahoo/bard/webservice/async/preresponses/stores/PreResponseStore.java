@@ -25,6 +25,21 @@ public interface PreResponseStore {
      */
     Observable<PreResponse> get(String ticket);
 
+    /**
+     * Returns an Observable over a PreResponse associated with a given ticket, whose results may be read from the
+     * store as they are iterated, rather than held in memory.
+     * <p>
+     * The results of the PreResponse may only be read once, in order, so it suits responses written out row by row.
+     * By default the PreResponse is read whole, as by {@link #get(String)}.
+     *
+     * @param ticket  The ticket used to identify a job and it's results
+     *
+     * @return An Observable over a PreResponse associated with the given ticket
+     */
+    default Observable<PreResponse> stream(String ticket) {
+        return get(ticket);
+    }
+
     /**
      * Saves the specified PreResponse in the store. If PreResponse for the given ticket already exists, then that
      * PreResponse will be overwritten. Otherwise, a new ticket-PreResponse mapping is added to the store.
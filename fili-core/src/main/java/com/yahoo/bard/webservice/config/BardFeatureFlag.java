@@ -9,6 +9,7 @@ public enum BardFeatureFlag implements FeatureFlag {
     PARTIAL_DATA("partial_data_enabled"),
     DRUID_CACHE("druid_cache_enabled"),
     DRUID_CACHE_V2("druid_cache_v2_enabled"),
+    DRUID_CACHE_V2_INTERVALS("druid_cache_v2_intervals_enabled"),
     QUERY_SPLIT("query_split_enabled"),
     TOP_N("top_n_enabled"),
     DATA_FILTER_SUBSTRING_OPERATIONS("data_filter_substring_operations_enabled"),
@@ -16,7 +17,15 @@ public enum BardFeatureFlag implements FeatureFlag {
     UPDATED_METADATA_COLLECTION_NAMES("updated_metadata_collection_names_enabled"),
     DRUID_COORDINATOR_METADATA("druid_coordinator_metadata_enabled"),
     DRUID_DIMENSIONS_LOADER("druid_dimensions_loader_enabled"),
-    CASE_SENSITIVE_KEYS("case_sensitive_keys_enabled");
+    CASE_SENSITIVE_KEYS("case_sensitive_keys_enabled"),
+    STREAMING_DRUID_RESPONSE("streaming_druid_response_enabled"),
+    COLUMNAR_RESULT_SET("columnar_result_set_enabled"),
+    STREAMING_DATA_RESPONSE("streaming_data_response_enabled"),
+    RESPONSE_COMPRESSION("response_compression_enabled"),
+    QUERY_COALESCING("query_coalescing_enabled"),
+    ADMISSION_CONTROL("admission_control_enabled"),
+    DRUID_DISPATCH_LANES("druid_dispatch_lanes_enabled"),
+    DRUID_HEDGING("druid_hedging_enabled");
 
     private final String propertyName;
     private Boolean on;
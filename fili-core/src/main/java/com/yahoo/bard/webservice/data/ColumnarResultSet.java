@@ -0,0 +1,781 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A ResultSet which stores its rows column by column rather than as individual {@link Result} objects.
+ * <p>
+ * Timestamps are stored as epoch millis, dimension rows are interned per column and referenced by index, and numeric
+ * metrics are stored in primitive arrays whenever they can be round-tripped back to the same {@link BigDecimal}.
+ * Metric values which can't (strings, booleans, JSON nodes or high precision numbers) fall back to object storage for
+ * that column only.
+ * <p>
+ * Rows are still exposed as {@code Result}s, built on access, so mappers and response writers are unaffected. Rows
+ * may be replaced, inserted, removed and reordered like those of any list, by rewriting the columns; appending is the
+ * cheap case, the others move every row after the change, and sorting builds every row once to compare them.
+ * <p>
+ * Mapping a columnar result set with a {@link com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper} which
+ * maps rows one at a time keeps columnar storage. Mappers which override {@code map(ResultSet)} to work on the whole
+ * result set build a plain {@link ResultSet}; see {@code ResultSetMapper#map(ResultSet)} for the shipped ones.
+ */
+public class ColumnarResultSet extends ResultSet {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final Map<DimensionColumn, DimensionStore> dimensionStores = new LinkedHashMap<>();
+    private final Map<MetricColumn, MetricStore> metricStores = new LinkedHashMap<>();
+
+    /**
+     * List view of the rows, backing the iteration methods, whose changes are made to the columns.
+     */
+    private final List<Result> view = new AbstractList<Result>() {
+        @Override
+        public Result get(int index) {
+            return ColumnarResultSet.this.get(index);
+        }
+
+        @Override
+        public Result set(int index, Result element) {
+            return ColumnarResultSet.this.set(index, element);
+        }
+
+        @Override
+        public void add(int index, Result element) {
+            ColumnarResultSet.this.add(index, element);
+        }
+
+        @Override
+        public Result remove(int index) {
+            return ColumnarResultSet.this.remove(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    private long[] timestamps = new long[DEFAULT_CAPACITY];
+    private Chronology chronology;
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The associated schema
+     */
+    public ColumnarResultSet(ResultSetSchema schema) {
+        super(schema, Collections.emptyList());
+        schema.getColumns(DimensionColumn.class).forEach(this::getDimensionStore);
+        schema.getColumns(MetricColumn.class).forEach(this::getMetricStore);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The associated schema
+     * @param results  The list of results
+     */
+    public ColumnarResultSet(ResultSetSchema schema, List<Result> results) {
+        this(schema);
+        addAll(results);
+    }
+
+    /**
+     * Append a row to the result set.
+     *
+     * @param result  The row to append
+     *
+     * @return true
+     *
+     * @throws IllegalArgumentException if the timestamp is not in the same chronology (time zone) as earlier rows
+     */
+    @Override
+    public boolean add(Result result) {
+        checkChronology(result);
+
+        ensureCapacity(size + 1);
+        timestamps[size] = result.getTimeStamp().getMillis();
+
+        for (Map.Entry<DimensionColumn, DimensionRow> entry : result.getDimensionRows().entrySet()) {
+            getDimensionStore(entry.getKey()).set(size, entry.getValue());
+        }
+        for (Map.Entry<MetricColumn, Object> entry : result.getMetricValues().entrySet()) {
+            getMetricStore(entry.getKey()).set(size, entry.getValue());
+        }
+
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Replace a row of the result set.
+     *
+     * @param index  The index of the row to replace
+     * @param result  The new row
+     *
+     * @return the row which was replaced
+     *
+     * @throws IllegalArgumentException if the timestamp is not in the same chronology (time zone) as the other rows
+     */
+    @Override
+    public Result set(int index, Result result) {
+        Result previous = get(index);
+        if (size > 1) {
+            checkChronology(result);
+        } else {
+            chronology = result.getTimeStamp().getChronology();
+        }
+
+        timestamps[index] = result.getTimeStamp().getMillis();
+
+        Map<DimensionColumn, DimensionRow> dimensionRows = result.getDimensionRows();
+        dimensionRows.keySet().forEach(this::getDimensionStore);
+        for (Map.Entry<DimensionColumn, DimensionStore> entry : dimensionStores.entrySet()) {
+            if (dimensionRows.containsKey(entry.getKey())) {
+                entry.getValue().set(index, dimensionRows.get(entry.getKey()));
+            } else {
+                entry.getValue().clear(index);
+            }
+        }
+        Map<MetricColumn, Object> metricValues = result.getMetricValues();
+        metricValues.keySet().forEach(this::getMetricStore);
+        for (Map.Entry<MetricColumn, MetricStore> entry : metricStores.entrySet()) {
+            if (metricValues.containsKey(entry.getKey())) {
+                entry.getValue().set(index, metricValues.get(entry.getKey()));
+            } else {
+                entry.getValue().clear(index);
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Result element) {
+        addAll(index, Collections.singletonList(element));
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Result> results) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int oldSize = size;
+        addAll(results);
+        int added = size - oldSize;
+        if (added > 0 && index < oldSize) {
+            // Move the appended rows from the end into place
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i < index ? i : i < index + added ? oldSize + i - index : i - added;
+            }
+            reorder(order);
+        }
+        return added > 0;
+    }
+
+    @Override
+    public Result remove(int index) {
+        Result removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return removeIf(result -> !c.contains(result));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Result> filter) {
+        int[] kept = new int[size];
+        int keptCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (!filter.test(get(i))) {
+                kept[keptCount++] = i;
+            }
+        }
+        if (keptCount == size) {
+            return false;
+        }
+        reorder(Arrays.copyOf(kept, keptCount));
+        return true;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Result> operator) {
+        for (int i = 0; i < size; i++) {
+            set(i, operator.apply(get(i)));
+        }
+        modCount++;
+    }
+
+    /**
+     * Sort the rows of the result set.
+     * <p>
+     * Every row is built once to be compared, and the columns are then rewritten in the sorted order.
+     *
+     * @param c  The comparator of the rows, or null to sort them in their natural order
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void sort(Comparator<? super Result> c) {
+        Result[] rows = view.toArray(new Result[size]);
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Comparator<? super Result> comparator = c != null
+                ? c
+                : (left, right) -> ((Comparable<Object>) left).compareTo(right);
+        Arrays.sort(order, (left, right) -> comparator.compare(rows[left], rows[right]));
+        reorder(Arrays.stream(order).mapToInt(Integer::intValue).toArray());
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, size);
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+        }
+        int[] order = new int[size - (toIndex - fromIndex)];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i < fromIndex ? i : i + toIndex - fromIndex;
+        }
+        reorder(order);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Result> results) {
+        results.forEach(this::add);
+        return !results.isEmpty();
+    }
+
+    @Override
+    public Result get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = new LinkedHashMap<>();
+        for (Map.Entry<DimensionColumn, DimensionStore> entry : dimensionStores.entrySet()) {
+            if (entry.getValue().isPresent(index)) {
+                dimensionRows.put(entry.getKey(), entry.getValue().get(index));
+            }
+        }
+
+        LinkedHashMap<MetricColumn, Object> metricValues = new LinkedHashMap<>();
+        for (Map.Entry<MetricColumn, MetricStore> entry : metricStores.entrySet()) {
+            if (entry.getValue().isPresent(index)) {
+                metricValues.put(entry.getKey(), entry.getValue().get(index));
+            }
+        }
+
+        return new Result(dimensionRows, metricValues, new DateTime(timestamps[index], chronology));
+    }
+
+    /**
+     * Get the timestamp of a row as epoch millis without building the row.
+     *
+     * @param index  The index of the row
+     *
+     * @return the timestamp of the row in milliseconds since the epoch
+     */
+    public long getTimeStampMillis(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return timestamps[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return view.iterator();
+    }
+
+    @Override
+    public ListIterator<Result> listIterator() {
+        return view.listIterator();
+    }
+
+    @Override
+    public ListIterator<Result> listIterator(int index) {
+        return view.listIterator(index);
+    }
+
+    @Override
+    public Spliterator<Result> spliterator() {
+        return view.spliterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Result> action) {
+        view.forEach(action);
+    }
+
+    @Override
+    public List<Result> subList(int fromIndex, int toIndex) {
+        return view.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return view.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return view.toArray(a);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return view.contains(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return view.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return view.lastIndexOf(o);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return view.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return view.hashCode();
+    }
+
+    @Override
+    public Object clone() {
+        return new ColumnarResultSet(getSchema(), this);
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > timestamps.length) {
+            int newCapacity = Math.max(minCapacity, timestamps.length + (timestamps.length >> 1));
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            dimensionStores.values().forEach(store -> store.grow(newCapacity));
+            metricStores.values().forEach(store -> store.grow(newCapacity));
+        }
+    }
+
+    @Override
+    public void trimToSize() {
+        int newCapacity = Math.max(size, 1);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        dimensionStores.values().forEach(store -> store.grow(newCapacity));
+        metricStores.values().forEach(store -> store.grow(newCapacity));
+    }
+
+    /**
+     * Check that a row is in the same chronology (time zone) as the rows before it, taking its chronology if it is
+     * the first.
+     *
+     * @param result  The row
+     *
+     * @throws IllegalArgumentException if the timestamp is not in the same chronology as earlier rows
+     */
+    private void checkChronology(Result result) {
+        Chronology rowChronology = result.getTimeStamp().getChronology();
+        if (chronology == null) {
+            chronology = rowChronology;
+        } else if (!chronology.equals(rowChronology)) {
+            throw new IllegalArgumentException(String.format(
+                    "Result timestamp chronology %s does not match the result set chronology %s",
+                    rowChronology,
+                    chronology
+            ));
+        }
+    }
+
+    /**
+     * Rewrite the columns so that each row is taken from a row of the current columns.
+     *
+     * @param order  The index of the current row each new row is taken from, one per new row
+     */
+    private void reorder(int[] order) {
+        int capacity = Math.max(order.length, DEFAULT_CAPACITY);
+        long[] reordered = new long[capacity];
+        for (int i = 0; i < order.length; i++) {
+            reordered[i] = timestamps[order[i]];
+        }
+        timestamps = reordered;
+        dimensionStores.values().forEach(store -> store.reorder(order, capacity));
+        metricStores.values().forEach(store -> store.reorder(order, capacity));
+        size = order.length;
+        if (size == 0) {
+            chronology = null;
+        }
+        modCount++;
+    }
+
+    /**
+     * Get the store for a dimension column, adding one if the column hasn't been seen before.
+     *
+     * @param column  The dimension column
+     *
+     * @return the store for that column
+     */
+    private DimensionStore getDimensionStore(DimensionColumn column) {
+        return dimensionStores.computeIfAbsent(column, ignored -> new DimensionStore(timestamps.length));
+    }
+
+    /**
+     * Get the store for a metric column, adding one if the column hasn't been seen before.
+     *
+     * @param column  The metric column
+     *
+     * @return the store for that column
+     */
+    private MetricStore getMetricStore(MetricColumn column) {
+        return metricStores.computeIfAbsent(column, ignored -> new MetricStore(timestamps.length));
+    }
+
+    /**
+     * Storage for a dimension column: an index per row into a dictionary of distinct dimension rows.
+     */
+    private static class DimensionStore {
+        private final List<DimensionRow> dictionary = new ArrayList<>();
+        private final Map<DimensionRow, Integer> codes = new HashMap<>();
+        private final BitSet present = new BitSet();
+        private int[] rowCodes;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  Initial number of rows to allocate storage for
+         */
+        DimensionStore(int capacity) {
+            rowCodes = new int[capacity];
+        }
+
+        /**
+         * Set the value of a row.
+         *
+         * @param index  The row
+         * @param value  The dimension row of that row
+         */
+        void set(int index, DimensionRow value) {
+            rowCodes[index] = codes.computeIfAbsent(value, row -> {
+                dictionary.add(row);
+                return dictionary.size() - 1;
+            });
+            present.set(index);
+        }
+
+        /**
+         * Remove the value of a row, so the row has no value for this column.
+         *
+         * @param index  The row
+         */
+        void clear(int index) {
+            present.clear(index);
+        }
+
+        /**
+         * Rewrite the storage so that each row is taken from a current row.
+         *
+         * @param order  The index of the current row each new row is taken from
+         * @param capacity  The number of rows to allocate storage for
+         */
+        void reorder(int[] order, int capacity) {
+            int[] reordered = new int[capacity];
+            BitSet reorderedPresent = new BitSet();
+            for (int i = 0; i < order.length; i++) {
+                reordered[i] = rowCodes[order[i]];
+                reorderedPresent.set(i, present.get(order[i]));
+            }
+            rowCodes = reordered;
+            present.clear();
+            present.or(reorderedPresent);
+        }
+
+        /**
+         * Get the value of a row.
+         *
+         * @param index  The row
+         *
+         * @return the dimension row
+         */
+        DimensionRow get(int index) {
+            return dictionary.get(rowCodes[index]);
+        }
+
+        /**
+         * Whether or not the row has a value for this column.
+         *
+         * @param index  The row
+         *
+         * @return true if the row has a value
+         */
+        boolean isPresent(int index) {
+            return present.get(index);
+        }
+
+        /**
+         * Resize the storage.
+         *
+         * @param capacity  The new number of rows to allocate storage for
+         */
+        void grow(int capacity) {
+            rowCodes = Arrays.copyOf(rowCodes, capacity);
+        }
+    }
+
+    /**
+     * Storage for a metric column.
+     * <p>
+     * Values start out in a primitive long array, move to a primitive double array if a value is fractional, and move
+     * to an object array if a value can't be stored as a primitive and read back as an equal {@link BigDecimal}.
+     */
+    private static class MetricStore {
+        private final BitSet present = new BitSet();
+        private final BitSet nulls = new BitSet();
+        private int nonNullCount;
+        private long[] longs;
+        private double[] doubles;
+        private Object[] objects;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  Initial number of rows to allocate storage for
+         */
+        MetricStore(int capacity) {
+            longs = new long[capacity];
+        }
+
+        /**
+         * Set the value of a row.
+         *
+         * @param index  The row
+         * @param value  The metric value of that row
+         */
+        void set(int index, Object value) {
+            clear(index);
+            present.set(index);
+            if (value == null) {
+                nulls.set(index);
+                return;
+            }
+            setNonNull(index, value);
+            nonNullCount++;
+        }
+
+        /**
+         * Remove the value of a row, so the row has no value for this column.
+         *
+         * @param index  The row
+         */
+        void clear(int index) {
+            if (present.get(index) && !nulls.get(index)) {
+                nonNullCount--;
+            }
+            present.clear(index);
+            nulls.clear(index);
+        }
+
+        /**
+         * Rewrite the storage so that each row is taken from a current row, keeping the storage type.
+         *
+         * @param order  The index of the current row each new row is taken from
+         * @param capacity  The number of rows to allocate storage for
+         */
+        void reorder(int[] order, int capacity) {
+            BitSet reorderedPresent = new BitSet();
+            BitSet reorderedNulls = new BitSet();
+            long[] reorderedLongs = longs == null ? null : new long[capacity];
+            double[] reorderedDoubles = doubles == null ? null : new double[capacity];
+            Object[] reorderedObjects = objects == null ? null : new Object[capacity];
+            nonNullCount = 0;
+            for (int i = 0; i < order.length; i++) {
+                int from = order[i];
+                if (!present.get(from)) {
+                    continue;
+                }
+                reorderedPresent.set(i);
+                if (nulls.get(from)) {
+                    reorderedNulls.set(i);
+                    continue;
+                }
+                nonNullCount++;
+                if (reorderedObjects != null) {
+                    reorderedObjects[i] = objects[from];
+                } else if (reorderedLongs != null) {
+                    reorderedLongs[i] = longs[from];
+                } else {
+                    reorderedDoubles[i] = doubles[from];
+                }
+            }
+            present.clear();
+            present.or(reorderedPresent);
+            nulls.clear();
+            nulls.or(reorderedNulls);
+            longs = reorderedLongs;
+            doubles = reorderedDoubles;
+            objects = reorderedObjects;
+        }
+
+        /**
+         * Store a non null value, moving to a more general storage type if needed.
+         *
+         * @param index  The row
+         * @param value  The metric value of that row
+         */
+        private void setNonNull(int index, Object value) {
+            if (objects != null) {
+                objects[index] = value;
+                return;
+            }
+            if (value instanceof BigDecimal) {
+                BigDecimal number = (BigDecimal) value;
+                if (longs != null && number.scale() == 0 && number.unscaledValue().bitLength() < Long.SIZE) {
+                    longs[index] = number.longValue();
+                    return;
+                }
+                double doubleValue = number.doubleValue();
+                if (number.scale() > 0 && BigDecimal.valueOf(doubleValue).equals(number)) {
+                    if (longs != null && nonNullCount == 0) {
+                        // Integral values read back from a double would not have the same scale, so only switch
+                        // to doubles while no longs have been stored
+                        doubles = new double[longs.length];
+                        longs = null;
+                    }
+                    if (doubles != null) {
+                        doubles[index] = doubleValue;
+                        return;
+                    }
+                }
+            }
+            promoteToObjects();
+            objects[index] = value;
+        }
+
+        /**
+         * Get the value of a row.
+         *
+         * @param index  The row
+         *
+         * @return the metric value
+         */
+        Object get(int index) {
+            if (nulls.get(index)) {
+                return null;
+            }
+            if (objects != null) {
+                return objects[index];
+            }
+            return longs != null ? BigDecimal.valueOf(longs[index]) : BigDecimal.valueOf(doubles[index]);
+        }
+
+        /**
+         * Whether or not the row has a value for this column.
+         *
+         * @param index  The row
+         *
+         * @return true if the row has a value
+         */
+        boolean isPresent(int index) {
+            return present.get(index);
+        }
+
+        /**
+         * Resize the storage.
+         *
+         * @param capacity  The new number of rows to allocate storage for
+         */
+        void grow(int capacity) {
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, capacity);
+            } else if (doubles != null) {
+                doubles = Arrays.copyOf(doubles, capacity);
+            } else {
+                objects = Arrays.copyOf(objects, capacity);
+            }
+        }
+
+        /**
+         * Move to object storage, boxing any values stored so far.
+         */
+        private void promoteToObjects() {
+            if (objects != null) {
+                return;
+            }
+            int capacity = longs != null ? longs.length : doubles.length;
+            Object[] boxed = new Object[capacity];
+            for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+                if (!nulls.get(i)) {
+                    boxed[i] = longs != null ? BigDecimal.valueOf(longs[i]) : BigDecimal.valueOf(doubles[i]);
+                }
+            }
+            objects = boxed;
+            longs = null;
+            doubles = null;
+        }
+    }
+}
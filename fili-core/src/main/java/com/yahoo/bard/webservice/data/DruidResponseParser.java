@@ -4,6 +4,7 @@ package com.yahoo.bard.webservice.data;
 
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.RESULT_SET_ERROR;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
@@ -12,6 +13,8 @@ import com.yahoo.bard.webservice.druid.model.QueryType;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.table.Column;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.joda.time.DateTime;
@@ -19,9 +22,17 @@ import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -56,6 +67,26 @@ public class DruidResponseParser {
 
         LOG.trace("Parsing druid query {} by json result: {} using schema: {}", queryType, jsonResult, schema);
 
+        ResultSet results = buildResultSet(schema);
+        parseInto(jsonResult, results, queryType, dateTimeZone);
+
+        LOG.trace("Parsed druid query {} results: {}", queryType, results);
+        return results;
+    }
+
+    /**
+     * Parse a Druid response, adding its rows to the end of a result set.
+     * <p>
+     * The rows of the responses for consecutive time buckets of a query can be added to one result set in turn, so that
+     * each response can be released once its rows have been added.
+     *
+     * @param jsonResult  Druid results in json
+     * @param results  The result set to add the rows to, whose schema is the schema of the rows
+     * @param queryType  the type of query, note that this implementation only supports instances of
+     * {@link DefaultQueryType}
+     * @param dateTimeZone the time zone used for format the results
+     */
+    public void parseInto(JsonNode jsonResult, ResultSet results, QueryType queryType, DateTimeZone dateTimeZone) {
         if (!(queryType instanceof DefaultQueryType)) {
             // Throw an exception for unsupported query types
             unsupportedQueryType(queryType);
@@ -63,30 +94,184 @@ public class DruidResponseParser {
         DefaultQueryType defaultQueryType = (DefaultQueryType) queryType;
 
         /* Get dimension and metric columns */
+        ResultSetSchema schema = results.getSchema();
         Set<DimensionColumn> dimensionColumns = schema.getColumns(DimensionColumn.class);
         Set<MetricColumn> metricColumns = schema.getColumns(MetricColumn.class);
 
-        List<Result> results = null;
         switch (defaultQueryType) {
             case GROUP_BY:
-                results = makeGroupByResults(jsonResult, dimensionColumns, metricColumns, dateTimeZone);
+                makeGroupByResults(jsonResult, dimensionColumns, metricColumns, dateTimeZone, results);
                 break;
             case TOP_N:
-                results = makeTopNResults(jsonResult, dimensionColumns, metricColumns, dateTimeZone);
+                makeTopNResults(jsonResult, dimensionColumns, metricColumns, dateTimeZone, results);
                 break;
             case TIMESERIES:
-                results = makeTimeSeriesResults(jsonResult, metricColumns, dateTimeZone);
+                makeTimeSeriesResults(jsonResult, metricColumns, dateTimeZone, results);
                 break;
             case LOOKBACK:
-                results = makeLookbackResults(jsonResult, dimensionColumns, metricColumns, dateTimeZone);
+                makeLookbackResults(jsonResult, dimensionColumns, metricColumns, dateTimeZone, results);
                 break;
             default:
                 // Throw an exception for unsupported query types
                 unsupportedQueryType(queryType);
         }
+    }
 
-        LOG.trace("Parsed druid query {} results: {}", queryType, results);
-        return new ResultSet(schema, results);
+    /**
+     * Parse a Druid response into a ResultSet by reading tokens directly from a streaming parser.
+     * <p>
+     * Unlike {@link #parse(JsonNode, ResultSetSchema, QueryType, DateTimeZone)} this never materializes the response
+     * as a tree, so only the rows being built (rather than the rows plus the whole JSON document) are held in memory.
+     *
+     * @param parser  Parser positioned before the start of the Druid response array
+     * @param schema  Schema for results
+     * @param queryType  the type of query, note that this implementation only supports instances of
+     * {@link DefaultQueryType}
+     * @param dateTimeZone the time zone used for format the results
+     *
+     * @return the set of results
+     */
+    public ResultSet parse(
+            JsonParser parser,
+            ResultSetSchema schema,
+            QueryType queryType,
+            DateTimeZone dateTimeZone
+    ) {
+        LOG.trace("Stream parsing druid query {} using schema: {}", queryType, schema);
+
+        StreamingRecordReader recordReader = buildRecordReader(parser, schema, queryType, dateTimeZone);
+        ResultSet results = buildResultSet(schema);
+        boolean moreRecords = true;
+        while (moreRecords) {
+            moreRecords = recordReader.readRecord(results);
+        }
+
+        LOG.trace("Stream parsed druid query {} into {} results", queryType, results.size());
+        return results;
+    }
+
+    /**
+     * Build a result set whose rows are parsed from a Druid response as they are read, one record at a time.
+     * <p>
+     * Only the rows of the record being read are held in memory. The rows can be read once, and the parser is closed
+     * once they have all been read.
+     *
+     * @param parser  Parser positioned before the start of the Druid response array
+     * @param schema  Schema for results
+     * @param queryType  the type of query, note that this implementation only supports instances of
+     * {@link DefaultQueryType}
+     * @param dateTimeZone the time zone used for format the results
+     *
+     * @return the result set streaming the rows of the response
+     */
+    public StreamingResultSet stream(
+            JsonParser parser,
+            ResultSetSchema schema,
+            QueryType queryType,
+            DateTimeZone dateTimeZone
+    ) {
+        StreamingRecordReader recordReader = buildRecordReader(parser, schema, queryType, dateTimeZone);
+        Iterator<Result> rows = new Iterator<Result>() {
+            private final Deque<Result> recordRows = new ArrayDeque<>();
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                while (recordRows.isEmpty() && !exhausted) {
+                    exhausted = !recordReader.readRecord(recordRows);
+                    if (exhausted) {
+                        closeQuietly(parser);
+                    }
+                }
+                return !recordRows.isEmpty();
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return recordRows.poll();
+            }
+        };
+        return new StreamingResultSet(schema, rows);
+    }
+
+    /**
+     * Build the reader of the records of a Druid response for a query type.
+     *
+     * @param parser  Parser positioned before the start of the Druid response array
+     * @param schema  Schema for results
+     * @param queryType  the type of query, note that this implementation only supports instances of
+     * {@link DefaultQueryType}
+     * @param dateTimeZone the time zone used for format the results
+     *
+     * @return the record reader
+     */
+    private StreamingRecordReader buildRecordReader(
+            JsonParser parser,
+            ResultSetSchema schema,
+            QueryType queryType,
+            DateTimeZone dateTimeZone
+    ) {
+        if (!(queryType instanceof DefaultQueryType)) {
+            // Throw an exception for unsupported query types
+            unsupportedQueryType(queryType);
+        }
+        DefaultQueryType defaultQueryType = (DefaultQueryType) queryType;
+
+        String rowFieldName = null;
+        boolean includeDimensions = true;
+        switch (defaultQueryType) {
+            case GROUP_BY:
+                rowFieldName = "event";
+                break;
+            case TOP_N:
+            case LOOKBACK:
+                rowFieldName = "result";
+                break;
+            case TIMESERIES:
+                rowFieldName = "result";
+                includeDimensions = false;
+                break;
+            default:
+                // Throw an exception for unsupported query types
+                unsupportedQueryType(queryType);
+        }
+
+        StreamingRowReader rowReader = new StreamingRowReader(
+                includeDimensions ? schema.getColumns(DimensionColumn.class) : null,
+                schema.getColumns(MetricColumn.class)
+        );
+        return new StreamingRecordReader(parser, rowFieldName, rowReader, dateTimeZone);
+    }
+
+    /**
+     * Close a parser, logging rather than throwing failures since the response has been read by then.
+     *
+     * @param parser  The parser to close
+     */
+    private static void closeQuietly(JsonParser parser) {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close druid response parser", e);
+        }
+    }
+
+    /**
+     * Create the empty result set which parsed rows are added to.
+     * <p>
+     * When columnar result sets are enabled, rows are stored column by column as they are parsed.
+     *
+     * @param schema  Schema for results
+     *
+     * @return an empty result set
+     */
+    public ResultSet buildResultSet(ResultSetSchema schema) {
+        return BardFeatureFlag.COLUMNAR_RESULT_SET.isOn()
+                ? new ColumnarResultSet(schema)
+                : new ResultSet(schema, new ArrayList<>());
     }
 
     /**
@@ -101,23 +286,21 @@ public class DruidResponseParser {
     }
 
     /**
-     * Create a list of results from a JsonNode of a groupBy response.
+     * Add the results from a JsonNode of a groupBy response.
      *
      * @param jsonResult  current results to parse in json
      * @param dimensionColumns  set of dimension columns
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param results  The list to add the results to
      */
-    private List<Result> makeGroupByResults(
+    private void makeGroupByResults(
             JsonNode jsonResult,
             Set<DimensionColumn> dimensionColumns,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            List<Result> results
     ) {
-        List<Result> results = new ArrayList<>();
-
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
 
@@ -127,28 +310,24 @@ public class DruidResponseParser {
 
             results.add(new Result(dimensionRows, metricValues, timeStamp));
         }
-
-        return results;
     }
 
     /**
-     * Create a list of results from a JsonNode of a topN response.
+     * Add the results from a JsonNode of a topN response.
      *
      * @param jsonResult  current record to parse
      * @param dimensionColumns  set of dimension columns
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param results  The list to add the results to
      */
-    private List<Result> makeTopNResults(
+    private void makeTopNResults(
             JsonNode jsonResult,
             Set<DimensionColumn> dimensionColumns,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            List<Result> results
     ) {
-        List<Result> results = new ArrayList<>();
-
         /* loop over all records */
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
@@ -165,26 +344,22 @@ public class DruidResponseParser {
                 results.add(new Result(dimensionRows, metricValues, timeStamp));
             }
         }
-
-        return results;
     }
 
     /**
-     * Create a list of results from a JsonNode of a timeseries response.
+     * Add the results from a JsonNode of a timeseries response.
      *
      * @param jsonResult  current record to parse
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param results  The list to add the results to
      */
-    private List<Result> makeTimeSeriesResults(
+    private void makeTimeSeriesResults(
             JsonNode jsonResult,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            List<Result> results
     ) {
-        List<Result> results = new ArrayList<>();
-
         /* loop over all records */
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
@@ -194,28 +369,24 @@ public class DruidResponseParser {
 
             results.add(new Result(new LinkedHashMap<>(), metricValues, timeStamp));
         }
-
-        return results;
     }
 
     /**
-     * Create a list of results from a JsonNode of a lookback response.
+     * Add the results from a JsonNode of a lookback response.
      *
      * @param jsonResult  current results to parse in json
      * @param dimensionColumns  set of dimension columns
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param results  The list to add the results to
      */
-    private List<Result> makeLookbackResults(
+    private void makeLookbackResults(
             JsonNode jsonResult,
             Set<DimensionColumn> dimensionColumns,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            List<Result> results
     ) {
-        List<Result> results = new ArrayList<>();
-
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
 
@@ -232,7 +403,6 @@ public class DruidResponseParser {
 
             results.add(new Result(dimensionRows, metricValues, timeStamp));
         }
-        return results;
     }
 
     /**
@@ -320,4 +490,213 @@ public class DruidResponseParser {
         // Pass through to druid query to allow for possible behavior customization on injected DruidResponseParsers.
         return druidQuery.buildSchemaColumns();
     }
+
+    /**
+     * Reads the top level records (time buckets) of a Druid response from a parser, one at a time.
+     */
+    private static class StreamingRecordReader {
+        private final JsonParser parser;
+        private final String rowFieldName;
+        private final StreamingRowReader rowReader;
+        private final DateTimeZone dateTimeZone;
+        private boolean started;
+
+        /**
+         * Constructor.
+         *
+         * @param parser  Parser positioned before the start of the Druid response array
+         * @param rowFieldName  The name of the field holding the row (or array of rows) in each record
+         * @param rowReader  The reader which extracts dimension and metric values from a row object
+         * @param dateTimeZone  The date time zone to apply to timestamps
+         */
+        StreamingRecordReader(
+                JsonParser parser,
+                String rowFieldName,
+                StreamingRowReader rowReader,
+                DateTimeZone dateTimeZone
+        ) {
+            this.parser = parser;
+            this.rowFieldName = rowFieldName;
+            this.rowReader = rowReader;
+            this.dateTimeZone = dateTimeZone;
+        }
+
+        /**
+         * Read the next record from the parser, adding its rows to the results.
+         * <p>
+         * Rows are buffered until the end of the record since Druid does not guarantee that the timestamp precedes
+         * them.
+         *
+         * @param results  The results to add the rows of the record to
+         *
+         * @return false if there are no more records, true otherwise
+         */
+        boolean readRecord(Collection<Result> results) {
+            try {
+                if (!started) {
+                    started = true;
+                    JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new IllegalStateException("Expected a JSON array from druid but found: " + token);
+                    }
+                }
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return false;
+                }
+
+                String timestamp = null;
+                List<Object[]> rows = new ArrayList<>(1);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken valueToken = parser.nextToken();
+                    if ("timestamp".equals(fieldName)) {
+                        timestamp = parser.getText();
+                    } else if (rowFieldName.equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+                        rows.add(rowReader.readRow(parser));
+                    } else if (rowFieldName.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            rows.add(rowReader.readRow(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                DateTime timeStamp = new DateTime(timestamp, dateTimeZone);
+                for (Object[] row : rows) {
+                    results.add(rowReader.buildResult(row, timeStamp));
+                }
+                return true;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Extracts the values of the schema columns from row objects in a streaming Druid response.
+     * <p>
+     * Values are collected positionally, in schema column order, so that the resulting maps preserve the same
+     * iteration order as the tree based parser regardless of field order in the response.
+     */
+    private static class StreamingRowReader {
+        private static final Object MISSING = new Object();
+
+        private final List<DimensionColumn> dimensionColumns;
+        private final List<MetricColumn> metricColumns;
+        private final Map<String, Integer> positions;
+
+        /**
+         * Constructor.
+         *
+         * @param dimensionColumns  The dimension columns to extract, or null if dimensions should be ignored
+         * @param metricColumns  The metric columns to extract
+         */
+        StreamingRowReader(Set<DimensionColumn> dimensionColumns, Set<MetricColumn> metricColumns) {
+            this.dimensionColumns = dimensionColumns == null ? new ArrayList<>() : new ArrayList<>(dimensionColumns);
+            this.metricColumns = new ArrayList<>(metricColumns);
+            this.positions = new HashMap<>();
+            for (int i = 0; i < this.dimensionColumns.size(); i++) {
+                positions.put(this.dimensionColumns.get(i).getName(), i);
+            }
+            int offset = this.dimensionColumns.size();
+            for (int i = 0; i < this.metricColumns.size(); i++) {
+                positions.putIfAbsent(this.metricColumns.get(i).getName(), offset + i);
+            }
+        }
+
+        /**
+         * Read the values of a row object.
+         *
+         * @param parser  Parser positioned on the START_OBJECT of the row
+         *
+         * @return the raw dimension values followed by the metric values, in schema column order
+         *
+         * @throws IOException if the parser fails to read the stream
+         */
+        Object[] readRow(JsonParser parser) throws IOException {
+            int dimensionCount = dimensionColumns.size();
+            Object[] values = new Object[dimensionCount + metricColumns.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = i < dimensionCount ? "" : MISSING;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Integer position = positions.get(parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+                if (position == null) {
+                    parser.skipChildren();
+                } else if (position < dimensionCount) {
+                    values[position] = parser.getValueAsString("");
+                    parser.skipChildren();
+                } else {
+                    values[position] = readMetricValue(parser, token);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Build a result from the values of a row.
+         *
+         * @param values  The values as read by {@link #readRow(JsonParser)}
+         * @param timeStamp  The timestamp of the record containing the row
+         *
+         * @return the result row
+         */
+        Result buildResult(Object[] values, DateTime timeStamp) {
+            LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = new LinkedHashMap<>();
+            for (int i = 0; i < dimensionColumns.size(); i++) {
+                DimensionColumn dc = dimensionColumns.get(i);
+                String fieldValue = (String) values[i];
+                DimensionRow drow = dc.getDimension().findDimensionRowByKeyValue(fieldValue);
+                if (drow == null) {
+                    drow = dc.getDimension().createEmptyDimensionRow(fieldValue);
+                }
+                dimensionRows.put(dc, drow);
+            }
+
+            LinkedHashMap<MetricColumn, Object> metricValues = new LinkedHashMap<>();
+            int offset = dimensionColumns.size();
+            for (int i = 0; i < metricColumns.size(); i++) {
+                MetricColumn mc = metricColumns.get(i);
+                Object value = values[offset + i];
+                if (value == MISSING) {
+                    LOG.warn("Found null node for metric column {}", mc.getName());
+                } else {
+                    metricValues.put(mc, value);
+                }
+            }
+
+            return new Result(dimensionRows, metricValues, timeStamp);
+        }
+
+        /**
+         * Extracts the current value from the parser, mirroring {@link DruidResponseParser#getNodeValue(JsonNode)}.
+         *
+         * @param parser  Parser positioned on the value
+         * @param token  The token of the value
+         *
+         * @return the value as a BigDecimal if the value is a number, the value as a String if it is textual, the
+         * value as a boolean if it is a boolean, null if it is null, and a JsonNode otherwise.
+         *
+         * @throws IOException if the parser fails to read the stream
+         */
+        private Object readMetricValue(JsonParser parser, JsonToken token) throws IOException {
+            switch (token) {
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return parser.getDecimalValue();
+                case VALUE_STRING:
+                    return parser.getText();
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    return parser.getBooleanValue();
+                case VALUE_NULL:
+                    return null;
+                default:
+                    return parser.readValueAsTree();
+            }
+        }
+    }
 }
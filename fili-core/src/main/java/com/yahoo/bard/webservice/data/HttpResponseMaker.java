@@ -164,6 +164,13 @@ public class HttpResponseMaker {
                                 HttpHeaders.CONTENT_DISPOSITION,
                                 ResponseFormat.getCsvContentDispositionValue(uriInfo)
                         );
+            case AVRO:
+                return rspBuilder
+                        .header(HttpHeaders.CONTENT_TYPE, Response.AVRO_CONTENT_TYPE)
+                        .header(
+                                HttpHeaders.CONTENT_DISPOSITION,
+                                ResponseFormat.getAvroContentDispositionValue(uriInfo)
+                        );
             case JSON:
                 // Fall-through: Default is JSON
             default:
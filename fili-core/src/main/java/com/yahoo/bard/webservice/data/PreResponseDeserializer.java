@@ -32,6 +32,8 @@ import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -43,10 +45,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -183,6 +191,209 @@ public class PreResponseDeserializer {
         );
     }
 
+    /**
+     * Deserialize the custom serialized PreResponse from a stream, one result at a time.
+     * <p>
+     * Unlike {@link #deserialize(String)}, neither the serialized PreResponse nor a tree of all of it is held in
+     * memory, only the results built from it. Results are decoded as they are read when the schema comes before them,
+     * and are otherwise kept as trees until the schema is read.
+     *
+     * @param preResponse  Custom serialized PreResponse, which is closed once it has been read
+     *
+     * @return De-serialized PreResponse object
+     *
+     * @throws IOException in case reading the stream or deserialization of ResponseContext fails
+     */
+    public PreResponse deserialize(InputStream preResponse) throws IOException {
+        try (JsonParser parser = nonResponseContextMapper.getFactory().createParser(preResponse)) {
+            parser.nextToken();
+            ResultSet resultSet = null;
+            ResponseContext responseContext = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (RESULT_SET_KEY.equals(field)) {
+                    resultSet = readResultSet(parser);
+                } else if (RESPONSE_CONTEXT_KEY.equals(field)) {
+                    responseContext = getResponseContext(nonResponseContextMapper.readTree(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new PreResponse(resultSet, responseContext);
+        }
+    }
+
+    /**
+     * Deserialize the custom serialized PreResponse from a stream, leaving its results to be read as they are used.
+     * <p>
+     * When the response context was serialized before the result set, the PreResponse is returned with a
+     * {@link StreamingResultSet}, whose results are decoded one at a time as they are iterated, and the stream is only
+     * closed once they have all been read. Otherwise the results have to be read before the response context, and are
+     * read whole, as by {@link #deserialize(InputStream)}.
+     *
+     * @param preResponse  Custom serialized PreResponse, which is closed once it has been read
+     *
+     * @return De-serialized PreResponse object, whose results may only be read once
+     *
+     * @throws IOException in case reading the stream or deserialization of ResponseContext fails
+     */
+    public PreResponse stream(InputStream preResponse) throws IOException {
+        JsonParser parser = nonResponseContextMapper.getFactory().createParser(preResponse);
+        boolean streaming = false;
+        try {
+            parser.nextToken();
+            ResultSet resultSet = null;
+            ResponseContext responseContext = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (RESPONSE_CONTEXT_KEY.equals(field)) {
+                    responseContext = getResponseContext(nonResponseContextMapper.readTree(parser));
+                } else if (RESULT_SET_KEY.equals(field) && responseContext != null) {
+                    // The rest of the PreResponse is read as the results are
+                    resultSet = streamResultSet(parser);
+                    streaming = true;
+                    return new PreResponse(resultSet, responseContext);
+                } else if (RESULT_SET_KEY.equals(field)) {
+                    resultSet = readResultSet(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new PreResponse(resultSet, responseContext);
+        } finally {
+            if (!streaming) {
+                parser.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the schema of the ResultSet object the parser is at, leaving its results to be read as they are iterated.
+     *
+     * @param parser  Parser at the start of the serialized ResultSet, which is closed once the results are read
+     *
+     * @return ResultSet object whose results are read from the parser
+     *
+     * @throws IOException when there's a problem reading from the parser, or the results come before the schema
+     */
+    private StreamingResultSet streamResultSet(JsonParser parser) throws IOException {
+        ResultSetSchema resultSetSchema = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (SCHEMA_KEY.equals(field)) {
+                resultSetSchema = getResultSetSchema(nonResponseContextMapper.readTree(parser));
+            } else if (RESULTS_KEY.equals(field) && resultSetSchema != null) {
+                return new StreamingResultSet(resultSetSchema, readResults(parser, resultSetSchema));
+            } else if (RESULTS_KEY.equals(field)) {
+                throw new IOException("Unable to stream results serialized before their schema");
+            } else {
+                parser.skipChildren();
+            }
+        }
+        // No results, so there is nothing left to read
+        parser.close();
+        return new StreamingResultSet(resultSetSchema, Collections.emptyIterator());
+    }
+
+    /**
+     * Build an iterator decoding the results of the array the parser is at one at a time, closing the parser once the
+     * last result has been read.
+     *
+     * @param parser  Parser at the start of the serialized results
+     * @param resultSetSchema  Schema of the results
+     *
+     * @return the iterator over the results
+     */
+    private Iterator<Result> readResults(JsonParser parser, ResultSetSchema resultSetSchema) {
+        return new Iterator<Result>() {
+            private Result nextResult;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (nextResult == null && !exhausted) {
+                    try {
+                        if (parser.nextToken() == JsonToken.START_OBJECT) {
+                            nextResult = getResult(nonResponseContextMapper.readTree(parser), resultSetSchema);
+                        } else {
+                            exhausted = true;
+                            parser.close();
+                        }
+                    } catch (IOException e) {
+                        exhausted = true;
+                        closeQuietly(parser);
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return nextResult != null;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Result result = nextResult;
+                nextResult = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Close a parser, logging rather than throwing if it cannot be closed.
+     *
+     * @param parser  The parser to close
+     */
+    private static void closeQuietly(JsonParser parser) {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close serialized PreResponse", e);
+        }
+    }
+
+    /**
+     * Reads the ResultSet object the parser is at, building each result as soon as the schema is known.
+     *
+     * @param parser  Parser at the start of the serialized ResultSet
+     *
+     * @return ResultSet object read from the parser
+     *
+     * @throws IOException when there's a problem reading from the parser
+     */
+    private ResultSet readResultSet(JsonParser parser) throws IOException {
+        ResultSetSchema resultSetSchema = null;
+        List<JsonNode> resultsBeforeSchema = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (SCHEMA_KEY.equals(field)) {
+                resultSetSchema = getResultSetSchema(nonResponseContextMapper.readTree(parser));
+                for (JsonNode serializedResult : resultsBeforeSchema) {
+                    results.add(getResult(serializedResult, resultSetSchema));
+                }
+                resultsBeforeSchema.clear();
+            } else if (RESULTS_KEY.equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode serializedResult = nonResponseContextMapper.readTree(parser);
+                    if (resultSetSchema == null) {
+                        resultsBeforeSchema.add(serializedResult);
+                    } else {
+                        results.add(getResult(serializedResult, resultSetSchema));
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ResultSet(resultSetSchema, results);
+    }
+
     /**
      * Deserialize the serialized ResponseContext. Method throws an IOException when mapper fails to read the
      * serialized ResponseContext.
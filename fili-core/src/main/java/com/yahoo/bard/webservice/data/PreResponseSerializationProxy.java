@@ -7,6 +7,7 @@ import com.yahoo.bard.webservice.web.PreResponse;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -15,7 +16,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Simplified version of PreResponse class for json format serialization.
+ * <p>
+ * The response context is written before the result set, so that a reader streaming the results knows the context
+ * before it reaches them.
  */
+@JsonPropertyOrder({PreResponseSerializationProxy.RESPONSE_CONTEXT_KEY, PreResponseSerializationProxy.RESULT_SET_KEY})
 public class PreResponseSerializationProxy {
 
     private static final Logger LOG = LoggerFactory.getLogger(PreResponseSerializationProxy.class);
@@ -11,6 +11,7 @@ import com.yahoo.bard.webservice.table.Schema;
 import com.yahoo.bard.webservice.util.DateTimeUtils;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -22,7 +23,10 @@ import java.util.stream.Collectors;
 
 /**
  * Simplified version of ResultSet class for json format serialization.
+ * <p>
+ * The schema is written before the results, so the results can be deserialized as they are read.
  */
+@JsonPropertyOrder({ResultSetSerializationProxy.SCHEMA_KEY, ResultSetSerializationProxy.RESULTS_KEY})
 public class ResultSetSerializationProxy {
 
     public static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
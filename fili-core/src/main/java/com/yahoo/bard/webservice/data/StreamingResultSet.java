@@ -0,0 +1,152 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A ResultSet whose rows are produced as they are read, rather than held in memory.
+ * <p>
+ * The rows can be read once, in order, through {@link #iterator()}, {@link #forEach}, or a stream. Operations which
+ * need all of the rows at once, such as {@code size} or {@code get}, are not supported, and the result set cannot be
+ * modified. Mapping the result set maps each row as it is read.
+ */
+public class StreamingResultSet extends ResultSet {
+
+    private final Iterator<Result> rows;
+    private final AtomicBoolean read = new AtomicBoolean(false);
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The associated schema
+     * @param rows  The rows, produced as they are read
+     */
+    public StreamingResultSet(ResultSetSchema schema, Iterator<Result> rows) {
+        super(schema, Collections.emptyList());
+        this.rows = rows;
+    }
+
+    /**
+     * Build a result set mapping each row of this one as it is read.
+     *
+     * @param schema  The schema of the mapped rows
+     * @param rowMapper  The mapping of each row, returning null to leave the row out
+     *
+     * @return the mapped result set, whose rows are read from this one
+     */
+    public StreamingResultSet map(ResultSetSchema schema, Function<Result, Result> rowMapper) {
+        Iterator<Result> unmappedRows = iterator();
+        return new StreamingResultSet(schema, new Iterator<Result>() {
+            private Result nextRow;
+
+            @Override
+            public boolean hasNext() {
+                while (nextRow == null && unmappedRows.hasNext()) {
+                    nextRow = rowMapper.apply(unmappedRows.next());
+                }
+                return nextRow != null;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Result row = nextRow;
+                nextRow = null;
+                return row;
+            }
+        });
+    }
+
+    /**
+     * Get the rows of the result set, which can only be read once.
+     *
+     * @return the iterator over the rows
+     *
+     * @throws IllegalStateException if the rows have already been read
+     */
+    @Override
+    public Iterator<Result> iterator() {
+        if (!read.compareAndSet(false, true)) {
+            throw new IllegalStateException("The rows of a streaming result set can only be read once");
+        }
+        return rows;
+    }
+
+    @Override
+    public Spliterator<Result> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Result> action) {
+        iterator().forEachRemaining(action);
+    }
+
+    @Override
+    public int size() {
+        throw unsupported("size");
+    }
+
+    @Override
+    public boolean isEmpty() {
+        throw unsupported("isEmpty");
+    }
+
+    @Override
+    public Result get(int index) {
+        throw unsupported("get");
+    }
+
+    @Override
+    public ListIterator<Result> listIterator() {
+        throw unsupported("listIterator");
+    }
+
+    @Override
+    public ListIterator<Result> listIterator(int index) {
+        throw unsupported("listIterator");
+    }
+
+    @Override
+    public boolean add(Result result) {
+        throw unsupported("add");
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Result> results) {
+        throw unsupported("addAll");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    /**
+     * Build the exception for an operation which needs all of the rows at once.
+     *
+     * @param operation  The name of the operation
+     *
+     * @return the exception to throw
+     */
+    private static UnsupportedOperationException unsupported(String operation) {
+        return new UnsupportedOperationException(operation + " is not supported by a streaming result set");
+    }
+}
@@ -0,0 +1,46 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A data cache whose operations can be run without blocking the calling thread.
+ * <p>
+ * Failed reads complete as cache misses, rather than exceptionally, as they do with the blocking operations.
+ *
+ * @param <T> The value type being stored
+ */
+public interface AsyncDataCache<T extends Serializable> extends DataCache<T> {
+
+    /**
+     * Read data from cache without blocking.
+     *
+     * @param key  the key whose associated value is to be returned
+     *
+     * @return a future of the value of the key, or of {@code null} if the key has no value or the read failed
+     */
+    CompletableFuture<T> getAsync(String key);
+
+    /**
+     * Read the data of many keys from cache in one round trip, without blocking.
+     *
+     * @param keys  the keys whose associated values are to be returned
+     *
+     * @return a future of the values of the keys which have one, by key, which is empty if the read failed
+     */
+    CompletableFuture<Map<String, T>> getMultiAsync(Collection<String> keys);
+
+    /**
+     * Put a value on a key in a data cache without blocking.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return a future of whether the value was stored
+     */
+    CompletableFuture<Boolean> setAsync(String key, T value);
+}
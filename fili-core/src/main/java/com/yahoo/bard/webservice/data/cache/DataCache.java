@@ -3,6 +3,10 @@
 package com.yahoo.bard.webservice.data.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A very thin wrapper around key value storage.
@@ -21,6 +25,26 @@ public interface DataCache<T extends Serializable> {
      */
     T get(String key);
 
+    /**
+     * Read the data of many keys from cache.
+     * <p>
+     * By default the keys are read one at a time. Caches able to read many keys in one round trip should override this.
+     *
+     * @param keys  the keys whose associated values are to be returned
+     *
+     * @return the values of the keys which have one, by key
+     */
+    default Map<String, T> getMulti(Collection<String> keys) {
+        Map<String, T> values = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
     /**
      * Put a value on a key in a data cache.
      *
@@ -33,6 +57,21 @@ public interface DataCache<T extends Serializable> {
      */
     boolean set(String key, T value) throws IllegalStateException;
 
+    /**
+     * Put a value on a key in a data cache, without waiting for it to be stored if the cache supports that.
+     * <p>
+     * By default the value is written with {@link #set(String, Serializable)}, on the calling thread.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return a future of whether the value was stored
+     * @throws IllegalStateException if the write cannot be sent
+     */
+    default CompletableFuture<Boolean> setAsync(String key, T value) throws IllegalStateException {
+        return CompletableFuture.completedFuture(set(key, value));
+    }
+
     /**
      * Removes all of the mappings from this cache.
      */
@@ -14,6 +14,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractMap;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * DataCache using hashed keys to reduce the key length for the provided underlying cache.
@@ -113,6 +114,11 @@ public class HashDataCache<T extends Serializable> implements DataCache<T> {
         return cache.set(hash(key), new Pair<>(key, value));
     }
 
+    @Override
+    final public CompletableFuture<Boolean> setAsync(String key, T value) {
+        return cache.setAsync(hash(key), new Pair<>(key, value));
+    }
+
     @Override
     public void clear() {
         cache.clear();
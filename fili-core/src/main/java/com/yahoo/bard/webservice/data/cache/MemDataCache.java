@@ -2,19 +2,29 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.cache;
 
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
 import com.yahoo.bard.webservice.config.SystemConfig;
 import com.yahoo.bard.webservice.config.SystemConfigException;
 import com.yahoo.bard.webservice.config.SystemConfigProvider;
 
+import com.codahale.metrics.Meter;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.spy.memcached.AddrUtil;
 import net.spy.memcached.BinaryConnectionFactory;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.GetCompletionListener;
+import net.spy.memcached.internal.OperationCompletionListener;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -22,10 +32,16 @@ import javax.validation.constraints.NotNull;
 
 /**
  * MemCached client implementation of DataCache.  Internally uses hashed key to keep under 250 character limit.
+ * <p>
+ * {@link #set(String, Serializable)} waits for memcached to store the value, while
+ * {@link #setAsync(String, Serializable)} returns as soon as the write is sent. At most
+ * {@code memcached_max_in_flight_writes} asynchronous writes are sent but not yet acknowledged at a time, and writes
+ * past that limit are dropped, since a cache write can always be skipped.
+ *
  * @param <T> Type of data
  */
 @Singleton
-public class MemDataCache<T extends Serializable> implements DataCache<T> {
+public class MemDataCache<T extends Serializable> implements AsyncDataCache<T> {
     private static final Logger LOG = LoggerFactory.getLogger(MemDataCache.class);
     private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
 
@@ -44,7 +60,16 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
     private static final int EXPIRATION_DEFAULT_VALUE = 3600;
     private static final int EXPIRATION = SYSTEM_CONFIG.getIntProperty(EXPIRATION_KEY, EXPIRATION_DEFAULT_VALUE);
 
+    private static final int MAX_IN_FLIGHT_WRITES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("memcached_max_in_flight_writes"),
+            1000
+    );
+
+    public static final Meter DROPPED_WRITES = MetricRegistryFactory.getRegistry()
+            .meter("queries.meter.cache.dropped_writes");
+
     final private MemcachedClient client;
+    final private Semaphore inFlightWrites;
 
     /**
      * Constructor using a default Memcached Client.
@@ -62,11 +87,22 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
      * @param client  The Memcached client to support this cache
      */
     public MemDataCache(MemcachedClient client) {
+        this(client, MAX_IN_FLIGHT_WRITES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param client  The Memcached client to support this cache
+     * @param maxInFlightWrites  The most writes sent but not yet acknowledged at a time
+     */
+    public MemDataCache(MemcachedClient client, int maxInFlightWrites) {
         // validate expiration value
         if (EXPIRATION > EXPIRATION_MAX_VALUE) {
             throw new SystemConfigException("memcached_expiration_seconds exceeds " + EXPIRATION_MAX_VALUE);
         }
         this.client = client;
+        this.inFlightWrites = new Semaphore(maxInFlightWrites);
     }
 
     @Override
@@ -81,6 +117,71 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
         }
     }
 
+    @Override
+    public Map<String, T> getMulti(Collection<String> keys) {
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, T> values = (Map<String, T>) (Map<String, ?>) client.getBulk(keys);
+            return values;
+        } catch (RuntimeException warnThenIgnore) {
+            LOG.warn(warnThenIgnore.getMessage(), warnThenIgnore);
+            return Collections.emptyMap();
+        }
+    }
+
+    @Override
+    public CompletableFuture<T> getAsync(String key) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            client.asyncGet(key).addListener((GetCompletionListener) future -> {
+                try {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) future.get();
+                    result.complete(value);
+                } catch (Exception warnThenIgnore) {
+                    LOG.warn("get failed {} {}", key, warnThenIgnore.toString());
+                    result.complete(null);
+                }
+            });
+        } catch (RuntimeException warnThenIgnore) {
+            LOG.warn(warnThenIgnore.getMessage(), warnThenIgnore);
+            result.complete(null);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, T>> getMultiAsync(Collection<String> keys) {
+        CompletableFuture<Map<String, T>> result = new CompletableFuture<>();
+        try {
+            client.asyncGetBulk(keys).addListener(future -> {
+                try {
+                    @SuppressWarnings("unchecked")
+                    Map<String, T> values = (Map<String, T>) (Map<String, ?>) future.get();
+                    result.complete(values);
+                } catch (Exception warnThenIgnore) {
+                    LOG.warn("bulk get of {} keys failed {}", keys.size(), warnThenIgnore.toString());
+                    result.complete(Collections.emptyMap());
+                }
+            });
+        } catch (RuntimeException warnThenIgnore) {
+            LOG.warn(warnThenIgnore.getMessage(), warnThenIgnore);
+            result.complete(Collections.emptyMap());
+        }
+        return result;
+    }
+
+    /**
+     * Put a value on a key in memcached, waiting for it to be stored.
+     * <p>
+     * Writes which should not hold up the calling thread should use {@link #setAsync(String, Serializable)}.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return true if the value was stored
+     * @throws IllegalStateException if the write cannot be sent or fails
+     */
     @Override
     public boolean set(String key, T value) throws IllegalStateException {
         try {
@@ -93,6 +194,59 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
         }
     }
 
+    /**
+     * Send a value to memcached without waiting for it to be stored.
+     * <p>
+     * Writes past the in-flight limit are dropped rather than queued, and complete false.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return a future of whether the value was stored
+     * @throws IllegalStateException if the memcached client cannot send the write
+     */
+    @Override
+    public CompletableFuture<Boolean> setAsync(String key, T value) {
+        CompletableFuture<Boolean> result = sendWrite(key, value);
+        return result == null ? CompletableFuture.completedFuture(false) : result;
+    }
+
+    /**
+     * Send a write to memcached, unless too many writes are in flight.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return a future of whether the value was stored, or null if the write was dropped
+     * @throws IllegalStateException if the memcached client cannot send the write
+     */
+    private CompletableFuture<Boolean> sendWrite(String key, T value) throws IllegalStateException {
+        if (!inFlightWrites.tryAcquire()) {
+            DROPPED_WRITES.mark();
+            LOG.debug("set dropped {}, too many writes in flight", key);
+            return null;
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            // Omitting null checking for key since it should be rare.
+            // An exception will be thrown by the memcached client.
+            client.set(key, EXPIRATION, value).addListener((OperationCompletionListener) future -> {
+                inFlightWrites.release();
+                try {
+                    result.complete((Boolean) future.get());
+                } catch (Exception e) {
+                    LOG.warn("set failed {} {}", key, e.toString());
+                    result.complete(false);
+                }
+            });
+        } catch (Exception e) {
+            inFlightWrites.release();
+            LOG.warn("set failed {} {}", key, e.toString());
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
     @Override
     public void clear() {
         client.flush();
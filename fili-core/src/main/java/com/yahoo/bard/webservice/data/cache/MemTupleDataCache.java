@@ -13,6 +13,10 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Singleton;
 
@@ -111,11 +115,91 @@ public class MemTupleDataCache<V extends Serializable>
         return super.get(hash(key));
     }
 
+    @Override
+    public CompletableFuture<TupleDataCache.DataEntry<String, Long, V>> getAsync(String key) {
+        return super.getAsync(hash(key));
+    }
+
+    /**
+     * Read the complete data entries of many keys in one round trip.
+     * <p>
+     * Entries stored under a different key whose hash collides with a requested key are left out.
+     *
+     * @param keys  The keys whose entries are to be returned
+     *
+     * @return the entries of the keys which have one, by key
+     */
+    @Override
+    public Map<String, TupleDataCache.DataEntry<String, Long, V>> getMulti(Collection<String> keys) {
+        Map<String, String> keysByHash = hashKeys(keys);
+        return unhashEntries(keysByHash, super.getMulti(keysByHash.keySet()));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, TupleDataCache.DataEntry<String, Long, V>>> getMultiAsync(
+            Collection<String> keys
+    ) {
+        Map<String, String> keysByHash = hashKeys(keys);
+        return super.getMultiAsync(keysByHash.keySet()).thenApply(entries -> unhashEntries(keysByHash, entries));
+    }
+
+    /**
+     * Hash keys, remembering which key each hash is of.
+     *
+     * @param keys  The keys to hash
+     *
+     * @return the keys, by their hash
+     */
+    private Map<String, String> hashKeys(Collection<String> keys) {
+        Map<String, String> keysByHash = new LinkedHashMap<>(keys.size());
+        for (String key : keys) {
+            keysByHash.put(hash(key), key);
+        }
+        return keysByHash;
+    }
+
+    /**
+     * Key entries read by hash by their unhashed key, leaving out the entries whose key collides with a requested key.
+     *
+     * @param keysByHash  The requested keys, by their hash
+     * @param entriesByHash  The entries read, by hash
+     *
+     * @return the entries, by their requested key
+     */
+    private Map<String, TupleDataCache.DataEntry<String, Long, V>> unhashEntries(
+            Map<String, String> keysByHash,
+            Map<String, TupleDataCache.DataEntry<String, Long, V>> entriesByHash
+    ) {
+        Map<String, TupleDataCache.DataEntry<String, Long, V>> entries = new LinkedHashMap<>(entriesByHash.size());
+        for (Map.Entry<String, TupleDataCache.DataEntry<String, Long, V>> entry : entriesByHash.entrySet()) {
+            String key = keysByHash.get(entry.getKey());
+            if (key == null || entry.getValue() == null) {
+                continue;
+            }
+            if (key.equals(entry.getValue().getKey())) {
+                entries.put(key, entry.getValue());
+            } else {
+                LOG.warn(
+                        "Cache entry collision detected for hash code: {} with existing key: {} and requested key {}",
+                        entry.getKey(),
+                        entry.getValue().getKey(),
+                        key
+                );
+            }
+        }
+        return entries;
+    }
+
     @Override
     public boolean set(String key, Long meta, V value) {
         return set(hash(key), new DataEntry<>(key, meta, value));
     }
 
+    @Override
+    public CompletableFuture<Boolean> setAsync(String key, Long meta, V value) {
+        return setAsync(hash(key), new DataEntry<>(key, meta, value));
+    }
+
     /**
      * Memcached implementation of the data cache entry of the tuple data cache.
      *
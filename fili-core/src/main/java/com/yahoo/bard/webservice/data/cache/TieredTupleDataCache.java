@@ -0,0 +1,369 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import com.codahale.metrics.Meter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A TupleDataCache keeping recently used entries in memory, in front of another (usually remote) TupleDataCache.
+ * <p>
+ * Entries are read from the local tier first, and from the remote tier otherwise, in which case they are kept in the
+ * local tier. Entries are written to both tiers. The local tier is bounded by the approximate size of its entries, and
+ * keeps the JSON tree of each entry once it has been parsed, so that repeated hits skip parsing the cached value. An
+ * entry is weighed again once parsed, by the estimated size of its JSON tree, which is several times the size of the
+ * serialized value.
+ * <p>
+ * The tiers do not check the metadata of their entries: entries of either tier are only valid if their checksum
+ * matches the segment set of the query, which is checked by the reader. A stale local entry is replaced when the fresh
+ * result is written back.
+ */
+public class TieredTupleDataCache implements TupleDataCache<String, Long, String> {
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * Maximum approximate size, in bytes, of the entries kept in memory. 0 disables the local tier.
+     */
+    public static final long LOCAL_CACHE_MAX_BYTES = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_cache_local_max_bytes"),
+            0L
+    );
+
+    public static final Meter L1_HITS = MetricRegistryFactory.getRegistry().meter("queries.meter.cache.l1_hits");
+    public static final Meter L2_HITS = MetricRegistryFactory.getRegistry().meter("queries.meter.cache.l2_hits");
+
+    // Rough overhead of the cache entry and the strings, in bytes
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    // Rough heap sizes of the parts of a JSON tree, in bytes
+    private static final int NODE_BYTES = 24;
+    private static final int TEXT_NODE_BYTES = 64;
+    private static final int CONTAINER_NODE_BYTES = 64;
+    private static final int ELEMENT_BYTES = 8;
+    private static final int FIELD_BYTES = 88;
+
+    private final TupleDataCache<String, Long, String> remoteCache;
+    private final Cache<String, LocalDataEntry> localCache;
+
+    /**
+     * Constructor.
+     *
+     * @param remoteCache  The cache behind the local tier
+     * @param maxBytes  Maximum approximate size of the entries kept in memory, in bytes
+     */
+    public TieredTupleDataCache(TupleDataCache<String, Long, String> remoteCache, long maxBytes) {
+        this.remoteCache = remoteCache;
+        this.localCache = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(maxBytes, 0))
+                .weigher(TieredTupleDataCache::weigh)
+                .build();
+    }
+
+    /**
+     * Constructor, using the configured size of the local tier.
+     *
+     * @param remoteCache  The cache behind the local tier
+     */
+    public TieredTupleDataCache(TupleDataCache<String, Long, String> remoteCache) {
+        this(remoteCache, LOCAL_CACHE_MAX_BYTES);
+    }
+
+    @Override
+    public TupleDataCache.DataEntry<String, Long, String> get(String key) {
+        LocalDataEntry localEntry = localCache.getIfPresent(key);
+        if (localEntry != null) {
+            L1_HITS.mark();
+            return localEntry;
+        }
+        TupleDataCache.DataEntry<String, Long, String> remoteEntry = remoteCache.get(key);
+        if (remoteEntry == null) {
+            return null;
+        }
+        L2_HITS.mark();
+        return keepLocally(key, remoteEntry);
+    }
+
+    /**
+     * Read the entries of many keys, reading the keys missing from the local tier from the remote tier at once.
+     *
+     * @param keys  The keys whose entries are to be returned
+     *
+     * @return the entries of the keys which have one, by key
+     */
+    @Override
+    public Map<String, TupleDataCache.DataEntry<String, Long, String>> getMulti(Collection<String> keys) {
+        Map<String, LocalDataEntry> localEntries = localCache.getAllPresent(keys);
+        L1_HITS.mark(localEntries.size());
+
+        List<String> missingKeys = new ArrayList<>(keys.size() - localEntries.size());
+        for (String key : keys) {
+            if (!localEntries.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+        Map<String, TupleDataCache.DataEntry<String, Long, String>> remoteEntries = missingKeys.isEmpty()
+                ? Collections.emptyMap()
+                : remoteCache.getMulti(missingKeys);
+        L2_HITS.mark(remoteEntries.size());
+
+        Map<String, TupleDataCache.DataEntry<String, Long, String>> entries = new LinkedHashMap<>(keys.size());
+        for (String key : keys) {
+            TupleDataCache.DataEntry<String, Long, String> localEntry = localEntries.get(key);
+            TupleDataCache.DataEntry<String, Long, String> remoteEntry = remoteEntries.get(key);
+            if (localEntry != null) {
+                entries.put(key, localEntry);
+            } else if (remoteEntry != null) {
+                entries.put(key, keepLocally(key, remoteEntry));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public String getDataValue(String key) {
+        TupleDataCache.DataEntry<String, Long, String> entry = get(key);
+        return entry == null || !key.equals(entry.getKey()) ? null : entry.getValue();
+    }
+
+    @Override
+    public boolean set(String key, Long meta, String value) {
+        localCache.put(key, new LocalDataEntry(key, meta, value, this::reweigh));
+        return remoteCache.set(key, meta, value);
+    }
+
+    @Override
+    public boolean set(String key, TupleDataCache.DataEntry<String, Long, String> value) {
+        localCache.invalidate(key);
+        return remoteCache.set(key, value);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setAsync(String key, Long meta, String value) {
+        localCache.put(key, new LocalDataEntry(key, meta, value, this::reweigh));
+        return remoteCache.setAsync(key, meta, value);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setAsync(String key, TupleDataCache.DataEntry<String, Long, String> value) {
+        localCache.invalidate(key);
+        return remoteCache.setAsync(key, value);
+    }
+
+    @Override
+    public void clear() {
+        localCache.invalidateAll();
+        remoteCache.clear();
+    }
+
+    /**
+     * Keep an entry read from the remote tier in the local tier.
+     * <p>
+     * Entries of another key, whose hash collides with the key in the remote tier, are not kept.
+     *
+     * @param key  The key the entry was read with
+     * @param remoteEntry  The entry read from the remote tier
+     *
+     * @return the entry to return to the reader
+     */
+    private TupleDataCache.DataEntry<String, Long, String> keepLocally(
+            String key,
+            TupleDataCache.DataEntry<String, Long, String> remoteEntry
+    ) {
+        if (!key.equals(remoteEntry.getKey()) || remoteEntry.getValue() == null) {
+            return remoteEntry;
+        }
+        LocalDataEntry localEntry = new LocalDataEntry(
+                key,
+                remoteEntry.getMeta(),
+                remoteEntry.getValue(),
+                this::reweigh
+        );
+        localCache.put(key, localEntry);
+        return localEntry;
+    }
+
+    /**
+     * Put an entry back in the local tier once its weight changed, unless it has been replaced or evicted since.
+     *
+     * @param entry  The entry whose weight changed
+     */
+    private void reweigh(LocalDataEntry entry) {
+        localCache.asMap().replace(entry.getKey(), entry, entry);
+    }
+
+    /**
+     * Estimate the heap size of a JSON tree.
+     *
+     * @param node  The root of the tree
+     *
+     * @return the approximate size of the tree in bytes
+     */
+    static long estimateTreeBytes(JsonNode node) {
+        if (node.isTextual()) {
+            return TEXT_NODE_BYTES + 2L * node.textValue().length();
+        }
+        if (node.isObject()) {
+            long bytes = CONTAINER_NODE_BYTES;
+            for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext();) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                bytes += FIELD_BYTES + 2L * field.getKey().length() + estimateTreeBytes(field.getValue());
+            }
+            return bytes;
+        }
+        if (node.isArray()) {
+            long bytes = CONTAINER_NODE_BYTES;
+            for (JsonNode element : node) {
+                bytes += ELEMENT_BYTES + estimateTreeBytes(element);
+            }
+            return bytes;
+        }
+        return NODE_BYTES;
+    }
+
+    /**
+     * Estimate the heap size of a local entry from the size of its key and serialized value or parsed tree.
+     *
+     * @param key  The key of the entry
+     * @param entry  The entry
+     *
+     * @return the approximate size of the entry in bytes
+     */
+    private static int weigh(String key, LocalDataEntry entry) {
+        return ENTRY_OVERHEAD_BYTES + 2 * key.length() + entry.weight;
+    }
+
+    /**
+     * An entry of the local tier, which keeps the JSON tree of its value once parsed instead of the serialized value.
+     */
+    public static class LocalDataEntry implements TupleDataCache.DataEntry<String, Long, String> {
+        private static final long serialVersionUID = -4181853460405232297L;
+
+        private static final ObjectMapper WRITER = new ObjectMapper();
+
+        private final String key;
+        private final Long meta;
+        private final transient Consumer<LocalDataEntry> reweigh;
+        private volatile int weight;
+        private volatile String value;
+        private volatile JsonNode json;
+
+        /**
+         * Constructor.
+         *
+         * @param key  The key of the entry
+         * @param meta  The checksum of the entry
+         * @param value  The serialized value of the entry
+         */
+        public LocalDataEntry(String key, Long meta, String value) {
+            this(key, meta, value, entry -> { });
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param key  The key of the entry
+         * @param meta  The checksum of the entry
+         * @param value  The serialized value of the entry
+         * @param reweigh  Called with the entry once its weight changed
+         */
+        private LocalDataEntry(String key, Long meta, String value, Consumer<LocalDataEntry> reweigh) {
+            this.key = key;
+            this.meta = meta;
+            this.value = value;
+            this.reweigh = reweigh;
+            this.weight = 2 * value.length();
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Long getMeta() {
+            return meta;
+        }
+
+        /**
+         * Get the serialized value, serializing the JSON tree again if the value has been parsed.
+         *
+         * @return the serialized value
+         */
+        @Override
+        public String getValue() {
+            String serialized = value;
+            if (serialized != null) {
+                return serialized;
+            }
+            try {
+                return WRITER.writeValueAsString(json);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Get the JSON tree of the value, parsing it the first time, and then weighing the entry by its tree.
+         * <p>
+         * The tree is shared by every reader of the entry, so it must not be modified.
+         *
+         * @param mapper  The mapper to parse the value with
+         *
+         * @return the JSON tree of the value
+         *
+         * @throws IOException if the value is not valid JSON
+         */
+        public JsonNode getJson(ObjectMapper mapper) throws IOException {
+            JsonNode parsed = json;
+            if (parsed == null) {
+                boolean weightChanged = false;
+                synchronized (this) {
+                    parsed = json;
+                    if (parsed == null) {
+                        parsed = mapper.readTree(value);
+                        weight = (int) Math.min(estimateTreeBytes(parsed), Integer.MAX_VALUE);
+                        json = parsed;
+                        value = null;
+                        weightChanged = true;
+                    }
+                }
+                if (weightChanged) {
+                    reweigh.accept(this);
+                }
+            }
+            return parsed;
+        }
+
+        /**
+         * Serialize the entry as a plain entry, since JSON trees are not serializable.
+         *
+         * @return the entry to serialize instead
+         *
+         * @throws ObjectStreamException never
+         */
+        private Object writeReplace() throws ObjectStreamException {
+            return new MemTupleDataCache.DataEntry<>(key, meta, getValue());
+        }
+    }
+}
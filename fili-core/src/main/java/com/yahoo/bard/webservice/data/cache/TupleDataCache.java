@@ -3,6 +3,7 @@
 package com.yahoo.bard.webservice.data.cache;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Versatile data cache interface that allows for parametrized types for the key, the metadata and the raw data value
@@ -48,6 +49,24 @@ public interface TupleDataCache<K, M extends Serializable, V extends Serializabl
      */
     boolean set(K key, M meta, V value);
 
+    /**
+     * Given a key, put a complete data entry in the data cache, without waiting for it to be stored if the cache
+     * supports that.
+     * <p>
+     * By default the entry is written with {@link #set(Object, Serializable, Serializable)}, on the calling thread.
+     *
+     * @param key  The key of the cache entry.
+     * @param meta  The metadata associated with the raw data.
+     * @param value  The raw data to store in to the cache.
+     *
+     * @return a future of whether the entry was stored
+     *
+     * @throws IllegalStateException if the write cannot be sent
+     */
+    default CompletableFuture<Boolean> setAsync(K key, M meta, V value) {
+        return CompletableFuture.completedFuture(set(key, meta, value));
+    }
+
     /**
      * A data cache entry defined as a tuple consisting of key, metadata, and value fields.
      *
@@ -3,6 +3,8 @@
 package com.yahoo.bard.webservice.data.dimension;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.validation.constraints.NotNull;
@@ -47,6 +49,30 @@ public interface KeyValueStore extends Closeable {
      */
     String get(@NotNull String key);
 
+    /**
+     * Get the values for many keys from store.
+     * <p>
+     * Stores that can fetch several keys in one operation should override this to avoid a round trip per key.
+     *
+     * @param keys  Keys to get the values for
+     *
+     * @return the values of the keys that are set, in the iteration order of the keys
+     */
+    default Map<String, String> getAll(@NotNull Collection<String> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot get null keys");
+        }
+
+        Map<String, String> values = new LinkedHashMap<>(keys.size());
+        for (String key : keys) {
+            String value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
     /**
      * Get the health status of the store.
      *
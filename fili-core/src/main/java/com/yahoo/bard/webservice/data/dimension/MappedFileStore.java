@@ -0,0 +1,885 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import com.yahoo.bard.webservice.util.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A KeyValueStore backed by memory-mapped files, keeping keys and values off the Java heap.
+ * <p>
+ * Entries are appended to a log file which is mapped in chunks of a fixed size; a record never spans two chunks. An
+ * open-addressing hash index, itself a mapped file, maps each key to the offset of its latest record in the log.
+ * Removing a key appends a tombstone record. Once the log holds more than twice as many bytes as the live records, and
+ * at least as many bytes as the live records have been appended since it was opened or last compacted, it is compacted
+ * by copying the live records into a new log. Readers keep reading while the live records are copied, and writers
+ * wait; readers only pause while the new files are swapped in.
+ * <p>
+ * The index holds at most 2^27 slots, and is kept no more than three quarters full, so a store holds at most about
+ * 100 million keys, including removed keys which have not been compacted out. Adding keys beyond that fails.
+ * <p>
+ * Both files live in the store directory and are reopened as-is on restart. Records written after the last index
+ * update are replayed from the log on open, and the index is rebuilt from the log if it is missing or belongs to
+ * another log. Writes reach the page cache as they are made, so they survive the process stopping; they are only
+ * forced to disk on {@link #close()}.
+ */
+public class MappedFileStore implements KeyValueStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFileStore.class);
+
+    public static final int DEFAULT_CHUNK_BYTES = 64 * 1024 * 1024;
+
+    private static final String LOG_FILE_NAME = "data.log";
+    private static final String INDEX_FILE_NAME = "index.bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String COMPACTION_DIRECTORY_NAME = "compaction";
+
+    private static final long LOG_MAGIC = 0x46494c494c4f4701L;
+    private static final long INDEX_MAGIC = 0x46494c49494e4401L;
+
+    // Log header: magic, generation, chunk size
+    private static final int LOG_HEADER_BYTES = 32;
+    private static final int LOG_GENERATION_OFFSET = 8;
+    private static final int LOG_CHUNK_BYTES_OFFSET = 16;
+
+    // Index header: magic, generation, capacity, used slots, end of the indexed log, bytes of live records
+    private static final int INDEX_HEADER_BYTES = 64;
+    private static final int INDEX_GENERATION_OFFSET = 8;
+    private static final int INDEX_CAPACITY_OFFSET = 16;
+    private static final int INDEX_USED_OFFSET = 24;
+    private static final int INDEX_LOG_END_OFFSET = 32;
+    private static final int INDEX_LIVE_BYTES_OFFSET = 40;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    // Record: key length + 1 (0 marks the end of the log), value length (TOMBSTONE for a removed key), key, value
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int END_OF_CHUNK = -1;
+    private static final int TOMBSTONE = -1;
+
+    private final Path directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object writeGate = new Object();
+    private final int maxCapacity;
+    private final List<MappedByteBuffer> logChunks = new ArrayList<>();
+
+    private int chunkBytes;
+    private FileChannel logChannel;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+
+    private long generation;
+    private int capacity;
+    private long used;
+    private long logEnd;
+    private long liveBytes;
+    private long compactedLogEnd;
+    private boolean open;
+
+    /**
+     * Open a store in the given directory, creating it if needed.
+     *
+     * @param directory  The directory holding the files of the store
+     */
+    public MappedFileStore(@NotNull Path directory) {
+        this(directory, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * Open a store in the given directory, creating it if needed.
+     * <p>
+     * The chunk size only applies to new stores; an existing store keeps the chunk size it was created with. The
+     * largest entry a store can hold is a little smaller than a chunk.
+     *
+     * @param directory  The directory holding the files of the store
+     * @param chunkBytes  The size of the chunks the log is mapped in
+     */
+    public MappedFileStore(@NotNull Path directory, int chunkBytes) {
+        this(directory, chunkBytes, MAX_CAPACITY);
+    }
+
+    /**
+     * Open a store in the given directory, creating it if needed, with an index of at most the given number of slots.
+     *
+     * @param directory  The directory holding the files of the store
+     * @param chunkBytes  The size of the chunks the log is mapped in
+     * @param maxCapacity  The most slots of the index, a power of two
+     */
+    MappedFileStore(@NotNull Path directory, int chunkBytes, int maxCapacity) {
+        if (chunkBytes < LOG_HEADER_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("Chunk size is too small: " + chunkBytes);
+        }
+        this.directory = directory;
+        this.chunkBytes = chunkBytes;
+        this.maxCapacity = maxCapacity;
+        open();
+    }
+
+    @Override
+    public void open() {
+        lock.writeLock().lock();
+        try {
+            if (open) {
+                return;
+            }
+            Files.createDirectories(directory);
+            openLog();
+            openIndex();
+            compactedLogEnd = logEnd;
+            open = true;
+        } catch (IOException e) {
+            String msg = String.format("Unable to open mapped file store in %s", directory);
+            LOG.error(msg, e);
+            throw new RuntimeException(msg, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Forces all changes to disk. The mapped memory itself is released once the buffers are garbage collected.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            closeFiles();
+        } catch (IOException e) {
+            String msg = String.format("Unable to close mapped file store in %s", directory);
+            LOG.error(msg, e);
+            throw new RuntimeException(msg, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        lock.readLock().lock();
+        try {
+            return open;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all keys from the store, truncating its files.
+     * <p>
+     * This is mainly used for tests.
+     */
+    public void removeAllKeys() {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            closeFiles();
+            Files.delete(directory.resolve(LOG_FILE_NAME));
+            Files.delete(directory.resolve(INDEX_FILE_NAME));
+            openLog();
+            openIndex();
+            compactedLogEnd = logEnd;
+        } catch (IOException e) {
+            open = false;
+            String msg = String.format("Unable to remove all keys from mapped file store in %s", directory);
+            LOG.error(msg, e);
+            throw new RuntimeException(msg, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String remove(@NotNull String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot remove null key");
+        }
+        return put(key, null);
+    }
+
+    @Override
+    public String get(@NotNull String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot get null key");
+        }
+
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            long offset = index.getLong(slotPosition(findSlot(key, key.getBytes(StandardCharsets.UTF_8))));
+            return offset == 0 ? null : readValue(offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return isOpen();
+    }
+
+    @Override
+    public String put(@NotNull String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot set null key");
+        }
+
+        String oldValue;
+        synchronized (writeGate) {
+            lock.writeLock().lock();
+            try {
+                checkOpen();
+                oldValue = write(key, value);
+            } catch (IOException e) {
+                String msg = String.format("Unable to put key %s into mapped file store in %s", key, directory);
+                LOG.error(msg, e);
+                throw new RuntimeException(msg, e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        compactIfDue();
+        return oldValue;
+    }
+
+    @Override
+    public Map<String, String> putAll(@NotNull Map<String, String> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Cannot set null entries");
+        }
+
+        Map<String, String> oldValues = new HashMap<>(entries.size());
+        synchronized (writeGate) {
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    oldValues.put(entry.getKey(), put(entry.getKey(), entry.getValue()));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        compactIfDue();
+        return oldValues;
+    }
+
+    /**
+     * Rewrite the log keeping only the latest record of each key that is set, and rebuild the index for it.
+     * <p>
+     * The live records are copied holding only the read lock, so reads carry on; writes wait on the write gate rather
+     * than queue on the lock, which would hold back new readers as well. Only swapping in the new files takes the
+     * write lock.
+     *
+     * @throws IOException if the compacted files cannot be written or moved into place
+     */
+    public void compact() throws IOException {
+        synchronized (writeGate) {
+            Path compactionDirectory = directory.resolve(COMPACTION_DIRECTORY_NAME);
+            MappedFileStore compacted = null;
+            boolean swapped = false;
+            try {
+                lock.readLock().lock();
+                try {
+                    checkOpen();
+                    if (Files.exists(compactionDirectory)) {
+                        Utils.deleteFiles(compactionDirectory.toString());
+                    }
+                    compacted = new MappedFileStore(compactionDirectory, chunkBytes, maxCapacity);
+                    for (int slot = 0; slot < capacity; slot++) {
+                        long offset = index.getLong(slotPosition(slot));
+                        String value = offset == 0 ? null : readValue(offset);
+                        if (value != null) {
+                            compacted.write(readKey(offset), value);
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                lock.writeLock().lock();
+                try {
+                    checkOpen();
+                    compacted.close();
+                    closeFiles();
+                    swapped = true;
+                    // If interrupted between the two moves, the generations of the log and index differ, and the
+                    // index is rebuilt from the compacted log on the next open
+                    Files.move(
+                            compactionDirectory.resolve(LOG_FILE_NAME),
+                            directory.resolve(LOG_FILE_NAME),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE
+                    );
+                    Files.move(
+                            compactionDirectory.resolve(INDEX_FILE_NAME),
+                            directory.resolve(INDEX_FILE_NAME),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE
+                    );
+                    Utils.deleteFiles(compactionDirectory.toString());
+                    openLog();
+                    openIndex();
+                    compactedLogEnd = logEnd;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } finally {
+                if (!swapped && compacted != null) {
+                    // The store was closed, or the copy failed, before the files were swapped
+                    compacted.close();
+                    Utils.deleteFiles(compactionDirectory.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compact the store if enough has been written since it was opened or last compacted.
+     * <p>
+     * Nothing is done while the calling thread holds the write lock, since compaction has to let readers in; the
+     * outermost write checks again once it releases the lock.
+     */
+    private void compactIfDue() {
+        if (lock.isWriteLockedByCurrentThread()) {
+            return;
+        }
+        synchronized (writeGate) {
+            boolean due;
+            lock.readLock().lock();
+            try {
+                due = open && logEnd > 2 * liveBytes && logEnd - compactedLogEnd > Math.max(chunkBytes, liveBytes);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (!due) {
+                return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                String msg = String.format("Unable to compact mapped file store in %s", directory);
+                LOG.error(msg, e);
+                throw new RuntimeException(msg, e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes of log in use, including records that have been overwritten.
+     *
+     * @return the size of the log
+     */
+    public long getLogBytes() {
+        lock.readLock().lock();
+        try {
+            return logEnd;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append a record for the key and point the index at it.
+     *
+     * @param key  Key to set
+     * @param value  Value to set for the key, or null to remove the key
+     *
+     * @return The previous value for the key, or null if the key was not set
+     *
+     * @throws IOException if the log cannot be extended
+     */
+    private String write(String key, String value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(key, keyBytes);
+        long oldOffset = index.getLong(slotPosition(slot));
+        String oldValue = oldOffset == 0 ? null : readValue(oldOffset);
+        if (value == null && oldValue == null) {
+            return null;
+        }
+        if (oldOffset == 0 && capacity >= maxCapacity && used >= maxCapacity - maxCapacity / 4) {
+            throw new IllegalStateException(String.format(
+                    "Mapped file store in %s is full: its index holds the most keys it can, %d, including removed "
+                            + "keys which have not been compacted out",
+                    directory,
+                    used
+            ));
+        }
+
+        long offset = append(keyBytes, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        index.putLong(slotPosition(slot), offset);
+        if (oldOffset == 0) {
+            used++;
+        }
+        liveBytes += liveSize(offset) - (oldOffset == 0 ? 0 : liveSize(oldOffset));
+        writeIndexHeader();
+
+        if (used * 2 > capacity && capacity < maxCapacity) {
+            resizeIndex(capacity * 2);
+        }
+        return oldValue;
+    }
+
+    /**
+     * Append a record to the end of the log.
+     *
+     * @param keyBytes  The encoded key
+     * @param valueBytes  The encoded value, or null for a tombstone
+     *
+     * @return the offset of the record in the log
+     *
+     * @throws IOException if the log cannot be extended
+     */
+    private long append(byte[] keyBytes, byte[] valueBytes) throws IOException {
+        int size = RECORD_HEADER_BYTES + keyBytes.length + (valueBytes == null ? 0 : valueBytes.length);
+        if (size > chunkBytes - LOG_HEADER_BYTES) {
+            throw new IllegalArgumentException(
+                    String.format("Entry of %d bytes does not fit in chunks of %d bytes", size, chunkBytes)
+            );
+        }
+
+        int position = (int) (logEnd % chunkBytes);
+        if (position + size > chunkBytes) {
+            if (chunkBytes - position >= Integer.BYTES) {
+                chunk(logEnd).putInt(position, END_OF_CHUNK);
+            }
+            logEnd += chunkBytes - position;
+            position = 0;
+        }
+
+        long offset = logEnd;
+        ByteBuffer chunk = chunk(offset).duplicate();
+        // Write the length of the key last, so that a partially written record reads as the end of the log
+        chunk.position(position + RECORD_HEADER_BYTES);
+        chunk.put(keyBytes);
+        if (valueBytes != null) {
+            chunk.put(valueBytes);
+        }
+        chunk.putInt(position + Integer.BYTES, valueBytes == null ? TOMBSTONE : valueBytes.length);
+        chunk.putInt(position, keyBytes.length + 1);
+
+        logEnd += size;
+        return offset;
+    }
+
+    /**
+     * Find the index slot holding the key, or the empty slot where it would go.
+     * <p>
+     * Writes keep the index at most three quarters full, so an empty slot is always found; the probe is bounded by
+     * the capacity all the same, so that an index filled some other way fails rather than loops forever.
+     *
+     * @param key  The key
+     * @param keyBytes  The encoded key
+     *
+     * @return the slot number
+     *
+     * @throws IllegalStateException if the key is not in the index and the index has no empty slot
+     */
+    private int findSlot(String key, byte[] keyBytes) {
+        int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        for (int probes = 0; probes < capacity; probes++) {
+            long offset = index.getLong(slotPosition(slot));
+            if (offset == 0 || keyEquals(offset, keyBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        throw new IllegalStateException(String.format("Mapped file store in %s is full: no free index slot", directory));
+    }
+
+    /**
+     * Point the index at a record of the log, as when the record was written.
+     *
+     * @param offset  The offset of the record in the log
+     */
+    private void indexRecord(long offset) {
+        String key = readKey(offset);
+        int slot = findSlot(key, key.getBytes(StandardCharsets.UTF_8));
+        long oldOffset = index.getLong(slotPosition(slot));
+        index.putLong(slotPosition(slot), offset);
+        if (oldOffset == 0) {
+            used++;
+        } else {
+            liveBytes -= liveSize(oldOffset);
+        }
+        liveBytes += liveSize(offset);
+    }
+
+    /**
+     * Open the log file, creating it with a new generation if it is empty.
+     *
+     * @throws IOException if the log cannot be opened or is not a log of this store
+     */
+    private void openLog() throws IOException {
+        Path logFile = directory.resolve(LOG_FILE_NAME);
+        logChannel = FileChannel.open(
+                logFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+
+        long logSize = logChannel.size();
+        if (logSize == 0) {
+            generation = ThreadLocalRandom.current().nextLong();
+            MappedByteBuffer chunk = chunk(0);
+            chunk.putLong(0, LOG_MAGIC);
+            chunk.putLong(LOG_GENERATION_OFFSET, generation);
+            chunk.putInt(LOG_CHUNK_BYTES_OFFSET, chunkBytes);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        logChannel.read(header, 0);
+        if (logSize < LOG_HEADER_BYTES || header.getLong(0) != LOG_MAGIC) {
+            logChannel.close();
+            throw new IOException(String.format("%s is not a mapped file store log", logFile));
+        }
+        generation = header.getLong(LOG_GENERATION_OFFSET);
+        int storedChunkBytes = header.getInt(LOG_CHUNK_BYTES_OFFSET);
+        if (storedChunkBytes != chunkBytes) {
+            LOG.info("Using chunk size {} of existing store in {}", storedChunkBytes, directory);
+            chunkBytes = storedChunkBytes;
+        }
+        for (long offset = 0; offset < logSize; offset += chunkBytes) {
+            chunk(offset);
+        }
+    }
+
+    /**
+     * Open the index file, rebuilding it from the log if it does not match the log, and replay any records that were
+     * written to the log but not recorded in the index.
+     *
+     * @throws IOException if the index cannot be opened or rebuilt
+     */
+    private void openIndex() throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE_NAME);
+        Files.deleteIfExists(directory.resolve(INDEX_FILE_NAME + TEMP_SUFFIX));
+
+        if (Files.exists(indexFile)) {
+            indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+            indexChannel.read(header, 0);
+            long storedCapacity = header.getLong(INDEX_CAPACITY_OFFSET);
+            if (header.getLong(0) == INDEX_MAGIC
+                    && header.getLong(INDEX_GENERATION_OFFSET) == generation
+                    && indexChannel.size() == INDEX_HEADER_BYTES + storedCapacity * Long.BYTES) {
+                capacity = (int) storedCapacity;
+                index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+                used = header.getLong(INDEX_USED_OFFSET);
+                logEnd = header.getLong(INDEX_LOG_END_OFFSET);
+                liveBytes = header.getLong(INDEX_LIVE_BYTES_OFFSET);
+                replay();
+                return;
+            }
+            LOG.warn("Index in {} does not match the log, rebuilding it", directory);
+            indexChannel.close();
+        }
+
+        indexChannel = createIndexFile(indexFile, INITIAL_CAPACITY);
+        capacity = INITIAL_CAPACITY;
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        used = 0;
+        logEnd = LOG_HEADER_BYTES;
+        liveBytes = 0;
+        replay();
+    }
+
+    /**
+     * Index the records of the log after the end of the indexed log.
+     */
+    private void replay() {
+        long mappedEnd = (long) logChunks.size() * chunkBytes;
+        long offset = logEnd;
+        while (offset + RECORD_HEADER_BYTES <= mappedEnd) {
+            int position = (int) (offset % chunkBytes);
+            if (position + RECORD_HEADER_BYTES > chunkBytes) {
+                offset += chunkBytes - position;
+                continue;
+            }
+            int keyLengthPlusOne = chunk(offset).getInt(position);
+            if (keyLengthPlusOne == 0) {
+                break;
+            } else if (keyLengthPlusOne == END_OF_CHUNK) {
+                offset += chunkBytes - position;
+                continue;
+            }
+            indexRecord(offset);
+            offset += recordSize(offset);
+            logEnd = offset;
+            if (used * 2 > capacity && capacity < maxCapacity) {
+                resizeIndex(capacity * 2);
+            }
+        }
+        writeIndexHeader();
+    }
+
+    /**
+     * Move the index to a larger file, re-inserting every slot.
+     *
+     * @param newCapacity  The number of slots of the new index
+     */
+    private void resizeIndex(int newCapacity) {
+        Path indexFile = directory.resolve(INDEX_FILE_NAME);
+        Path tempFile = directory.resolve(INDEX_FILE_NAME + TEMP_SUFFIX);
+        try {
+            MappedByteBuffer oldIndex = index;
+            int oldCapacity = capacity;
+
+            FileChannel newChannel = createIndexFile(tempFile, newCapacity);
+            index = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, newChannel.size());
+            capacity = newCapacity;
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                long offset = oldIndex.getLong(INDEX_HEADER_BYTES + slot * Long.BYTES);
+                if (offset != 0) {
+                    String key = readKey(offset);
+                    index.putLong(slotPosition(findSlot(key, key.getBytes(StandardCharsets.UTF_8))), offset);
+                }
+            }
+            writeIndexHeader();
+
+            indexChannel.close();
+            indexChannel = newChannel;
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            String msg = String.format("Unable to resize index of mapped file store in %s", directory);
+            LOG.error(msg, e);
+            throw new RuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Create an empty index file.
+     *
+     * @param file  The index file to create, replacing any existing file
+     * @param slots  The number of slots of the index
+     *
+     * @return an open channel to the new index file
+     *
+     * @throws IOException if the file cannot be created
+     */
+    private FileChannel createIndexFile(Path file, int slots) throws IOException {
+        FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+        header.putLong(0, INDEX_MAGIC);
+        header.putLong(INDEX_GENERATION_OFFSET, generation);
+        header.putLong(INDEX_CAPACITY_OFFSET, slots);
+        channel.write(header, 0);
+        // Writing the last byte sizes the file; the slots in between read as zero, meaning empty
+        channel.write(ByteBuffer.allocate(1), INDEX_HEADER_BYTES + (long) slots * Long.BYTES - 1);
+        return channel;
+    }
+
+    /**
+     * Write the counters of the index to its header.
+     */
+    private void writeIndexHeader() {
+        index.putLong(INDEX_USED_OFFSET, used);
+        index.putLong(INDEX_LOG_END_OFFSET, logEnd);
+        index.putLong(INDEX_LIVE_BYTES_OFFSET, liveBytes);
+    }
+
+    /**
+     * Force the files to disk and close them.
+     *
+     * @throws IOException if the files cannot be closed
+     */
+    private void closeFiles() throws IOException {
+        logChunks.forEach(MappedByteBuffer::force);
+        index.force();
+        logChunks.clear();
+        index = null;
+        logChannel.close();
+        indexChannel.close();
+    }
+
+    /**
+     * Get the chunk of the log holding an offset, mapping chunks up to it if needed.
+     *
+     * @param offset  An offset in the log
+     *
+     * @return the mapped chunk
+     */
+    private MappedByteBuffer chunk(long offset) {
+        int chunkNumber = (int) (offset / chunkBytes);
+        try {
+            while (logChunks.size() <= chunkNumber) {
+                // Mapping past the end of the file extends the file
+                logChunks.add(logChannel.map(
+                        FileChannel.MapMode.READ_WRITE,
+                        (long) logChunks.size() * chunkBytes,
+                        chunkBytes
+                ));
+            }
+        } catch (IOException e) {
+            String msg = String.format("Unable to map log of mapped file store in %s", directory);
+            LOG.error(msg, e);
+            throw new RuntimeException(msg, e);
+        }
+        return logChunks.get(chunkNumber);
+    }
+
+    /**
+     * Check whether the key of a record matches the given key.
+     *
+     * @param offset  The offset of the record in the log
+     * @param keyBytes  The encoded key
+     *
+     * @return true if the record is for the key
+     */
+    private boolean keyEquals(long offset, byte[] keyBytes) {
+        MappedByteBuffer chunk = chunk(offset);
+        int position = (int) (offset % chunkBytes);
+        if (chunk.getInt(position) - 1 != keyBytes.length) {
+            return false;
+        }
+        int keyPosition = position + RECORD_HEADER_BYTES;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (chunk.get(keyPosition + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the key of a record.
+     *
+     * @param offset  The offset of the record in the log
+     *
+     * @return the key
+     */
+    private String readKey(long offset) {
+        MappedByteBuffer chunk = chunk(offset);
+        int position = (int) (offset % chunkBytes);
+        return decode(chunk, position + RECORD_HEADER_BYTES, chunk.getInt(position) - 1);
+    }
+
+    /**
+     * Read the value of a record.
+     *
+     * @param offset  The offset of the record in the log
+     *
+     * @return the value, or null if the record is a tombstone
+     */
+    private String readValue(long offset) {
+        MappedByteBuffer chunk = chunk(offset);
+        int position = (int) (offset % chunkBytes);
+        int valueLength = chunk.getInt(position + Integer.BYTES);
+        if (valueLength == TOMBSTONE) {
+            return null;
+        }
+        return decode(chunk, position + RECORD_HEADER_BYTES + chunk.getInt(position) - 1, valueLength);
+    }
+
+    /**
+     * Get the size of a record.
+     *
+     * @param offset  The offset of the record in the log
+     *
+     * @return the number of bytes of the record
+     */
+    private int recordSize(long offset) {
+        MappedByteBuffer chunk = chunk(offset);
+        int position = (int) (offset % chunkBytes);
+        int valueLength = chunk.getInt(position + Integer.BYTES);
+        return RECORD_HEADER_BYTES + chunk.getInt(position) - 1 + (valueLength == TOMBSTONE ? 0 : valueLength);
+    }
+
+    /**
+     * Get the number of live bytes a record accounts for while it is the latest record of its key.
+     *
+     * @param offset  The offset of the record in the log
+     *
+     * @return the size of the record, or 0 for a tombstone
+     */
+    private int liveSize(long offset) {
+        return chunk(offset).getInt((int) (offset % chunkBytes) + Integer.BYTES) == TOMBSTONE
+                ? 0
+                : recordSize(offset);
+    }
+
+    /**
+     * Decode a UTF-8 string from a chunk.
+     *
+     * @param chunk  The chunk holding the string
+     * @param position  The position of the string in the chunk
+     * @param length  The number of bytes of the string
+     *
+     * @return the string
+     */
+    private static String decode(MappedByteBuffer chunk, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = chunk.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the position of a slot in the index file.
+     *
+     * @param slot  The slot number
+     *
+     * @return the position of the slot
+     */
+    private static int slotPosition(int slot) {
+        return INDEX_HEADER_BYTES + slot * Long.BYTES;
+    }
+
+    /**
+     * Hash a key, spreading the bits of its hash code since the index uses the low bits.
+     *
+     * @param key  The key to hash
+     *
+     * @return the hash of the key
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Throw if the store is closed.
+     */
+    private void checkOpen() {
+        if (!open) {
+            throw new IllegalStateException(String.format("Mapped file store in %s is closed", directory));
+        }
+    }
+}
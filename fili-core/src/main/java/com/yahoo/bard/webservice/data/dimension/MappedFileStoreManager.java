@@ -0,0 +1,95 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.util.Utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mapped File Store instance manager.
+ * <p>
+ * Each instance has a name, and keeps its files in a directory named after it under the configured store path. Given a
+ * name, only one instance with that name exists.
+ */
+public class MappedFileStoreManager {
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private static final String MAPPED_FILE_STORE_PATH = SYSTEM_CONFIG.getPackageVariableName(
+            "mapped_file_store_path"
+    );
+
+    // Size of the chunks new stores map their log in, which bounds the size of a single entry
+    private static final int CHUNK_BYTES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("mapped_file_store_chunk_bytes"),
+            MappedFileStore.DEFAULT_CHUNK_BYTES
+    );
+
+    // Hold singleton instances by name
+    private static final Map<String, MappedFileStore> MAPPED_FILE_STORES = new HashMap<>();
+
+    /**
+     * Factory for singleton instances by name.
+     * <p>
+     * Only a single instance can exist for each name. An existing store in the directory for the name is reopened with
+     * its data, and a closed instance is reopened.
+     *
+     * @param storeName Name for the singleton instance
+     *
+     * @return The singleton instance for the given name
+     */
+    public static synchronized MappedFileStore getInstance(String storeName) {
+        MappedFileStore mappedFileStore = MAPPED_FILE_STORES.get(storeName);
+
+        if (mappedFileStore == null) {
+            mappedFileStore = new MappedFileStore(getStorePath(storeName), CHUNK_BYTES);
+            MAPPED_FILE_STORES.put(storeName, mappedFileStore);
+        } else if (!mappedFileStore.isOpen()) {
+            mappedFileStore.open();
+        }
+
+        return mappedFileStore;
+    }
+
+    /**
+     * Delete the named singleton instance.
+     * <p>
+     * Also deletes the files of the instance.
+     *
+     * @param storeName Name of the singleton instance to delete
+     */
+    public static synchronized void removeInstance(String storeName) {
+        MappedFileStore mappedFileStore = MAPPED_FILE_STORES.remove(storeName);
+        if (mappedFileStore != null) {
+            mappedFileStore.close();
+        }
+        Path storePath = getStorePath(storeName);
+        if (Files.exists(storePath)) {
+            Utils.deleteFiles(storePath.toString());
+        }
+    }
+
+    /**
+     * Get the path of the directory holding the files of a store.
+     *
+     * @param storeName  Name of the store
+     *
+     * @return the path to the files of the store
+     */
+    private static Path getStorePath(String storeName) {
+        // Path eg: /home/y/var/bard_webservice/dimensionCache/dimension1/key_value_store/
+        return Paths.get(
+                String.format(
+                        "%s/dimensionCache/%s/key_value_store/",
+                        SYSTEM_CONFIG.getStringProperty(MAPPED_FILE_STORE_PATH),
+                        storeName
+                )
+        );
+    }
+}
@@ -2,15 +2,23 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension;
 
+import com.google.common.collect.Iterables;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisException;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -18,14 +26,20 @@ import javax.validation.constraints.NotNull;
 
 /**
  * A Redis-based implementation of KeyValueStore.
+ * <p>
+ * Multi-key operations are sent to Redis in batches of keys, using MGET for reads and a pipeline of MGET, MSET and DEL
+ * for writes, so that each batch costs a single round trip.
  */
 public class RedisStore implements KeyValueStore {
     private static final Logger LOG = LoggerFactory.getLogger(RedisStore.class);
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     private boolean redisIsHealthy;
     private final JedisPool pool;
     private final String storeName;
     private final String redisNamespace;
+    private final int batchSize;
 
     /**
      * Build a connection to a Redis provider.
@@ -35,10 +49,26 @@ public class RedisStore implements KeyValueStore {
      * @param redisNamespace  The first part of the prefix to the keyspace names for this store
      */
     public RedisStore(String storeName, JedisPool pool, String redisNamespace) {
+        this(storeName, pool, redisNamespace, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Build a connection to a Redis provider.
+     *
+     * @param storeName  The second part of the prefix to keyspace names for this store
+     * @param pool  A pool of Jedis connection instances
+     * @param redisNamespace  The first part of the prefix to the keyspace names for this store
+     * @param batchSize  The maximum number of keys sent to Redis in a single round trip
+     */
+    public RedisStore(String storeName, JedisPool pool, String redisNamespace, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
         this.pool = pool;
         this.storeName = storeName;
         this.redisIsHealthy = true;
         this.redisNamespace = redisNamespace;
+        this.batchSize = batchSize;
         open();
     }
 
@@ -105,6 +135,31 @@ public class RedisStore implements KeyValueStore {
         }
     }
 
+    @Override
+    public Map<String, String> getAll(@NotNull Collection<String> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot get null keys");
+        }
+
+        Map<String, String> values = new LinkedHashMap<>(keys.size());
+        try (Jedis jedis = pool.getResource()) {
+            for (List<String> batch : Iterables.partition(keys, batchSize)) {
+                List<String> batchValues = jedis.mget(redisKeys(batch));
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batchValues.get(i) != null) {
+                        values.put(batch.get(i), batchValues.get(i));
+                    }
+                }
+            }
+            return values;
+        } catch (JedisException e) {
+            redisIsHealthy = false;
+            String msg = "Unable to get keys from Redis";
+            LOG.error(msg);
+            throw new RuntimeException(msg, e);
+        }
+    }
+
     @Override
     public boolean isHealthy() {
         // If we know we're not healthy, don't bother pinging.
@@ -130,30 +185,43 @@ public class RedisStore implements KeyValueStore {
         try (Jedis jedis = pool.getResource()) {
 
             Map<String, String> oldValues = new HashMap<>(entries.size());
-            for (String key : entries.keySet()) {
-                if (key == null) {
-                    throw new IllegalArgumentException("Cannot set null key");
+            for (List<String> batch : Iterables.partition(entries.keySet(), batchSize)) {
+                List<String> keysValues = new ArrayList<>(batch.size() * 2);
+                List<String> removedKeys = new ArrayList<>();
+                for (String key : batch) {
+                    if (key == null) {
+                        throw new IllegalArgumentException("Cannot set null key");
+                    }
+                    String newValue = entries.get(key);
+                    if (newValue == null) {
+                        removedKeys.add(redisKey(storeName, key));
+                    } else {
+                        keysValues.add(redisKey(storeName, key));
+                        keysValues.add(newValue);
+                    }
                 }
 
-                String rKey = redisKey(storeName, key);
-
-                String oldValue = jedis.get(rKey);
-                String newValue = entries.get(key);
+                // Commands in a pipeline run in order, so the MGET sees the values from before this batch is written
+                Pipeline pipeline = jedis.pipelined();
+                Response<List<String>> batchOldValues = pipeline.mget(redisKeys(batch));
+                Response<String> setResult = keysValues.isEmpty()
+                        ? null
+                        : pipeline.mset(keysValues.toArray(new String[keysValues.size()]));
+                if (!removedKeys.isEmpty()) {
+                    pipeline.del(removedKeys.toArray(new String[removedKeys.size()]));
+                }
+                pipeline.sync();
 
-                oldValues.put(key, oldValue);
+                if (setResult != null && !"OK".equals(setResult.get())) {
+                    redisIsHealthy = false;
+                    String msg = "Redis failed to store keys";
+                    LOG.error(msg);
+                    throw new RuntimeException(msg);
+                }
 
-                if (newValue == null) {
-                    if (oldValue != null) {
-                        jedis.del(rKey);
-                    }
-                } else {
-                    String result = jedis.set(rKey, entries.get(key));
-                    if (!"OK".equals(result)) {
-                        redisIsHealthy = false;
-                        String msg = "Redis failed to store key";
-                        LOG.error(msg);
-                        throw new RuntimeException(msg);
-                    }
+                List<String> previousValues = batchOldValues.get();
+                for (int i = 0; i < batch.size(); i++) {
+                    oldValues.put(batch.get(i), previousValues.get(i));
                 }
             }
             return oldValues;
@@ -225,4 +293,22 @@ public class RedisStore implements KeyValueStore {
     private String redisKey(@NotNull String storeName, @NotNull String key) {
         return redisNamespace + "-" + storeName + "-" + key;
     }
+
+    /**
+     * Build the namespace- and store-specific redis keys for the given keys in this store.
+     *
+     * @param keys  Names of the keys to generate the names for
+     *
+     * @return the prefixed keys, in the same order as the given keys
+     */
+    private String[] redisKeys(@NotNull List<String> keys) {
+        String[] rKeys = new String[keys.size()];
+        for (int i = 0; i < rKeys.length; i++) {
+            if (keys.get(i) == null) {
+                throw new IllegalArgumentException("Cannot use null key");
+            }
+            rKeys[i] = redisKey(storeName, keys.get(i));
+        }
+        return rKeys;
+    }
 }
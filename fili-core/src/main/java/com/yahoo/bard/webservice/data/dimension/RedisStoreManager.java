@@ -41,6 +41,12 @@ public class RedisStoreManager {
             5000
     );
 
+    // Maximum number of keys sent to Redis in a single round trip by the multi-key operations
+    private static final int REDIS_BATCH_SIZE = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("redis_batch_size"),
+            RedisStore.DEFAULT_BATCH_SIZE
+    );
+
     // A single connection pool is shared between all instances
     protected static final JedisPool POOL = new JedisPool(
             new JedisPoolConfig(), REDIS_HOST, REDIS_PORT, REDIS_TIMEOUT_MS
@@ -62,7 +68,7 @@ public class RedisStoreManager {
         RedisStore redisStore = REDIS_STORES.get(storeName);
 
         if (redisStore == null) {
-            redisStore = new RedisStore(storeName, POOL, REDIS_NAMESPACE);
+            redisStore = new RedisStore(storeName, POOL, REDIS_NAMESPACE, REDIS_BATCH_SIZE);
             REDIS_STORES.put(storeName, redisStore);
         }
         return redisStore;
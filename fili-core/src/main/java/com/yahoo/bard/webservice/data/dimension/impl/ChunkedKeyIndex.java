@@ -0,0 +1,354 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension.impl;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
+import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The set of row keys of a dimension, kept in a {@link KeyValueStore} as chunks of keys.
+ * <p>
+ * Each row key belongs to the chunk given by its hash, so adding or removing a key reads and writes only its chunk,
+ * under {@link DimensionStoreKeyUtils#getKeyIndexChunkKey(int)}. The number of chunks is kept under
+ * {@link DimensionStoreKeyUtils#getKeyIndexChunkCountKey()}, and the number of keys under
+ * {@link DimensionStoreKeyUtils#getCardinalityKey()}, so both are read without reading the keys. The number of chunks
+ * doubles whenever the chunks average more than {@code key_index_chunk_size} keys.
+ * <p>
+ * Stores holding the single array of keys under {@link DimensionStoreKeyUtils#getAllValuesKey()}, written by earlier
+ * versions, are migrated by {@link #initialize()}.
+ */
+public class ChunkedKeyIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkedKeyIndex.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * The average number of keys per chunk above which the number of chunks is doubled.
+     */
+    public static final int KEY_INDEX_CHUNK_SIZE = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("key_index_chunk_size"),
+            1000
+    );
+
+    private static final int INITIAL_CHUNK_COUNT = 16;
+
+    private final KeyValueStore keyValueStore;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    /**
+     * Constructor.
+     *
+     * @param keyValueStore  The store holding the index
+     * @param objectMapper  Mapper to read and write the chunks of keys
+     * @param chunkSize  Average number of keys per chunk above which the number of chunks is doubled
+     */
+    public ChunkedKeyIndex(KeyValueStore keyValueStore, ObjectMapper objectMapper, int chunkSize) {
+        this.keyValueStore = keyValueStore;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Constructor, using the configured chunk size.
+     *
+     * @param keyValueStore  The store holding the index
+     * @param objectMapper  Mapper to read and write the chunks of keys
+     */
+    public ChunkedKeyIndex(KeyValueStore keyValueStore, ObjectMapper objectMapper) {
+        this(keyValueStore, objectMapper, KEY_INDEX_CHUNK_SIZE);
+    }
+
+    /**
+     * Create the index in the store if it is not there, moving the keys of an array of keys into it.
+     * <p>
+     * The chunks and the number of keys are written before the number of chunks, and the array of keys is removed
+     * last, so that readers keep reading the array of keys until the chunks hold all of them.
+     */
+    public void initialize() {
+        if (getChunkCount() != 0) {
+            return;
+        }
+        List<String> legacyKeys = getLegacyKeys();
+        int chunkCount = INITIAL_CHUNK_COUNT;
+        while (legacyKeys.size() > chunkCount * (long) chunkSize) {
+            chunkCount *= 2;
+        }
+        if (!legacyKeys.isEmpty()) {
+            LOG.info("Migrating {} dimension row keys to a chunked key index", legacyKeys.size());
+        }
+
+        Map<String, List<String>> keysByChunk = new LinkedHashMap<>();
+        for (String chunkKey : getChunkKeys(chunkCount)) {
+            keysByChunk.put(chunkKey, new ArrayList<>());
+        }
+        for (String key : legacyKeys) {
+            keysByChunk.get(getChunkKey(key, chunkCount)).add(key);
+        }
+        // Empty chunks are written too, removing any left by an interrupted migration
+        Map<String, String> entries = new LinkedHashMap<>();
+        keysByChunk.forEach((chunkKey, keys) -> entries.put(chunkKey, writeChunk(keys)));
+        entries.put(DimensionStoreKeyUtils.getCardinalityKey(), Integer.toString(legacyKeys.size()));
+        keyValueStore.putAll(entries);
+
+        keyValueStore.put(DimensionStoreKeyUtils.getKeyIndexChunkCountKey(), Integer.toString(chunkCount));
+        if (!legacyKeys.isEmpty()) {
+            keyValueStore.remove(DimensionStoreKeyUtils.getAllValuesKey());
+        }
+    }
+
+    /**
+     * Get the number of keys in the index.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        String cardinality = keyValueStore.get(DimensionStoreKeyUtils.getCardinalityKey());
+        return cardinality == null ? 0 : Integer.parseInt(cardinality);
+    }
+
+    /**
+     * Get all the keys in the index.
+     * <p>
+     * If the store has not been initialized, the keys of an array of keys written by earlier versions are returned.
+     *
+     * @return the keys, in no particular order
+     */
+    public List<String> getKeys() {
+        int chunkCount = getChunkCount();
+        if (chunkCount == 0) {
+            return getLegacyKeys();
+        }
+        List<String> keys = new ArrayList<>(size());
+        for (String chunk : keyValueStore.getAll(getChunkKeys(chunkCount)).values()) {
+            keys.addAll(readChunk(chunk));
+        }
+        return keys;
+    }
+
+    /**
+     * Add keys to the index, reading and writing only the chunks they belong to.
+     *
+     * @param keys  The keys to add
+     *
+     * @return the number of keys that were not already in the index
+     */
+    public int addAll(Collection<String> keys) {
+        int added = update(keys, true);
+        if (added > 0) {
+            // Many keys added at once may need the chunks split more than once
+            while (size() > getChunkCount() * (long) chunkSize) {
+                split();
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Remove keys from the index, reading and writing only the chunks they belong to.
+     *
+     * @param keys  The keys to remove
+     *
+     * @return the number of keys that were in the index
+     */
+    public int removeAll(Collection<String> keys) {
+        return update(keys, false);
+    }
+
+    /**
+     * Remove every key from the index, in both the chunked layout and the array of keys of earlier versions.
+     */
+    public void clear() {
+        Map<String, String> entries = new LinkedHashMap<>();
+        getChunkKeys(getChunkCount()).forEach(chunkKey -> entries.put(chunkKey, null));
+        entries.put(DimensionStoreKeyUtils.getKeyIndexChunkCountKey(), null);
+        entries.put(DimensionStoreKeyUtils.getAllValuesKey(), null);
+        entries.put(DimensionStoreKeyUtils.getCardinalityKey(), "0");
+        keyValueStore.putAll(entries);
+    }
+
+    /**
+     * Add or remove keys in the chunks they belong to, and update the number of keys.
+     *
+     * @param keys  The keys to add or remove
+     * @param add  Whether to add the keys, rather than remove them
+     *
+     * @return the number of keys added or removed
+     */
+    private int update(Collection<String> keys, boolean add) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        int chunkCount = getChunkCount();
+        if (chunkCount == 0) {
+            initialize();
+            chunkCount = getChunkCount();
+        }
+        Map<String, List<String>> keysByChunk = new LinkedHashMap<>();
+        for (String key : keys) {
+            keysByChunk.computeIfAbsent(getChunkKey(key, chunkCount), ignored -> new ArrayList<>()).add(key);
+        }
+
+        Map<String, String> chunks = keyValueStore.getAll(keysByChunk.keySet());
+        Map<String, String> updatedChunks = new LinkedHashMap<>();
+        int changed = 0;
+        for (Map.Entry<String, List<String>> chunkKeys : keysByChunk.entrySet()) {
+            Set<String> chunk = readChunk(chunks.get(chunkKeys.getKey()));
+            int sizeBefore = chunk.size();
+            if (add) {
+                chunk.addAll(chunkKeys.getValue());
+            } else {
+                chunk.removeAll(chunkKeys.getValue());
+            }
+            if (chunk.size() != sizeBefore) {
+                changed += Math.abs(chunk.size() - sizeBefore);
+                updatedChunks.put(chunkKeys.getKey(), writeChunk(chunk));
+            }
+        }
+        if (changed > 0) {
+            int cardinality = size() + (add ? changed : -changed);
+            updatedChunks.put(DimensionStoreKeyUtils.getCardinalityKey(), Integer.toString(cardinality));
+            keyValueStore.putAll(updatedChunks);
+        }
+        return changed;
+    }
+
+    /**
+     * Double the number of chunks, splitting each chunk in two.
+     * <p>
+     * A key in chunk {@code i} of {@code n} chunks belongs to either chunk {@code i} or chunk {@code i + n} of
+     * {@code 2n} chunks, so each chunk is split on its own.
+     */
+    private void split() {
+        int chunkCount = getChunkCount();
+        int newChunkCount = chunkCount * 2;
+        Map<String, String> chunks = keyValueStore.getAll(getChunkKeys(chunkCount));
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < chunkCount; i++) {
+            int chunk = i;
+            Map<Boolean, List<String>> halves = readChunk(chunks.get(DimensionStoreKeyUtils.getKeyIndexChunkKey(chunk)))
+                    .stream()
+                    .collect(Collectors.partitioningBy(key -> getChunk(key, newChunkCount) == chunk));
+            entries.put(DimensionStoreKeyUtils.getKeyIndexChunkKey(chunk), writeChunk(halves.get(true)));
+            entries.put(DimensionStoreKeyUtils.getKeyIndexChunkKey(chunk + chunkCount), writeChunk(halves.get(false)));
+        }
+        // The count is written last, so that the chunks are complete when readers start using it
+        keyValueStore.putAll(entries);
+        keyValueStore.put(DimensionStoreKeyUtils.getKeyIndexChunkCountKey(), Integer.toString(newChunkCount));
+    }
+
+    /**
+     * Get the number of chunks in the index.
+     *
+     * @return the number of chunks, or 0 if the index has not been initialized
+     */
+    private int getChunkCount() {
+        String chunkCount = keyValueStore.get(DimensionStoreKeyUtils.getKeyIndexChunkCountKey());
+        return chunkCount == null ? 0 : Integer.parseInt(chunkCount);
+    }
+
+    /**
+     * Get the store keys of all the chunks.
+     *
+     * @param chunkCount  The number of chunks
+     *
+     * @return the store keys of the chunks
+     */
+    private static List<String> getChunkKeys(int chunkCount) {
+        return IntStream.range(0, chunkCount)
+                .mapToObj(DimensionStoreKeyUtils::getKeyIndexChunkKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the chunk a key belongs to.
+     *
+     * @param key  The key
+     * @param chunkCount  The number of chunks
+     *
+     * @return the number of the chunk
+     */
+    private static int getChunk(String key, int chunkCount) {
+        return Math.floorMod(key.hashCode(), chunkCount);
+    }
+
+    /**
+     * Get the store key of the chunk a key belongs to.
+     *
+     * @param key  The key
+     * @param chunkCount  The number of chunks
+     *
+     * @return the store key of the chunk
+     */
+    private static String getChunkKey(String key, int chunkCount) {
+        return DimensionStoreKeyUtils.getKeyIndexChunkKey(getChunk(key, chunkCount));
+    }
+
+    /**
+     * Get the keys of the array of keys written by earlier versions.
+     *
+     * @return the keys, or an empty list if there is no array of keys
+     */
+    private List<String> getLegacyKeys() {
+        String allValues = keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey());
+        return allValues == null ? Collections.emptyList() : new ArrayList<>(readChunk(allValues));
+    }
+
+    /**
+     * Read the keys of a chunk.
+     *
+     * @param chunk  The JSON array of keys, or null for an empty chunk
+     *
+     * @return the keys of the chunk
+     */
+    private Set<String> readChunk(String chunk) {
+        if (chunk == null) {
+            return new LinkedHashSet<>();
+        }
+        try {
+            return new LinkedHashSet<>(Arrays.asList(objectMapper.readValue(chunk, String[].class)));
+        } catch (IOException e) {
+            LOG.error("Exception while reading dimension row keys {}", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write the keys of a chunk.
+     *
+     * @param keys  The keys of the chunk
+     *
+     * @return the JSON array of keys, or null to remove an empty chunk
+     */
+    private String writeChunk(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(keys);
+        } catch (IOException e) {
+            LOG.error("Exception while writing dimension row keys {}", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,6 +2,9 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl;
 
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
 import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
@@ -11,23 +14,29 @@ import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
 import com.yahoo.bard.webservice.data.dimension.SearchProvider;
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils;
 
+import com.codahale.metrics.Meter;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
@@ -45,6 +54,24 @@ public class KeyValueStoreDimension implements Dimension {
     private static final String FIELD_UNDEFINED_FORMAT = "Unknown dimensionField: '%s' on dimension: '%s'.";
 
     private static final Logger LOG = LoggerFactory.getLogger(KeyValueStoreDimension.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * Maximum approximate size, in bytes, of the decoded dimension rows cached by each dimension. 0 disables caching.
+     */
+    private static final long ROW_CACHE_MAX_BYTES = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("dimension_row_cache_max_bytes"),
+            0L
+    );
+
+    public static final Meter ROW_CACHE_HITS = MetricRegistryFactory.getRegistry()
+            .meter("dimensions.meter.row_cache.hits");
+    public static final Meter ROW_CACHE_MISSES = MetricRegistryFactory.getRegistry()
+            .meter("dimensions.meter.row_cache.misses");
+
+    // Rough per-entry overhead of the cache entry, the Optional, the DimensionRow map and its entries
+    private static final int ROW_CACHE_ENTRY_OVERHEAD_BYTES = 128;
+    private static final int ROW_CACHE_FIELD_OVERHEAD_BYTES = 64;
 
     private final String apiName;
     private final String longName;
@@ -65,6 +92,19 @@ public class KeyValueStoreDimension implements Dimension {
 
     private final boolean isAggregatable;
 
+    /**
+     * Decoded dimension rows (or their absence) keyed by row key, or null if row caching is disabled.
+     */
+    private final Cache<String, Optional<DimensionRow>> rowCache;
+
+    /**
+     * Incremented on every cache invalidation, so that rows read before an invalidation are not cached after it.
+     * <p>
+     * Invalidations, and the check of the generation before caching a row, happen while holding the lock of the row
+     * cache, so a row read before an invalidation is never cached after it.
+     */
+    private final AtomicLong rowCacheGeneration = new AtomicLong();
+
     /**
      * Constructor.
      *
@@ -110,6 +150,54 @@ public class KeyValueStoreDimension implements Dimension {
         this.searchProvider.setKeyValueStore(keyValueStore);
 
         this.isAggregatable = isAggregatable;
+        this.rowCache = buildRowCache(ROW_CACHE_MAX_BYTES);
+    }
+
+    /**
+     * Build the cache of decoded dimension rows, bounded by the approximate size of the cached rows.
+     *
+     * @param maxBytes  Maximum approximate size of the cached rows in bytes, 0 (or less) to disable the cache
+     *
+     * @return the row cache, or null if row caching is disabled
+     */
+    private static Cache<String, Optional<DimensionRow>> buildRowCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(KeyValueStoreDimension::weighRow)
+                .build();
+    }
+
+    /**
+     * Estimate the heap size of a cached dimension row.
+     *
+     * @param rowKey  The key of the cached row
+     * @param dimensionRow  The cached row, if the row exists
+     *
+     * @return the approximate size of the cache entry in bytes
+     */
+    private static int weighRow(String rowKey, Optional<DimensionRow> dimensionRow) {
+        int weight = ROW_CACHE_ENTRY_OVERHEAD_BYTES + 2 * rowKey.length();
+        if (dimensionRow.isPresent()) {
+            for (String value : dimensionRow.get().values()) {
+                weight += ROW_CACHE_FIELD_OVERHEAD_BYTES + 2 * (value == null ? 0 : value.length());
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Drop every cached dimension row.
+     */
+    private void invalidateRowCache() {
+        if (rowCache != null) {
+            synchronized (rowCache) {
+                rowCacheGeneration.incrementAndGet();
+                rowCache.invalidateAll();
+            }
+        }
     }
 
     /**
@@ -303,8 +391,14 @@ public class KeyValueStoreDimension implements Dimension {
         return nameToDimensionField;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Updating the last updated time marks a (re)load of the dimension, so any cached dimension rows are dropped.
+     */
     @Override
     public void setLastUpdated(DateTime lastUpdated) {
+        invalidateRowCache();
         if (lastUpdated == null) {
             keyValueStore.remove(lastUpdatedKey);
         } else {
@@ -381,22 +475,33 @@ public class KeyValueStoreDimension implements Dimension {
         Map<String, String> storeRows = new LinkedHashMap<>(dimensionRows.size());
         Map<String, Pair<DimensionRow, DimensionRow>> indexRows = new LinkedHashMap<>(dimensionRows.size());
 
+        // rowId  - key to associate a dimension row to its id
+        List<Pair<String, DimensionRow>> keyedRows = new ArrayList<>(dimensionRows.size());
         for (DimensionRow dimensionRow : dimensionRows) {
-            try {
-                if (dimensionRow.isEmpty()) {
-                    LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
-                    continue;
-                } else if (dimensionRow.get(getKey()) == null) {
-                    LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
-                    throw new IllegalArgumentException("Cannot add dimension with null key.");
-                }
+            if (dimensionRow.isEmpty()) {
+                LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
+                continue;
+            } else if (dimensionRow.get(getKey()) == null) {
+                LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
+                throw new IllegalArgumentException("Cannot add dimension with null key.");
+            }
+            String rowIdKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey()));
+            keyedRows.add(new Pair<>(rowIdKey, dimensionRow));
+        }
+
+        // fetch the rows that already exist in store in bulk
+        Map<String, String> existingRows = keyValueStore.getAll(
+                keyedRows.stream().map(Pair::getKey).collect(Collectors.toCollection(LinkedHashSet::new))
+        );
 
-                // rowId  - key to associate a dimension row to its id
-                String rowIdKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey()));
+        for (Pair<String, DimensionRow> keyedRow : keyedRows) {
+            try {
+                String rowIdKey = keyedRow.getKey();
+                DimensionRow dimensionRow = keyedRow.getValue();
 
                 // check if the dimension row already exists in store
                 DimensionRow dimensionRowOld = null;
-                String row = keyValueStore.get(rowIdKey);
+                String row = existingRows.get(rowIdKey);
                 if (row != null) {
                     LinkedHashMap<String, String> fieldNameValueMap = objectMapper.readValue(
                             row,
@@ -421,6 +526,12 @@ public class KeyValueStoreDimension implements Dimension {
         }
 
         keyValueStore.putAll(storeRows);
+        if (rowCache != null && !storeRows.isEmpty()) {
+            synchronized (rowCache) {
+                rowCacheGeneration.incrementAndGet();
+                rowCache.invalidateAll(storeRows.keySet());
+            }
+        }
         searchProvider.refreshIndex(indexRows);
     }
 
@@ -443,6 +554,11 @@ public class KeyValueStoreDimension implements Dimension {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the row cache is enabled, callers get a copy of the cached row, which they may modify freely.
+     */
     @Override
     public DimensionRow findDimensionRowByKeyValue(String value) {
         /*
@@ -451,6 +567,47 @@ public class KeyValueStoreDimension implements Dimension {
          * rowKey would be id_12345_row_key
          */
         String rowKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), value);
+        if (rowCache == null) {
+            return readDimensionRow(rowKey);
+        }
+
+        Optional<DimensionRow> cachedRow = rowCache.getIfPresent(rowKey);
+        if (cachedRow != null) {
+            ROW_CACHE_HITS.mark();
+            return cachedRow.map(this::copyDimensionRow).orElse(null);
+        }
+
+        ROW_CACHE_MISSES.mark();
+        long generation = rowCacheGeneration.get();
+        DimensionRow dimensionRow = readDimensionRow(rowKey);
+        // Only cache what was read if the store hasn't been updated in the meantime
+        synchronized (rowCache) {
+            if (generation == rowCacheGeneration.get()) {
+                rowCache.put(rowKey, Optional.ofNullable(dimensionRow).map(this::copyDimensionRow));
+            }
+        }
+        return dimensionRow;
+    }
+
+    /**
+     * Copy a dimension row, so that the rows held by the row cache are never shared with callers.
+     *
+     * @param dimensionRow  The row to copy
+     *
+     * @return a copy of the row
+     */
+    private DimensionRow copyDimensionRow(DimensionRow dimensionRow) {
+        return new DimensionRow(getKey(), dimensionRow);
+    }
+
+    /**
+     * Read and decode a dimension row from the key value store.
+     *
+     * @param rowKey  The key of the row in the key value store
+     *
+     * @return the dimension row, or null if there is no row for the key
+     */
+    private DimensionRow readDimensionRow(String rowKey) {
         DimensionRow drByKey = null;
         try {
             String dimRowJson = keyValueStore.get(rowKey);
@@ -474,31 +631,21 @@ public class KeyValueStoreDimension implements Dimension {
      */
     public void deleteAllDimensionRows() {
         try {
-            String dimRowIndexes = keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey());
-            if (dimRowIndexes == null) {
-                LOG.debug("Null value for dimension {} while deleting: ", apiName);
-                return;
-            }
-
-            String[] keys = objectMapper.readValue(dimRowIndexes, String[].class);
-
-            LinkedHashSet<String> dimRowKeys = new LinkedHashSet<>(Arrays.asList(keys));
+            ChunkedKeyIndex keyIndex = new ChunkedKeyIndex(keyValueStore, objectMapper);
+            List<String> keys = keyIndex.getKeys();
 
-            for (String dimRowKey : dimRowKeys) {
-                keyValueStore.remove(dimRowKey);
+            // putting a null value removes the key, and lets the store remove the rows in bulk
+            Map<String, String> removedRows = new LinkedHashMap<>(keys.size());
+            for (String dimRowKey : keys) {
+                removedRows.put(dimRowKey, null);
             }
-            searchProvider.setKeyValueStore(keyValueStore);
-
-            // Reset cardinality to 0
-            keyValueStore.put(DimensionStoreKeyUtils.getCardinalityKey(), "0");
+            keyValueStore.putAll(removedRows);
 
-            // Reset list to empty
-            String allValuesKey = DimensionStoreKeyUtils.getAllValuesKey();
-            keyValueStore.put(allValuesKey, "[]");
-
-        } catch (IOException e) {
-            LOG.error("Exception while reading dimension rows {}", e);
-            throw new RuntimeException(e);
+            // Reset the index of row keys and the cardinality
+            keyIndex.clear();
+            searchProvider.setKeyValueStore(keyValueStore);
+        } finally {
+            invalidateRowCache();
         }
     }
 
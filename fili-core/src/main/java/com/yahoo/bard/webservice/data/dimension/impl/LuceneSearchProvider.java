@@ -2,6 +2,8 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl;
 
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.application.TaskScheduler;
 import com.yahoo.bard.webservice.config.SystemConfig;
 import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
@@ -21,12 +23,23 @@ import com.yahoo.bard.webservice.web.ApiFilter;
 import com.yahoo.bard.webservice.web.PageNotFoundException;
 import com.yahoo.bard.webservice.web.RowLimitReachedException;
 import com.yahoo.bard.webservice.web.util.PaginationParameters;
+
+import com.codahale.metrics.Timer;
+
+import com.google.common.base.Throwables;
+
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
@@ -34,9 +47,12 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
@@ -46,6 +62,7 @@ import org.apache.lucene.store.MMapDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -54,6 +71,10 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -62,13 +83,37 @@ import java.util.stream.Stream;
 /**
  * LuceneSearchProvider.
  * Search provider which uses lucene
+ * <p>
+ * A single IndexWriter is kept open for the life of the provider, and searches run on near-real-time searchers
+ * obtained from it, so index updates do not block searches. Updates are visible to searches as soon as
+ * {@link #refreshIndex(Map)} returns, but are committed to disk in batches every {@code lucene_commit_interval_ms}.
+ * <p>
+ * Searches are spread over the segments of the index on a pool of {@code lucene_search_threads} threads shared by all
+ * providers. When {@code lucene_ngram_size} is positive, every field is also indexed as n-grams of that size, and
+ * {@code contains} filters at least that long are answered by phrase queries on the n-grams instead of wildcard
+ * queries, which have to scan every term of the field. Dimensions need to be reloaded after turning n-grams on.
  */
-public class LuceneSearchProvider implements SearchProvider {
+public class LuceneSearchProvider implements SearchProvider, Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(LuceneSearchProvider.class);
 
     private static final Analyzer LUCENE_ANALYZER = new StandardAnalyzer();
     private static final double BUFFER_SIZE = 48;
+    private static final String NGRAM_FIELD_SUFFIX = "_ngram";
+    private static final FieldType NGRAM_FIELD_TYPE = new FieldType();
+    static {
+        NGRAM_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        NGRAM_FIELD_TYPE.setTokenized(true);
+        NGRAM_FIELD_TYPE.setOmitNorms(true);
+        NGRAM_FIELD_TYPE.freeze();
+    }
+
+    public static final Timer REFRESH_LATENCY = MetricRegistryFactory.getRegistry()
+            .timer("dimensions.timer.lucene_refresh");
 
+    /**
+     * Guards the lifecycle of the writer and searcher manager. Searches and updates share the read lock; only opening,
+     * clearing and closing the index take the write lock.
+     */
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private final String luceneIndexPath;
 
@@ -77,6 +122,32 @@ public class LuceneSearchProvider implements SearchProvider {
             SYSTEM_CONFIG.getPackageVariableName("lucene_search_timeout_ms"), 600000
     );
 
+    /**
+     * How often uncommitted index changes are committed. If not positive, every update is committed as it is made.
+     */
+    public static final long LUCENE_COMMIT_INTERVAL_MS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("lucene_commit_interval_ms"), 10000L
+    );
+
+    /**
+     * The number of threads shared by all providers to search the segments of an index in parallel. If 1 or less,
+     * searches run on the calling thread.
+     */
+    public static final int LUCENE_SEARCH_THREADS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("lucene_search_threads"), 4
+    );
+
+    /**
+     * The size of the n-grams fields are also indexed as, to speed up contains filters. If not positive, fields are not
+     * indexed as n-grams.
+     */
+    public static final int LUCENE_NGRAM_SIZE = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("lucene_ngram_size"), 0
+    );
+
+    private static TaskScheduler commitScheduler;
+    private static ExecutorService searchExecutor;
+
     /**
      * The maximum number of results per page.
      */
@@ -86,8 +157,12 @@ public class LuceneSearchProvider implements SearchProvider {
     private KeyValueStore keyValueStore;
     private Dimension dimension;
     private boolean luceneIndexIsHealthy;
-    private IndexSearcher luceneIndexSearcher;
+    private volatile IndexWriter luceneIndexWriter;
+    private SearcherManager searcherManager;
+    private ScheduledFuture<?> scheduledCommit;
     private int searchTimeout;
+    private final int ngramSize;
+    private final Analyzer ngramAnalyzer;
 
     /**
      * Constructor.
@@ -95,13 +170,21 @@ public class LuceneSearchProvider implements SearchProvider {
      * @param luceneIndexPath  Path to the lucene index files
      * @param maxResults  Maximum number of allowed results in a page
      * @param searchTimeout  Maximum time in milliseconds that a lucene search can run
+     * @param ngramSize  Size of the n-grams to also index fields as, or 0 to not index n-grams
      */
-    public LuceneSearchProvider(String luceneIndexPath, int maxResults, int searchTimeout) {
+    public LuceneSearchProvider(String luceneIndexPath, int maxResults, int searchTimeout, int ngramSize) {
         this.luceneIndexPath = luceneIndexPath;
         Utils.createParentDirectories(this.luceneIndexPath);
 
         this.maxResults = maxResults;
         this.searchTimeout = searchTimeout;
+        this.ngramSize = ngramSize;
+        this.ngramAnalyzer = ngramSize > 0 ? new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                return new TokenStreamComponents(new NGramTokenizer(ngramSize, ngramSize));
+            }
+        } : null;
 
         try {
             luceneDirectory = new MMapDirectory(Paths.get(this.luceneIndexPath));
@@ -115,7 +198,18 @@ public class LuceneSearchProvider implements SearchProvider {
 
 
     /**
-     * Constructor.  The search timeout is initialized to the default (or configured) value.
+     * Constructor.  The n-gram size is initialized to the default (or configured) value.
+     *
+     * @param luceneIndexPath  Path to the lucene index files
+     * @param maxResults  Maximum number of allowed results in a page
+     * @param searchTimeout  Maximum time in milliseconds that a lucene search can run
+     */
+    public LuceneSearchProvider(String luceneIndexPath, int maxResults, int searchTimeout) {
+        this(luceneIndexPath, maxResults, searchTimeout, LUCENE_NGRAM_SIZE);
+    }
+
+    /**
+     * Constructor.  The search timeout and n-gram size are initialized to the default (or configured) values.
      *
      * @param luceneIndexPath  Path to the lucene index files
      * @param maxResults  Maximum number of allowed results in a page
@@ -125,58 +219,174 @@ public class LuceneSearchProvider implements SearchProvider {
     }
 
     /**
-     * Initializes the `luceneIndexSearcher` if it has not been initialized already.
+     * Opens the index writer and searcher manager if they have not been opened already.
      * <p>
-     * Note that the index searcher cannot be built at construction time, because it needs the dimension and
+     * Note that the index cannot be opened at construction time, because it needs the dimension and
      * associated key-value store. However, because of a circular dependency between the `SearchProvider` and the
      * `Dimension` classes, we cannot provide the dimension and key-value store to the search provider at
      * construction time.
+     * <p>
+     * This method will attempt to acquire and release a write lock if the index is not open.
+     */
+    private void initializeIndex() {
+        if (luceneIndexWriter != null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (luceneIndexWriter != null) {
+                return;
+            }
+            // Only the n-gram fields are tokenized, so the analyzer only applies to them
+            IndexWriterConfig indexWriterConfig = new IndexWriterConfig(
+                    ngramAnalyzer == null ? LUCENE_ANALYZER : ngramAnalyzer
+            )
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                    .setRAMBufferSizeMB(BUFFER_SIZE);
+            IndexWriter writer = new IndexWriter(luceneDirectory, indexWriterConfig);
+            try {
+                // Make sure there is a commit point on disk, so an empty index can be reopened
+                writer.commit();
+                searcherManager = new SearcherManager(writer, true, false, getSearcherFactory());
+            } catch (IOException e) {
+                writer.close();
+                throw e;
+            }
+            if (LUCENE_COMMIT_INTERVAL_MS > 0) {
+                scheduledCommit = getCommitScheduler().scheduleWithFixedDelay(
+                        this::commit,
+                        LUCENE_COMMIT_INTERVAL_MS,
+                        LUCENE_COMMIT_INTERVAL_MS,
+                        TimeUnit.MILLISECONDS
+                );
+            }
+            luceneIndexWriter = writer;
+        } catch (IOException e) {
+            // We can't move past this, so puke
+            luceneIndexIsHealthy = false;
+            String message = String.format("Unable to open index writer for %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Acquire the read lock with the index open, opening the index if needed.
+     */
+    private void lockOpenIndex() {
+        while (true) {
+            initializeIndex();
+            lock.readLock().lock();
+            if (luceneIndexWriter != null) {
+                return;
+            }
+            // The index was closed before the read lock was acquired, so open it again
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a factory for searchers that search the segments of the index on the shared search executor.
+     *
+     * @return the searcher factory, or null for searchers that search on the calling thread
+     */
+    private static synchronized SearcherFactory getSearcherFactory() {
+        if (LUCENE_SEARCH_THREADS <= 1) {
+            return null;
+        }
+        if (searchExecutor == null) {
+            searchExecutor = Executors.newFixedThreadPool(LUCENE_SEARCH_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "lucene-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ExecutorService executor = searchExecutor;
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                return new IndexSearcher(reader, executor);
+            }
+        };
+    }
+
+    /**
+     * Get the scheduler shared by all providers to commit their index changes, creating it on first use.
+     *
+     * @return the commit scheduler
      */
-    private void initializeIndexSearcher() {
-        if (luceneIndexSearcher == null) {
-            reopenIndexSearcher(true);
+    private static synchronized TaskScheduler getCommitScheduler() {
+        if (commitScheduler == null) {
+            commitScheduler = new TaskScheduler(1);
+            commitScheduler.setThreadFactory(runnable -> {
+                Thread thread = new Thread(runnable, "lucene-index-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return commitScheduler;
     }
 
     /**
-     * Re-open the Index Searcher, opening it for the first time if it's never been opened.
+     * Commit any uncommitted changes to the index.
      * <p>
-     * This method will attempt to acquire and release a write lock.
+     * Note that this method acquires and releases a read lock, so it runs alongside searches and updates.
+     */
+    private void commit() {
+        lock.readLock().lock();
+        try {
+            IndexWriter writer = luceneIndexWriter;
+            if (writer != null && writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            luceneIndexIsHealthy = false;
+            LOG.error("Unable to commit index changes to {}", luceneIndexPath, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Make the latest changes to the index visible to searches, timing how long that takes.
      *
-     * @param firstTimeThrough  If true, will write an empty index and will then re-open the searcher
+     * @throws IOException if the searchers cannot be refreshed
+     */
+    private void refreshSearcher() throws IOException {
+        try (Timer.Context ignored = REFRESH_LATENCY.time()) {
+            searcherManager.maybeRefreshBlocking();
+        }
+    }
+
+    /**
+     * Commit all changes and close the index. The index is reopened if the provider is used again.
+     * <p>
+     * Note that this method acquires and releases a write lock.
      */
-    private void reopenIndexSearcher(boolean firstTimeThrough) {
+    @Override
+    public void close() {
         lock.writeLock().lock();
         try {
-            // Close the current reader if open
-            if (luceneIndexSearcher != null) {
-                luceneIndexSearcher.getIndexReader().close();
+            if (luceneIndexWriter == null) {
+                return;
             }
-
-            // Open a new IndexSearcher on a new DirectoryReader
-            luceneIndexSearcher = new IndexSearcher(DirectoryReader.open(luceneDirectory));
-        } catch (IOException reopenException) {
-            // If there is no index file, this is expected. On the 1st time through, write an empty index and try again
-            if (firstTimeThrough) {
-                IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER);
-                try (IndexWriter ignored = new IndexWriter(luceneDirectory, indexWriterConfig)) {
-                    // Closed automatically by the try-resource block
-                } catch (IOException emptyIndexWriteException) {
-                    // We can't move past this, so puke
-                    luceneIndexIsHealthy = false;
-                    String message = String.format("Unable to write empty index to %s:", luceneIndexPath);
-                    LOG.error(message, emptyIndexWriteException);
-                    throw new RuntimeException(emptyIndexWriteException);
-                }
-                reopenIndexSearcher(false);
-            } else {
-                // We've been here before, so puke
-                luceneIndexIsHealthy = false;
-                String message = String.format("Unable to open index searcher for %s:", luceneIndexPath);
-                LOG.error(message, reopenException);
-                throw new RuntimeException(reopenException);
+            if (scheduledCommit != null) {
+                scheduledCommit.cancel(false);
+                scheduledCommit = null;
             }
+            searcherManager.close();
+            // Closing the writer commits its changes
+            luceneIndexWriter.close();
+        } catch (IOException e) {
+            luceneIndexIsHealthy = false;
+            String message = String.format("Unable to close index %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
         } finally {
+            searcherManager = null;
+            luceneIndexWriter = null;
             lock.writeLock().unlock();
         }
     }
@@ -256,32 +466,44 @@ public class LuceneSearchProvider implements SearchProvider {
             doc.add(luceneField);
         }
 
+        // Index each field as n-grams as well, sharing the value of the field
+        Map<DimensionField, Field> dimFieldToNgramField = new HashMap<>();
+        if (ngramSize > 0) {
+            for (DimensionField dimensionField : dimension.getDimensionFields()) {
+                Field ngramField = new Field(getNgramFieldName(dimensionField), "", NGRAM_FIELD_TYPE);
+                dimFieldToNgramField.put(dimensionField, ngramField);
+                doc.add(ngramField);
+            }
+        }
+
         // Write the rows to the document
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
-        lock.writeLock().lock();
+        lockOpenIndex();
         try {
-            try (IndexWriter luceneIndexWriter = new IndexWriter(luceneDirectory, indexWriterConfig)) {
-                // Update the document fields for each row and update the document
-                for (String rowId : changedRows.keySet()) {
-                    // Get the new row from the pair
-                    DimensionRow newDimensionRow = changedRows.get(rowId).getKey();
-
-                    // Update the index
-                    updateDimensionRow(doc, dimFieldToLuceneField, luceneIndexWriter, newDimensionRow);
-                }
-
-            } catch (IOException e) {
-                luceneIndexIsHealthy = false;
-                LOG.error("Failed to refresh index for dimension rows", e);
-                throw new RuntimeException(e);
-                // Commit all the changes to the index (on .close, called by try-resources) and refresh the cardinality
+            // Update the document fields for each row and update the document
+            for (String rowId : changedRows.keySet()) {
+                // Get the new row from the pair
+                DimensionRow newDimensionRow = changedRows.get(rowId).getKey();
+
+                // Update the index
+                updateDimensionRow(
+                        doc,
+                        dimFieldToLuceneField,
+                        dimFieldToNgramField,
+                        luceneIndexWriter,
+                        newDimensionRow
+                );
+            }
+            if (LUCENE_COMMIT_INTERVAL_MS <= 0) {
+                luceneIndexWriter.commit();
             }
-            //This must be outside the try-resources block because it may _also_ need to open an IndexWriter, and
-            //opening an IndexWriter involves taking a write lock on lucene, of which there can only be one at a time.
-            reopenIndexSearcher(true);
+            refreshSearcher();
             refreshCardinality();
+        } catch (IOException e) {
+            luceneIndexIsHealthy = false;
+            LOG.error("Failed to refresh index for dimension rows", e);
+            throw new RuntimeException(e);
         } finally {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
         }
     }
 
@@ -290,6 +512,7 @@ public class LuceneSearchProvider implements SearchProvider {
      *
      * @param luceneDimensionRowDoc  Document to use for doing the update
      * @param fieldMap  Mapping of DimensionFields to the Document's fields
+     * @param ngramFieldMap  Mapping of DimensionFields to the Document's n-gram fields, if any
      * @param writer  Lucene IndexWriter to update the indexes of
      * @param newRow  Row to update
      *
@@ -298,6 +521,7 @@ public class LuceneSearchProvider implements SearchProvider {
     private void updateDimensionRow(
             Document luceneDimensionRowDoc,
             Map<DimensionField, Field> fieldMap,
+            Map<DimensionField, Field> ngramFieldMap,
             IndexWriter writer,
             DimensionRow newRow
     ) throws IOException {
@@ -308,6 +532,11 @@ public class LuceneSearchProvider implements SearchProvider {
 
             // Set field value to updated value
             fieldToUpdate.setStringValue(newRow.get(field));
+
+            Field ngramFieldToUpdate = ngramFieldMap.get(field);
+            if (ngramFieldToUpdate != null) {
+                ngramFieldToUpdate.setStringValue(newRow.get(field));
+            }
         }
 
         // Build the term to delete the old document by the key value (which should be unique)
@@ -325,38 +554,34 @@ public class LuceneSearchProvider implements SearchProvider {
     @Override
     public void clearDimension() {
         Set<DimensionRow> dimensionRows = findAllDimensionRows();
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
         lock.writeLock().lock();
         try {
-            try (IndexWriter writer = new IndexWriter(luceneDirectory, indexWriterConfig)) {
-                //Remove all dimension data from the store.
-                String rowId = dimension.getKey().getName();
-                dimensionRows.stream()
-                        .map(DimensionRow::getRowMap)
-                        .map(map -> map.get(rowId))
-                        .map(id -> DimensionStoreKeyUtils.getRowKey(rowId, id))
-                        .forEach(keyValueStore::remove);
-
-                //Since Lucene's indices are being dropped, the dimension field stored via the columnKey is becoming
-                //stale.
-                keyValueStore.remove(DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName()));
-                //The allValues key mapping needs to reflect the fact that we are dropping all dimension data.
-                keyValueStore.put(DimensionStoreKeyUtils.getAllValuesKey(), "[]");
-                //We're resetting the keyValueStore, so we don't want any stale last updated date floating around.
-                keyValueStore.remove(DimensionStoreKeyUtils.getLastUpdatedKey());
-
-                //In addition to clearing the keyValueStore, we also need to delete all of Lucene's segment files.
-                writer.deleteAll();
-                writer.commit();
-            } catch (IOException e) {
-                LOG.error("Failed to wipe Lucene index at directory: {}", luceneDirectory);
-                throw new RuntimeException(e);
-            }
-
-            //This must be outside the try-resources block because it may _also_ need to open an IndexWriter, and
-            //opening an IndexWriter involves taking a write lock on lucene, of which there can only be one at a time.
-            reopenIndexSearcher(true);
+            initializeIndex();
+
+            //Remove all dimension data from the store.
+            String rowId = dimension.getKey().getName();
+            dimensionRows.stream()
+                    .map(DimensionRow::getRowMap)
+                    .map(map -> map.get(rowId))
+                    .map(id -> DimensionStoreKeyUtils.getRowKey(rowId, id))
+                    .forEach(keyValueStore::remove);
+
+            //Since Lucene's indices are being dropped, the dimension field stored via the columnKey is becoming
+            //stale.
+            keyValueStore.remove(DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName()));
+            //The allValues key mapping needs to reflect the fact that we are dropping all dimension data.
+            keyValueStore.put(DimensionStoreKeyUtils.getAllValuesKey(), "[]");
+            //We're resetting the keyValueStore, so we don't want any stale last updated date floating around.
+            keyValueStore.remove(DimensionStoreKeyUtils.getLastUpdatedKey());
+
+            //In addition to clearing the keyValueStore, we also need to delete all of Lucene's segment files.
+            luceneIndexWriter.deleteAll();
+            luceneIndexWriter.commit();
+            refreshSearcher();
             refreshCardinality();
+        } catch (IOException e) {
+            LOG.error("Failed to wipe Lucene index at directory: {}", luceneDirectory);
+            throw new RuntimeException(e);
         } finally {
             lock.writeLock().unlock();
         }
@@ -365,16 +590,17 @@ public class LuceneSearchProvider implements SearchProvider {
     /**
      * Update the cardinality count.
      * <p>
-     * Note that this method acquires a read lock to query the lucene index for the number of documents.
+     * Note that this method must be called while holding a lock, with the index open.
+     *
+     * @throws IOException if a searcher cannot be acquired
      */
-    private void refreshCardinality() {
+    private void refreshCardinality() throws IOException {
         int numDocs;
-        initializeIndexSearcher();
-        lock.readLock().lock();
+        IndexSearcher searcher = searcherManager.acquire();
         try {
-            numDocs = luceneIndexSearcher.getIndexReader().numDocs();
+            numDocs = searcher.getIndexReader().numDocs();
         } finally {
-            lock.readLock().unlock();
+            searcherManager.release(searcher);
         }
         keyValueStore.put(
                 DimensionStoreKeyUtils.getCardinalityKey(),
@@ -463,12 +689,57 @@ public class LuceneSearchProvider implements SearchProvider {
      */
     private BooleanQuery containsFilterQuery(String luceneFieldName, ApiFilter filter) {
         return filter.getValues().stream()
-                .map(value -> new Term(luceneFieldName, "*" + value + "*"))
-                .map(WildcardQuery::new)
+                .map(value -> containsQuery(luceneFieldName, filter.getDimensionField(), value))
                 .collect(getBooleanQueryCollector(BooleanClause.Occur.SHOULD))
                 .build();
     }
 
+    /**
+     * Build a query for the rows whose field contains a value.
+     * <p>
+     * If fields are indexed as n-grams and the value has at least one n-gram, the query is a phrase of the n-grams of
+     * the value, which matches exactly the fields containing the value. Otherwise it is a wildcard query.
+     *
+     * @param luceneFieldName  Name of the lucene field to filter on
+     * @param dimensionField  The dimension field to filter on
+     * @param value  The value the field should contain
+     *
+     * @return the query
+     */
+    private Query containsQuery(String luceneFieldName, DimensionField dimensionField, String value) {
+        if (ngramSize > 0 && value.codePointCount(0, value.length()) >= ngramSize) {
+            String ngramFieldName = getNgramFieldName(dimensionField);
+            PhraseQuery.Builder phraseQuery = new PhraseQuery.Builder();
+            try (TokenStream tokens = ngramAnalyzer.tokenStream(ngramFieldName, value)) {
+                CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+                PositionIncrementAttribute positionIncrement = tokens.addAttribute(PositionIncrementAttribute.class);
+                tokens.reset();
+                int position = -1;
+                while (tokens.incrementToken()) {
+                    position += positionIncrement.getPositionIncrement();
+                    phraseQuery.add(new Term(ngramFieldName, term.toString()), position);
+                }
+                tokens.end();
+            } catch (IOException e) {
+                // Analyzing a string in memory does not do any I/O
+                throw new IllegalStateException(e);
+            }
+            return phraseQuery.build();
+        }
+        return new WildcardQuery(new Term(luceneFieldName, "*" + value + "*"));
+    }
+
+    /**
+     * Get the name of the lucene field holding the n-grams of a dimension field.
+     *
+     * @param dimensionField  The dimension field
+     *
+     * @return the name of the n-gram field
+     */
+    private static String getNgramFieldName(DimensionField dimensionField) {
+        return DimensionStoreKeyUtils.getColumnKey(dimensionField.getName()) + NGRAM_FIELD_SUFFIX;
+    }
+
     /**
      * Get query with filter parameters.
      *
@@ -552,8 +823,8 @@ public class LuceneSearchProvider implements SearchProvider {
      * @param paginationParameters  The parameters defining the pagination (i.e. the number of rows per page, and the
      * desired page)
      * <p>
-     * Note that this method _may_ need to acquire and release a write lock if the index searcher needs to be
-     * initialized, and it later acquires and released a read lock when querying for dimension data from Lucene.
+     * Note that this method _may_ need to acquire and release a write lock if the index needs to be opened, and it
+     * later acquires and released a read lock when querying for dimension data from Lucene.
      *
      * @return The desired page of dimension rows that satisfy the given query
      *
@@ -567,10 +838,9 @@ public class LuceneSearchProvider implements SearchProvider {
 
         TreeSet<DimensionRow> filteredDimRows;
         int documentCount;
-        initializeIndexSearcher();
         LOG.trace("Lucene Query {}", query);
 
-        lock.readLock().lock();
+        IndexSearcher luceneIndexSearcher = acquireSearcher();
         try {
             ScoreDoc[] hits;
             try (TimedPhase timer = RequestLog.startTiming("QueryingLucene")) {
@@ -618,7 +888,7 @@ public class LuceneSearchProvider implements SearchProvider {
                         .collect(Collectors.toCollection(TreeSet::new));
             }
         } finally {
-            lock.readLock().unlock();
+            releaseSearcher(luceneIndexSearcher);
         }
         return new SinglePagePagination<>(
                 Collections.unmodifiableList(filteredDimRows.stream().collect(Collectors.toList())),
@@ -627,6 +897,40 @@ public class LuceneSearchProvider implements SearchProvider {
         );
     }
 
+    /**
+     * Acquire the current searcher from the searcher manager, opening the index if needed.
+     * <p>
+     * Note that this method acquires a read lock, which is released by {@link #releaseSearcher(IndexSearcher)}.
+     *
+     * @return the current searcher, which must be released when done with
+     */
+    private IndexSearcher acquireSearcher() {
+        lockOpenIndex();
+        try {
+            return searcherManager.acquire();
+        } catch (IOException e) {
+            lock.readLock().unlock();
+            String message = String.format("Unable to acquire index searcher for %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Release a searcher acquired with {@link #acquireSearcher()}, and the read lock taken with it.
+     *
+     * @param searcher  The searcher to release
+     */
+    private void releaseSearcher(IndexSearcher searcher) {
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            LOG.warn("Unable to release index searcher for {}", luceneIndexPath, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * Check if perPage exceeds limit of max number of rows to be returned.
      *
@@ -644,8 +948,6 @@ public class LuceneSearchProvider implements SearchProvider {
 
     /**
      * Returns the requested page of dimension metadata from Lucene.
-     * <p>
-     * Note that this method acquires and releases a read lock when querying Lucene for data.
      *
      * @param indexSearcher  The service to find the desired dimension metadata in the Lucene index
      * @param lastEntry  The last entry from the previous page of dimension metadata, the indexSearcher will begin its
@@ -664,7 +966,6 @@ public class LuceneSearchProvider implements SearchProvider {
             int currentPage
     ) {
         TimeLimitingCollectorManager manager = new TimeLimitingCollectorManager(searchTimeout, lastEntry, perPage);
-        lock.readLock().lock();
         try {
             return indexSearcher.search(query, manager);
         } catch (IOException e) {
@@ -674,8 +975,14 @@ public class LuceneSearchProvider implements SearchProvider {
         } catch (TimeLimitingCollector.TimeExceededException e) {
             LOG.warn("Lucene query timeout: {}. {}", query, e.getMessage());
             throw new TimeoutException(e.getMessage(), e);
-        } finally {
-            lock.readLock().unlock();
+        } catch (RuntimeException e) {
+            // Searches over segments in parallel wrap the timeouts of their slices
+            Throwable rootCause = Throwables.getRootCause(e);
+            if (rootCause instanceof TimeLimitingCollector.TimeExceededException) {
+                LOG.warn("Lucene query timeout: {}. {}", query, rootCause.getMessage());
+                throw new TimeoutException(rootCause.getMessage(), rootCause);
+            }
+            throw e;
         }
     }
 }
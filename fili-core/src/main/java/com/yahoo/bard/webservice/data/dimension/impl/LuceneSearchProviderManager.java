@@ -60,7 +60,11 @@ public class LuceneSearchProviderManager {
      * @param providerName The name of the provider
      */
     public static synchronized void removeInstance(String providerName) {
-        LUCENE_SEARCH_PROVIDERS.remove(providerName);
+        LuceneSearchProvider luceneProvider = LUCENE_SEARCH_PROVIDERS.remove(providerName);
+        if (luceneProvider != null) {
+            // Release the index writer before its files are deleted
+            luceneProvider.close();
+        }
         Utils.deleteFiles(getProviderPath(providerName));
     }
 
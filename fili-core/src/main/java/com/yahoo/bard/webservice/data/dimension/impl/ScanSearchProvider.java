@@ -28,7 +28,6 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -42,6 +41,7 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
     private final ObjectMapper objectMapper;
 
     private KeyValueStore keyValueStore;
+    private ChunkedKeyIndex keyIndex;
     private Dimension dimension;
 
     /**
@@ -60,23 +60,15 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
     @Override
     public void setKeyValueStore(KeyValueStore keyValueStore) {
         this.keyValueStore = keyValueStore;
+        this.keyIndex = new ChunkedKeyIndex(keyValueStore, objectMapper);
 
-        // Check initialization for the cardinality in a keyValueStore
-        if (keyValueStore.get(DimensionStoreKeyUtils.getCardinalityKey()) == null) {
-            keyValueStore.put(DimensionStoreKeyUtils.getCardinalityKey(), "0");
-        }
-
-        //Check Dimension value keys availability
-        String allValuesKey = DimensionStoreKeyUtils.getAllValuesKey();
-        if (keyValueStore.get(allValuesKey) == null) {
-            keyValueStore.put(allValuesKey, "[]");
-        }
-
+        // Create the index of row keys, migrating a single array of row keys into it
+        keyIndex.initialize();
     }
 
     @Override
     public int getDimensionCardinality() {
-        return Integer.parseInt(keyValueStore.get(DimensionStoreKeyUtils.getCardinalityKey()));
+        return keyIndex.size();
     }
 
     /**
@@ -109,61 +101,33 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
                 .forEach(keyValueStore::remove);
         //Since the indices are being dropped, the dimension field stored via the columnKey is becoming stale.
         keyValueStore.remove(DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName()));
-        // The allValues key mapping needs to reflect the fact that we are dropping all dimension data.
-        keyValueStore.put(DimensionStoreKeyUtils.getAllValuesKey(), "[]");
+        // The index of row keys needs to reflect the fact that we are dropping all dimension data.
+        keyIndex.clear();
+        keyIndex.initialize();
         //We're resetting the keyValueStore, so we don't want any stale last updated date floating around.
         keyValueStore.remove(DimensionStoreKeyUtils.getLastUpdatedKey());
-
-        refreshCardinality();
     }
 
     @Override
     public void refreshIndex(String rowId, DimensionRow dimensionRow, DimensionRow dimensionRowOld) {
-        refreshIndexForDimensionKey(rowId);
+        keyIndex.addAll(Collections.singleton(rowId));
         refreshIndexForDimensionFields(rowId, dimensionRow, dimensionRowOld);
-        refreshCardinality();
     }
 
     @Override
     public void refreshIndex(Map<String, Pair<DimensionRow, DimensionRow>> changedRows) {
+        if (changedRows.isEmpty()) {
+            return;
+        }
+        // Add the row keys a chunk at a time, rather than a row at a time
+        keyIndex.addAll(changedRows.keySet());
         for (String rowId : changedRows.keySet()) {
             // Get old and new rows from the pair
             DimensionRow newRow = changedRows.get(rowId).getKey();
             DimensionRow oldRow = changedRows.get(rowId).getValue();
 
             // Refresh index for the row
-            refreshIndex(rowId, newRow, oldRow);
-        }
-    }
-
-    /**
-     * This method updates the set of values corresponding to a dimension.
-     * <p>
-     * Eg: For dimension dim1 there were 3 rows with ID's v1, v2, v3 and DESC's value1, value2, value3 respectively
-     * the keyValueStore would look like
-     * all_values_key -> [id_v1_row_key, id_v2_row_key, id_v3_row_key]
-     * <p>
-     * After this refreshIndexForDimensionKey call, given a new row id: id_v4_row_key, it would look like
-     * all_values_key -> [id_v1_row_key, id_v2_row_key, id_v3_row_key, id_v4_row_key]
-     * <p>
-     * This is useful to list all values for &lt;blah&gt;/dim1/values endpoint
-     *
-     * @param rowId  The row id to be added
-     */
-    private void refreshIndexForDimensionKey(String rowId) {
-        try {
-            String allValuesKey = DimensionStoreKeyUtils.getAllValuesKey();
-            String dimensionRows = keyValueStore.get(allValuesKey);
-            Set<String> dimensionRowsSet = new LinkedHashSet<>();
-            if (dimensionRows != null) {
-                dimensionRowsSet.addAll(Arrays.asList(objectMapper.readValue(dimensionRows, String[].class)));
-            }
-            dimensionRowsSet.add(rowId);
-            String dimRows = objectMapper.writeValueAsString(dimensionRowsSet);
-            keyValueStore.put(allValuesKey, dimRows);
-        } catch (IOException e) {
-            LOG.error("Exception while adding dimension entry in KeyValueStore : {}", e);
-            throw new RuntimeException(e);
+            refreshIndexForDimensionFields(rowId, newRow, oldRow);
         }
     }
 
@@ -239,13 +203,6 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
         }
     }
 
-    /**
-     * Update the cardinality count.
-     */
-    private void refreshCardinality() {
-        keyValueStore.put(DimensionStoreKeyUtils.getCardinalityKey(), Integer.toString(findAllDimensionRows().size()));
-    }
-
     @Override
     public TreeSet<DimensionRow> inFilterOperation(TreeSet<DimensionRow> dimensionRows, ApiFilter filter) {
         return dimensionRows.stream()
@@ -321,7 +278,7 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
                         new ArrayList<>(getAllDimensionRowsPaged(paginationParameters))
                 ),
                 paginationParameters,
-                getDimRowIndexes().size()
+                keyIndex.size()
         );
     }
 
@@ -362,9 +319,7 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
      * @return  All ordered dimension rows that belongs to a requested page
      */
     private TreeSet<DimensionRow> getAllOrderedDimensionRows() {
-        return getDimRowIndexes().stream()
-                .map(keyValueStore::get)
-                .filter(Objects::nonNull)
+        return keyValueStore.getAll(getDimRowIndexes()).values().stream()
                 .map(dimRowJson -> readValue(new TypeReference<Map<String, String>>() { }, dimRowJson))
                 .map(dimension::parseDimensionRow)
                 .collect(Collectors.toCollection(TreeSet::new));
@@ -392,7 +347,7 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
      * @return  The index of rows
      */
     private List<String> getDimRowIndexes() {
-        return readValue(new TypeReference<List>() { }, keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey()));
+        return keyIndex.getKeys();
     }
 
     /**
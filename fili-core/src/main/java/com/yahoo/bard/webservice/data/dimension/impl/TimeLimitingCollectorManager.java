@@ -23,6 +23,7 @@ public class TimeLimitingCollectorManager implements
     final private int searchTimeoutMs;
     final private int perPage;
     final private ScoreDoc lastEntry;
+    final private long baseline;
 
     /**
      * Constructor.
@@ -35,6 +36,7 @@ public class TimeLimitingCollectorManager implements
         this.searchTimeoutMs = searchTimeoutMs;
         this.lastEntry = lastEntry;
         this.perPage = perPage;
+        this.baseline = TimeLimitingCollector.getGlobalCounter().get();
     }
 
     /**
@@ -65,9 +67,15 @@ public class TimeLimitingCollectorManager implements
 
     @Override
     public AccessibleTimeLimitingCollector newCollector() throws IOException {
-        return new AccessibleTimeLimitingCollector(
-                TopScoreDocCollector.create(perPage, lastEntry), Counter.newCounter(false), searchTimeoutMs
+        // The global counter is a clock ticking in milliseconds, shared by the collectors of all the slices of a search
+        AccessibleTimeLimitingCollector collector = new AccessibleTimeLimitingCollector(
+                TopScoreDocCollector.create(perPage, lastEntry),
+                TimeLimitingCollector.getGlobalCounter(),
+                searchTimeoutMs
         );
+        // Start the clock when the search starts, rather than when the collector reaches its first segment
+        collector.setBaseline(baseline);
+        return collector;
     }
 
     @Override
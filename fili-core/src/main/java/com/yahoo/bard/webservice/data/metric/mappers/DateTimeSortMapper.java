@@ -36,6 +36,8 @@ public class DateTimeSortMapper extends ResultSetMapper {
 
     /**
      *  Sorting the resultSet based on dateTime column sort direction.
+     * <p>
+     * The sorted rows are returned as a plain result set, so columnar storage is not kept.
      *
      * @param resultSet  The result set need to be sorted in ascending or descending order
      *
@@ -15,6 +15,11 @@ public class NoOpResultSetMapper extends ResultSetMapper implements ColumnMapper
         return resultSet;
     }
 
+    @Override
+    public boolean mapsRowsIndependently() {
+        return true;
+    }
+
     @Override
     protected Result map(Result result, ResultSetSchema schema) {
         return result;
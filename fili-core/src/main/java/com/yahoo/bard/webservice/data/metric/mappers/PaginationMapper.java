@@ -42,6 +42,8 @@ public class PaginationMapper extends ResultSetMapper {
 
     /**
      *  Cuts the result set down to just the page requested.
+     * <p>
+     * The page is returned as a plain result set, so columnar storage is not kept.
      *
      * @param resultSet  The result set to be cut down.
      *
@@ -71,6 +71,11 @@ public class PartialDataResultSetMapper extends ResultSetMapper {
         return schema;
     }
 
+    @Override
+    public boolean mapsRowsIndependently() {
+        return true;
+    }
+
     /**
      * Return the intervals which are missing but not volatile.
      * These intervals will be pruned from the result set.
@@ -2,9 +2,11 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.metric.mappers;
 
+import com.yahoo.bard.webservice.data.ColumnarResultSet;
 import com.yahoo.bard.webservice.data.ResultSetSchema;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.data.StreamingResultSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,14 +23,58 @@ abstract public class ResultSetMapper {
 
     /**
      * Take a complete result set and replace it with one altered according to the rules of the concrete mapper.
+     * <p>
+     * Columnar result sets are mapped into a new columnar result set, so rows are never all held as objects at once.
+     * Streaming result sets are mapped into a streaming result set mapping each row as it is read.
+     * <p>
+     * Mappers which override this method decide the result set they build. The shipped ones which do so,
+     * {@link TopNResultSetMapper}, {@link PaginationMapper}, {@link DateTimeSortMapper} and {@link RowNumMapper}, build
+     * a plain {@link ResultSet}, so the result sets they map no longer have columnar storage.
      *
      * @param resultSet  The unmapped result set
      *
      * @return The mapped result set
      */
     public ResultSet map(ResultSet resultSet) {
+        ResultSet newResultSet;
+        if (resultSet instanceof StreamingResultSet) {
+            ResultSetSchema schema = resultSet.getSchema();
+            newResultSet = ((StreamingResultSet) resultSet).map(map(schema), result -> map(result, schema));
+        } else if (resultSet instanceof ColumnarResultSet) {
+            newResultSet = new ColumnarResultSet(map(resultSet.getSchema()));
+            mapRows(resultSet, newResultSet);
+        } else {
+            List<Result> newResults = new ArrayList<>();
+            mapRows(resultSet, newResults);
 
-        List<Result> newResults = new ArrayList<>();
+            ResultSetSchema newSchema = map(resultSet.getSchema());
+            newResultSet = new ResultSet(newSchema, newResults);
+        }
+        LOG.trace("Mapped resultSet: {} to new resultSet {}", resultSet, newResultSet);
+
+        return newResultSet;
+    }
+
+    /**
+     * Whether this mapper maps each row on its own, without needing the other rows of the result set.
+     * <p>
+     * Such mappers can map the rows of a result set as they are streamed. Mappers are assumed to need the whole
+     * result set, so mappers which only map rows through {@link #map(Result, ResultSetSchema)} should override this to
+     * return true.
+     *
+     * @return true if the mapper maps each row on its own
+     */
+    public boolean mapsRowsIndependently() {
+        return false;
+    }
+
+    /**
+     * Map each row of a result set, collecting the rows which aren't eliminated.
+     *
+     * @param resultSet  The unmapped result set
+     * @param newResults  The list to add the mapped rows to
+     */
+    private void mapRows(ResultSet resultSet, List<Result> newResults) {
         Result newResult;
 
         for (Result r: resultSet) {
@@ -37,12 +83,6 @@ abstract public class ResultSetMapper {
                 newResults.add(newResult);
             }
         }
-
-        ResultSetSchema newSchema = map(resultSet.getSchema());
-        ResultSet newResultSet = new ResultSet(newSchema, newResults);
-        LOG.trace("Mapped resultSet: {} to new resultSet {}", resultSet, newResultSet);
-
-        return newResultSet;
     }
 
     /**
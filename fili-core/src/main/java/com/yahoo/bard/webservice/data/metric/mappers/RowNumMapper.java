@@ -24,6 +24,15 @@ public class RowNumMapper extends ResultSetMapper {
     private static final String ROW_NUM_COLUMN_NAME = "rowNum";
     private static final Logger LOG = LoggerFactory.getLogger(RowNumMapper.class);
 
+    /**
+     * Add the row number of each row as a metric.
+     * <p>
+     * The numbered rows are returned as a plain result set, so columnar storage is not kept.
+     *
+     * @param resultSet  The result set to number
+     *
+     * @return the result set with row numbers
+     */
     @Override
     public ResultSet map(ResultSet resultSet) {
 
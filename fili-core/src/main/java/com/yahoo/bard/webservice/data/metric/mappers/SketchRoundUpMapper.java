@@ -60,6 +60,11 @@ public class SketchRoundUpMapper extends ResultSetMapper implements ColumnMapper
         return schema;
     }
 
+    @Override
+    public boolean mapsRowsIndependently() {
+        return true;
+    }
+
     @Override
     @Deprecated
     public ResultSetMapper withColumnName(String newColumnName) {
@@ -27,6 +27,15 @@ public class TopNResultSetMapper extends ResultSetMapper {
         this.topN = topN;
     }
 
+    /**
+     * Keep the top N rows of each time bucket.
+     * <p>
+     * The rows kept are collected into a plain result set, so columnar storage is not kept.
+     *
+     * @param resultSet  The result set to prune
+     *
+     * @return the top N rows of each time bucket
+     */
     @Override
     public ResultSet map(ResultSet resultSet) {
         // TODO: Use only native stream operations in RxJava: GroupByTime -> Sort -> Take N -> Concat streams by time
@@ -12,7 +12,7 @@ import org.slf4j.LoggerFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Helper to fetch druid url and timeout settings.
+ * Helper to fetch druid url, timeout and connection pool settings.
  */
 public class DruidClientConfigHelper {
 
@@ -66,6 +66,27 @@ public class DruidClientConfigHelper {
      */
     private static final int DRUID_REQUEST_TIMEOUT_DEFAULT = Math.toIntExact(TimeUnit.MINUTES.toMillis(10));
 
+    /**
+     * The prefix of the connection pool settings for low latency queries.
+     */
+    private static final String UI_DRUID_POOL_PREFIX = "ui_druid";
+
+    /**
+     * The prefix of the connection pool settings for high latency queries.
+     */
+    private static final String NON_UI_DRUID_POOL_PREFIX = "non_ui_druid";
+
+    /**
+     * The prefix of the connection pool settings for metadata requests.
+     */
+    private static final String DRUID_COORD_POOL_PREFIX = "druid_coord";
+
+    /**
+     * The number of IO threads shared by the druid clients, 0 for the Netty default.
+     */
+    private static final String DRUID_CLIENT_IO_THREADS_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("druid_client_io_threads");
+
     /**
      * Fetches the druid UI request Priority.
      *
@@ -137,13 +158,55 @@ public class DruidClientConfigHelper {
         return fetchDruidResponseTimeOut(NON_UI_DRUID_REQUEST_TIMEOUT_KEY);
     }
 
+    /**
+     * Fetches the connection pool settings for the druid UI service.
+     *
+     * @return druid UI connection pool config
+     */
+    public static DruidConnectionPoolConfig getDruidUiConnectionPoolConfig() {
+        return fetchConnectionPoolConfig(UI_DRUID_POOL_PREFIX);
+    }
+
+    /**
+     * Fetches the connection pool settings for the druid non-UI service.
+     *
+     * @return druid non-UI connection pool config
+     */
+    public static DruidConnectionPoolConfig getDruidNonUiConnectionPoolConfig() {
+        return fetchConnectionPoolConfig(NON_UI_DRUID_POOL_PREFIX);
+    }
+
+    /**
+     * Fetches the connection pool settings for the druid metadata service.
+     *
+     * @return druid metadata connection pool config
+     */
+    public static DruidConnectionPoolConfig getDruidCoordConnectionPoolConfig() {
+        return fetchConnectionPoolConfig(DRUID_COORD_POOL_PREFIX);
+    }
+
+    /**
+     * Fetches the number of IO threads shared by the druid clients.
+     *
+     * @return the number of IO threads, 0 for the Netty default
+     */
+    public static int getDruidClientIoThreads() {
+        return SYSTEM_CONFIG.getIntProperty(DRUID_CLIENT_IO_THREADS_KEY, 0);
+    }
+
     /**
      * Create a druid service configuration object for the UI service.
      *
      * @return a druid service configuration object with all configuration parameters set
      */
     public static DruidServiceConfig getUiServiceConfig() {
-        return new DruidServiceConfig("Broker", getDruidUiUrl(), getDruidUiTimeout(), getDruidUiPriority());
+        return new DruidServiceConfig(
+                "Broker",
+                getDruidUiUrl(),
+                getDruidUiTimeout(),
+                getDruidUiPriority(),
+                getDruidUiConnectionPoolConfig()
+        );
     }
 
     /**
@@ -152,7 +215,13 @@ public class DruidClientConfigHelper {
      * @return a druid service configuration object with all configuration parameters set
      */
     public static DruidServiceConfig getNonUiServiceConfig() {
-        return new DruidServiceConfig("Broker", getDruidNonUiUrl(), getDruidNonUiTimeout(), getDruidNonUiPriority());
+        return new DruidServiceConfig(
+                "Broker",
+                getDruidNonUiUrl(),
+                getDruidNonUiTimeout(),
+                getDruidNonUiPriority(),
+                getDruidNonUiConnectionPoolConfig()
+        );
     }
 
     /**
@@ -165,7 +234,41 @@ public class DruidClientConfigHelper {
                 "Coordinator",
                 getDruidCoordUrl(),
                 getDruidNonUiTimeout(),
-                getDruidNonUiPriority()
+                getDruidNonUiPriority(),
+                getDruidCoordConnectionPoolConfig()
+        );
+    }
+
+    /**
+     * Get the connection pool settings with the given prefix.
+     * <p>
+     * The settings are {@code <prefix>_max_connections}, {@code <prefix>_max_connections_per_host},
+     * {@code <prefix>_pooled_connection_idle_timeout} and {@code <prefix>_keep_alive}.
+     *
+     * @param prefix  The prefix of the settings, which also names the pool
+     *
+     * @return the connection pool config
+     */
+    private static DruidConnectionPoolConfig fetchConnectionPoolConfig(String prefix) {
+        String idleTimeout = SYSTEM_CONFIG.getStringProperty(
+                SYSTEM_CONFIG.getPackageVariableName(prefix + "_pooled_connection_idle_timeout"),
+                null
+        );
+        return new DruidConnectionPoolConfig(
+                prefix,
+                SYSTEM_CONFIG.getIntProperty(
+                        SYSTEM_CONFIG.getPackageVariableName(prefix + "_max_connections"),
+                        DruidConnectionPoolConfig.UNLIMITED
+                ),
+                SYSTEM_CONFIG.getIntProperty(
+                        SYSTEM_CONFIG.getPackageVariableName(prefix + "_max_connections_per_host"),
+                        DruidConnectionPoolConfig.UNLIMITED
+                ),
+                idleTimeout == null || "".equals(idleTimeout) ? null : Integer.parseInt(idleTimeout),
+                SYSTEM_CONFIG.getBooleanProperty(
+                        SYSTEM_CONFIG.getPackageVariableName(prefix + "_keep_alive"),
+                        true
+                )
         );
     }
 
@@ -0,0 +1,89 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client;
+
+/**
+ * The configurable sizing of the pool of connections to a particular Druid service endpoint.
+ */
+public class DruidConnectionPoolConfig {
+
+    /**
+     * Value of a connection limit which does not limit connections.
+     */
+    public static final int UNLIMITED = -1;
+
+    private final String name;
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final Integer pooledConnectionIdleTimeout;
+    private final boolean keepAlive;
+
+    /**
+     * Build the connection pool config.
+     *
+     * @param name  The name of the pool, which scopes its metrics
+     * @param maxConnections  The most connections open at a time, or {@link #UNLIMITED}
+     * @param maxConnectionsPerHost  The most connections open to one host at a time, or {@link #UNLIMITED}
+     * @param pooledConnectionIdleTimeout  How long an idle connection stays in the pool in milliseconds, or null to
+     * keep it as long as the request timeout
+     * @param keepAlive  Whether connections are kept open to be reused by later requests
+     */
+    public DruidConnectionPoolConfig(
+            String name,
+            int maxConnections,
+            int maxConnectionsPerHost,
+            Integer pooledConnectionIdleTimeout,
+            boolean keepAlive
+    ) {
+        this.name = name;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.pooledConnectionIdleTimeout = pooledConnectionIdleTimeout;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Build the default connection pool config, with unlimited connections kept alive.
+     *
+     * @param name  The name of the pool, which scopes its metrics
+     *
+     * @return the default connection pool config
+     */
+    public static DruidConnectionPoolConfig unlimited(String name) {
+        return new DruidConnectionPoolConfig(name, UNLIMITED, UNLIMITED, null, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * How long an idle connection stays in the pool.
+     *
+     * @return the idle timeout in milliseconds, or null if it is the request timeout
+     */
+    public Integer getPooledConnectionIdleTimeout() {
+        return pooledConnectionIdleTimeout;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    @Override
+    public String toString() {
+        return "Connection pool " + name +
+                ": max connections: " + maxConnections +
+                ", max connections per host: " + maxConnectionsPerHost +
+                ", idle timeout: " + pooledConnectionIdleTimeout +
+                ", keep alive: " + keepAlive;
+    }
+}
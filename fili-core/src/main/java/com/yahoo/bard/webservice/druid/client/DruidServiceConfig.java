@@ -2,6 +2,11 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.druid.client;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
  * This class represents the configurable parameters for a particular Druid service endpoint.
  */
@@ -9,31 +14,72 @@ public class DruidServiceConfig {
 
     private final String name;
     private final String url;
+    private final List<String> urls;
     private final Integer timeout;
     private final Integer priority;
+    private final DruidConnectionPoolConfig connectionPoolConfig;
 
     /**
-     * Build the Druid Service Config.
+     * Build the Druid Service Config, with an unlimited connection pool.
      *
      * @param name  The name of the webservice
-     * @param url  The URL for the webservice
+     * @param url  The URL for the webservice, or a comma separated list of the URLs of equivalent brokers
      * @param timeout  The timeout in milliseconds
      * @param priority  The priority to be sent to the druid router
      */
     public DruidServiceConfig(String name, String url, Integer timeout, Integer priority) {
+        this(name, url, timeout, priority, DruidConnectionPoolConfig.unlimited(name));
+    }
+
+    /**
+     * Build the Druid Service Config.
+     *
+     * @param name  The name of the webservice
+     * @param url  The URL for the webservice, or a comma separated list of the URLs of equivalent brokers
+     * @param timeout  The timeout in milliseconds
+     * @param priority  The priority to be sent to the druid router
+     * @param connectionPoolConfig  The sizing of the pool of connections to the webservice
+     */
+    public DruidServiceConfig(
+            String name,
+            String url,
+            Integer timeout,
+            Integer priority,
+            DruidConnectionPoolConfig connectionPoolConfig
+    ) {
         this.name = name;
         this.url = url;
+        this.urls = url == null ?
+                Collections.emptyList() :
+                Collections.unmodifiableList(
+                        Arrays.stream(url.split(","))
+                                .map(String::trim)
+                                .filter(brokerUrl -> !brokerUrl.isEmpty())
+                                .collect(Collectors.toList())
+                );
         this.timeout = timeout;
         this.priority = priority;
+        this.connectionPoolConfig = connectionPoolConfig;
     }
 
     /**
      * The URL for the primary servlet of the druid service.
+     * <p>
+     * If several brokers are configured, this is the URL of the first of them.
      *
      * @return an URL as a string
      */
     public String getUrl() {
-        return url;
+        return urls.isEmpty() ? null : urls.get(0);
+    }
+
+    /**
+     * The URLs for the primary servlets of all the equivalent brokers of the druid service.
+     *
+     * @return the URLs as strings, in the order they were configured
+     */
+    public List<String> getUrls() {
+        return urls;
     }
 
     /**
@@ -54,12 +100,22 @@ public class DruidServiceConfig {
         return priority;
     }
 
+    /**
+     * The sizing of the pool of connections to druid.
+     *
+     * @return the connection pool config
+     */
+    public DruidConnectionPoolConfig getConnectionPoolConfig() {
+        return connectionPoolConfig;
+    }
+
     @Override
     public String toString() {
         return "Druid Service config for " + name +
                 ": url: " + url +
                 ", timeout: " + timeout +
-                ", priority: " + priority + ".";
+                ", priority: " + priority +
+                ", " + connectionPoolConfig + ".";
     }
 
     /**
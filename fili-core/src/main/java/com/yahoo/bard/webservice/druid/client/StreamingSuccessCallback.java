@@ -0,0 +1,32 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Callback from the async HTTP client on success which consumes the response as a stream of JSON tokens.
+ * <p>
+ * Web services which support streaming hand the callback a parser over the response body instead of a fully built
+ * JsonNode tree. Web services which don't (or which build a custom JSON document from the response) will call
+ * {@link #invoke(JsonNode)}, which traverses the tree as a token stream.
+ */
+public interface StreamingSuccessCallback extends SuccessCallback {
+
+    /**
+     * Invoke the success callback code.
+     * <p>
+     * The callback owns the parser, and closes it once it has read the response. The response may be read after the
+     * callback returns, for example while it is written out to the client.
+     *
+     * @param parser  Parser positioned before the first token of the response
+     */
+    void invoke(JsonParser parser);
+
+    @Override
+    default void invoke(JsonNode rootNode) {
+        invoke(rootNode.traverse(new ObjectMapper()));
+    }
+}
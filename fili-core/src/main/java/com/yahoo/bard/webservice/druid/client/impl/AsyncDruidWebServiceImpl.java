@@ -7,10 +7,13 @@ import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQU
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.druid.client.DruidClientConfigHelper;
+import com.yahoo.bard.webservice.druid.client.DruidConnectionPoolConfig;
 import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
 import com.yahoo.bard.webservice.druid.client.SuccessCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidQuery;
 import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery;
@@ -21,6 +24,7 @@ import com.yahoo.bard.webservice.web.handlers.RequestContext;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MappingJsonFactory;
@@ -37,6 +41,10 @@ import org.asynchttpclient.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -57,6 +65,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     private final ObjectWriter writer;
     private final Meter httpErrorMeter;
     private final Meter exceptionMeter;
+    private final DruidConnectionPoolMetrics connectionPoolMetrics;
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
 
     public static final String DRUID_TIMER = "DruidProcessing";
@@ -86,6 +95,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     private final DruidServiceConfig serviceConfig;
 
     private final Function<Response, JsonNode> jsonNodeBuilderStrategy;
+    private final MappingJsonFactory jsonFactory = new MappingJsonFactory();
 
     /**
      * Friendly non-DI constructor useful for manual tests.
@@ -102,7 +112,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     ) {
         this(
                 serviceConfig,
-                initializeWebClient(serviceConfig.getTimeout()),
+                initializeWebClient(serviceConfig),
                 mapper,
                 HashMap::new,
                 DEFAULT_JSON_NODE_BUILDER_STRATEGY
@@ -143,7 +153,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     ) {
         this(
                 serviceConfig,
-                initializeWebClient(serviceConfig.getTimeout()),
+                initializeWebClient(serviceConfig),
                 mapper,
                 headersToAppend,
                 DEFAULT_JSON_NODE_BUILDER_STRATEGY
@@ -166,7 +176,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     ) {
         this(
                 serviceConfig,
-                initializeWebClient(serviceConfig.getTimeout()),
+                initializeWebClient(serviceConfig),
                 mapper,
                 headersToAppend,
                 jsonNodeBuilderStrategy
@@ -222,10 +232,58 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         this.writer = mapper.writer();
         this.httpErrorMeter = REGISTRY.meter("druid.errors.http");
         this.exceptionMeter = REGISTRY.meter("druid.errors.exceptions");
+        this.connectionPoolMetrics = DruidConnectionPoolMetrics.forPool(getConnectionPoolConfig(config).getName());
 
         this.jsonNodeBuilderStrategy = jsonNodeBuilderStrategy;
     }
 
+    /**
+     * Initialize the client config, sizing the connection pool as configured for the service.
+     * <p>
+     * The client runs on the IO threads shared by all the druid clients.
+     *
+     * @param serviceConfig  Configuration for the Druid Service
+     *
+     * @return the set up client
+     */
+    protected static AsyncHttpClient initializeWebClient(DruidServiceConfig serviceConfig) {
+        int requestTimeout = serviceConfig.getTimeout();
+        DruidConnectionPoolConfig poolConfig = getConnectionPoolConfig(serviceConfig);
+
+        LOG.debug("Druid request timeout: {}ms, {}", requestTimeout, poolConfig);
+
+        AsyncHttpClientConfig config = new DefaultAsyncHttpClientConfig.Builder()
+                .setReadTimeout(requestTimeout)
+                .setRequestTimeout(requestTimeout)
+                .setConnectTimeout(requestTimeout)
+                .setConnectionTtl(requestTimeout)
+                .setPooledConnectionIdleTimeout(
+                        poolConfig.getPooledConnectionIdleTimeout() == null ?
+                                requestTimeout :
+                                poolConfig.getPooledConnectionIdleTimeout()
+                )
+                .setMaxConnections(poolConfig.getMaxConnections())
+                .setMaxConnectionsPerHost(poolConfig.getMaxConnectionsPerHost())
+                .setKeepAlive(poolConfig.isKeepAlive())
+                .setEventLoopGroup(SharedEventLoopGroup.INSTANCE)
+                .setFollowRedirect(true)
+                .build();
+
+        return new DefaultAsyncHttpClient(config);
+    }
+
+    /**
+     * Get the connection pool config of a service, unlimited if it has none.
+     *
+     * @param serviceConfig  Configuration for the Druid Service
+     *
+     * @return the connection pool config
+     */
+    private static DruidConnectionPoolConfig getConnectionPoolConfig(DruidServiceConfig serviceConfig) {
+        DruidConnectionPoolConfig poolConfig = serviceConfig.getConnectionPoolConfig();
+        return poolConfig == null ? DruidConnectionPoolConfig.unlimited("druid") : poolConfig;
+    }
+
     /**
      * Initialize the client config.
      *
@@ -233,7 +291,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
      *
      * @return the set up client
      */
-    private static AsyncHttpClient initializeWebClient(int requestTimeout) {
+    protected static AsyncHttpClient initializeWebClient(int requestTimeout) {
 
         LOG.debug("Druid request timeout: {}ms", requestTimeout);
 
@@ -274,7 +332,8 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         RequestLog.startTiming(timerName);
         final RequestLog logCtx = RequestLog.dump();
         try {
-            return requestBuilder.execute(
+            return execute(
+                requestBuilder,
                 new AsyncCompletionHandler<Response>() {
                     @Override
                     public Response onCompleted(Response response) {
@@ -286,7 +345,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
                             markError(status, response, druidQueryId, error);
                         } else {
                             try {
-                                success.invoke(jsonNodeBuilderStrategy.apply(response));
+                                invokeSuccess(success, response);
                             } catch (RuntimeException e) {
                                 failure.invoke(e);
                             }
@@ -321,6 +380,56 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         }
     }
 
+    /**
+     * Execute a request, handing its response to a completion handler.
+     * <p>
+     * Provided so subclasses can choose where and how requests are sent.
+     *
+     * @param requestBuilder  The bound request builder for the request to be sent.
+     * @param handler  The handler for the response to the request
+     *
+     * @return a future response for the request being sent
+     */
+    protected Future<Response> execute(BoundRequestBuilder requestBuilder, AsyncCompletionHandler<Response> handler) {
+        return requestBuilder.execute(connectionPoolMetrics.track(handler));
+    }
+
+    /**
+     * Hand a successful response to the success callback.
+     * <p>
+     * Streaming callbacks are given a parser directly over the response body, avoiding building the response into a
+     * JsonNode tree, unless a custom JSON builder strategy has been configured, since that strategy defines the shape
+     * of the JSON the callback sees. The streaming callback takes ownership of the parser, which it closes once it has
+     * read the response, possibly after returning. The parser is only closed here if the callback fails.
+     *
+     * @param success  callback for handling successful requests.
+     * @param response  The successful druid response
+     */
+    protected void invokeSuccess(SuccessCallback success, Response response) {
+        if (!(success instanceof StreamingSuccessCallback)
+                || jsonNodeBuilderStrategy != DEFAULT_JSON_NODE_BUILDER_STRATEGY) {
+            success.invoke(jsonNodeBuilderStrategy.apply(response));
+            return;
+        }
+
+        JsonParser parser;
+        try {
+            parser = jsonFactory.createParser(response.getResponseBodyAsStream());
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+        try {
+            ((StreamingSuccessCallback) success).invoke(parser);
+        } catch (RuntimeException e) {
+            try {
+                parser.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
     @Override
     public Future<Response> getJsonObject(
             SuccessCallback success,
@@ -405,6 +514,14 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         return serviceConfig;
     }
 
+    protected AsyncHttpClient getWebClient() {
+        return webClient;
+    }
+
+    protected DruidConnectionPoolMetrics getConnectionPoolMetrics() {
+        return connectionPoolMetrics;
+    }
+
     protected Meter getHttpErrorMeter() {
         return httpErrorMeter;
     }
@@ -492,4 +609,14 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
                 response.getResponseBody()
         );
     }
+
+    /**
+     * The IO threads shared by all the druid clients, started when the first client is built.
+     */
+    private static final class SharedEventLoopGroup {
+        private static final EventLoopGroup INSTANCE = new NioEventLoopGroup(
+                DruidClientConfigHelper.getDruidClientIoThreads(),
+                new DefaultThreadFactory("druid-client-io", true)
+        );
+    }
 }
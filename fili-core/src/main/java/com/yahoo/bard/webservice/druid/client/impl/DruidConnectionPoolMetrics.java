@@ -0,0 +1,257 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.exception.TooManyConnectionsException;
+import org.asynchttpclient.exception.TooManyConnectionsPerHostException;
+import org.asynchttpclient.handler.AsyncHandlerExtensions;
+import org.asynchttpclient.netty.request.NettyRequest;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of the pool of connections of a druid client, gathered from the connection events of its requests.
+ * <p>
+ * The metrics of the pool named {@code <pool>} are registered as:
+ * <ul>
+ *     <li>{@code druid.pool.<pool>.gauge.active}: connections carrying a request</li>
+ *     <li>{@code druid.pool.<pool>.gauge.idle}: open connections carrying no request</li>
+ *     <li>{@code druid.pool.<pool>.gauge.pending}: requests waiting for a connection</li>
+ *     <li>{@code druid.pool.<pool>.timer.acquire}: time requests wait for a connection</li>
+ *     <li>{@code druid.pool.<pool>.meter.opened}: connections opened</li>
+ *     <li>{@code druid.pool.<pool>.meter.reused}: requests sent on a kept alive connection</li>
+ *     <li>{@code druid.pool.<pool>.meter.rejected}: requests rejected because the pool was full</li>
+ * </ul>
+ * Clients with the same pool name share its metrics.
+ */
+public class DruidConnectionPoolMetrics {
+
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    private static final Map<String, DruidConnectionPoolMetrics> POOLS = new ConcurrentHashMap<>();
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Timer acquire;
+    private final Meter opened;
+    private final Meter reused;
+    private final Meter rejected;
+
+    /**
+     * Constructor, registering the metrics of a pool.
+     *
+     * @param name  The name of the pool
+     */
+    private DruidConnectionPoolMetrics(String name) {
+        String prefix = "druid.pool." + name + ".";
+        REGISTRY.register(prefix + "gauge.active", (Gauge<Integer>) this::getActive);
+        REGISTRY.register(prefix + "gauge.idle", (Gauge<Integer>) this::getIdle);
+        REGISTRY.register(prefix + "gauge.pending", (Gauge<Integer>) this::getPending);
+        this.acquire = REGISTRY.timer(prefix + "timer.acquire");
+        this.opened = REGISTRY.meter(prefix + "meter.opened");
+        this.reused = REGISTRY.meter(prefix + "meter.reused");
+        this.rejected = REGISTRY.meter(prefix + "meter.rejected");
+    }
+
+    /**
+     * Get the metrics of a pool, registering them the first time the pool is asked for.
+     *
+     * @param name  The name of the pool
+     *
+     * @return the metrics of the pool
+     */
+    public static DruidConnectionPoolMetrics forPool(String name) {
+        return POOLS.computeIfAbsent(name, DruidConnectionPoolMetrics::new);
+    }
+
+    /**
+     * Wrap the handler of a request to gather the connection events of the request.
+     *
+     * @param handler  The handler of the request
+     *
+     * @return a handler gathering connection events, and handing the response to the given handler
+     */
+    public AsyncCompletionHandler<Response> track(AsyncCompletionHandler<Response> handler) {
+        return new TrackingHandler(handler);
+    }
+
+    /**
+     * Get the number of connections carrying a request.
+     *
+     * @return the number of active connections
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Get the number of open connections carrying no request.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdle() {
+        return Math.max(open.get() - active.get(), 0);
+    }
+
+    /**
+     * Get the number of requests waiting for a connection.
+     *
+     * @return the number of pending requests
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Handler tracking one request from when it is sent until it is answered.
+     */
+    private final class TrackingHandler extends AsyncCompletionHandler<Response> implements AsyncHandlerExtensions {
+        private final AsyncCompletionHandler<Response> handler;
+        private final long startNanos = System.nanoTime();
+        private boolean acquired;
+        private boolean finished;
+
+        /**
+         * Constructor.
+         *
+         * @param handler  The handler of the request
+         */
+        private TrackingHandler(AsyncCompletionHandler<Response> handler) {
+            this.handler = handler;
+            pending.incrementAndGet();
+        }
+
+        @Override
+        public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+            open.incrementAndGet();
+            opened.mark();
+            connection.closeFuture().addListener((ChannelFutureListener) future -> open.decrementAndGet());
+            acquired();
+        }
+
+        @Override
+        public void onConnectionPooled(Channel connection) {
+            reused.mark();
+            acquired();
+        }
+
+        @Override
+        public void onHostnameResolutionAttempt(String name) {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onHostnameResolutionSuccess(String name, List<InetSocketAddress> addresses) {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onHostnameResolutionFailure(String name, Throwable cause) {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onTcpConnectAttempt(InetSocketAddress remoteAddress) {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onTcpConnectFailure(InetSocketAddress remoteAddress, Throwable cause) {
+            // A failed connection fails the request, which is tracked by onThrowable
+        }
+
+        @Override
+        public void onTlsHandshakeAttempt() {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onTlsHandshakeSuccess() {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onTlsHandshakeFailure(Throwable cause) {
+            // A failed handshake fails the request, which is tracked by onThrowable
+        }
+
+        @Override
+        public void onConnectionPoolAttempt() {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onConnectionOffer(Channel connection) {
+            // The connection stays open, and is counted as idle once the request finishes
+        }
+
+        @Override
+        public void onRequestSend(NettyRequest request) {
+            // Only connections and their reuse are tracked
+        }
+
+        @Override
+        public void onRetry() {
+            // A retried request keeps waiting for, or holding, a connection
+        }
+
+        @Override
+        public Response onCompleted(Response response) throws Exception {
+            finished();
+            return handler.onCompleted(response);
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            if (t instanceof TooManyConnectionsException || t instanceof TooManyConnectionsPerHostException) {
+                rejected.mark();
+            }
+            finished();
+            handler.onThrowable(t);
+        }
+
+        /**
+         * Move the request from waiting for a connection to holding one, the first time it gets one.
+         */
+        private synchronized void acquired() {
+            if (!finished && !acquired) {
+                acquired = true;
+                pending.decrementAndGet();
+                active.incrementAndGet();
+                acquire.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Release the connection of the request, or stop it waiting for one, once.
+         */
+        private synchronized void finished() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (acquired) {
+                active.decrementAndGet();
+            } else {
+                pending.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.BoundRequestBuilder;
+import org.asynchttpclient.Request;
+import org.asynchttpclient.RequestBuilder;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Druid web service which routes each request to the fastest of several equivalent brokers, and hedges slow requests
+ * by sending a duplicate to the next fastest broker.
+ * <p>
+ * The brokers are the comma separated URLs of the service config (see {@link DruidServiceConfig#getUrls}). The
+ * latency of each broker is kept in the {@code druid.broker.timer.latency.<url>} timer, which favors recent requests.
+ * Each request goes to the broker with the lowest median latency. Once that broker has answered at least
+ * {@code druid_hedge_min_samples} requests, a request it has not answered by its 95th percentile latency (but no
+ * sooner than {@code druid_hedge_min_delay} milliseconds) is sent again to the next broker. The first answer wins,
+ * and the other request is cancelled. The requests Fili sends to druid only read data, so sending one twice is
+ * safe.
+ * <p>
+ * Only successful answers count as latencies. A request which fails to reach its broker, or is answered with a server
+ * error, counts as a request taking the whole request timeout, so a broker which fails fast is not ranked first. A
+ * request which fails while no other request is in flight is sent right away to the next broker not yet tried.
+ * <p>
+ * A cancelled request only shows that its broker takes at least as long as it waited, so its wait is kept apart in
+ * the {@code druid.broker.timer.censored.<url>} timer. Once a broker has as many such waits as it needs latencies, it
+ * is ranked by the larger of its median latency and its median censored wait, so a broker which stopped answering and
+ * keeps losing to its hedges is ranked down.
+ * <p>
+ * The requests sent, hedges sent, hedges which won and failovers are kept in the
+ * {@code druid.hedging.meter.requests}, {@code druid.hedging.meter.hedged}, {@code druid.hedging.meter.hedge_wins}
+ * and {@code druid.hedging.meter.failovers} meters, and the share of requests hedged and of hedges which won over the
+ * last minute in the {@code druid.hedging.gauge.hedge_rate} and {@code druid.hedging.gauge.win_rate} gauges.
+ */
+public class HedgingDruidWebServiceImpl extends AsyncDruidWebServiceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingDruidWebServiceImpl.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    public static final int MIN_SAMPLES = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_hedge_min_samples"),
+            20
+    );
+    public static final long MIN_HEDGE_DELAY_MILLIS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_hedge_min_delay"),
+            50
+    );
+
+    public static final String LATENCY_TIMER_PREFIX = "druid.broker.timer.latency.";
+    public static final String CENSORED_TIMER_PREFIX = "druid.broker.timer.censored.";
+
+    public static final Meter REQUESTS = REGISTRY.meter("druid.hedging.meter.requests");
+    public static final Meter HEDGED = REGISTRY.meter("druid.hedging.meter.hedged");
+    public static final Meter HEDGE_WINS = REGISTRY.meter("druid.hedging.meter.hedge_wins");
+    public static final Meter FAILOVERS = REGISTRY.meter("druid.hedging.meter.failovers");
+
+    static {
+        REGISTRY.register("druid.hedging.gauge.hedge_rate", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(HEDGED.getOneMinuteRate(), REQUESTS.getOneMinuteRate());
+            }
+        });
+        REGISTRY.register("druid.hedging.gauge.win_rate", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(HEDGE_WINS.getOneMinuteRate(), HEDGED.getOneMinuteRate());
+            }
+        });
+    }
+
+    private static final ScheduledExecutorService HEDGE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "druid-hedge");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final List<String> brokers;
+    private final Map<String, Timer> latencies;
+    private final Map<String, Timer> censoredLatencies;
+    private final long failurePenaltyNanos;
+    private final int minSamples;
+    private final long minHedgeDelayNanos;
+    private final ScheduledExecutorService hedgeScheduler;
+
+    /**
+     * Friendly non-DI constructor, with the configured hedging settings.
+     *
+     * @param serviceConfig  Configuration for the Druid Service
+     * @param mapper  A shared jackson object mapper resource
+     * @param headersToAppend Supplier for map of headers for Druid requests
+     * @param jsonNodeBuilderStrategy A function to build JSON nodes from the response
+     */
+    public HedgingDruidWebServiceImpl(
+            DruidServiceConfig serviceConfig,
+            ObjectMapper mapper,
+            Supplier<Map<String, String>> headersToAppend,
+            Function<Response, JsonNode> jsonNodeBuilderStrategy
+    ) {
+        this(
+                serviceConfig,
+                initializeWebClient(serviceConfig),
+                mapper,
+                headersToAppend,
+                jsonNodeBuilderStrategy,
+                MIN_SAMPLES,
+                MIN_HEDGE_DELAY_MILLIS,
+                HEDGE_SCHEDULER
+        );
+    }
+
+    /**
+     * IOC constructor.
+     *
+     * @param config  the configuration for this druid service
+     * @param asyncHttpClient  the HTTP client
+     * @param mapper  A shared jackson object mapper resource
+     * @param headersToAppend Supplier for map of headers for Druid requests
+     * @param jsonNodeBuilderStrategy A function to build JSON nodes from the response
+     * @param minSamples  Fewest requests a broker must have answered before its requests are hedged
+     * @param minHedgeDelayMillis  Shortest time to wait for an answer before hedging a request
+     * @param hedgeScheduler  The scheduler sending hedged requests
+     */
+    public HedgingDruidWebServiceImpl(
+            DruidServiceConfig config,
+            AsyncHttpClient asyncHttpClient,
+            ObjectMapper mapper,
+            Supplier<Map<String, String>> headersToAppend,
+            Function<Response, JsonNode> jsonNodeBuilderStrategy,
+            int minSamples,
+            long minHedgeDelayMillis,
+            ScheduledExecutorService hedgeScheduler
+    ) {
+        super(config, asyncHttpClient, mapper, headersToAppend, jsonNodeBuilderStrategy);
+        this.brokers = config.getUrls();
+        this.latencies = brokers.stream()
+                .distinct()
+                .collect(Collectors.toMap(Function.identity(), HedgingDruidWebServiceImpl::getLatencyTimer));
+        this.censoredLatencies = brokers.stream()
+                .distinct()
+                .collect(Collectors.toMap(Function.identity(), HedgingDruidWebServiceImpl::getCensoredLatencyTimer));
+        this.failurePenaltyNanos = TimeUnit.MILLISECONDS.toNanos(config.getTimeout());
+        this.minSamples = Math.max(minSamples, 1);
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+        this.hedgeScheduler = hedgeScheduler;
+    }
+
+    /**
+     * Get the timer keeping the latency of a broker.
+     *
+     * @param brokerUrl  The URL of the broker
+     *
+     * @return the latency timer of the broker
+     */
+    public static Timer getLatencyTimer(String brokerUrl) {
+        return REGISTRY.timer(LATENCY_TIMER_PREFIX + brokerUrl);
+    }
+
+    /**
+     * Get the timer keeping how long the cancelled requests to a broker had waited.
+     *
+     * @param brokerUrl  The URL of the broker
+     *
+     * @return the censored latency timer of the broker
+     */
+    public static Timer getCensoredLatencyTimer(String brokerUrl) {
+        return REGISTRY.timer(CENSORED_TIMER_PREFIX + brokerUrl);
+    }
+
+    @Override
+    protected Future<Response> execute(BoundRequestBuilder requestBuilder, AsyncCompletionHandler<Response> handler) {
+        REQUESTS.mark();
+        Request request = requestBuilder.build();
+        List<String> ranked = rankBrokers();
+
+        HedgedRequest hedgedRequest = new HedgedRequest(request, handler, ranked);
+        hedgedRequest.sendNext(false);
+
+        Timer primaryLatency = latencies.get(ranked.get(0));
+        if (ranked.size() > 1 && primaryLatency.getCount() >= minSamples) {
+            long delayNanos = Math.max((long) primaryLatency.getSnapshot().get95thPercentile(), minHedgeDelayNanos);
+            hedgedRequest.hedge = hedgeScheduler.schedule(
+                    hedgedRequest::sendHedge,
+                    delayNanos,
+                    TimeUnit.NANOSECONDS
+            );
+        }
+        return hedgedRequest.result;
+    }
+
+    /**
+     * Order the brokers by their median latency, brokers yet to answer enough requests first.
+     *
+     * @return the URLs of the brokers, fastest first
+     */
+    private List<String> rankBrokers() {
+        return brokers.stream()
+                .sorted(Comparator.comparingDouble(this::getMedianLatency))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the median latency of a broker, raised to the median wait of its cancelled requests once there are enough
+     * of them.
+     *
+     * @param brokerUrl  The URL of the broker
+     *
+     * @return the median latency in nanoseconds, or 0 if the broker has not answered enough requests
+     */
+    private double getMedianLatency(String brokerUrl) {
+        Timer latency = latencies.get(brokerUrl);
+        if (latency.getCount() < minSamples) {
+            return 0;
+        }
+        Timer censored = censoredLatencies.get(brokerUrl);
+        double median = latency.getSnapshot().getMedian();
+        return censored.getCount() < minSamples ? median : Math.max(median, censored.getSnapshot().getMedian());
+    }
+
+    /**
+     * Get the URL of a request sent to another broker.
+     *
+     * @param url  The URL of the request as built, to the first broker
+     * @param brokerUrl  The URL of the broker to send the request to
+     *
+     * @return the URL of the request to the broker
+     */
+    private String toBroker(String url, String brokerUrl) {
+        String firstBrokerUrl = brokers.get(0);
+        return url.startsWith(firstBrokerUrl) ? brokerUrl + url.substring(firstBrokerUrl.length()) : url;
+    }
+
+    /**
+     * A request which may be sent to several brokers, only the first answer of which is handled.
+     */
+    private final class HedgedRequest {
+        private final Request request;
+        private final AsyncCompletionHandler<Response> handler;
+        private final List<String> ranked;
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private final List<Attempt> attempts = new CopyOnWriteArrayList<>();
+        private int nextBroker;
+        private int inFlight;
+        private volatile ScheduledFuture<?> hedge;
+
+        /**
+         * Constructor.
+         *
+         * @param request  The request, built for the first broker
+         * @param handler  The handler for the first answer to the request
+         * @param ranked  The brokers to send the request to, in the order to try them
+         */
+        private HedgedRequest(Request request, AsyncCompletionHandler<Response> handler, List<String> ranked) {
+            this.request = request;
+            this.handler = handler;
+            this.ranked = ranked;
+            result.whenComplete((response, throwable) -> {
+                if (result.isCancelled()) {
+                    cancelAll(null);
+                }
+            });
+        }
+
+        /**
+         * Send the request to the next broker not yet tried, if there is one.
+         *
+         * @param isHedge  Whether this is the duplicate of a request already sent
+         *
+         * @return true if the request was sent, false if every broker has been tried
+         */
+        private synchronized boolean sendNext(boolean isHedge) {
+            if (nextBroker >= ranked.size()) {
+                return false;
+            }
+            String brokerUrl = ranked.get(nextBroker++);
+            Attempt attempt = new Attempt(this, brokerUrl, isHedge);
+            attempts.add(attempt);
+            inFlight++;
+            Request brokerRequest = new RequestBuilder(request).setUrl(toBroker(request.getUrl(), brokerUrl)).build();
+            attempt.future = getWebClient().executeRequest(brokerRequest, getConnectionPoolMetrics().track(attempt));
+            if (settled.get() && attempt.future != null) {
+                // The other request was answered while this one was being sent
+                attempt.future.cancel(true);
+            }
+            return true;
+        }
+
+        /**
+         * Send the duplicate of the request to the next broker, unless it has been answered.
+         */
+        private void sendHedge() {
+            if (settled.get()) {
+                return;
+            }
+            HEDGED.mark();
+            try {
+                sendNext(true);
+            } catch (RuntimeException e) {
+                LOG.warn("Hedged druid request failed to send", e);
+                fail(e);
+            }
+        }
+
+        /**
+         * Handle the first answer to the request, and cancel the other requests.
+         *
+         * @param attempt  The request which was answered
+         * @param response  The answer
+         *
+         * @return null, since the response has been consumed
+         */
+        private Response complete(Attempt attempt, Response response) {
+            if (!settled.compareAndSet(false, true)) {
+                return null;
+            }
+            if (attempt.isHedge) {
+                HEDGE_WINS.mark();
+            }
+            cancelAll(attempt);
+            try {
+                result.complete(handler.onCompleted(response));
+            } catch (Exception e) {
+                LOG.error("druid response handling failed:", e);
+                result.completeExceptionally(e);
+            }
+            return null;
+        }
+
+        /**
+         * Handle a request which failed: wait for the other request if one is in flight, otherwise send the request to
+         * the next broker not yet tried, and fail once every broker has been tried.
+         *
+         * @param throwable  The cause of the failure
+         */
+        private void fail(Throwable throwable) {
+            synchronized (this) {
+                if (--inFlight > 0 || settled.get()) {
+                    return;
+                }
+                ScheduledFuture<?> pendingHedge = hedge;
+                if (pendingHedge != null) {
+                    pendingHedge.cancel(false);
+                }
+                try {
+                    if (sendNext(false)) {
+                        FAILOVERS.mark();
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Druid request failed to send to the next broker", e);
+                    throwable = e;
+                }
+                if (!settled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+            cancelAll(null);
+            handler.onThrowable(throwable);
+            result.completeExceptionally(throwable);
+        }
+
+        /**
+         * Cancel the pending hedge and the requests in flight, but one.
+         * <p>
+         * The time a cancelled request waited is kept as a censored latency of its broker.
+         *
+         * @param winner  The request to leave alone, or null to cancel all of them
+         */
+        private void cancelAll(Attempt winner) {
+            ScheduledFuture<?> pendingHedge = hedge;
+            if (pendingHedge != null) {
+                pendingHedge.cancel(false);
+            }
+            attempts.stream()
+                    .filter(attempt -> attempt != winner && attempt.future != null)
+                    .forEach(attempt -> {
+                        attempt.recordCensored();
+                        attempt.future.cancel(true);
+                    });
+        }
+    }
+
+    /**
+     * The request sent to one broker.
+     */
+    private final class Attempt extends AsyncCompletionHandler<Response> {
+        private final HedgedRequest hedgedRequest;
+        private final String brokerUrl;
+        private final boolean isHedge;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile Future<Response> future;
+
+        /**
+         * Constructor.
+         *
+         * @param hedgedRequest  The request this was sent for
+         * @param brokerUrl  The URL of the broker the request was sent to
+         * @param isHedge  Whether this is the duplicate of a request already sent
+         */
+        private Attempt(HedgedRequest hedgedRequest, String brokerUrl, boolean isHedge) {
+            this.hedgedRequest = hedgedRequest;
+            this.brokerUrl = brokerUrl;
+            this.isHedge = isHedge;
+        }
+
+        /**
+         * Keep a latency of the broker of this request, once per request.
+         *
+         * @param timer  The timer to keep the latency in
+         * @param nanos  The latency in nanoseconds
+         */
+        private void record(Timer timer, long nanos) {
+            if (recorded.compareAndSet(false, true)) {
+                timer.update(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Keep the time this request waited before being cancelled as a censored latency of its broker.
+         */
+        private void recordCensored() {
+            record(censoredLatencies.get(brokerUrl), System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Keep a failure of this request as a latency of the whole request timeout.
+         */
+        private void recordFailure() {
+            record(latencies.get(brokerUrl), failurePenaltyNanos);
+        }
+
+        @Override
+        public Response onCompleted(Response response) {
+            int statusCode = response.getStatusCode();
+            if (statusCode >= 200 && statusCode < 300) {
+                record(latencies.get(brokerUrl), System.nanoTime() - startNanos);
+            } else if (statusCode >= 500) {
+                recordFailure();
+            }
+            return hedgedRequest.complete(this, response);
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            if (hedgedRequest.settled.get()) {
+                // The loser being cancelled
+                return;
+            }
+            LOG.debug("druid request to {} failed", brokerUrl, t);
+            recordFailure();
+            hedgedRequest.fail(t);
+        }
+    }
+}
@@ -0,0 +1,628 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
+import com.yahoo.bard.webservice.druid.client.DruidWebService;
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
+import com.yahoo.bard.webservice.druid.client.SuccessCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidQuery;
+import com.yahoo.bard.webservice.druid.model.query.QueryContext;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.DataApiRequestTypeIdentifier;
+import com.yahoo.bard.webservice.web.handlers.RequestContext;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Druid web service which schedules the queries sent through another druid web service, so that batch queries do not
+ * crowd out interactive ones.
+ * <p>
+ * Each query is sent in a {@link Lane}, picked from the kind of request it answers. At most
+ * {@code druid_dispatch_max_in_flight} queries are in flight at a time, and at most
+ * {@code druid_dispatch_max_in_flight_<lane>} of them in each lane. A query which cannot be sent right away waits,
+ * and when a query completes the next waiting query is sent from the first lane, in lane order, which has room for
+ * it. Within a lane, queries with a higher druid {@link QueryContext#getPriority priority} are sent first, and then
+ * queries with the earliest deadline, which is when the query was posted plus its context timeout (or the timeout of
+ * the web service). A query still waiting when its deadline passes fails with a {@link TimeoutException} instead of
+ * being sent.
+ * <p>
+ * Only {@link #postDruidQuery} is scheduled; requests for metadata go straight through.
+ * <p>
+ * The number of waiting queries is kept in the {@code druid.dispatch.counter.queue_depth} counter, the time they wait
+ * in the {@code druid.dispatch.timer.queue_wait} timer and the queries failed at their deadline in the
+ * {@code druid.dispatch.meter.expired} meter.
+ */
+public class PriorityDispatchDruidWebService implements DruidWebService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriorityDispatchDruidWebService.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    public static final int MAX_IN_FLIGHT = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_dispatch_max_in_flight"),
+            64
+    );
+
+    public static final Counter QUEUE_DEPTH = REGISTRY.counter("druid.dispatch.counter.queue_depth");
+    public static final Timer QUEUE_WAIT = REGISTRY.timer("druid.dispatch.timer.queue_wait");
+    public static final Meter EXPIRED = REGISTRY.meter("druid.dispatch.meter.expired");
+
+    private static final Executor DISPATCHER = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "druid-dispatch");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private static final Comparator<Pending> DISPATCH_ORDER = ((Comparator<Pending>) (first, second) ->
+            Integer.compare(second.priority, first.priority))
+            .thenComparingLong(pending -> pending.deadlineMillis)
+            .thenComparingLong(pending -> pending.sequence);
+
+    /**
+     * The lanes queries are sent in, in the order waiting queries are sent.
+     */
+    public enum Lane {
+        /**
+         * Synchronous UI and bypass requests.
+         */
+        INTERACTIVE("druid_dispatch_max_in_flight_interactive", 64),
+        /**
+         * Other synchronous requests.
+         */
+        STANDARD("druid_dispatch_max_in_flight_standard", 48),
+        /**
+         * Requests which may be answered asynchronously, such as exports.
+         */
+        BATCH("druid_dispatch_max_in_flight_batch", 16);
+
+        private final int maxInFlight;
+
+        /**
+         * Constructor.
+         *
+         * @param propertyName  Name of the setting holding the most queries in flight in the lane
+         * @param defaultMaxInFlight  Most queries in flight in the lane if the setting is missing
+         */
+        Lane(String propertyName, int defaultMaxInFlight) {
+            this.maxInFlight = SYSTEM_CONFIG.getIntProperty(
+                    SYSTEM_CONFIG.getPackageVariableName(propertyName),
+                    defaultMaxInFlight
+            );
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * Pick the lane for the queries of a request.
+         *
+         * @param context  The context of the request
+         *
+         * @return the lane for the queries of the request
+         */
+        public static Lane of(RequestContext context) {
+            if (context.isAsynchronous()) {
+                return BATCH;
+            }
+            MultivaluedMap<String, String> headers = context.getHeadersLowerCase();
+            return DataApiRequestTypeIdentifier.isUi(headers) || DataApiRequestTypeIdentifier.isBypass(headers)
+                    ? INTERACTIVE
+                    : STANDARD;
+        }
+    }
+
+    private final DruidWebService delegate;
+    private final int maxInFlight;
+    private final Map<Lane, Integer> laneMaxInFlight;
+    private final Executor dispatcher;
+    private final LongSupplier clock;
+
+    private final Object lock = new Object();
+    private final Map<Lane, PriorityQueue<Pending>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> laneInFlight = new EnumMap<>(Lane.class);
+    private int inFlight;
+    private long sequence;
+
+    /**
+     * Constructor, with the configured limits.
+     *
+     * @param delegate  The web service sending the queries
+     */
+    public PriorityDispatchDruidWebService(DruidWebService delegate) {
+        this(delegate, MAX_IN_FLIGHT, Collections.emptyMap(), DISPATCHER, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate  The web service sending the queries
+     * @param maxInFlight  Most queries in flight at a time
+     * @param laneMaxInFlight  Most queries in flight at a time in each lane, the configured limit for lanes left out
+     * @param dispatcher  The executor sending waiting queries
+     * @param clock  The clock deadlines are measured by, in milliseconds
+     */
+    public PriorityDispatchDruidWebService(
+            DruidWebService delegate,
+            int maxInFlight,
+            Map<Lane, Integer> laneMaxInFlight,
+            Executor dispatcher,
+            LongSupplier clock
+    ) {
+        this.delegate = delegate;
+        this.maxInFlight = maxInFlight;
+        this.laneMaxInFlight = new EnumMap<>(Lane.class);
+        this.laneMaxInFlight.putAll(laneMaxInFlight);
+        this.dispatcher = dispatcher;
+        this.clock = clock;
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new PriorityQueue<>(DISPATCH_ORDER));
+            laneInFlight.put(lane, 0);
+            this.laneMaxInFlight.putIfAbsent(lane, lane.getMaxInFlight());
+        }
+    }
+
+    @Override
+    public Future<Response> postDruidQuery(
+            RequestContext context,
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure,
+            DruidQuery<?> druidQuery
+    ) {
+        Lane lane = Lane.of(context);
+        boolean sendNow;
+        synchronized (lock) {
+            sendNow = hasRoom(lane) && !isAnyWaiting(lane);
+            if (sendNow) {
+                take(lane);
+            }
+        }
+        if (sendNow) {
+            return send(lane, context, success, error, failure, druidQuery);
+        }
+
+        // Take the request log off this thread, to send the query from the thread of the dispatcher
+        long now = clock.getAsLong();
+        Pending pending = new Pending(
+                lane,
+                getPriority(druidQuery),
+                getDeadline(druidQuery, now),
+                now,
+                context,
+                success,
+                error,
+                failure,
+                druidQuery,
+                RequestLog.dump()
+        );
+        synchronized (lock) {
+            pending.sequence = sequence++;
+            queues.get(lane).add(pending);
+            QUEUE_DEPTH.inc();
+        }
+        dispatcher.execute(this::drain);
+        return pending.future;
+    }
+
+    @Override
+    public Future<Response> getJsonObject(
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure,
+            String resourcePath
+    ) {
+        return delegate.getJsonObject(success, error, failure, resourcePath);
+    }
+
+    @Override
+    public DruidServiceConfig getServiceConfig() {
+        return delegate.getServiceConfig();
+    }
+
+    @Override
+    public Integer getTimeout() {
+        return delegate.getTimeout();
+    }
+
+    /**
+     * Get the number of queries waiting to be sent.
+     *
+     * @return the number of waiting queries
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queues.values().stream().mapToInt(PriorityQueue::size).sum();
+        }
+    }
+
+    /**
+     * Send waiting queries while there is room for them.
+     */
+    private void drain() {
+        Pending pending;
+        while ((pending = next()) != null) {
+            dispatch(pending);
+        }
+    }
+
+    /**
+     * Take the next waiting query off its queue, holding a place in flight for it unless it is cancelled or past its
+     * deadline.
+     *
+     * @return the next query to dispatch, or null if no waiting query has room to be sent
+     */
+    private Pending next() {
+        long now = clock.getAsLong();
+        synchronized (lock) {
+            if (inFlight >= maxInFlight) {
+                return null;
+            }
+            for (Lane lane : Lane.values()) {
+                Pending pending = laneInFlight.get(lane) < laneMaxInFlight.get(lane) ? queues.get(lane).poll() : null;
+                if (pending == null) {
+                    continue;
+                }
+                QUEUE_DEPTH.dec();
+                if (pending.future.isCancelled()) {
+                    return pending;
+                }
+                pending.expired = pending.deadlineMillis <= now;
+                if (!pending.expired) {
+                    take(lane);
+                    pending.taken = true;
+                }
+                return pending;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Send a query taken off its queue, or fail it if it is past its deadline, with its request log on the thread.
+     *
+     * @param pending  The query taken off its queue
+     */
+    private void dispatch(Pending pending) {
+        if (!pending.taken && !pending.expired) {
+            // Cancelled while it waited
+            return;
+        }
+        RequestLog.restore(pending.logCtx);
+        try {
+            long waited = clock.getAsLong() - pending.queuedMillis;
+            QUEUE_WAIT.update(waited, TimeUnit.MILLISECONDS);
+            if (!pending.taken) {
+                EXPIRED.mark();
+                TimeoutException timeout = new TimeoutException(
+                        String.format("Druid query waited %d ms to be sent and passed its deadline", waited)
+                );
+                LOG.debug(timeout.getMessage());
+                pending.future.sent.completeExceptionally(timeout);
+                pending.failure.dispatch(timeout);
+                return;
+            }
+            pending.future.sent.complete(send(
+                    pending.lane,
+                    pending.context,
+                    pending.success,
+                    pending.error,
+                    pending.failure,
+                    pending.druidQuery
+            ));
+        } catch (RuntimeException e) {
+            LOG.info("Exception sending waiting druid query", e);
+            pending.future.sent.completeExceptionally(e);
+            pending.failure.dispatch(e);
+        } finally {
+            RequestLog.dump();
+        }
+    }
+
+    /**
+     * Send a query which holds a place in flight, giving back the place when the query completes.
+     *
+     * @param lane  The lane of the query
+     * @param context  The context of the request
+     * @param success  callback for handling successful requests.
+     * @param error  callback for handling http errors.
+     * @param failure  callback for handling exception failures.
+     * @param druidQuery  The query
+     *
+     * @return a future response to the query
+     */
+    private Future<Response> send(
+            Lane lane,
+            RequestContext context,
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure,
+            DruidQuery<?> druidQuery
+    ) {
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                release(lane);
+            }
+        };
+        try {
+            return delegate.postDruidQuery(
+                    context,
+                    releasing(success, release),
+                    (statusCode, reasonPhrase, responseBody) -> {
+                        release.run();
+                        error.invoke(statusCode, reasonPhrase, responseBody);
+                    },
+                    throwable -> {
+                        release.run();
+                        failure.invoke(throwable);
+                    },
+                    druidQuery
+            );
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Wrap a success callback to give back a place in flight before it is invoked, keeping it streaming if it was.
+     *
+     * @param success  The success callback
+     * @param release  Gives back the place in flight
+     *
+     * @return the wrapped success callback
+     */
+    private static SuccessCallback releasing(SuccessCallback success, Runnable release) {
+        if (!(success instanceof StreamingSuccessCallback)) {
+            return rootNode -> {
+                release.run();
+                success.invoke(rootNode);
+            };
+        }
+        StreamingSuccessCallback streaming = (StreamingSuccessCallback) success;
+        return new StreamingSuccessCallback() {
+            @Override
+            public void invoke(JsonParser parser) {
+                release.run();
+                streaming.invoke(parser);
+            }
+
+            @Override
+            public void invoke(JsonNode rootNode) {
+                release.run();
+                streaming.invoke(rootNode);
+            }
+        };
+    }
+
+    /**
+     * Whether a query in a lane may be sent now.
+     *
+     * @param lane  The lane of the query
+     *
+     * @return true if neither the lane nor the service are at their most queries in flight
+     */
+    private boolean hasRoom(Lane lane) {
+        return inFlight < maxInFlight && laneInFlight.get(lane) < laneMaxInFlight.get(lane);
+    }
+
+    /**
+     * Whether any query waits in a lane, or in a lane ahead of it.
+     *
+     * @param lane  The lane
+     *
+     * @return true if a query sent in the lane now would overtake a waiting query
+     */
+    private boolean isAnyWaiting(Lane lane) {
+        for (Lane ahead : Lane.values()) {
+            if (!queues.get(ahead).isEmpty()) {
+                return true;
+            }
+            if (ahead == lane) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hold a place in flight for a query. Called holding the lock.
+     *
+     * @param lane  The lane of the query
+     */
+    private void take(Lane lane) {
+        inFlight++;
+        laneInFlight.merge(lane, 1, Integer::sum);
+    }
+
+    /**
+     * Give back the place in flight of a completed query, and send waiting queries if there are any.
+     *
+     * @param lane  The lane of the query
+     */
+    private void release(Lane lane) {
+        boolean waiting;
+        synchronized (lock) {
+            inFlight--;
+            laneInFlight.merge(lane, -1, Integer::sum);
+            waiting = queues.values().stream().anyMatch(queue -> !queue.isEmpty());
+        }
+        if (waiting) {
+            dispatcher.execute(this::drain);
+        }
+    }
+
+    /**
+     * Get the druid priority of a query.
+     *
+     * @param druidQuery  The query
+     *
+     * @return the priority in the context of the query, or 0 if it has none
+     */
+    private static int getPriority(DruidQuery<?> druidQuery) {
+        QueryContext context = druidQuery.getContext();
+        Integer priority = context == null ? null : context.getPriority();
+        return priority == null ? 0 : priority;
+    }
+
+    /**
+     * Get the time by which a query must be sent.
+     *
+     * @param druidQuery  The query
+     * @param now  The time the query was posted, in milliseconds
+     *
+     * @return the deadline of the query in milliseconds, from its context timeout or the timeout of the web service
+     */
+    private long getDeadline(DruidQuery<?> druidQuery, long now) {
+        QueryContext context = druidQuery.getContext();
+        Integer timeout = context == null ? null : context.getTimeout();
+        if (timeout == null) {
+            timeout = delegate.getTimeout();
+        }
+        return timeout == null || timeout > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeout;
+    }
+
+    /**
+     * A query waiting to be sent.
+     */
+    private static final class Pending {
+        private final Lane lane;
+        private final int priority;
+        private final long deadlineMillis;
+        private final long queuedMillis;
+        private final RequestContext context;
+        private final SuccessCallback success;
+        private final HttpErrorCallback error;
+        private final FailureCallback failure;
+        private final DruidQuery<?> druidQuery;
+        private final RequestLog logCtx;
+        private final PendingFuture future = new PendingFuture();
+        private long sequence;
+        private boolean taken;
+        private boolean expired;
+
+        /**
+         * Constructor.
+         *
+         * @param lane  The lane of the query
+         * @param priority  The druid priority of the query
+         * @param deadlineMillis  The time by which the query must be sent
+         * @param queuedMillis  The time the query started waiting
+         * @param context  The context of the request
+         * @param success  callback for handling successful requests.
+         * @param error  callback for handling http errors.
+         * @param failure  callback for handling exception failures.
+         * @param druidQuery  The query
+         * @param logCtx  The request log of the request
+         */
+        private Pending(
+                Lane lane,
+                int priority,
+                long deadlineMillis,
+                long queuedMillis,
+                RequestContext context,
+                SuccessCallback success,
+                HttpErrorCallback error,
+                FailureCallback failure,
+                DruidQuery<?> druidQuery,
+                RequestLog logCtx
+        ) {
+            this.lane = lane;
+            this.priority = priority;
+            this.deadlineMillis = deadlineMillis;
+            this.queuedMillis = queuedMillis;
+            this.context = context;
+            this.success = success;
+            this.error = error;
+            this.failure = failure;
+            this.druidQuery = druidQuery;
+            this.logCtx = logCtx;
+        }
+    }
+
+    /**
+     * The future response to a query which waits to be sent, completed by the future response of the query once it
+     * is sent.
+     */
+    private static final class PendingFuture implements Future<Response> {
+        private final CompletableFuture<Future<Response>> sent = new CompletableFuture<>();
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (sent.cancel(mayInterruptIfRunning)) {
+                return true;
+            }
+            Future<Response> response = getSent();
+            return response != null && response.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            Future<Response> response = getSent();
+            return sent.isCancelled() || response != null && response.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            Future<Response> response = getSent();
+            return sent.isCompletedExceptionally() || response != null && response.isDone();
+        }
+
+        @Override
+        public Response get() throws InterruptedException, ExecutionException {
+            return sent.get().get();
+        }
+
+        @Override
+        public Response get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            Future<Response> response = sent.get(timeout, unit);
+            return response.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Get the future response of the query once it is sent.
+         *
+         * @return the future response, or null if the query has not been sent
+         */
+        private Future<Response> getSent() {
+            return sent.isDone() && !sent.isCompletedExceptionally() ? sent.join() : null;
+        }
+    }
+}
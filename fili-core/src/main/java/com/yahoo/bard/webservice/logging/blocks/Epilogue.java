@@ -15,6 +15,8 @@ import javax.ws.rs.core.Response.StatusType;
 /**
  * Common information for every request that is saved when the logging of a request is finalized.
  * Epilogue takes an Observer that listens for the length of the output stream that was successfully sent to the client.
+ * When the response is compressed, it also takes an Observer that listens for the length of the response before
+ * compression.
  */
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NON_PRIVATE)
 public class Epilogue implements LogInfo {
@@ -25,6 +27,7 @@ public class Epilogue implements LogInfo {
     protected final String logMessage;
 
     private final CacheLastObserver<Long> responseLengthObserver;
+    private final CacheLastObserver<Long> uncompressedLengthObserver;
 
     /**
      * Builds the block containing the common information for every request that is saved when the logging of a
@@ -36,16 +39,48 @@ public class Epilogue implements LogInfo {
      * once streaming is complete
      */
     public Epilogue(String logMessage, StatusType response, CacheLastObserver<Long> responseLengthObserver) {
+        this(logMessage, response, responseLengthObserver, null);
+    }
+
+    /**
+     * Builds the block containing the common information for every request that is saved when the logging of a
+     * request is finalized, for a response which may be compressed.
+     *
+     * @param logMessage  The message to log
+     * @param response  The status of the response
+     * @param responseLengthObserver  An Observer that receives the length of the response streamed back to the client
+     * once streaming is complete
+     * @param uncompressedLengthObserver  An Observer that receives the length of the response before compression, or
+     * null if the response is not compressed
+     */
+    public Epilogue(
+            String logMessage,
+            StatusType response,
+            CacheLastObserver<Long> responseLengthObserver,
+            CacheLastObserver<Long> uncompressedLengthObserver
+    ) {
         this.status = response.getReasonPhrase();
         this.code = response.getStatusCode();
         this.logMessage = logMessage;
         this.responseLengthObserver = responseLengthObserver;
+        this.uncompressedLengthObserver = uncompressedLengthObserver;
     }
 
     public long getResponseLength() {
         return responseLengthObserver.getLastMessageReceived().orElse(LENGTH_UNKNOWN);
     }
 
+    /**
+     * The length of the response before it was compressed, which is the length of the response if it was not.
+     *
+     * @return the number of bytes in the response before compression
+     */
+    public long getUncompressedResponseLength() {
+        return uncompressedLengthObserver == null
+                ? getResponseLength()
+                : uncompressedLengthObserver.getLastMessageReceived().orElse(LENGTH_UNKNOWN);
+    }
+
     /**
      * The connection between Bard and the client is considered to be closed prematurely if the connection is closed
      * before Bard finishes streaming the results back to the client.
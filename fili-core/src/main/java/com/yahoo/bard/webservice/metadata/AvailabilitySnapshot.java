@@ -0,0 +1,152 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable view of the intervals available for each column of a data source, as of one update of the metadata.
+ * <p>
+ * The union of the intervals of all the columns is computed when the snapshot is built. The intersection of the
+ * intervals of a set of columns is computed the first time that set is asked for, and kept for the life of the
+ * snapshot. When the metadata is updated, the sets asked for so far are computed again for the new snapshot, so
+ * availability lookups at request time do not recompute them.
+ * <p>
+ * The interval lists a snapshot returns are shared between callers, which is safe since simplified interval lists are
+ * immutable.
+ */
+public class AvailabilitySnapshot {
+
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    /**
+     * The most sets of columns whose intersections a snapshot keeps.
+     */
+    public static final int MAX_COLUMN_SETS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("availability_snapshot_max_column_sets"),
+            256
+    );
+
+    private final long version;
+    private final long createdMillis;
+    private final Map<String, SimplifiedIntervalList> intervalsByColumn;
+    private final SimplifiedIntervalList allIntervals;
+    private final Map<Set<String>, SimplifiedIntervalList> intersections;
+
+    /**
+     * Constructor.
+     *
+     * @param version  The version of the snapshot, which increases with each update of the metadata
+     * @param intervalsByColumn  The intervals available for each column
+     */
+    public AvailabilitySnapshot(long version, Map<String, SimplifiedIntervalList> intervalsByColumn) {
+        this(version, intervalsByColumn, Collections.emptySet());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param version  The version of the snapshot, which increases with each update of the metadata
+     * @param intervalsByColumn  The intervals available for each column
+     * @param columnSets  The sets of columns whose intersections are computed up front
+     */
+    public AvailabilitySnapshot(
+            long version,
+            Map<String, SimplifiedIntervalList> intervalsByColumn,
+            Collection<Set<String>> columnSets
+    ) {
+        this.version = version;
+        this.createdMillis = System.currentTimeMillis();
+        this.intervalsByColumn = ImmutableMap.copyOf(intervalsByColumn);
+        this.allIntervals = this.intervalsByColumn.values().stream()
+                .reduce(new SimplifiedIntervalList(), SimplifiedIntervalList::union);
+        this.intersections = new ConcurrentHashMap<>();
+        columnSets.forEach(this::getIntersectedIntervals);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The time at which this snapshot was built.
+     *
+     * @return the creation time in milliseconds since the epoch
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * The intervals available for each column.
+     *
+     * @return an immutable map of column name to the intervals available for it
+     */
+    public Map<String, SimplifiedIntervalList> getAllAvailableIntervals() {
+        return intervalsByColumn;
+    }
+
+    /**
+     * The intervals available for any of the columns.
+     *
+     * @return the union of the intervals of all the columns
+     */
+    public SimplifiedIntervalList getUnionedIntervals() {
+        return allIntervals;
+    }
+
+    /**
+     * The intervals available for all of a set of columns.
+     * <p>
+     * A column missing from the snapshot has no intervals available, and an empty set of columns has none either.
+     *
+     * @param columns  The names of the columns
+     *
+     * @return the intersection of the intervals of the columns
+     */
+    public SimplifiedIntervalList getIntersectedIntervals(Set<String> columns) {
+        SimplifiedIntervalList intervals = intersections.get(columns);
+        if (intervals != null) {
+            return intervals;
+        }
+        intervals = intersect(columns);
+        if (intersections.size() < MAX_COLUMN_SETS) {
+            intersections.putIfAbsent(ImmutableSet.copyOf(columns), intervals);
+        }
+        return intervals;
+    }
+
+    /**
+     * The sets of columns whose intersections this snapshot has computed.
+     *
+     * @return the sets of column names
+     */
+    public Set<Set<String>> getColumnSets() {
+        return Collections.unmodifiableSet(intersections.keySet());
+    }
+
+    /**
+     * Intersect the intervals of a set of columns.
+     *
+     * @param columns  The names of the columns
+     *
+     * @return the intersection of the intervals of the columns
+     */
+    private SimplifiedIntervalList intersect(Set<String> columns) {
+        return columns.stream()
+                .map(column -> intervalsByColumn.getOrDefault(column, new SimplifiedIntervalList()))
+                .reduce(SimplifiedIntervalList::intersect)
+                .orElse(new SimplifiedIntervalList());
+    }
+}
@@ -2,11 +2,13 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.metadata;
 
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
 import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.table.PhysicalTable;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
-import com.google.common.collect.ImmutableMap;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
@@ -15,14 +17,17 @@ import org.slf4j.LoggerFactory;
 
 import io.druid.timeline.DataSegment;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -35,14 +40,20 @@ import javax.inject.Singleton;
 @Singleton
 public class DataSourceMetadataService {
     private static final Logger LOG = LoggerFactory.getLogger(DataSourceMetadataService.class);
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    /**
+     * The name of the gauge of the age, in milliseconds, of the oldest availability snapshot still in use.
+     */
+    public static final String SNAPSHOT_AGE = "availability.snapshot.age";
 
     /**
      * The container that holds the segment metadata for every table. It should support concurrent access.
      */
     private final Map<DataSourceName, AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>>>
             allSegmentsByTime;
-    private final Map<DataSourceName, AtomicReference<ImmutableMap<String, SimplifiedIntervalList>>>
-            allSegmentsByColumn;
+    private final Map<DataSourceName, AtomicReference<AvailabilitySnapshot>> allSegmentsByColumn;
+    private final AtomicLong snapshotVersion;
 
     /**
      * The collector that accumulates partitions of a segment.
@@ -55,6 +66,13 @@ public class DataSourceMetadataService {
     public DataSourceMetadataService() {
         this.allSegmentsByTime = new ConcurrentHashMap<>();
         this.allSegmentsByColumn = new ConcurrentHashMap<>();
+        this.snapshotVersion = new AtomicLong();
+
+        // The latest service built reports the age of its snapshots
+        synchronized (REGISTRY) {
+            REGISTRY.remove(SNAPSHOT_AGE);
+            REGISTRY.register(SNAPSHOT_AGE, (Gauge<Long>) this::getOldestSnapshotAgeMillis);
+        }
     }
 
     /**
@@ -80,7 +98,19 @@ public class DataSourceMetadataService {
      * @return a map of column name to a set of available intervals
      */
     public Map<String, SimplifiedIntervalList> getAvailableIntervalsByDataSource(DataSourceName dataSourceName) {
-        if (!allSegmentsByColumn.containsKey(dataSourceName)) {
+        return getAvailabilitySnapshot(dataSourceName).getAllAvailableIntervals();
+    }
+
+    /**
+     * Get the latest snapshot of the intervals available for the columns of the data source.
+     *
+     * @param dataSourceName  The data source for which to get the availability snapshot
+     *
+     * @return the availability snapshot built by the latest update of the data source
+     */
+    public AvailabilitySnapshot getAvailabilitySnapshot(DataSourceName dataSourceName) {
+        AtomicReference<AvailabilitySnapshot> snapshot = allSegmentsByColumn.get(dataSourceName);
+        if (snapshot == null) {
             String message = String.format(
                     "Datasource '%s' is not available in the metadata service",
                     dataSourceName.asName()
@@ -88,7 +118,24 @@ public class DataSourceMetadataService {
             LOG.error(message);
             throw new IllegalStateException(message);
         }
-        return allSegmentsByColumn.get(dataSourceName).get();
+        return snapshot.get();
+    }
+
+    /**
+     * Get how long ago the oldest availability snapshot still in use was built.
+     * <p>
+     * A data source whose metadata has stopped being updated keeps its snapshot, so this age keeps growing until the
+     * next update of every data source.
+     *
+     * @return the age of the oldest snapshot in milliseconds, or 0 if no data source has been updated yet
+     */
+    public long getOldestSnapshotAgeMillis() {
+        OptionalLong oldest = allSegmentsByColumn.values().stream()
+                .map(AtomicReference::get)
+                .filter(Objects::nonNull)
+                .mapToLong(AvailabilitySnapshot::getCreatedMillis)
+                .min();
+        return oldest.isPresent() ? Math.max(System.currentTimeMillis() - oldest.getAsLong(), 0) : 0;
     }
 
     /**
@@ -108,6 +155,9 @@ public class DataSourceMetadataService {
     /**
      * Update the information with respect to the segment metadata of a particular data source.
      * This operation update both segment mappings for the dataSourceName.
+     * <p>
+     * The availability snapshot of the data source is rebuilt, computing again the intersections of the sets of
+     * columns which the previous snapshot was asked for.
      *
      * @param dataSourceName  The data source to which the metadata refer.
      * @param metadata  The updated datasource metadata.
@@ -122,8 +172,18 @@ public class DataSourceMetadataService {
 
         allSegmentsByTime.computeIfAbsent(dataSourceName, ignored -> new AtomicReference<>())
                 .set(currentByTime);
-        allSegmentsByColumn.computeIfAbsent(dataSourceName, ignored -> new AtomicReference<>())
-                .set(ImmutableMap.copyOf(currentByColumn));
+        AtomicReference<AvailabilitySnapshot> snapshot = allSegmentsByColumn.computeIfAbsent(
+                dataSourceName,
+                ignored -> new AtomicReference<>()
+        );
+        AvailabilitySnapshot previous = snapshot.get();
+        snapshot.set(
+                new AvailabilitySnapshot(
+                        snapshotVersion.incrementAndGet(),
+                        currentByColumn,
+                        previous == null ? Collections.emptySet() : previous.getColumnSets()
+                )
+        );
     }
 
     /**
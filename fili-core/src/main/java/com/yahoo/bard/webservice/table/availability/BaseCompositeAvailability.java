@@ -6,6 +6,8 @@ import com.yahoo.bard.webservice.data.config.names.DataSourceName;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 import com.yahoo.bard.webservice.util.StreamUtils;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -18,6 +20,7 @@ public abstract class BaseCompositeAvailability implements Availability {
 
     private final Set<Availability> sourceAvailabilities;
     private final Set<DataSourceName> dataSourcesNames;
+    private volatile MergedIntervals mergedIntervals;
 
     /**
      * Constructor.
@@ -48,22 +51,71 @@ public abstract class BaseCompositeAvailability implements Availability {
     /**
      * Retrieve all available intervals for all data source fields across all the underlying datasources.
      * <p>
-     * Available intervals for the same underlying names are unioned into a <tt>SimplifiedIntervalList</tt>
+     * Available intervals for the same underlying names are unioned into a <tt>SimplifiedIntervalList</tt>. The
+     * union is kept, and reused for as long as each source availability returns the same intervals it was built from,
+     * which is until the metadata of one of the sources is updated.
      *
      * @return a map of metadata field names to all of its available intervals in union
      */
     @Override
     public Map<String, SimplifiedIntervalList> getAllAvailableIntervals() {
-        return getAllSourceAvailabilities()
+        List<Map<String, SimplifiedIntervalList>> sourceIntervals = getAllSourceAvailabilities()
                 .map(Availability::getAllAvailableIntervals)
-                .map(Map::entrySet)
-                .flatMap(Set::stream)
-                .collect(
-                        Collectors.toMap(
-                                Map.Entry::getKey,
-                                Map.Entry::getValue,
-                                (value1, value2) -> SimplifiedIntervalList.simplifyIntervals(value1, value2)
-                        )
-                );
+                .collect(Collectors.toList());
+
+        MergedIntervals current = mergedIntervals;
+        if (current == null || !current.isMergedFrom(sourceIntervals)) {
+            current = new MergedIntervals(sourceIntervals);
+            mergedIntervals = current;
+        }
+        return current.intervals;
+    }
+
+    /**
+     * The union of the intervals of the source availabilities, along with the source intervals it was merged from.
+     */
+    private static class MergedIntervals {
+        private final List<Map<String, SimplifiedIntervalList>> sourceIntervals;
+        private final Map<String, SimplifiedIntervalList> intervals;
+
+        /**
+         * Constructor.
+         *
+         * @param sourceIntervals  The intervals of each source availability, by column
+         */
+        MergedIntervals(List<Map<String, SimplifiedIntervalList>> sourceIntervals) {
+            this.sourceIntervals = sourceIntervals;
+            this.intervals = Collections.unmodifiableMap(
+                    sourceIntervals.stream()
+                            .map(Map::entrySet)
+                            .flatMap(Set::stream)
+                            .collect(
+                                    Collectors.toMap(
+                                            Map.Entry::getKey,
+                                            Map.Entry::getValue,
+                                            SimplifiedIntervalList::union
+                                    )
+                            )
+            );
+        }
+
+        /**
+         * Whether these intervals were merged from the very same source intervals.
+         *
+         * @param others  The intervals of each source availability, by column
+         *
+         * @return true if each source returned the same instance as the one these intervals were merged from
+         */
+        boolean isMergedFrom(List<Map<String, SimplifiedIntervalList>> others) {
+            if (others.size() != sourceIntervals.size()) {
+                return false;
+            }
+            for (int i = 0; i < others.size(); i++) {
+                if (others.get(i) != sourceIntervals.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
@@ -3,6 +3,7 @@
 package com.yahoo.bard.webservice.table.availability;
 
 import com.yahoo.bard.webservice.data.config.names.DataSourceName;
+import com.yahoo.bard.webservice.metadata.AvailabilitySnapshot;
 import com.yahoo.bard.webservice.metadata.DataSourceMetadataService;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
@@ -19,6 +20,11 @@ import javax.validation.constraints.NotNull;
  */
 public abstract class BaseMetadataAvailability implements Availability {
 
+    /**
+     * The snapshot of a data source the metadata service has no snapshot for, with no intervals available.
+     */
+    private static final AvailabilitySnapshot NO_AVAILABILITY = new AvailabilitySnapshot(0, Collections.emptyMap());
+
     private final DataSourceName dataSourceName;
     private final Set<DataSourceName> dataSourceNames;
     private final DataSourceMetadataService metadataService;
@@ -51,9 +57,22 @@ public abstract class BaseMetadataAvailability implements Availability {
         return metadataService;
     }
 
+    /**
+     * The latest snapshot of the intervals available for the columns of the data source.
+     * <p>
+     * A metadata service returning no snapshot, such as one which has not been loaded, is treated as having no
+     * intervals available.
+     *
+     * @return the availability snapshot of the data source
+     */
+    protected AvailabilitySnapshot getAvailabilitySnapshot() {
+        AvailabilitySnapshot snapshot = getDataSourceMetadataService().getAvailabilitySnapshot(getDataSourceName());
+        return snapshot == null ? NO_AVAILABILITY : snapshot;
+    }
+
     @Override
     public Map<String, SimplifiedIntervalList> getAllAvailableIntervals() {
-        return getDataSourceMetadataService().getAvailableIntervalsByDataSource(getDataSourceName());
+        return getAvailabilitySnapshot().getAllAvailableIntervals();
     }
 
     @Override
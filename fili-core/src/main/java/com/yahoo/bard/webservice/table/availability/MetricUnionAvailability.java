@@ -75,6 +75,7 @@ public class MetricUnionAvailability extends BaseCompositeAvailability implement
 
     private final Set<String> metricNames;
     private final Map<Availability, Set<String>> availabilitiesToMetricNames;
+    private final Set<String> dataSourceMetricNames;
 
     /**
      * Constructor.
@@ -115,15 +116,14 @@ public class MetricUnionAvailability extends BaseCompositeAvailability implement
                 LOG.error(message);
                 throw new RuntimeException(message);
         }
-    }
-
-    @Override
-    public SimplifiedIntervalList getAvailableIntervals(PhysicalDataSourceConstraint constraint) {
 
-        Set<String> dataSourceMetricNames = availabilitiesToMetricNames.values().stream()
+        dataSourceMetricNames = availabilitiesToMetricNames.values().stream()
                 .flatMap(Set::stream)
                 .collect(Collectors.toSet());
+    }
 
+    @Override
+    public SimplifiedIntervalList getAvailableIntervals(PhysicalDataSourceConstraint constraint) {
         // If the table is configured with a column that is not supported by the underlying data sources
         if (!constraint.getMetricNames().stream().allMatch(dataSourceMetricNames::contains)) {
             return new SimplifiedIntervalList();
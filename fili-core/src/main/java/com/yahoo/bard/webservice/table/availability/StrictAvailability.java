@@ -7,14 +7,13 @@ import com.yahoo.bard.webservice.metadata.DataSourceMetadataService;
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
 
-import java.util.Set;
-
 import javax.validation.constraints.NotNull;
 
 /**
  * An availability that provides column and table available interval services for strict physical tables.
  * <p>
- * This availability uses column intersections to determine it's sigular availability.
+ * This availability uses column intersections to determine it's sigular availability. The intersections are kept by
+ * the availability snapshot of the data source, so each set of columns is intersected once per metadata update.
  */
 public class StrictAvailability extends BaseMetadataAvailability {
     /**
@@ -32,20 +31,7 @@ public class StrictAvailability extends BaseMetadataAvailability {
 
     @Override
     public SimplifiedIntervalList getAvailableIntervals(PhysicalDataSourceConstraint constraint) {
-
-        Set<String> requestColumns = constraint.getAllColumnPhysicalNames();
-        if (requestColumns.isEmpty()) {
-            return new SimplifiedIntervalList();
-        }
-
-        // Need to ensure requestColumns is not empty in order to prevent returning null by reduce operation
-        return requestColumns.stream()
-                .map(physicalName -> getAllAvailableIntervals().getOrDefault(
-                        physicalName,
-                        new SimplifiedIntervalList()
-                ))
-                .reduce(SimplifiedIntervalList::intersect)
-                .orElse(new SimplifiedIntervalList());
+        return getAvailabilitySnapshot().getIntersectedIntervals(constraint.getAllColumnPhysicalNames());
     }
 
     @Override
@@ -22,6 +22,9 @@ public class DimensionStoreKeyUtils {
      * When this key is passed into a {@link com.yahoo.bard.webservice.data.dimension.KeyValueStore}, the
      * KeyValueStore will return a String representation of a list of all the dimension values stored in the key value
      * dimension store.
+     * <p>
+     * Row keys are now kept in chunks under {@link #getKeyIndexChunkKey(int)}, and this key is only read to migrate
+     * stores written by earlier versions.
      *
      * @return A key for accessing a list of all the values in a KeyValueStore as a String.
      */
@@ -29,6 +32,32 @@ public class DimensionStoreKeyUtils {
         return "all_values_key";
     }
 
+    /**
+     * Returns a key for accessing the number of chunks of dimension row keys in a
+     * {@link com.yahoo.bard.webservice.data.dimension.KeyValueStore}.
+     *
+     * @return A key for accessing the number of chunks of row keys in a KeyValueStore as a String.
+     */
+    public static String getKeyIndexChunkCountKey() {
+        return "key_index_chunk_count_key";
+    }
+
+    /**
+     * Returns a key for accessing a chunk of the dimension row keys in a
+     * {@link com.yahoo.bard.webservice.data.dimension.KeyValueStore}.
+     * <p>
+     * When this key is passed into a {@link com.yahoo.bard.webservice.data.dimension.KeyValueStore}, the
+     * KeyValueStore will return a String representation of a list of the row keys in the chunk, or null if the chunk
+     * is empty.
+     *
+     * @param chunk  The number of the chunk
+     *
+     * @return A key for accessing a list of the row keys in a chunk as a String.
+     */
+    public static String getKeyIndexChunkKey(int chunk) {
+        return "key_index_chunk_" + chunk + "_key";
+    }
+
     /**
      * Returns a key that allows access to the dimension rows of a given dimension.
      * <p>
@@ -9,12 +9,16 @@ import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.joda.time.ReadablePeriod;
 
+import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -27,13 +31,20 @@ import javax.validation.constraints.NotNull;
 /**
  * A simplified interval list is a list of intervals, ordered by time, expressed in as few intervals as possible
  * (i.e. adjacent and overlapping intervals are combined into a single interval).
+ * <p>
+ * A simplified interval list is immutable. Its intervals are held in an array, along with arrays of their start and
+ * end instants, so whether an interval is contained by the list is found by binary search over the bounds of its
+ * intervals. Since the intervals are ordered and disjoint, unions, intersections and subtractions are single merging
+ * passes over both lists, which build the new list without re-simplifying it.
  */
-public class SimplifiedIntervalList extends LinkedList<Interval> {
+public class SimplifiedIntervalList extends AbstractList<Interval> implements RandomAccess, Serializable {
+
+    private static final Interval[] EMPTY = new Interval[0];
 
     /**
      * A prebuilt empty SimplifiedIntervalList.
      *
-     * @deprecated This shared instance is vulnerable to being changed globally with side effects, use empty constructor
+     * @deprecated Use the empty constructor
      */
     @Deprecated
     public static final SimplifiedIntervalList NO_INTERVALS = new SimplifiedIntervalList();
@@ -43,11 +54,15 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      */
     protected Function<Iterator<Interval>, Interval> getNextIfAvailable = (it) -> it.hasNext() ? it.next() : null;
 
+    private final Interval[] intervals;
+    private final long[] starts;
+    private final long[] ends;
+
     /**
      * Constructor.
      */
     public SimplifiedIntervalList() {
-        super();
+        this(EMPTY);
     }
 
     /**
@@ -56,7 +71,34 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      * @param intervals  A collection of intervals
      */
     public SimplifiedIntervalList(Collection<Interval> intervals) {
-        super(simplifyIntervals(intervals));
+        this(simplifyIntervals(intervals));
+    }
+
+    /**
+     * If the intervals are already simplified, simply copy the list.
+     *
+     * @param intervals  A simplified list of intervals
+     */
+    public SimplifiedIntervalList(SimplifiedIntervalList intervals) {
+        // The list is immutable, so its arrays are shared
+        this.intervals = intervals.intervals;
+        this.starts = intervals.starts;
+        this.ends = intervals.ends;
+    }
+
+    /**
+     * Build a list of intervals which are already simplified.
+     *
+     * @param intervals  The intervals, ordered, disjoint and not abutting, which the list takes ownership of
+     */
+    private SimplifiedIntervalList(Interval[] intervals) {
+        this.intervals = intervals;
+        starts = new long[intervals.length];
+        ends = new long[intervals.length];
+        for (int i = 0; i < intervals.length; i++) {
+            starts[i] = intervals[i].getStartMillis();
+            ends[i] = intervals[i].getEndMillis();
+        }
     }
 
     /**
@@ -66,16 +108,39 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      */
     @JsonValue
     public List<Interval> asList() {
-        return Collections.unmodifiableList(this);
+        return Collections.unmodifiableList(Arrays.asList(intervals));
+    }
+
+    @Override
+    public Interval get(int index) {
+        return intervals[index];
+    }
+
+    @Override
+    public int size() {
+        return intervals.length;
     }
 
     /**
-     * If the intervals are already simplified, simply copy the list.
+     * Get the first interval of the list.
      *
-     * @param intervals  A simplified list of intervals
+     * @return the earliest interval
+     *
+     * @throws java.util.NoSuchElementException if the list is empty
      */
-    public SimplifiedIntervalList(SimplifiedIntervalList intervals) {
-        super(intervals);
+    public Interval getFirst() {
+        return iterator().next();
+    }
+
+    /**
+     * Get the last interval of the list.
+     *
+     * @return the latest interval
+     *
+     * @throws java.util.NoSuchElementException if the list is empty
+     */
+    public Interval getLast() {
+        return listIterator(size()).previous();
     }
 
     /**
@@ -110,60 +175,88 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
     }
 
     /**
-     * Given a sorted linked list of intervals, add the following interval to the end, merging the incoming interval
-     * to any tail intervals which overlap or abut with it.
-     * <p>
-     * In the case where added intervals are at the end of the list, this is efficient. In the case where they are not,
-     * this degrades to an insertion sort.
-     *
-     * @param interval  The interval to be merged and added to this list
+     * The intervals of a simplified interval list being built, merging each interval as it is appended.
      */
-    private void appendWithMerge(Interval interval) {
-        // Do not store empty intervals
-        if (interval.toDurationMillis() == 0) {
-            return;
-        }
+    private static class Appender {
+        private final ArrayList<Interval> intervals = new ArrayList<>();
+
+        /**
+         * Given the sorted intervals so far, add the following interval to the end, merging the incoming interval
+         * to any tail intervals which overlap or abut with it.
+         * <p>
+         * In the case where added intervals are at the end of the list, this is efficient. In the case where they
+         * are not, this degrades to an insertion sort.
+         *
+         * @param interval  The interval to be merged and added
+         */
+        void appendWithMerge(Interval interval) {
+            // Do not store empty intervals
+            if (interval.toDurationMillis() == 0) {
+                return;
+            }
 
-        if (isEmpty()) {
-            addLast(interval);
-            return;
+            if (intervals.isEmpty()) {
+                intervals.add(interval);
+                return;
+            }
+            final Interval previous = intervals.get(intervals.size() - 1);
+
+            // If this interval does not belong at the end, removeLast until it does
+            if (interval.getStartMillis() < previous.getStartMillis()) {
+                mergeInner(interval);
+                return;
+            }
+
+            // If there is a gap between the intervals, neither overlapping nor abutting, the interval is a new one
+            if (interval.getStartMillis() > previous.getEndMillis()) {
+                intervals.add(interval);
+                return;
+            }
+            Interval newEnd = new Interval(
+                    Math.min(previous.getStartMillis(), interval.getStartMillis()),
+                    Math.max(previous.getEndMillis(), interval.getEndMillis())
+            );
+            intervals.set(intervals.size() - 1, newEnd);
         }
-        final Interval previous = peekLast();
 
-        // If this interval does not belong at the end, removeLast until it does
-        if (interval.getStart().isBefore(previous.getStart())) {
-            mergeInner(interval);
-            return;
+        /**
+         * Back elements off the list until the insertion is at the correct endpoint of the list and then merge and
+         * append the original contents of the list back in.
+         *
+         * @param interval  The interval to be merged and added
+         */
+        private void mergeInner(Interval interval) {
+            LinkedList<Interval> buffer = new LinkedList<>();
+            while (!intervals.isEmpty()
+                    && interval.getStartMillis() < intervals.get(intervals.size() - 1).getStartMillis()) {
+                buffer.addFirst(intervals.remove(intervals.size() - 1));
+            }
+            appendWithMerge(interval);
+            buffer.forEach(this::appendWithMerge);
         }
 
-        if (previous.gap(interval) != null) {
-            addLast(interval);
-            return;
+        /**
+         * Append the intervals of another appender, merging them in.
+         *
+         * @param that  The appender whose intervals to append
+         *
+         * @return this appender
+         */
+        Appender appendAll(Appender that) {
+            that.intervals.forEach(this::appendWithMerge);
+            return this;
         }
-        removeLast();
-        Interval newEnd = new Interval(
-                Math.min(previous.getStartMillis(), interval.getStartMillis()),
-                Math.max(previous.getEndMillis(), interval.getEndMillis())
-        );
-        addLast(newEnd);
-    }
 
-    /**
-     * Back elements off the list until the insertion is at the correct endpoint of the list and then merge and append
-     * the original contents of the list back in.
-     *
-     * @param interval  The interval to be merged and added
-     */
-    private void mergeInner(Interval interval) {
-        Interval previous = peekLast();
-        LinkedList<Interval> buffer = new LinkedList<>();
-        while (previous != null && interval.getStart().isBefore(previous.getStart())) {
-            buffer.addFirst(previous);
-            removeLast();
-            previous = peekLast();
+        /**
+         * Build the simplified interval list of the intervals appended.
+         *
+         * @return the simplified interval list
+         */
+        SimplifiedIntervalList build() {
+            return intervals.isEmpty()
+                    ? new SimplifiedIntervalList()
+                    : new SimplifiedIntervalList(intervals.toArray(new Interval[intervals.size()]));
         }
-        appendWithMerge(interval);
-        buffer.stream().forEach(this::appendWithMerge);
     }
 
     /**
@@ -208,7 +301,16 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
          * @param skipAheadTo  Instant to skip to
          */
         private void skipAhead(@NotNull DateTime skipAheadTo) {
-            while (activeInterval != null && activeInterval.isBefore(skipAheadTo)) {
+            skipAhead(skipAheadTo.getMillis());
+        }
+
+        /**
+         * Skip ahead to the indicated instant.
+         *
+         * @param skipAheadTo  Instant to skip to, in milliseconds
+         */
+        private void skipAhead(long skipAheadTo) {
+            while (activeInterval != null && activeInterval.getEndMillis() <= skipAheadTo) {
                 activeInterval = supply.hasNext() ? supply.next() : null;
             }
         }
@@ -224,16 +326,20 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
          */
         @Override
         public boolean test(Interval testInterval) {
-            skipAhead(testInterval.getStart());
+            skipAhead(testInterval.getStartMillis());
             return (activeInterval != null) ? testPredicate.test(testInterval, activeInterval) : defaultValue;
         }
     }
 
     /**
      * A predicate for testing whether the test interval is a complete subinterval of part of the supply of intervals.
+     * <p>
+     * Each interval is looked up in the supply by binary search, so intervals may be tested in any order.
      */
     public static class IsSubinterval extends SkippingIntervalPredicate {
 
+        private final SimplifiedIntervalList supplyList;
+
         /**
          * Filter in intervals from the stream that are fully contained by the supply.
          */
@@ -247,11 +353,34 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
          */
         public IsSubinterval(SimplifiedIntervalList supplyList) {
             super(supplyList, IS_SUBINTERVAL, false);
+            this.supplyList = supplyList;
+        }
+
+        @Override
+        public boolean test(Interval testInterval) {
+            return supplyList.containsInterval(testInterval);
+        }
+    }
+
+    /**
+     * Whether an interval is a complete subinterval of one of the intervals of this list.
+     *
+     * @param interval  The interval to look for
+     *
+     * @return true if one of the intervals of this list contains the interval
+     */
+    public boolean containsInterval(Interval interval) {
+        long start = interval.getStartMillis();
+        int index = Arrays.binarySearch(starts, start);
+        // Otherwise, the last interval starting before the interval is the only one which can contain it
+        if (index < 0) {
+            index = -index - 2;
         }
+        return index >= 0 && start < ends[index] && interval.getEndMillis() <= ends[index];
     }
 
     /**
-     * Only internal calls to linked list mutators should be used to change the list.
+     * Simplified interval lists are immutable, so intervals cannot be added.
      *
      * @param e  Any element to be added
      *
@@ -267,11 +396,12 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      *
      * @return A collector for merging simplified intervals
      */
-    public static Collector<Interval, SimplifiedIntervalList, SimplifiedIntervalList> getCollector() {
+    public static Collector<Interval, ?, SimplifiedIntervalList> getCollector() {
         return Collector.of(
-                SimplifiedIntervalList::new,
-                SimplifiedIntervalList::appendWithMerge,
-                SimplifiedIntervalList::simplifyIntervals
+                Appender::new,
+                Appender::appendWithMerge,
+                Appender::appendAll,
+                Appender::build
         );
     }
 
@@ -283,7 +413,24 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
      * @return A new simplified list containing all subintervals of both this and that.
      */
     public SimplifiedIntervalList union(SimplifiedIntervalList that) {
-        return simplifyIntervals(this, that);
+        Iterator<Interval> theseIntervals = this.iterator();
+        Iterator<Interval> thoseIntervals = that.iterator();
+        Interval thisCurrent = getNextIfAvailable.apply(theseIntervals);
+        Interval thatCurrent = getNextIfAvailable.apply(thoseIntervals);
+        Appender collected = new Appender();
+
+        // Take the interval starting first from either list, so intervals are always appended in order
+        while (thisCurrent != null || thatCurrent != null) {
+            if (thatCurrent == null
+                    || (thisCurrent != null && thisCurrent.getStartMillis() <= thatCurrent.getStartMillis())) {
+                collected.appendWithMerge(thisCurrent);
+                thisCurrent = getNextIfAvailable.apply(theseIntervals);
+            } else {
+                collected.appendWithMerge(thatCurrent);
+                thatCurrent = getNextIfAvailable.apply(thoseIntervals);
+            }
+        }
+        return collected.build();
     }
 
     /**
@@ -298,19 +445,20 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
         Iterator<Interval> thoseIntervals = that.iterator();
         Interval thisCurrent = getNextIfAvailable.apply(theseIntervals);
         Interval thatCurrent = getNextIfAvailable.apply(thoseIntervals);
-        List<Interval> collected = new ArrayList<>();
+        Appender collected = new Appender();
 
+        // Overlaps are found in order, so each is appended to the end of the collected intervals
         while (thisCurrent != null && thatCurrent != null) {
             if (thisCurrent.overlaps(thatCurrent)) {
-                collected.add(thisCurrent.overlap(thatCurrent));
+                collected.appendWithMerge(thisCurrent.overlap(thatCurrent));
             }
-            if (thisCurrent.isBefore(thatCurrent.getEnd())) {
+            if (thisCurrent.getEndMillis() <= thatCurrent.getEndMillis()) {
                 thisCurrent = getNextIfAvailable.apply(theseIntervals);
             } else {
                 thatCurrent = getNextIfAvailable.apply(thoseIntervals);
             }
         }
-        return new SimplifiedIntervalList(collected);
+        return collected.build();
     }
 
     /**
@@ -331,36 +479,37 @@ public class SimplifiedIntervalList extends LinkedList<Interval> {
         Iterator<Interval> thoseIntervals = that.iterator();
 
         Interval thatCurrent = getNextIfAvailable.apply(thoseIntervals);
-        List<Interval> collected = new ArrayList<>();
+        Appender collected = new Appender();
 
+        // Remaining parts are found in order, so each is appended to the end of the collected intervals
         while (thisCurrent != null && thatCurrent != null) {
-            if (thisCurrent.isBefore(thatCurrent)) {
+            if (thisCurrent.getEndMillis() <= thatCurrent.getStartMillis()) {
                 // Non overlapping intervals are simply collected
-                collected.add(thisCurrent);
+                collected.appendWithMerge(thisCurrent);
             } else if (thisCurrent.overlaps(thatCurrent)) {
                 // Take any part of the source interval that lies before an overlap
-                if (thisCurrent.getStart().isBefore(thatCurrent.getStart())) {
-                    collected.add(new Interval(thisCurrent.getStart(), thatCurrent.getStart()));
+                if (thisCurrent.getStartMillis() < thatCurrent.getStartMillis()) {
+                    collected.appendWithMerge(new Interval(thisCurrent.getStart(), thatCurrent.getStart()));
                 }
                 // Truncate out any overlap from the source interval and continue
-                if (!thisCurrent.getEnd().isBefore(thatCurrent.getEnd())) {
+                if (thisCurrent.getEndMillis() >= thatCurrent.getEndMillis()) {
                     thisCurrent = new Interval(thatCurrent.getEnd(), thisCurrent.getEnd());
                 }
             }
             // Advance to the next interval to consider
-            if (thisCurrent.isBefore(thatCurrent.getEnd())) {
+            if (thisCurrent.getEndMillis() <= thatCurrent.getEndMillis()) {
                 thisCurrent = getNextIfAvailable.apply(theseIntervals);
             } else {
                 thatCurrent = getNextIfAvailable.apply(thoseIntervals);
             }
         }
         if (thatCurrent == null) {
-            collected.add(thisCurrent);
+            collected.appendWithMerge(thisCurrent);
             while (theseIntervals.hasNext()) {
-                collected.add(theseIntervals.next());
+                collected.appendWithMerge(theseIntervals.next());
             }
         }
-        return new SimplifiedIntervalList(collected);
+        return collected.build();
     }
 
     /**
@@ -0,0 +1,383 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.ResultSetSchema;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionField;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the rows of a response as an Avro object container file of column batches, which tools such as Spark and
+ * pandas load into columns without parsing text or pivoting rows.
+ * <p>
+ * Each record of the file is a batch of up to {@code avro_response_batch_rows} rows, holding one array per column,
+ * with the columns of a CSV response:
+ * <ul>
+ *     <li>{@code dateTime}, the timestamps of the rows as epoch milliseconds, with the {@code timestamp-millis}
+ *     logical type</li>
+ *     <li>a {@code DictionaryVector} per requested dimension field, whose {@code dictionary} holds the distinct values
+ *     of the field in the batch and whose {@code indices} hold the position of the value of each row in the
+ *     dictionary, or -1 when the row has no value</li>
+ *     <li>a vector per requested metric, whose {@code values} hold the value of each row and whose {@code nulls} hold
+ *     the positions of the rows without a value. A batch of a metric whose values are all integers which fit in a
+ *     long, such as the decimals druid sums of longs are parsed into, is a {@code LongVector}, so that values beyond
+ *     2^53 keep their precision. Other batches of numeric values are {@code DoubleVector}s, and other batches
+ *     {@code StringVector}s of the text of the values.</li>
+ * </ul>
+ * Column names which are not valid Avro names (such as {@code product|id}) are rewritten, and the name of the column
+ * is kept in the {@code column} property of the field.
+ * <p>
+ * The batches are written as the rows are read from the result set, so the result set is never held in full.
+ */
+public class AvroResponseWriter implements DatumWriter<List<Result>> {
+
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    public static final String SCHEMA_NAME = "RowBatch";
+    public static final String SCHEMA_NAMESPACE = "com.yahoo.bard.webservice";
+    public static final String COLUMN_PROPERTY = "column";
+
+    private static final int BATCH_ROWS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("avro_response_batch_rows"),
+            4096
+    );
+
+    private static final int NO_VALUE = -1;
+
+    // Positions of the metric vector types in the union of a metric column
+    private static final int METRIC_LONG = 0;
+    private static final int METRIC_DOUBLE = 1;
+    private static final int METRIC_STRING = 2;
+
+    private final Schema schema;
+    private final int batchRows;
+    private final DimensionColumn[] dimensionColumns;
+    private final DimensionField[] dimensionFields;
+    private final MetricColumn[] metricColumns;
+
+    /**
+     * Constructor.
+     *
+     * @param resultSetSchema  The schema of the result set whose rows are written
+     * @param apiMetricColumns  The metric columns requested, in the order in which to write them
+     * @param requestedApiDimensionFields  The fields for each dimension that should be shown in the response
+     */
+    public AvroResponseWriter(
+            ResultSetSchema resultSetSchema,
+            Set<MetricColumn> apiMetricColumns,
+            LinkedHashMap<Dimension, LinkedHashSet<DimensionField>> requestedApiDimensionFields
+    ) {
+        this(resultSetSchema, apiMetricColumns, requestedApiDimensionFields, BATCH_ROWS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param resultSetSchema  The schema of the result set whose rows are written
+     * @param apiMetricColumns  The metric columns requested, in the order in which to write them
+     * @param requestedApiDimensionFields  The fields for each dimension that should be shown in the response
+     * @param batchRows  The most rows written in a batch
+     */
+    public AvroResponseWriter(
+            ResultSetSchema resultSetSchema,
+            Set<MetricColumn> apiMetricColumns,
+            LinkedHashMap<Dimension, LinkedHashSet<DimensionField>> requestedApiDimensionFields,
+            int batchRows
+    ) {
+        if (batchRows < 1) {
+            throw new IllegalArgumentException("Avro response batches must hold at least one row: " + batchRows);
+        }
+        this.batchRows = batchRows;
+
+        Set<String> fieldNames = new HashSet<>();
+        List<Schema.Field> fields = new ArrayList<>();
+        fields.add(buildField(
+                "dateTime",
+                Schema.createArray(LogicalTypes.timestampMillis().addToSchema(Schema.create(Schema.Type.LONG))),
+                fieldNames
+        ));
+
+        Schema dimensionType = Schema.createRecord("DictionaryVector", null, SCHEMA_NAMESPACE, false, Arrays.asList(
+                new Schema.Field("dictionary", Schema.createArray(Schema.create(Schema.Type.STRING)), null, (Object) null),
+                new Schema.Field("indices", Schema.createArray(Schema.create(Schema.Type.INT)), null, (Object) null)
+        ));
+        List<DimensionColumn> dimensionColumnList = new ArrayList<>();
+        List<DimensionField> dimensionFieldList = new ArrayList<>();
+        for (Map.Entry<Dimension, LinkedHashSet<DimensionField>> entry : requestedApiDimensionFields.entrySet()) {
+            Dimension dimension = entry.getKey();
+            DimensionColumn dimensionColumn = resultSetSchema.getColumns(DimensionColumn.class).stream()
+                    .filter(column -> column.getDimension().equals(dimension))
+                    .findFirst()
+                    .orElse(null);
+            if (entry.getValue().isEmpty()) {
+                // When no fields are requested, show the key field
+                fields.add(buildField(dimension.getApiName(), dimensionType, fieldNames));
+                dimensionColumnList.add(dimensionColumn);
+                dimensionFieldList.add(dimension.getKey());
+            } else {
+                for (DimensionField dimensionField : entry.getValue()) {
+                    String columnName = Response.getDimensionColumnName(dimension, dimensionField);
+                    fields.add(buildField(columnName, dimensionType, fieldNames));
+                    dimensionColumnList.add(dimensionColumn);
+                    dimensionFieldList.add(dimensionField);
+                }
+            }
+        }
+
+        Schema metricType = Schema.createUnion(Arrays.asList(
+                buildMetricVector("LongVector", Schema.Type.LONG),
+                buildMetricVector("DoubleVector", Schema.Type.DOUBLE),
+                buildMetricVector("StringVector", Schema.Type.STRING)
+        ));
+        for (MetricColumn metricColumn : apiMetricColumns) {
+            fields.add(buildField(metricColumn.getName(), metricType, fieldNames));
+        }
+
+        schema = Schema.createRecord(SCHEMA_NAME, null, SCHEMA_NAMESPACE, false, fields);
+        dimensionColumns = dimensionColumnList.toArray(new DimensionColumn[dimensionColumnList.size()]);
+        dimensionFields = dimensionFieldList.toArray(new DimensionField[dimensionFieldList.size()]);
+        metricColumns = apiMetricColumns.toArray(new MetricColumn[apiMetricColumns.size()]);
+    }
+
+    /**
+     * Get the Avro schema of the row batches.
+     *
+     * @return the schema of the row batches
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Write the rows as an Avro object container file of row batches.
+     *
+     * @param os  The output stream to write the file to, which is closed once the rows are written
+     * @param rows  The rows to write
+     *
+     * @throws IOException if writing to the output stream fails
+     */
+    public void write(OutputStream os, Iterable<Result> rows) throws IOException {
+        try (DataFileWriter<List<Result>> fileWriter = new DataFileWriter<>(this)) {
+            fileWriter.create(schema, os);
+            List<Result> batch = new ArrayList<>(batchRows);
+            for (Result result : rows) {
+                batch.add(result);
+                if (batch.size() == batchRows) {
+                    fileWriter.append(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                fileWriter.append(batch);
+            }
+        }
+    }
+
+    @Override
+    public void setSchema(Schema schema) {
+        // The schema is built from the result set schema, so there is nothing to resolve
+    }
+
+    @Override
+    public void write(List<Result> batch, Encoder out) throws IOException {
+        int rowCount = batch.size();
+
+        out.writeArrayStart();
+        out.setItemCount(rowCount);
+        for (Result result : batch) {
+            out.startItem();
+            out.writeLong(result.getTimeStamp().getMillis());
+        }
+        out.writeArrayEnd();
+
+        for (int i = 0; i < dimensionColumns.length; i++) {
+            writeDimensionVector(batch, dimensionColumns[i], dimensionFields[i], out);
+        }
+
+        for (MetricColumn metricColumn : metricColumns) {
+            Object[] values = new Object[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                values[row] = batch.get(row).getMetricValue(metricColumn);
+            }
+            writeMetricVector(values, out);
+        }
+    }
+
+    /**
+     * Write the values of a dimension field in a batch as a dictionary of the distinct values and their indices.
+     *
+     * @param batch  The rows of the batch
+     * @param dimensionColumn  The column of the dimension, or null if the result set has no column for it
+     * @param dimensionField  The field of the dimension to write
+     * @param out  The encoder to write to
+     *
+     * @throws IOException if writing to the encoder fails
+     */
+    private static void writeDimensionVector(
+            List<Result> batch,
+            DimensionColumn dimensionColumn,
+            DimensionField dimensionField,
+            Encoder out
+    ) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] indices = new int[batch.size()];
+        for (int row = 0; row < indices.length; row++) {
+            DimensionRow dimensionRow = dimensionColumn == null
+                    ? null
+                    : batch.get(row).getDimensionRow(dimensionColumn);
+            String value = dimensionRow == null ? null : dimensionRow.get(dimensionField);
+            indices[row] = value == null ? NO_VALUE : dictionary.computeIfAbsent(value, ignored -> dictionary.size());
+        }
+
+        out.writeArrayStart();
+        out.setItemCount(dictionary.size());
+        for (String value : dictionary.keySet()) {
+            out.startItem();
+            out.writeString(value);
+        }
+        out.writeArrayEnd();
+
+        out.writeArrayStart();
+        out.setItemCount(indices.length);
+        for (int index : indices) {
+            out.startItem();
+            out.writeInt(index);
+        }
+        out.writeArrayEnd();
+    }
+
+    /**
+     * Write the values of a metric in a batch as a vector of the narrowest type holding all of them.
+     *
+     * @param values  The values of the metric, by row of the batch
+     * @param out  The encoder to write to
+     *
+     * @throws IOException if writing to the encoder fails
+     */
+    private static void writeMetricVector(Object[] values, Encoder out) throws IOException {
+        int type = METRIC_LONG;
+        int nullCount = 0;
+        for (Object value : values) {
+            if (value == null) {
+                nullCount++;
+            } else if (!(value instanceof Number)) {
+                type = METRIC_STRING;
+            } else if (type == METRIC_LONG && !isLong(value)) {
+                type = METRIC_DOUBLE;
+            }
+        }
+
+        out.writeIndex(type);
+        out.writeArrayStart();
+        out.setItemCount(values.length);
+        for (Object value : values) {
+            out.startItem();
+            if (type == METRIC_LONG) {
+                out.writeLong(value == null ? 0 : ((Number) value).longValue());
+            } else if (type == METRIC_DOUBLE) {
+                out.writeDouble(value == null ? 0 : ((Number) value).doubleValue());
+            } else {
+                out.writeString(value == null ? "" : value.toString());
+            }
+        }
+        out.writeArrayEnd();
+
+        out.writeArrayStart();
+        out.setItemCount(nullCount);
+        for (int row = 0; row < values.length; row++) {
+            if (values[row] == null) {
+                out.startItem();
+                out.writeInt(row);
+            }
+        }
+        out.writeArrayEnd();
+    }
+
+    /**
+     * Whether a metric value is an integer which fits in a long.
+     *
+     * @param value  The metric value
+     *
+     * @return true if the value can be written as a long without losing precision
+     */
+    private static boolean isLong(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return true;
+        } else if (value instanceof BigInteger) {
+            return ((BigInteger) value).bitLength() < Long.SIZE;
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            return decimal.scale() <= 0 && decimal.toBigInteger().bitLength() < Long.SIZE;
+        }
+        return false;
+    }
+
+    /**
+     * Build the schema of a vector of metric values of one type.
+     *
+     * @param name  The name of the vector type
+     * @param valueType  The type of the values
+     *
+     * @return the schema of the vector
+     */
+    private static Schema buildMetricVector(String name, Schema.Type valueType) {
+        return Schema.createRecord(name, null, SCHEMA_NAMESPACE, false, Arrays.asList(
+                new Schema.Field("values", Schema.createArray(Schema.create(valueType)), null, (Object) null),
+                new Schema.Field("nulls", Schema.createArray(Schema.create(Schema.Type.INT)), null, (Object) null)
+        ));
+    }
+
+    /**
+     * Build the field of a column, rewriting the name of the column into a valid and unique Avro name if needed.
+     *
+     * @param columnName  The name of the column
+     * @param type  The type of the column
+     * @param fieldNames  The names of the fields built so far
+     *
+     * @return the field of the column
+     */
+    private static Schema.Field buildField(String columnName, Schema type, Set<String> fieldNames) {
+        StringBuilder name = new StringBuilder(columnName.length() + 1);
+        for (int i = 0; i < columnName.length(); i++) {
+            char c = columnName.charAt(i);
+            boolean valid = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            name.append(valid ? c : '_');
+        }
+        if (name.length() == 0 || Character.isDigit(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+        String fieldName = name.toString();
+        for (int suffix = 2; !fieldNames.add(fieldName); suffix++) {
+            fieldName = name + "_" + suffix;
+        }
+
+        Schema.Field field = new Schema.Field(fieldName, type, null, (Object) null);
+        field.addProp(COLUMN_PROPERTY, columnName);
+        return field;
+    }
+}
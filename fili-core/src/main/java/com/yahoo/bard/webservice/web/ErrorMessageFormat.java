@@ -233,7 +233,13 @@ public enum ErrorMessageFormat implements MessageFormatter {
     ),
 
     TOO_MANY_BACKING_DATA_SOURCES("TableDataSource built with too many backing data sources: %s"),
-    TOO_FEW_BACKING_DATA_SOURCES("TableDataSource built with insufficient backing data sources: %s")
+    TOO_FEW_BACKING_DATA_SOURCES("TableDataSource built with insufficient backing data sources: %s"),
+
+    ADMISSION_COST_EXCEEDED(
+            "Too many costly requests are being processed. Try again later, or reduce interval, granularity or " +
+                    "dimensions.",
+            "Request costing %d was not admitted before the admission queue timeout"
+    )
     ;
 
     private final String messageFormat;
@@ -7,9 +7,7 @@ import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
-import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
-import com.yahoo.bard.webservice.data.dimension.DimensionRow;
 import com.yahoo.bard.webservice.data.metric.LogicalMetric;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
 import com.yahoo.bard.webservice.util.DateTimeFormatterFactory;
@@ -20,7 +18,7 @@ import com.yahoo.bard.webservice.util.StreamUtils;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 
@@ -41,7 +39,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -53,6 +50,9 @@ import javax.ws.rs.core.StreamingOutput;
 public class Response {
 
     private static final Logger LOG = LoggerFactory.getLogger(Response.class);
+
+    public static final String AVRO_CONTENT_TYPE = "avro/binary";
+
     private static final Map<Dimension, Map<DimensionField, String>> DIMENSION_FIELD_COLUMN_NAMES = new HashMap<>();
 
     private final ResultSet resultSet;
@@ -153,6 +153,8 @@ public class Response {
     public void write(OutputStream os) throws IOException {
         if (responseFormatType == ResponseFormatType.CSV) {
             writeCsvResponse(os);
+        } else if (responseFormatType == ResponseFormatType.AVRO) {
+            writeAvroResponse(os);
         } else if (responseFormatType == ResponseFormatType.JSONAPI) {
             writeJsonApiResponse(os, missingIntervals, volatileIntervals, pagination);
         } else {
@@ -225,11 +227,8 @@ public class Response {
     ) throws IOException {
 
         try (JsonGenerator generator = jsonFactory.createGenerator(os)) {
-            // Holder for the dimension rows in the result set
-            Map<Dimension, Set<Map<DimensionField, String>>> sidecars = new HashMap<>();
-            for (DimensionColumn dimensionColumn : resultSet.getSchema().getColumns(DimensionColumn.class)) {
-                sidecars.put(dimensionColumn.getDimension(), new LinkedHashSet<>());
-            }
+            // Collects the dimension rows in the result set for the sidecars
+            ResponseRowWriter rowWriter = buildRowWriter();
 
             // Start the top-level JSON object
             generator.writeStartObject();
@@ -237,24 +236,12 @@ public class Response {
             // Write the data rows and extract the dimension rows for the sidecars
             generator.writeArrayFieldStart("rows");
             for (Result result : resultSet) {
-                generator.writeObject(buildResultRowWithSidecars(result, sidecars));
+                rowWriter.writeRowWithSidecars(generator, result);
             }
             generator.writeEndArray();
 
             // Write the sidecar for each dimension
-            for (Entry<Dimension, Set<Map<DimensionField, String>>> sidecar : sidecars.entrySet()) {
-                generator.writeArrayFieldStart(sidecar.getKey().getApiName());
-                for (Map<DimensionField, String> dimensionRow : sidecar.getValue()) {
-
-                    // Write each of the sidecar rows
-                    generator.writeStartObject();
-                    for (DimensionField dimensionField : dimensionRow.keySet()) {
-                        generator.writeObjectField(dimensionField.getName(), dimensionRow.get(dimensionField));
-                    }
-                    generator.writeEndObject();
-                }
-                generator.writeEndArray();
-            }
+            rowWriter.writeSidecars(generator);
 
             writeMetaObject(generator, missingIntervals, volatileIntervals, pagination);
 
@@ -309,9 +296,10 @@ public class Response {
         try (JsonGenerator g = jsonFactory.createGenerator(os)) {
             g.writeStartObject();
 
+            ResponseRowWriter rowWriter = buildRowWriter();
             g.writeArrayFieldStart("rows");
             for (Result result : resultSet) {
-                g.writeObject(buildResultRow(result));
+                rowWriter.writeRow(g, result);
             }
             g.writeEndArray();
 
@@ -337,27 +325,46 @@ public class Response {
         // Just write the header first
         csvMapper.writer().with(schema.withSkipFirstDataRow(true)).writeValue(os, Collections.emptyMap());
 
-        ObjectWriter writer = csvMapper.writer().with(schema.withoutHeader());
+        ResponseRowWriter rowWriter = buildRowWriter();
+        try (CsvGenerator generator = csvMapper.getFactory().createGenerator(os)) {
+            generator.setSchema(schema.withoutHeader());
+            for (Result result : resultSet) {
+                rowWriter.writeRow(generator, result);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to write CSV data rows", e);
+            throw e;
+        }
+    }
 
+    /**
+     * Writes Avro response, as an Avro object container file.
+     *
+     * @param os  OutputStream
+     *
+     * @throws IOException if a problem is encountered writing to the OutputStream
+     *
+     * @see AvroResponseWriter
+     */
+    private void writeAvroResponse(OutputStream os) throws IOException {
         try {
-            resultSet.stream()
-                    .map(this::buildResultRow)
-                    .forEachOrdered(
-                            row -> {
-                                try {
-                                    writer.writeValue(os, row);
-                                } catch (IOException ioe) {
-                                    String msg = String.format("Unable to write CSV data row: %s", row);
-                                    LOG.error(msg, ioe);
-                                    throw new RuntimeException(msg, ioe);
-                                }
-                            }
-                    );
-        } catch (RuntimeException re) {
-            throw new IOException(re);
+            new AvroResponseWriter(resultSet.getSchema(), apiMetricColumns, requestedApiDimensionFields)
+                    .write(os, resultSet);
+        } catch (IOException e) {
+            LOG.error("Unable to write Avro: {}", e.toString());
+            throw e;
         }
     }
 
+    /**
+     * Build the writer of the rows of this response.
+     *
+     * @return the row writer
+     */
+    private ResponseRowWriter buildRowWriter() {
+        return new ResponseRowWriter(resultSet.getSchema(), apiMetricColumns, requestedApiDimensionFields);
+    }
+
     /**
      * Builds a set of only those metric columns which correspond to the metrics requested in the API.
      *
@@ -408,97 +415,6 @@ public class Response {
         }
     }
 
-    /**
-     * Builds map of result row from a result.
-     *
-     * @param result  the result to process
-     *
-     * @return map of result row
-     */
-    private Map<String, Object> buildResultRow(Result result) {
-        Map<String, Object> row = new LinkedHashMap<>();
-        row.put("dateTime", result.getTimeStamp().toString(DateTimeFormatterFactory.getOutputFormatter()));
-
-        // Loop through the Map<DimensionColumn, DimensionRow> and format it to dimensionColumnName : dimensionRowDesc
-        Map<DimensionColumn, DimensionRow> dr = result.getDimensionRows();
-        for (Entry<DimensionColumn, DimensionRow> dce : dr.entrySet()) {
-            DimensionRow drow = dce.getValue();
-            Dimension dimension = dce.getKey().getDimension();
-
-            Set<DimensionField> requestedDimensionFields;
-            if (requestedApiDimensionFields.get(dimension) != null) {
-                requestedDimensionFields = requestedApiDimensionFields.get(dimension);
-
-                // When no fields are requested, show the key field
-                if (requestedDimensionFields.isEmpty()) {
-                    // When no fields are requested, show the key field
-                    row.put(dimension.getApiName(), drow.get(dimension.getKey()));
-                } else {
-                    // Otherwise, show the fields requested, with the pipe-separated name
-                    for (DimensionField dimensionField : requestedDimensionFields) {
-                        row.put(getDimensionColumnName(dimension, dimensionField), drow.get(dimensionField));
-                    }
-                }
-            }
-        }
-
-        // Loop through the Map<MetricColumn, Object> and format it to a metricColumnName: metricValue map
-        for (MetricColumn apiMetricColumn : apiMetricColumns) {
-            row.put(apiMetricColumn.getName(), result.getMetricValue(apiMetricColumn));
-        }
-        return row;
-    }
-
-    /**
-     * Builds map of result row from a result and loads the dimension rows into the sidecar map.
-     *
-     * @param result  the result to process
-     * @param sidecars  Map of sidecar data (dimension rows in the result)
-     *
-     * @return map of result row
-     */
-    private Map<String, Object> buildResultRowWithSidecars(
-            Result result,
-            Map<Dimension, Set<Map<DimensionField, String>>> sidecars
-    ) {
-
-        Map<String, Object> row = new LinkedHashMap<>();
-        row.put("dateTime", result.getTimeStamp().toString(DateTimeFormatterFactory.getOutputFormatter()));
-
-        // Loop through the Map<DimensionColumn, DimensionRow> and format it to dimensionColumnName : dimensionRowKey
-        Map<DimensionColumn, DimensionRow> dr = result.getDimensionRows();
-        for (Entry<DimensionColumn, DimensionRow> dimensionColumnEntry : dr.entrySet()) {
-            // Get the pieces we need out of the map entry
-            Dimension dimension = dimensionColumnEntry.getKey().getDimension();
-            DimensionRow dimensionRow = dimensionColumnEntry.getValue();
-
-            if (requestedApiDimensionFields.get(dimension) != null) {
-                // add sidecar only if at-least one field needs to be shown
-                Set<DimensionField> requestedDimensionFields = requestedApiDimensionFields.get(dimension);
-                if (requestedDimensionFields.size() > 0) {
-                    // The key field is required
-                    requestedDimensionFields.add(dimension.getKey());
-
-                    //
-                    Map<DimensionField, String> dimensionFieldToValueMap = requestedDimensionFields.stream()
-                            .collect(StreamUtils.toLinkedMap(Function.identity(), dimensionRow::get));
-
-                    // Add the dimension row's requested fields to the sidecar map
-                    sidecars.get(dimension).add(dimensionFieldToValueMap);
-                }
-            }
-
-            // Put the dimension name and dimension row's key value into the row map
-            row.put(dimension.getApiName(), dimensionRow.get(dimension.getKey()));
-        }
-
-        // Loop through the Map<MetricColumn, Object> and format it to a metricColumnName: metricValue map
-        for (MetricColumn apiMetricColumn : apiMetricColumns) {
-            row.put(apiMetricColumn.getName(), result.getMetricValue(apiMetricColumn));
-        }
-        return row;
-    }
-
     /**
      * Build a list of interval strings. Format of interval string: yyyy-MM-dd' 'HH:mm:ss/yyyy-MM-dd' 'HH:mm:ss
      *
@@ -520,7 +436,7 @@ public class Response {
      *
      * @return The name for the dimension and column as it will appear in the response document
      */
-    private static String getDimensionColumnName(Dimension dimension, DimensionField dimensionField) {
+    static String getDimensionColumnName(Dimension dimension, DimensionField dimensionField) {
         Map<DimensionField, String> columnNamesForDimensionFields;
         columnNamesForDimensionFields = DIMENSION_FIELD_COLUMN_NAMES.computeIfAbsent(
                 dimension,
@@ -11,7 +11,8 @@ public enum ResponseFormatType {
     JSON,
     CSV,
     DEBUG,
-    JSONAPI;
+    JSONAPI,
+    AVRO;
 
     @Override
     public String toString() {
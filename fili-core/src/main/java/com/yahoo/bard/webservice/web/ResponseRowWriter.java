@@ -0,0 +1,288 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web;
+
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.ResultSetSchema;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionField;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+import com.yahoo.bard.webservice.util.DateTimeFormatterFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the rows of a response straight to a JsonGenerator, for JSON, JSON-API and CSV responses.
+ * <p>
+ * The columns of the rows are worked out once for the response, from the schema of its result set, the requested
+ * metrics and the requested fields of each dimension, with the field names encoded ahead of time. Rows are then
+ * written field by field, without building a map for each row, and with numeric metric values written as numbers.
+ */
+public class ResponseRowWriter {
+
+    private static final SerializableString DATE_TIME = new SerializedString("dateTime");
+
+    private final DateTimeFormatter dateTimeFormatter = DateTimeFormatterFactory.getOutputFormatter();
+    private final Map<Dimension, LinkedHashSet<DimensionField>> requestedApiDimensionFields;
+    private final Map<Dimension, DimensionColumns> dimensionColumns = new HashMap<>();
+    private final MetricColumn[] metricColumns;
+    private final SerializableString[] metricNames;
+
+    // Dimension rows seen in JSON-API rows, to be written in the sidecars of their dimension
+    private final Map<Dimension, Set<List<String>>> sidecars = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The schema of the result set whose rows are written
+     * @param apiMetricColumns  The metric columns requested, in the order in which to write them
+     * @param requestedApiDimensionFields  The fields for each dimension that should be shown in the response
+     */
+    public ResponseRowWriter(
+            ResultSetSchema schema,
+            Set<MetricColumn> apiMetricColumns,
+            LinkedHashMap<Dimension, LinkedHashSet<DimensionField>> requestedApiDimensionFields
+    ) {
+        this.requestedApiDimensionFields = requestedApiDimensionFields;
+        for (DimensionColumn dimensionColumn : schema.getColumns(DimensionColumn.class)) {
+            sidecars.put(dimensionColumn.getDimension(), new LinkedHashSet<>());
+            getDimensionColumns(dimensionColumn.getDimension());
+        }
+
+        metricColumns = apiMetricColumns.toArray(new MetricColumn[apiMetricColumns.size()]);
+        metricNames = new SerializableString[metricColumns.length];
+        for (int i = 0; i < metricColumns.length; i++) {
+            metricNames[i] = new SerializedString(metricColumns[i].getName());
+        }
+    }
+
+    /**
+     * Write a row of a JSON or CSV response, showing the requested fields of each requested dimension.
+     *
+     * @param generator  The generator to write the row to
+     * @param result  The row to write
+     *
+     * @throws IOException if the generator fails to write the row
+     */
+    public void writeRow(JsonGenerator generator, Result result) throws IOException {
+        generator.writeStartObject();
+        writeDateTime(generator, result);
+
+        for (Map.Entry<DimensionColumn, DimensionRow> entry : result.getDimensionRows().entrySet()) {
+            DimensionColumns columns = getDimensionColumns(entry.getKey().getDimension());
+            if (!columns.requested) {
+                continue;
+            }
+            DimensionRow dimensionRow = entry.getValue();
+            for (int i = 0; i < columns.fields.length; i++) {
+                generator.writeFieldName(columns.names[i]);
+                generator.writeString(dimensionRow.get(columns.fields[i]));
+            }
+        }
+
+        writeMetrics(generator, result);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write a row of a JSON-API response, showing the key of each dimension, and keep the requested fields of its
+     * dimension rows for the sidecars.
+     *
+     * @param generator  The generator to write the row to
+     * @param result  The row to write
+     *
+     * @throws IOException if the generator fails to write the row
+     */
+    public void writeRowWithSidecars(JsonGenerator generator, Result result) throws IOException {
+        generator.writeStartObject();
+        writeDateTime(generator, result);
+
+        for (Map.Entry<DimensionColumn, DimensionRow> entry : result.getDimensionRows().entrySet()) {
+            DimensionColumns columns = getDimensionColumns(entry.getKey().getDimension());
+            DimensionRow dimensionRow = entry.getValue();
+            if (columns.sidecarFields.length > 0) {
+                String[] values = new String[columns.sidecarFields.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = dimensionRow.get(columns.sidecarFields[i]);
+                }
+                sidecars.get(columns.dimension).add(Arrays.asList(values));
+            }
+            generator.writeFieldName(columns.apiName);
+            generator.writeString(dimensionRow.get(columns.dimension.getKey()));
+        }
+
+        writeMetrics(generator, result);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write the sidecar of each dimension of the result set, holding the dimension rows kept from the JSON-API rows.
+     *
+     * @param generator  The generator to write the sidecars to
+     *
+     * @throws IOException if the generator fails to write the sidecars
+     */
+    public void writeSidecars(JsonGenerator generator) throws IOException {
+        for (Map.Entry<Dimension, Set<List<String>>> sidecar : sidecars.entrySet()) {
+            DimensionColumns columns = getDimensionColumns(sidecar.getKey());
+            generator.writeFieldName(columns.apiName);
+            generator.writeStartArray();
+            for (List<String> values : sidecar.getValue()) {
+                generator.writeStartObject();
+                for (int i = 0; i < columns.sidecarNames.length; i++) {
+                    generator.writeFieldName(columns.sidecarNames[i]);
+                    generator.writeString(values.get(i));
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Write the timestamp of a row.
+     *
+     * @param generator  The generator to write the timestamp to
+     * @param result  The row
+     *
+     * @throws IOException if the generator fails to write the timestamp
+     */
+    private void writeDateTime(JsonGenerator generator, Result result) throws IOException {
+        generator.writeFieldName(DATE_TIME);
+        generator.writeString(result.getTimeStamp().toString(dateTimeFormatter));
+    }
+
+    /**
+     * Write the requested metrics of a row.
+     *
+     * @param generator  The generator to write the metrics to
+     * @param result  The row
+     *
+     * @throws IOException if the generator fails to write the metrics
+     */
+    private void writeMetrics(JsonGenerator generator, Result result) throws IOException {
+        for (int i = 0; i < metricColumns.length; i++) {
+            generator.writeFieldName(metricNames[i]);
+            writeMetricValue(generator, result.getMetricValue(metricColumns[i]));
+        }
+    }
+
+    /**
+     * Write a metric value, writing numbers, strings and booleans directly and other values through the codec of the
+     * generator.
+     *
+     * @param generator  The generator to write the value to
+     * @param value  The metric value
+     *
+     * @throws IOException if the generator fails to write the value
+     */
+    private static void writeMetricValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((double) (Double) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((long) (Long) value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((int) (Integer) value);
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    /**
+     * Get the columns of a dimension, working them out the first time the dimension is seen.
+     *
+     * @param dimension  The dimension
+     *
+     * @return the columns of the dimension
+     */
+    private DimensionColumns getDimensionColumns(Dimension dimension) {
+        return dimensionColumns.computeIfAbsent(
+                dimension,
+                key -> new DimensionColumns(key, requestedApiDimensionFields.get(key))
+        );
+    }
+
+    /**
+     * The columns written for a dimension, with their names encoded.
+     */
+    private static class DimensionColumns {
+        private final Dimension dimension;
+        private final SerializableString apiName;
+        private final boolean requested;
+
+        // Fields shown in JSON and CSV rows
+        private final DimensionField[] fields;
+        private final SerializableString[] names;
+
+        // Fields shown in JSON-API sidecars
+        private final DimensionField[] sidecarFields;
+        private final SerializableString[] sidecarNames;
+
+        /**
+         * Constructor.
+         *
+         * @param dimension  The dimension
+         * @param requestedFields  The fields requested for the dimension, or null if the dimension was not requested
+         */
+        DimensionColumns(Dimension dimension, Set<DimensionField> requestedFields) {
+            this.dimension = dimension;
+            this.apiName = new SerializedString(dimension.getApiName());
+            this.requested = requestedFields != null;
+
+            if (requestedFields == null) {
+                fields = new DimensionField[0];
+                names = new SerializableString[0];
+            } else if (requestedFields.isEmpty()) {
+                // When no fields are requested, show the key field
+                fields = new DimensionField[] {dimension.getKey()};
+                names = new SerializableString[] {apiName};
+            } else {
+                // Otherwise, show the fields requested, with the pipe-separated name
+                fields = requestedFields.toArray(new DimensionField[requestedFields.size()]);
+                names = new SerializableString[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    names[i] = new SerializedString(Response.getDimensionColumnName(dimension, fields[i]));
+                }
+            }
+
+            // Sidecars hold the requested fields, and the key field, which is always shown
+            List<DimensionField> sidecarFieldList = new ArrayList<>();
+            if (requestedFields != null && !requestedFields.isEmpty()) {
+                sidecarFieldList.addAll(requestedFields);
+                if (!sidecarFieldList.contains(dimension.getKey())) {
+                    sidecarFieldList.add(dimension.getKey());
+                }
+            }
+            sidecarFields = sidecarFieldList.toArray(new DimensionField[sidecarFieldList.size()]);
+            sidecarNames = new SerializableString[sidecarFields.length];
+            for (int i = 0; i < sidecarFields.length; i++) {
+                sidecarNames[i] = new SerializedString(sidecarFields[i].getName());
+            }
+        }
+    }
+}
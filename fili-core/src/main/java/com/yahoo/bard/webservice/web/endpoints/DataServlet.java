@@ -389,7 +389,7 @@ public class DataServlet extends CORSPreflightServlet implements BardConfigResou
             // Accumulate data needed for request processing workflow
             RequestContext context;
             try (TimedPhase timer = RequestLog.startTiming("BuildRequestContext")) {
-                context = new RequestContext(containerRequestContext, readCache);
+                context = new RequestContext(containerRequestContext, readCache, apiRequest.getAsyncAfter());
             }
 
             //An instance to prepare the Response with different set of arguments
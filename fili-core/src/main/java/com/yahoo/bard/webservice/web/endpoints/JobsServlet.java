@@ -299,7 +299,12 @@ public class JobsServlet extends EndpointServlet {
             // jobsApiRequest.
             JobsApiRequest jobsApiRequest = apiRequest;
 
-            Observable<PreResponse> preResponseObservable = getResults(ticket, apiRequest.getAsyncAfter());
+            // Cached, since the PreResponse is subscribed to both to check for it and to respond with it
+            Observable<PreResponse> preResponseObservable = getResults(
+                    ticket,
+                    apiRequest.getAsyncAfter(),
+                    isStreamingResponse(apiRequest) ? preResponseStore::stream : preResponseStore::get
+            ).cache();
 
             preResponseObservable.isEmpty().subscribe(
                     isEmptyResult -> handlePreResponse(
@@ -361,6 +366,24 @@ public class JobsServlet extends EndpointServlet {
      * @return An Observable wrapping a PreResponse or an empty Observable in case a timeout occurs.
      */
     protected Observable<PreResponse> getResults(@NotNull String ticket, long asyncAfter) {
+        return getResults(ticket, asyncAfter, preResponseStore::get);
+    }
+
+    /**
+     * Get an Observable wrapping a PreResponse, as {@link #getResults(String, long)} does, reading it from the
+     * PreResponseStore with the given read.
+     *
+     * @param ticket  The ticket for which the PreResponse needs to be retrieved.
+     * @param asyncAfter  The minimum duration the request is allowed to last before becoming asynchronous
+     * @param readPreResponse  Reads the PreResponse of a ticket from the PreResponseStore
+     *
+     * @return An Observable wrapping a PreResponse or an empty Observable in case a timeout occurs.
+     */
+    protected Observable<PreResponse> getResults(
+            @NotNull String ticket,
+            long asyncAfter,
+            Function<String, Observable<PreResponse>> readPreResponse
+    ) {
         if (asyncAfter == JobsApiRequest.ASYNCHRONOUS_ASYNC_AFTER_VALUE) {
             // If the user specifies that they always want the asynchronous payload, then we need to force the system
             // to behave like the results are not ready in the store, and the asynchronous timeout has expired even
@@ -388,12 +411,28 @@ public class JobsServlet extends EndpointServlet {
              * If the results are already in the response store, then return them to me. Otherwise, very quickly
              * send back the asynchronous payload.
              */
-            return preResponseStore.get(ticket).switchIfEmpty(
-                    applyTimeoutIfNeeded(broadcastChannelNotifications, asyncAfter).flatMap(preResponseStore::get)
+            return readPreResponse.apply(ticket).switchIfEmpty(
+                    applyTimeoutIfNeeded(broadcastChannelNotifications, asyncAfter).flatMap(readPreResponse::apply)
             );
         }
     }
 
+    /**
+     * Whether the results of a job are streamed from the PreResponseStore as the response is written.
+     * <p>
+     * Only unpaginated JSON and CSV responses are streamed, since pagination and the other formats need every row at
+     * once.
+     *
+     * @param apiRequest  JobsApiRequest object with all the associated info in it
+     *
+     * @return true if the results are read from the store as they are written
+     */
+    protected boolean isStreamingResponse(JobsApiRequest apiRequest) {
+        ResponseFormatType format = apiRequest.getFormat();
+        return !apiRequest.getPaginationParameters().isPresent()
+                && (format == null || format == ResponseFormatType.JSON || format == ResponseFormatType.CSV);
+    }
+
     /**
      * Given an observable, returns a new observable with an asyncAfter timeout applied only if {@code asyncAfter} is
      * not {@code never}.
@@ -144,7 +144,11 @@ public class BardLoggingFilter implements ContainerRequestFilter, ContainerRespo
             msg = response.hasEntity() ? response.getEntity().toString() : "Request without entity failed";
         }
         CacheLastObserver<Long> responseLengthObserver = new CacheLastObserver<>();
-        RequestLog.record(new Epilogue(msg, status, responseLengthObserver));
+        @SuppressWarnings("unchecked")
+        CacheLastObserver<Long> uncompressedLengthObserver = (CacheLastObserver<Long>) request.getProperty(
+                ResponseCompressionFilter.PROPERTY_UNCOMPRESSED_LENGTH
+        );
+        RequestLog.record(new Epilogue(msg, status, responseLengthObserver, uncompressedLengthObserver));
 
         // if response is not yet finalized, we must intercept the output stream
         if (response.getLength() == -1 && response.hasEntity()) {
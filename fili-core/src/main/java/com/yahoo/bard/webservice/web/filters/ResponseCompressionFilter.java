@@ -0,0 +1,296 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.filters;
+
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.util.CacheLastObserver;
+
+import rx.Observer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Priority;
+import javax.inject.Singleton;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses response entities as they are streamed to clients which accept a gzip content encoding.
+ * <p>
+ * Compression is negotiated through the {@code Accept-Encoding} header of the request, and applies once the
+ * {@code response_compression_enabled} feature flag is on. The first {@code response_compression_min_bytes} bytes of
+ * the response are held back, and a response which ends before then is sent uncompressed, so small responses are not
+ * compressed. Responses are compressed at {@code response_compression_level}, from 0 (no compression) to 9 (best
+ * compression), and the filter fails to build with any other level.
+ * <p>
+ * The number of bytes of the response before compression is published to the observer in the
+ * {@link #PROPERTY_UNCOMPRESSED_LENGTH} request property, for logging along with the number of bytes sent.
+ */
+@Singleton
+@Priority(6)
+public class ResponseCompressionFilter implements ContainerResponseFilter, WriterInterceptor {
+
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    public static final String GZIP = "gzip";
+    public static final String PROPERTY_UNCOMPRESSED_LENGTH = ResponseCompressionFilter.class.getName() + ".length";
+    private static final String PROPERTY_ENCODING = ResponseCompressionFilter.class.getName() + ".encoding";
+
+    private static final String LEVEL_KEY = SYSTEM_CONFIG.getPackageVariableName("response_compression_level");
+    private static final String MIN_BYTES_KEY = SYSTEM_CONFIG.getPackageVariableName("response_compression_min_bytes");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int level;
+    private final int minBytes;
+
+    /**
+     * Constructor, using the configured compression level and minimum size.
+     */
+    public ResponseCompressionFilter() {
+        this(SYSTEM_CONFIG.getIntProperty(LEVEL_KEY, 6), SYSTEM_CONFIG.getIntProperty(MIN_BYTES_KEY, 1024));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param level  The compression level, from 0 (no compression) to 9 (best compression)
+     * @param minBytes  The fewest bytes in a response for it to be compressed
+     *
+     * @throws IllegalArgumentException if the compression level is not from 0 to 9
+     */
+    public ResponseCompressionFilter(int level, int minBytes) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(String.format(
+                    "Response compression level must be from %d to %d, but was %d",
+                    Deflater.NO_COMPRESSION,
+                    Deflater.BEST_COMPRESSION,
+                    level
+            ));
+        }
+        this.level = level;
+        this.minBytes = Math.max(minBytes, 0);
+    }
+
+    /**
+     * Choose whether the entity of the response is compressed.
+     *
+     * @param request  The request
+     * @param response  The response
+     */
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        if (!BardFeatureFlag.RESPONSE_COMPRESSION.isOn() || !response.hasEntity()) {
+            return;
+        }
+        response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)
+                || !acceptsGzip(request.getHeaderString(HttpHeaders.ACCEPT_ENCODING))) {
+            return;
+        }
+        request.setProperty(PROPERTY_ENCODING, GZIP);
+        request.setProperty(PROPERTY_UNCOMPRESSED_LENGTH, new CacheLastObserver<Long>());
+    }
+
+    /**
+     * Compress the entity of the response, if compression was chosen for it.
+     *
+     * @param context  Interceptor to use for intercepting the entity being written
+     *
+     * @throws IOException if the entity cannot be written
+     */
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        String encoding = (String) context.getProperty(PROPERTY_ENCODING);
+        if (encoding == null) {
+            context.proceed();
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Observer<Long> lengthObserver = (Observer<Long>) context.getProperty(PROPERTY_UNCOMPRESSED_LENGTH);
+        MultivaluedMap<String, Object> headers = context.getHeaders();
+        CompressingOutputStream stream = new CompressingOutputStream(
+                context.getOutputStream(),
+                level,
+                minBytes,
+                () -> {
+                    headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+                    headers.remove(HttpHeaders.CONTENT_LENGTH);
+                }
+        );
+        context.setOutputStream(stream);
+        try {
+            context.proceed();
+            stream.finish();
+        } finally {
+            lengthObserver.onNext(stream.getUncompressedLength());
+            lengthObserver.onCompleted();
+        }
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header accepts the gzip content encoding.
+     *
+     * @param acceptEncoding  The value of the header, or null if the request had none
+     *
+     * @return true if gzip is accepted, explicitly or through {@code *}, with a non-zero quality
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException ignored) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals(GZIP) || name.equals("x-gzip")) {
+                gzipQuality = quality;
+            } else if (name.equals("*")) {
+                anyQuality = quality;
+            }
+        }
+        Double quality = gzipQuality != null ? gzipQuality : anyQuality;
+        return quality != null && quality > 0;
+    }
+
+    /**
+     * An output stream which holds back the first bytes written, and compresses what is written only once there are
+     * enough of them.
+     */
+    static class CompressingOutputStream extends OutputStream {
+        private final OutputStream target;
+        private final int level;
+        private final Runnable onCompress;
+
+        private byte[] pending;
+        private int pendingLength;
+        private OutputStream out;
+        private GZIPOutputStream gzip;
+        private long uncompressedLength;
+        private boolean finished;
+
+        /**
+         * Constructor.
+         *
+         * @param target  The stream to write the entity to
+         * @param level  The compression level
+         * @param minBytes  The fewest bytes to compress
+         * @param onCompress  Called once the entity is known to be compressed, before anything is written to the target
+         */
+        CompressingOutputStream(OutputStream target, int level, int minBytes, Runnable onCompress) {
+            this.target = target;
+            this.level = level;
+            this.onCompress = onCompress;
+            this.pending = new byte[minBytes];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            uncompressedLength += len;
+            if (out == null) {
+                if (pendingLength + len < pending.length) {
+                    System.arraycopy(b, off, pending, pendingLength, len);
+                    pendingLength += len;
+                    return;
+                }
+                startCompressing();
+            }
+            out.write(b, off, len);
+        }
+
+        /**
+         * Flush the entity written so far, unless it is still being held back.
+         *
+         * @throws IOException if the target cannot be flushed
+         */
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        /**
+         * Write the rest of the entity, leaving the target open.
+         * <p>
+         * An entity held back in full is written uncompressed.
+         *
+         * @throws IOException if the entity cannot be written
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (out == null) {
+                target.write(pending, 0, pendingLength);
+                pending = null;
+                out = target;
+            } else if (gzip != null) {
+                gzip.finish();
+            }
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            target.close();
+        }
+
+        /**
+         * Get the number of bytes written to this stream, before compression.
+         *
+         * @return the number of bytes written
+         */
+        public long getUncompressedLength() {
+            return uncompressedLength;
+        }
+
+        /**
+         * Start compressing, writing the entity held back through the compressing stream.
+         *
+         * @throws IOException if the entity held back cannot be written
+         */
+        private void startCompressing() throws IOException {
+            onCompress.run();
+            gzip = new GZIPOutputStream(target, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+            out = gzip;
+            out.write(pending, 0, pendingLength);
+            pending = null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import static com.yahoo.bard.webservice.web.ResponseCode.RATE_LIMIT;
+
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.DataApiRequestTypeIdentifier;
+import com.yahoo.bard.webservice.web.ErrorMessageFormat;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.Principal;
+
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.core.SecurityContext;
+
+/**
+ * Request handler which admits requests against the cost budgets of an {@link AdmissionController}.
+ * <p>
+ * Requests which can be charged right away are sent on to the next handler. Other requests wait, and are sent on from
+ * a thread of the admission dispatcher once they are admitted, or fail with a RATE_LIMIT (429) error if they are not
+ * admitted in time. Bypass requests are never charged.
+ */
+public class AdmissionControlRequestHandler extends BaseDataRequestHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControlRequestHandler.class);
+
+    protected final @NotNull DataRequestHandler next;
+    protected final @NotNull AdmissionController admissionController;
+
+    /**
+     * Build an admission control request handler.
+     *
+     * @param next  The next handler in the chain
+     * @param admissionController  The controller charging requests against the cost budgets
+     * @param mapper  The mapper for all JSON processing
+     */
+    public AdmissionControlRequestHandler(
+            DataRequestHandler next,
+            AdmissionController admissionController,
+            ObjectMapper mapper
+    ) {
+        super(mapper);
+        this.next = next;
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public boolean handleRequest(
+            final RequestContext context,
+            final DataApiRequest request,
+            final DruidAggregationQuery<?> druidQuery,
+            final ResponseProcessor response
+    ) {
+        if (DataApiRequestTypeIdentifier.isBypass(context.getHeadersLowerCase())) {
+            return next.handleRequest(context, request, druidQuery, response);
+        }
+
+        String user = getUser(context);
+        long cost = admissionController.estimateCost(druidQuery);
+        if (admissionController.tryAdmit(user, cost)) {
+            return next.handleRequest(context, request, druidQuery, response);
+        }
+
+        // Take the request log off this thread, to continue the request on a thread of the admission dispatcher
+        final RequestLog logCtx = RequestLog.dump();
+        admissionController.enqueue(
+                user,
+                cost,
+                () -> admit(context, request, druidQuery, response, logCtx),
+                () -> reject(druidQuery, response, cost, logCtx)
+        );
+        return true;
+    }
+
+    /**
+     * Send an admitted request on to the next handler, with its request log on the thread.
+     *
+     * @param context  The context of the request
+     * @param request  The request
+     * @param druidQuery  The query
+     * @param response  The response processor of the query
+     * @param logCtx  The request log of the request
+     */
+    private void admit(
+            RequestContext context,
+            DataApiRequest request,
+            DruidAggregationQuery<?> druidQuery,
+            ResponseProcessor response,
+            RequestLog logCtx
+    ) {
+        RequestLog.restore(logCtx);
+        try {
+            if (!next.handleRequest(context, request, druidQuery, response)) {
+                throw new IllegalStateException("No request handler accepted request.");
+            }
+        } catch (RuntimeException e) {
+            LOG.info("Exception processing admitted request", e);
+            response.getFailureCallback(druidQuery).dispatch(e);
+        } finally {
+            RequestLog.dump();
+        }
+    }
+
+    /**
+     * Fail a request which was not admitted in time, with its request log on the thread.
+     *
+     * @param druidQuery  The query
+     * @param response  The response processor of the query
+     * @param cost  The cost of the request
+     * @param logCtx  The request log of the request
+     */
+    private void reject(DruidAggregationQuery<?> druidQuery, ResponseProcessor response, long cost, RequestLog logCtx) {
+        RequestLog.restore(logCtx);
+        try {
+            String reason = ErrorMessageFormat.ADMISSION_COST_EXCEEDED.logFormat(cost);
+            LOG.debug(reason);
+            response.getErrorCallback(druidQuery).dispatch(
+                    RATE_LIMIT.getStatusCode(),
+                    reason,
+                    ErrorMessageFormat.ADMISSION_COST_EXCEEDED.format()
+            );
+        } finally {
+            RequestLog.dump();
+        }
+    }
+
+    /**
+     * Get the name of the user making a request.
+     *
+     * @param context  The context of the request
+     *
+     * @return the name of the user, or an empty string for anonymous requests
+     */
+    private static String getUser(RequestContext context) {
+        SecurityContext securityContext = context.getSecurityContext();
+        Principal user = securityContext == null ? null : securityContext.getUserPrincipal();
+        return user == null || user.getName() == null ? "" : user.getName();
+    }
+}
@@ -0,0 +1,571 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.druid.model.DefaultQueryType;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.TopNQuery;
+import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery;
+import com.yahoo.bard.webservice.util.IntervalUtils;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits requests against cost budgets, so that costly requests use up more of a budget than cheap ones.
+ * <p>
+ * The cost of a request is the number of time buckets its query covers, plus the most rows it can return (the time
+ * buckets times the product of the cardinalities of its grouping dimensions) divided by
+ * {@code admission_rows_per_cost}, plus its worst case weight estimate (see
+ * {@link WeightEvaluationQuery#getWorstCaseWeightEstimate}) divided by {@code admission_worst_case_weight_per_cost}.
+ * Each request is charged its cost against a global budget and against the budget of its user. Budgets are token
+ * buckets: each holds up to {@code admission_cost_budget_global} (or {@code admission_cost_budget_per_user}) and
+ * refills at {@code admission_cost_refill_global} (or {@code admission_cost_refill_per_user}) per second. A request
+ * costing more than a whole budget is charged the whole budget.
+ * <p>
+ * A request which cannot be charged right away waits in a queue for up to {@code admission_queue_timeout}
+ * milliseconds, and is rejected if the budgets have not refilled enough by then. Waiting requests are admitted in
+ * the order they arrived, except that a request waiting only on the budget of its user does not hold back the
+ * requests of other users. The queue is kept on a single thread, which hands admitted and rejected requests to an
+ * executor of {@code admission_dispatch_threads} threads to be continued.
+ * <p>
+ * The number of waiting requests is kept in the {@code admission.counter.queue_depth} counter, the time they wait in
+ * the {@code admission.timer.queue_wait} timer, the costs of requests in the {@code admission.histogram.cost}
+ * histogram and the rejected requests in the {@code admission.meter.rejected} meter.
+ */
+public class AdmissionController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    public static final long GLOBAL_BUDGET = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_cost_budget_global"),
+            100000
+    );
+    public static final long GLOBAL_REFILL_PER_SECOND = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_cost_refill_global"),
+            20000
+    );
+    public static final long USER_BUDGET = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_cost_budget_per_user"),
+            20000
+    );
+    public static final long USER_REFILL_PER_SECOND = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_cost_refill_per_user"),
+            2000
+    );
+    public static final long QUEUE_TIMEOUT_MILLIS = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_queue_timeout"),
+            2000
+    );
+    public static final long WORST_CASE_WEIGHT_PER_COST = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_worst_case_weight_per_cost"),
+            1000
+    );
+    public static final long ROWS_PER_COST = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_rows_per_cost"),
+            1000
+    );
+    public static final int DISPATCH_THREADS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("admission_dispatch_threads"),
+            4
+    );
+
+    public static final Counter QUEUE_DEPTH = REGISTRY.counter("admission.counter.queue_depth");
+    public static final Timer QUEUE_WAIT = REGISTRY.timer("admission.timer.queue_wait");
+    public static final Histogram COST = REGISTRY.histogram("admission.histogram.cost");
+    public static final Meter REJECTED = REGISTRY.meter("admission.meter.rejected");
+
+    private static final ScheduledExecutorService QUEUE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "admission-queue");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private static final Executor DISPATCHER = Executors.newFixedThreadPool(
+            Math.max(DISPATCH_THREADS, 1),
+            runnable -> {
+                Thread thread = new Thread(runnable, "admission-dispatch");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long globalBudget;
+    private final long userBudget;
+    private final long userRefillPerSecond;
+    private final long queueTimeoutNanos;
+    private final long weightPerCost;
+    private final long rowsPerCost;
+    private final ScheduledExecutorService queueScheduler;
+    private final Executor dispatcher;
+    private final LongSupplier nanoClock;
+
+    private final Object lock = new Object();
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> userBuckets;
+    private final LinkedList<Waiter> waiters = new LinkedList<>();
+    private ScheduledFuture<?> drain;
+    private long drainAtNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param globalBudget  Most cost the global budget holds
+     * @param globalRefillPerSecond  Cost the global budget refills by each second
+     * @param userBudget  Most cost the budget of each user holds
+     * @param userRefillPerSecond  Cost the budget of each user refills by each second
+     * @param queueTimeoutMillis  Longest a request waits to be admitted, 0 to reject it right away
+     * @param weightPerCost  Worst case weight estimate charged as one unit of cost
+     * @param rowsPerCost  Most rows a query can return charged as one unit of cost
+     * @param queueScheduler  The scheduler keeping the queue of waiting requests
+     * @param dispatcher  The executor continuing admitted and rejected requests, off the thread of the queue
+     * @param nanoClock  The clock budgets are refilled by, in nanoseconds
+     */
+    public AdmissionController(
+            long globalBudget,
+            long globalRefillPerSecond,
+            long userBudget,
+            long userRefillPerSecond,
+            long queueTimeoutMillis,
+            long weightPerCost,
+            long rowsPerCost,
+            ScheduledExecutorService queueScheduler,
+            Executor dispatcher,
+            LongSupplier nanoClock
+    ) {
+        this.globalBudget = globalBudget;
+        this.userBudget = userBudget;
+        this.userRefillPerSecond = userRefillPerSecond;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(queueTimeoutMillis, 0));
+        this.weightPerCost = Math.max(weightPerCost, 1);
+        this.rowsPerCost = Math.max(rowsPerCost, 1);
+        this.queueScheduler = queueScheduler;
+        this.dispatcher = dispatcher;
+        this.nanoClock = nanoClock;
+
+        globalBucket = new TokenBucket(globalBudget, globalRefillPerSecond, nanoClock.getAsLong());
+        // Least recently charged first, so that the budgets of users who have gone away are dropped once refilled
+        userBuckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return eldest.getValue().isFull(AdmissionController.this.nanoClock.getAsLong());
+            }
+        };
+    }
+
+    /**
+     * Constructor, using the configured budgets.
+     */
+    public AdmissionController() {
+        this(
+                GLOBAL_BUDGET,
+                GLOBAL_REFILL_PER_SECOND,
+                USER_BUDGET,
+                USER_REFILL_PER_SECOND,
+                QUEUE_TIMEOUT_MILLIS,
+                WORST_CASE_WEIGHT_PER_COST,
+                ROWS_PER_COST,
+                QUEUE_SCHEDULER,
+                DISPATCHER,
+                System::nanoTime
+        );
+    }
+
+    /**
+     * Estimate the cost of a query.
+     *
+     * @param query  The query to estimate
+     *
+     * @return the number of time buckets of the query plus its scaled most rows and worst case weight, at least 1
+     */
+    public long estimateCost(DruidAggregationQuery<?> query) {
+        DruidAggregationQuery<?> innerQuery = query.getInnermostQuery();
+        long periods = Math.max(
+                IntervalUtils.countSlicedIntervals(innerQuery.getIntervals(), innerQuery.getGranularity()),
+                1
+        );
+        long rows;
+        long weight;
+        try {
+            rows = Math.multiplyExact(periods, estimateRowsPerPeriod(innerQuery));
+        } catch (ArithmeticException e) {
+            rows = Long.MAX_VALUE;
+        }
+        try {
+            weight = WeightEvaluationQuery.getWorstCaseWeightEstimate(query);
+        } catch (ArithmeticException e) {
+            weight = Long.MAX_VALUE;
+        }
+        long cost = periods + rows / rowsPerCost;
+        // Saturate rather than overflow
+        cost = cost < 0 ? Long.MAX_VALUE : cost + weight / weightPerCost;
+        return cost < 0 ? Long.MAX_VALUE : cost;
+    }
+
+    /**
+     * Estimate the most rows a query can return for each time bucket, from the cardinalities of its dimensions.
+     * <p>
+     * Dimensions of unknown cardinality are not counted, and top N queries return at most their threshold.
+     *
+     * @param innerQuery  The innermost query
+     *
+     * @return the product of the cardinalities of the grouping dimensions, at least 1
+     *
+     * @throws ArithmeticException if the estimate is larger than {@link Long#MAX_VALUE}
+     */
+    private static long estimateRowsPerPeriod(DruidAggregationQuery<?> innerQuery) {
+        if (innerQuery.getQueryType() == DefaultQueryType.TOP_N) {
+            TopNQuery topNQuery = (TopNQuery) innerQuery;
+            long cardinality = topNQuery.getDimension().getCardinality();
+            long threshold = Math.max(topNQuery.getThreshold(), 1);
+            return cardinality > 0 ? Math.min(cardinality, threshold) : threshold;
+        }
+        return innerQuery.getDimensions().stream()
+                .mapToLong(Dimension::getCardinality)
+                .filter(cardinality -> cardinality > 0)
+                .reduce(1, Math::multiplyExact);
+    }
+
+    /**
+     * Charge a request against the budgets if it can be admitted right away.
+     * <p>
+     * Requests are not admitted ahead of requests already waiting.
+     *
+     * @param user  The user making the request
+     * @param cost  The cost of the request
+     *
+     * @return true if the request was charged and admitted, false if it has to wait
+     */
+    public boolean tryAdmit(String user, long cost) {
+        COST.update(cost);
+        synchronized (lock) {
+            return waiters.isEmpty() && charge(user, cost, nanoClock.getAsLong()) == Blocked.NONE;
+        }
+    }
+
+    /**
+     * Queue a request until the budgets can be charged for it, or until it has waited too long.
+     * <p>
+     * Either the admission or the rejection is run, once, on the dispatcher.
+     *
+     * @param user  The user making the request
+     * @param cost  The cost of the request
+     * @param admit  Continues the request once it has been admitted
+     * @param reject  Rejects the request, if it has not been admitted in time
+     */
+    public void enqueue(String user, long cost, Runnable admit, Runnable reject) {
+        long now = nanoClock.getAsLong();
+        Waiter waiter = new Waiter(user, cost, now, now + queueTimeoutNanos, admit, reject);
+        synchronized (lock) {
+            waiters.add(waiter);
+        }
+        QUEUE_DEPTH.inc();
+        scheduleDrain(now, now);
+    }
+
+    /**
+     * Get the number of requests waiting to be admitted.
+     *
+     * @return the number of waiting requests
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * Charge the budgets for a request, if both can be charged.
+     *
+     * @param user  The user making the request
+     * @param cost  The cost of the request
+     * @param now  The time, in nanoseconds
+     *
+     * @return the budget which could not be charged, if any
+     */
+    private Blocked charge(String user, long cost, long now) {
+        long globalCost = Math.min(cost, globalBudget);
+        if (!globalBucket.canTake(globalCost, now)) {
+            return Blocked.GLOBAL;
+        }
+        long userCost = Math.min(cost, userBudget);
+        TokenBucket userBucket = userBuckets.get(user);
+        if (userBucket == null) {
+            userBucket = new TokenBucket(userBudget, userRefillPerSecond, now);
+        }
+        if (!userBucket.canTake(userCost, now)) {
+            return Blocked.USER;
+        }
+        globalBucket.take(globalCost);
+        userBucket.take(userCost);
+        userBuckets.put(user, userBucket);
+        return Blocked.NONE;
+    }
+
+    /**
+     * Admit the waiting requests the budgets can be charged for, and reject the ones which have waited too long.
+     */
+    private void drain() {
+        List<Waiter> admitted = new ArrayList<>();
+        List<Waiter> rejected = new ArrayList<>();
+        long now = nanoClock.getAsLong();
+        long nextWait = Long.MAX_VALUE;
+        synchronized (lock) {
+            drain = null;
+            boolean globalBlocked = false;
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                Blocked blocked = globalBlocked ? Blocked.GLOBAL : charge(waiter.user, waiter.cost, now);
+                if (blocked == Blocked.NONE) {
+                    iterator.remove();
+                    admitted.add(waiter);
+                } else if (waiter.deadlineNanos - now <= 0) {
+                    iterator.remove();
+                    rejected.add(waiter);
+                } else {
+                    // Requests behind one waiting on the global budget wait their turn for it
+                    globalBlocked |= blocked == Blocked.GLOBAL;
+                    long wait = Math.min(nanosUntilCharged(waiter, now), waiter.deadlineNanos - now);
+                    nextWait = Math.min(nextWait, wait);
+                }
+            }
+        }
+
+        QUEUE_DEPTH.dec(admitted.size() + rejected.size());
+        for (Waiter waiter : admitted) {
+            QUEUE_WAIT.update(now - waiter.queuedNanos, TimeUnit.NANOSECONDS);
+            dispatch(waiter.admit);
+        }
+        for (Waiter waiter : rejected) {
+            REJECTED.mark();
+            LOG.debug("Request of {} costing {} was not admitted in time", waiter.user, waiter.cost);
+            dispatch(waiter.reject);
+        }
+        if (nextWait != Long.MAX_VALUE) {
+            scheduleDrain(now, now + nextWait);
+        }
+    }
+
+    /**
+     * Estimate how long until both budgets refill enough to charge a waiting request.
+     *
+     * @param waiter  The waiting request
+     * @param now  The time, in nanoseconds
+     *
+     * @return the time until the request could be charged, in nanoseconds, at least 1
+     */
+    private long nanosUntilCharged(Waiter waiter, long now) {
+        TokenBucket userBucket = userBuckets.get(waiter.user);
+        long userWait = userBucket == null ? 0 : userBucket.nanosUntil(Math.min(waiter.cost, userBudget), now);
+        long globalWait = globalBucket.nanosUntil(Math.min(waiter.cost, globalBudget), now);
+        return Math.max(Math.max(userWait, globalWait), 1);
+    }
+
+    /**
+     * Schedule a drain of the queue, unless one is already scheduled as soon.
+     *
+     * @param now  The time, in nanoseconds
+     * @param at  When to drain the queue, in nanoseconds
+     */
+    private void scheduleDrain(long now, long at) {
+        synchronized (lock) {
+            if (drain != null && drainAtNanos - at <= 0) {
+                return;
+            }
+            if (drain != null) {
+                drain.cancel(false);
+            }
+            drainAtNanos = at;
+            drain = queueScheduler.schedule(this::drain, Math.max(at - now, 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Hand the admission or rejection of a request to the dispatcher, so that the thread of the queue is kept free to
+     * admit and reject other requests.
+     * <p>
+     * If the dispatcher refuses it, the action is run on the thread of the queue rather than dropped.
+     *
+     * @param action  The admission or rejection
+     */
+    private void dispatch(Runnable action) {
+        try {
+            dispatcher.execute(() -> run(action));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Admission dispatcher refused a queued request, continuing it on the queue thread", e);
+            run(action);
+        }
+    }
+
+    /**
+     * Run the admission or rejection of a request, so that one failing does not stop the others.
+     *
+     * @param action  The admission or rejection
+     */
+    private static void run(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            LOG.error("Admitting or rejecting a queued request failed", e);
+        }
+    }
+
+    /**
+     * Which budget could not be charged for a request.
+     */
+    private enum Blocked {
+        NONE, GLOBAL, USER
+    }
+
+    /**
+     * A budget of cost which refills at a steady rate, up to its capacity.
+     */
+    private static class TokenBucket {
+        private final long capacity;
+        private final long refillPerSecond;
+        private double tokens;
+        private long refilledNanos;
+
+        /**
+         * Constructor, for a full bucket.
+         *
+         * @param capacity  Most cost the bucket holds
+         * @param refillPerSecond  Cost the bucket refills by each second
+         * @param now  The time, in nanoseconds
+         */
+        TokenBucket(long capacity, long refillPerSecond, long now) {
+            this.capacity = capacity;
+            this.refillPerSecond = refillPerSecond;
+            this.tokens = capacity;
+            this.refilledNanos = now;
+        }
+
+        /**
+         * Refill the bucket for the time since it was last refilled.
+         *
+         * @param now  The time, in nanoseconds
+         */
+        private void refill(long now) {
+            long elapsed = now - refilledNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * (double) refillPerSecond / NANOS_PER_SECOND);
+                refilledNanos = now;
+            }
+        }
+
+        /**
+         * Whether the bucket holds enough for a cost.
+         *
+         * @param cost  The cost
+         * @param now  The time, in nanoseconds
+         *
+         * @return true if the cost can be taken
+         */
+        boolean canTake(long cost, long now) {
+            refill(now);
+            return tokens >= cost;
+        }
+
+        /**
+         * Take a cost from the bucket, once it is known to hold enough.
+         *
+         * @param cost  The cost
+         */
+        void take(long cost) {
+            tokens -= cost;
+        }
+
+        /**
+         * Whether the bucket has refilled completely, and so is no different from a new bucket.
+         *
+         * @param now  The time, in nanoseconds
+         *
+         * @return true if the bucket is full
+         */
+        boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        /**
+         * How long until the bucket holds enough for a cost.
+         *
+         * @param cost  The cost
+         * @param now  The time, in nanoseconds
+         *
+         * @return the time until the cost can be taken, in nanoseconds
+         */
+        long nanosUntil(long cost, long now) {
+            refill(now);
+            if (tokens >= cost) {
+                return 0;
+            }
+            if (refillPerSecond <= 0) {
+                return Long.MAX_VALUE;
+            }
+            return (long) Math.ceil((cost - tokens) * NANOS_PER_SECOND / refillPerSecond);
+        }
+    }
+
+    /**
+     * A request waiting to be admitted.
+     */
+    private static class Waiter {
+        private final String user;
+        private final long cost;
+        private final long queuedNanos;
+        private final long deadlineNanos;
+        private final Runnable admit;
+        private final Runnable reject;
+
+        /**
+         * Constructor.
+         *
+         * @param user  The user making the request
+         * @param cost  The cost of the request
+         * @param queuedNanos  When the request was queued, in nanoseconds
+         * @param deadlineNanos  When the request is rejected if not yet admitted, in nanoseconds
+         * @param admit  Continues the request once it has been admitted
+         * @param reject  Rejects the request
+         */
+        Waiter(String user, long cost, long queuedNanos, long deadlineNanos, Runnable admit, Runnable reject) {
+            this.user = user;
+            this.cost = cost;
+            this.queuedNanos = queuedNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.admit = admit;
+            this.reject = reject;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESP
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
 import com.yahoo.bard.webservice.data.cache.DataCache;
+import com.yahoo.bard.webservice.data.cache.TieredTupleDataCache;
 import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.logging.RequestLog;
@@ -29,7 +30,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 import javax.validation.constraints.NotNull;
 
@@ -87,7 +93,12 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
             cacheKey = getKey(druidQuery);
 
             if (context.isReadCache()) {
-                final TupleDataCache.DataEntry<String, Long, String> cacheEntry = dataCache.get(cacheKey);
+                // Use the entry read ahead with the other queries of the request, if there is one
+                Optional<TupleDataCache.DataEntry<String, Long, String>> prefetchedEntry =
+                        context.getPrefetchedCacheEntries().remove(cacheKey);
+                final TupleDataCache.DataEntry<String, Long, String> cacheEntry = prefetchedEntry != null
+                        ? prefetchedEntry.orElse(null)
+                        : dataCache.get(cacheKey);
                 CACHE_REQUESTS.mark(1);
 
                 if (cacheEntry != null) {
@@ -99,23 +110,9 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
                                     .orElse(false)
                     ) {
                         try {
-                            if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
-                                RequestLog.record(new BardQueryInfo(druidQuery.getQueryType().toJson(), true));
-                                RequestLog.stopTiming(REQUEST_WORKFLOW_TIMER);
-                            }
-
-                            if (context.getNumberOfIncoming().decrementAndGet() == 0) {
-                                RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
-                            }
-
+                            JsonNode cachedResponse = readValue(cacheEntry);
                             CACHE_HITS.mark(1);
-                            RequestLog logCtx = RequestLog.dump();
-                            nextResponse.processResponse(
-                                    mapper.readTree(cacheEntry.getValue()),
-                                    druidQuery,
-                                    new LoggingContext(logCtx)
-                            );
-
+                            processCachedResponse(context, druidQuery, nextResponse, cachedResponse);
                             return true;
 
                         } catch (IOException e) {
@@ -146,6 +143,78 @@ public class CacheV2RequestHandler extends BaseDataRequestHandler {
         return next.handleRequest(context, request, druidQuery, nextResponse);
     }
 
+    /**
+     * Read the cache entries of many queries in one round trip, ahead of handling them.
+     * <p>
+     * The entries are kept in the request context, where handling each query picks its entry up instead of reading the
+     * cache again.
+     *
+     * @param context  The context of the request the queries are part of
+     * @param queries  The queries whose cache entries are to be read
+     */
+    public void prefetch(RequestContext context, Collection<? extends DruidAggregationQuery<?>> queries) {
+        if (!context.isReadCache()) {
+            return;
+        }
+        try {
+            Set<String> cacheKeys = new LinkedHashSet<>(queries.size());
+            for (DruidAggregationQuery<?> query : queries) {
+                cacheKeys.add(getKey(query));
+            }
+            Map<String, TupleDataCache.DataEntry<String, Long, String>> entries = dataCache.getMulti(cacheKeys);
+            for (String cacheKey : cacheKeys) {
+                context.getPrefetchedCacheEntries().put(cacheKey, Optional.ofNullable(entries.get(cacheKey)));
+            }
+        } catch (Exception e) {
+            // Each query reads its own entry instead
+            LOG.warn("Cache entries cannot be prefetched: ", e);
+        }
+    }
+
+    /**
+     * Read the JSON value of a cache entry.
+     * <p>
+     * Entries kept in memory by a {@link TieredTupleDataCache} parse their value once, for every hit.
+     *
+     * @param cacheEntry  The cache entry
+     *
+     * @return the JSON value of the entry
+     *
+     * @throws IOException if the value is not valid JSON
+     */
+    protected JsonNode readValue(TupleDataCache.DataEntry<String, Long, String> cacheEntry) throws IOException {
+        return cacheEntry instanceof TieredTupleDataCache.LocalDataEntry
+                ? ((TieredTupleDataCache.LocalDataEntry) cacheEntry).getJson(mapper)
+                : mapper.readTree(cacheEntry.getValue());
+    }
+
+    /**
+     * Answer a query with a response read from the cache, instead of sending it to the next handler.
+     *
+     * @param context  The context of the request
+     * @param druidQuery  The query answered from the cache
+     * @param response  The response processor to send the cached response to
+     * @param cachedResponse  The cached response
+     */
+    protected void processCachedResponse(
+            RequestContext context,
+            DruidAggregationQuery<?> druidQuery,
+            ResponseProcessor response,
+            JsonNode cachedResponse
+    ) {
+        if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
+            RequestLog.record(new BardQueryInfo(druidQuery.getQueryType().toJson(), true));
+            RequestLog.stopTiming(REQUEST_WORKFLOW_TIMER);
+        }
+
+        if (context.getNumberOfIncoming().decrementAndGet() == 0) {
+            RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+        }
+
+        RequestLog logCtx = RequestLog.dump();
+        response.processResponse(cachedResponse, druidQuery, new LoggingContext(logCtx));
+    }
+
     /**
      * Construct the cache key.
      * Current implementation includes all the fields of the druidQuery besides the context.
@@ -0,0 +1,429 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQUEST_WORKFLOW_TIMER;
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.druid.client.DruidWebService;
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.metadata.QuerySigningService;
+import com.yahoo.bard.webservice.util.Utils;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Request handler which sends identical queries in flight at the same time to druid once, and gives the response to
+ * each of them.
+ * <p>
+ * Queries are identical when they are the same apart from their context, and have the same segment set id from the
+ * query signing service. The first of them is sent on to the next handler, and the ones arriving while it is in flight
+ * wait for its response, failure or error instead. Each waiting query still times out after the timeout in its
+ * context, or the timeout of the druid web service, failing with a {@link TimeoutException}. Requests which bypass
+ * the cache are never coalesced.
+ * <p>
+ * The number of queries answered by a query already in flight is kept in the {@code queries.meter.coalesced} meter.
+ */
+public class CoalescingRequestHandler extends BaseDataRequestHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingRequestHandler.class);
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter COALESCED = REGISTRY.meter("queries.meter.coalesced");
+
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "coalesced-query-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    protected final @NotNull DataRequestHandler next;
+    protected final @NotNull DruidWebService druidWebService;
+    protected final @NotNull QuerySigningService<?> querySigningService;
+
+    private final ScheduledExecutorService timeoutScheduler;
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Build a coalescing request handler.
+     *
+     * @param next  The next handler in the chain
+     * @param druidWebService  The web service the queries are sent to, whose timeout applies to waiting queries
+     * @param querySigningService  The service to generate query signatures
+     * @param mapper  The mapper for all JSON processing
+     */
+    public CoalescingRequestHandler(
+            DataRequestHandler next,
+            DruidWebService druidWebService,
+            QuerySigningService<?> querySigningService,
+            ObjectMapper mapper
+    ) {
+        this(next, druidWebService, querySigningService, mapper, TIMEOUT_SCHEDULER);
+    }
+
+    /**
+     * Build a coalescing request handler.
+     *
+     * @param next  The next handler in the chain
+     * @param druidWebService  The web service the queries are sent to, whose timeout applies to waiting queries
+     * @param querySigningService  The service to generate query signatures
+     * @param mapper  The mapper for all JSON processing
+     * @param timeoutScheduler  The scheduler timing out waiting queries
+     */
+    public CoalescingRequestHandler(
+            DataRequestHandler next,
+            DruidWebService druidWebService,
+            QuerySigningService<?> querySigningService,
+            ObjectMapper mapper,
+            ScheduledExecutorService timeoutScheduler
+    ) {
+        super(mapper);
+        this.next = next;
+        this.druidWebService = druidWebService;
+        this.querySigningService = querySigningService;
+        this.timeoutScheduler = timeoutScheduler;
+    }
+
+    @Override
+    public boolean handleRequest(
+            final RequestContext context,
+            final DataApiRequest request,
+            final DruidAggregationQuery<?> druidQuery,
+            final ResponseProcessor response
+    ) {
+        if (!context.isReadCache()) {
+            return next.handleRequest(context, request, druidQuery, response);
+        }
+
+        String key;
+        try {
+            key = getKey(druidQuery);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Coalescing key cannot be built: ", e);
+            return next.handleRequest(context, request, druidQuery, response);
+        }
+
+        Flight flight = new Flight(key, response);
+        Flight inFlight;
+        while ((inFlight = flights.putIfAbsent(key, flight)) != null) {
+            Follower follower = new Follower(context, druidQuery, response);
+            if (inFlight.join(follower)) {
+                COALESCED.mark();
+                scheduleTimeout(inFlight, follower);
+                return true;
+            }
+            // The flight completed as this query arrived, so this query starts the next one
+            flights.remove(key, inFlight);
+        }
+
+        ResponseProcessor flightResponse = response instanceof StreamingResponseProcessor
+                ? new StreamingFlightResponseProcessor(flight)
+                : new FlightResponseProcessor(flight);
+        try {
+            return next.handleRequest(context, request, druidQuery, flightResponse);
+        } catch (RuntimeException e) {
+            flight.complete().forEach(follower -> follower.deliver(
+                    waiting -> waiting.response.getFailureCallback(waiting.query).invoke(e)
+            ));
+            throw e;
+        }
+    }
+
+    /**
+     * Construct the key identifying identical queries.
+     * <p>
+     * The key is made of all the fields of the query besides the context, and the segment set id of the query.
+     *
+     * @param druidQuery  The druid query
+     *
+     * @return The key as a String
+     * @throws JsonProcessingException if the druid query cannot be serialized to JSON
+     */
+    protected String getKey(DruidAggregationQuery<?> druidQuery) throws JsonProcessingException {
+        JsonNode root = mapper.valueToTree(druidQuery);
+        Utils.omitField(root, "context", mapper);
+        String query = writer.writeValueAsString(root);
+        return querySigningService.getSegmentSetId(druidQuery).map(id -> query + "#" + id).orElse(query);
+    }
+
+    /**
+     * Fail a waiting query once its timeout passes, unless the response of the flight reaches it first.
+     *
+     * @param flight  The flight the query is waiting on
+     * @param follower  The waiting query
+     */
+    private void scheduleTimeout(Flight flight, Follower follower) {
+        Integer timeout = follower.query.getContext().getTimeout();
+        if (timeout == null) {
+            timeout = druidWebService.getTimeout();
+        }
+        if (timeout == null) {
+            return;
+        }
+        follower.timeout = timeoutScheduler.schedule(
+                () -> {
+                    if (flight.leave(follower)) {
+                        TimeoutException e = new TimeoutException(
+                                "Timed out waiting for the response of an identical query in flight"
+                        );
+                        follower.deliver(waiting -> waiting.response.getFailureCallback(waiting.query).invoke(e));
+                    }
+                },
+                timeout,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * A query in flight, and the identical queries waiting for its response.
+     */
+    private class Flight {
+        private final String key;
+        private final ResponseProcessor leader;
+        private final List<Follower> followers = new ArrayList<>();
+        private boolean completed;
+
+        /**
+         * Constructor.
+         *
+         * @param key  The key of the query
+         * @param leader  The response processor of the query sent to druid
+         */
+        Flight(String key, ResponseProcessor leader) {
+            this.key = key;
+            this.leader = leader;
+        }
+
+        /**
+         * Wait for the response of this flight, unless it has already completed.
+         *
+         * @param follower  The waiting query
+         *
+         * @return true if the query waits for the response of this flight
+         */
+        synchronized boolean join(Follower follower) {
+            if (completed) {
+                return false;
+            }
+            follower.detach();
+            followers.add(follower);
+            return true;
+        }
+
+        /**
+         * Stop waiting for the response of this flight, unless it has already completed.
+         *
+         * @param follower  The waiting query
+         *
+         * @return true if the query was still waiting
+         */
+        synchronized boolean leave(Follower follower) {
+            return !completed && followers.remove(follower);
+        }
+
+        /**
+         * Complete this flight, so that no more queries join it.
+         *
+         * @return the queries waiting for the response, or none if the flight had already completed
+         */
+        synchronized List<Follower> complete() {
+            if (completed) {
+                return Collections.emptyList();
+            }
+            completed = true;
+            flights.remove(key, this);
+            followers.stream().filter(follower -> follower.timeout != null).forEach(f -> f.timeout.cancel(false));
+            return new ArrayList<>(followers);
+        }
+    }
+
+    /**
+     * A query waiting for the response of an identical query in flight.
+     */
+    private static class Follower {
+        private final RequestContext context;
+        private final DruidAggregationQuery<?> query;
+        private final ResponseProcessor response;
+        private RequestLog logCtx;
+        private volatile ScheduledFuture<?> timeout;
+
+        /**
+         * Constructor.
+         *
+         * @param context  The context of the request
+         * @param query  The query
+         * @param response  The response processor of the query
+         */
+        Follower(RequestContext context, DruidAggregationQuery<?> query, ResponseProcessor response) {
+            this.context = context;
+            this.query = query;
+            this.response = response;
+        }
+
+        /**
+         * Finish the request workflow of the query, as if it had been sent, and take its request log off the thread.
+         */
+        void detach() {
+            if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
+                RequestLog.stopTiming(REQUEST_WORKFLOW_TIMER);
+            }
+            logCtx = RequestLog.dump();
+        }
+
+        /**
+         * Deliver the outcome of the flight to the query, with its request log on the thread.
+         *
+         * @param delivery  The delivery of the outcome to the query
+         */
+        void deliver(Consumer<Follower> delivery) {
+            RequestLog current = RequestLog.dump();
+            RequestLog.restore(logCtx);
+            try {
+                if (context.getNumberOfIncoming().decrementAndGet() == 0) {
+                    RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+                }
+                delivery.accept(this);
+            } catch (RuntimeException e) {
+                LOG.warn("Delivering a coalesced response failed: ", e);
+            } finally {
+                RequestLog.restore(current);
+            }
+        }
+
+        /**
+         * Process the response of the flight, failing the query if processing fails.
+         *
+         * @param json  The response
+         */
+        void processResponse(JsonNode json) {
+            try {
+                response.processResponse(json, query, new LoggingContext(RequestLog.dump()));
+            } catch (RuntimeException e) {
+                response.getFailureCallback(query).invoke(e);
+            }
+        }
+    }
+
+    /**
+     * The response processor of a query in flight, which gives its outcome to the identical queries waiting for it.
+     */
+    private static class FlightResponseProcessor implements ResponseProcessor {
+        protected final Flight flight;
+
+        /**
+         * Constructor.
+         *
+         * @param flight  The flight
+         */
+        FlightResponseProcessor(Flight flight) {
+            this.flight = flight;
+        }
+
+        @Override
+        public ResponseContext getResponseContext() {
+            return flight.leader.getResponseContext();
+        }
+
+        @Override
+        public FailureCallback getFailureCallback(DruidAggregationQuery<?> query) {
+            FailureCallback failure = flight.leader.getFailureCallback(query);
+            return error -> {
+                flight.complete().forEach(follower -> follower.deliver(
+                        waiting -> waiting.response.getFailureCallback(waiting.query).invoke(error)
+                ));
+                failure.invoke(error);
+            };
+        }
+
+        @Override
+        public HttpErrorCallback getErrorCallback(DruidAggregationQuery<?> query) {
+            HttpErrorCallback httpError = flight.leader.getErrorCallback(query);
+            return (statusCode, reasonPhrase, responseBody) -> {
+                flight.complete().forEach(follower -> follower.deliver(
+                        waiting -> waiting.response.getErrorCallback(waiting.query)
+                                .invoke(statusCode, reasonPhrase, responseBody)
+                ));
+                httpError.invoke(statusCode, reasonPhrase, responseBody);
+            };
+        }
+
+        @Override
+        public void processResponse(JsonNode json, DruidAggregationQuery<?> query, LoggingContext metadata) {
+            flight.complete().forEach(follower -> follower.deliver(waiting -> waiting.processResponse(json)));
+            flight.leader.processResponse(json, query, metadata);
+        }
+    }
+
+    /**
+     * The response processor of a query in flight whose own processor streams druid responses.
+     * <p>
+     * The response is streamed when no identical query is waiting for it, and is otherwise read into a tree which
+     * every query is given.
+     */
+    private class StreamingFlightResponseProcessor extends FlightResponseProcessor
+            implements StreamingResponseProcessor {
+
+        /**
+         * Constructor.
+         *
+         * @param flight  The flight
+         */
+        StreamingFlightResponseProcessor(Flight flight) {
+            super(flight);
+        }
+
+        @Override
+        public void processResponse(JsonParser parser, DruidAggregationQuery<?> query, LoggingContext metadata) {
+            List<Follower> followers = flight.complete();
+            if (followers.isEmpty()) {
+                ((StreamingResponseProcessor) flight.leader).processResponse(parser, query, metadata);
+                return;
+            }
+
+            JsonNode json;
+            try (JsonParser closingParser = parser) {
+                json = mapper.readTree(closingParser);
+            } catch (IOException e) {
+                followers.forEach(follower -> follower.deliver(
+                        waiting -> waiting.response.getFailureCallback(waiting.query).invoke(e)
+                ));
+                throw new IllegalStateException(e);
+            }
+            followers.forEach(follower -> follower.deliver(waiting -> waiting.processResponse(json)));
+            flight.leader.processResponse(json, query, metadata);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.data.cache.DataCache;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
+import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.metadata.QuerySigningService;
+import com.yahoo.bard.webservice.util.IntervalUtils;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.IntervalCacheV2ResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Request handler caching the response of each time bucket of a query on its own.
+ * <p>
+ * Each bucket of the query granularity is cached under the key of the query restricted to the bucket, signed by the
+ * segments of just that bucket, which are the entries {@link CacheV2RequestHandler} reads and writes for the
+ * sub-queries of a split query. The cached buckets of a query are read in one round trip, and only the buckets missing
+ * from the cache are sent on, in one query, so a query whose intervals slide by a bucket only queries the new bucket.
+ * The response is assembled by {@link IntervalCacheV2ResponseProcessor}, which also caches the buckets it received.
+ * <p>
+ * Queries with a single bucket, and group by queries with a limit spec, whose buckets cannot be answered on their own,
+ * are cached as a whole by {@link CacheV2RequestHandler}.
+ */
+public class IntervalCacheV2RequestHandler extends CacheV2RequestHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IntervalCacheV2RequestHandler.class);
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter BUCKET_HITS = REGISTRY.meter("queries.meter.cache.bucket_hits");
+    public static final Meter BUCKET_MISSES = REGISTRY.meter("queries.meter.cache.bucket_misses");
+
+    /**
+     * Build an interval cache request handler.
+     *
+     * @param next  The next handler in the chain
+     * @param dataCache  The cache instance
+     * @param querySigningService  The service to generate query signatures
+     * @param mapper  The mapper for all JSON processing
+     */
+    public IntervalCacheV2RequestHandler(
+            DataRequestHandler next,
+            DataCache<?> dataCache,
+            QuerySigningService<?> querySigningService,
+            ObjectMapper mapper
+    ) {
+        super(next, dataCache, querySigningService, mapper);
+    }
+
+    @Override
+    public boolean handleRequest(
+            final RequestContext context,
+            final DataApiRequest request,
+            final DruidAggregationQuery<?> druidQuery,
+            final ResponseProcessor response
+    ) {
+        if (druidQuery.getGranularity() instanceof AllGranularity || hasLimit(druidQuery)) {
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        List<Interval> buckets = new ArrayList<>(
+                IntervalUtils.getSlicedIntervals(druidQuery.getIntervals(), druidQuery.getGranularity()).keySet()
+        );
+        if (buckets.size() <= 1) {
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        Map<Interval, DruidAggregationQuery<?>> bucketQueries = new LinkedHashMap<>(buckets.size());
+        Map<Interval, String> cacheKeys = new LinkedHashMap<>(buckets.size());
+        Map<Interval, JsonNode> cachedBuckets = new LinkedHashMap<>(buckets.size());
+        try {
+            for (Interval bucket : buckets) {
+                DruidAggregationQuery<?> bucketQuery = druidQuery.withAllIntervals(Collections.singletonList(bucket));
+                bucketQueries.put(bucket, bucketQuery);
+                cacheKeys.put(bucket, getKey(bucketQuery));
+            }
+            if (context.isReadCache()) {
+                cachedBuckets.putAll(readCachedBuckets(bucketQueries, cacheKeys));
+            }
+        } catch (Exception e) {
+            LOG.warn("Cached buckets cannot be read: ", e);
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        if (context.isReadCache()) {
+            CACHE_REQUESTS.mark(1);
+            BUCKET_HITS.mark(cachedBuckets.size());
+            BUCKET_MISSES.mark(buckets.size() - cachedBuckets.size());
+        }
+
+        if (cachedBuckets.size() == buckets.size()) {
+            CACHE_HITS.mark(1);
+            ArrayNode cachedResponse = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode bucketResponse : cachedBuckets.values()) {
+                cachedResponse.addAll((ArrayNode) bucketResponse);
+            }
+            processCachedResponse(context, druidQuery, response, cachedResponse);
+            return true;
+        }
+        if (context.isReadCache()) {
+            CACHE_MISSES.mark(1);
+        }
+
+        // Query only the buckets missing from the cache, merging adjacent buckets into one interval
+        SimplifiedIntervalList missingIntervals = buckets.stream()
+                .filter(bucket -> !cachedBuckets.containsKey(bucket))
+                .collect(SimplifiedIntervalList.getCollector());
+        DruidAggregationQuery<?> missingQuery = druidQuery.withAllIntervals(missingIntervals);
+
+        ResponseProcessor nextResponse = new IntervalCacheV2ResponseProcessor(
+                response,
+                druidQuery,
+                bucketQueries,
+                cacheKeys,
+                cachedBuckets,
+                dataCache,
+                querySigningService,
+                mapper
+        );
+        return next.handleRequest(context, request, missingQuery, nextResponse);
+    }
+
+    /**
+     * Read the buckets of a query whose cache entry is valid for the segments of the bucket, in one round trip.
+     *
+     * @param bucketQueries  The query restricted to each bucket
+     * @param cacheKeys  The cache key of each bucket
+     *
+     * @return the cached responses of the buckets with a valid cache entry, in bucket order
+     *
+     * @throws IOException if a cached response is not valid JSON
+     */
+    private Map<Interval, JsonNode> readCachedBuckets(
+            Map<Interval, DruidAggregationQuery<?>> bucketQueries,
+            Map<Interval, String> cacheKeys
+    ) throws IOException {
+        Map<String, TupleDataCache.DataEntry<String, Long, String>> entries = dataCache.getMulti(cacheKeys.values());
+
+        Map<Interval, JsonNode> cachedBuckets = new LinkedHashMap<>(entries.size());
+        for (Map.Entry<Interval, String> cacheKey : cacheKeys.entrySet()) {
+            TupleDataCache.DataEntry<String, Long, String> entry = entries.get(cacheKey.getValue());
+            if (entry == null) {
+                continue;
+            }
+            Interval bucket = cacheKey.getKey();
+            boolean valid = querySigningService.getSegmentSetId(bucketQueries.get(bucket))
+                    .map(id -> Objects.equals(entry.getMeta(), id))
+                    .orElse(false);
+            if (!valid) {
+                LOG.debug(
+                        "Cache entry of bucket {} present but invalid for query with id: {}",
+                        bucket,
+                        RequestLog.getId()
+                );
+                continue;
+            }
+            JsonNode bucketResponse = readValue(entry);
+            if (bucketResponse.isArray()) {
+                cachedBuckets.put(bucket, bucketResponse);
+            }
+        }
+        return cachedBuckets;
+    }
+
+    /**
+     * Check whether a query limits its result as a whole, so that its buckets cannot be answered on their own.
+     *
+     * @param druidQuery  The query
+     *
+     * @return true if the query is a group by query with a limit spec
+     */
+    private static boolean hasLimit(DruidAggregationQuery<?> druidQuery) {
+        return druidQuery instanceof GroupByQuery && ((GroupByQuery) druidQuery).getLimitSpec() != null;
+    }
+}
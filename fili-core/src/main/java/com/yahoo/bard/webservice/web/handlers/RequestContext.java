@@ -2,8 +2,13 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers;
 
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.util.Utils;
+import com.yahoo.bard.webservice.web.DataApiRequest;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.container.ContainerRequestContext;
@@ -18,9 +23,12 @@ public class RequestContext {
 
     protected final ContainerRequestContext containerRequestContext;
     protected final boolean readCache;
+    protected final long asyncAfter;
     protected final MultivaluedMap<String, String> searchableHeaders;
     protected final AtomicLong numberOfIncoming = new AtomicLong(1);
     protected final AtomicLong numberOfOutgoing = new AtomicLong(1);
+    protected final Map<String, Optional<TupleDataCache.DataEntry<String, Long, String>>> prefetchedCacheEntries =
+            new ConcurrentHashMap<>();
 
     /**
      * Build a context for a request.
@@ -29,8 +37,20 @@ public class RequestContext {
      * @param readCache  true if the cache should be checked for a response
      */
     public RequestContext(ContainerRequestContext containerRequestContext, boolean readCache) {
+        this(containerRequestContext, readCache, DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE);
+    }
+
+    /**
+     * Build a context for a request which may become asynchronous.
+     *
+     * @param containerRequestContext  context from the http request object
+     * @param readCache  true if the cache should be checked for a response
+     * @param asyncAfter  How long, in milliseconds, the user is willing to wait for a synchronous response
+     */
+    public RequestContext(ContainerRequestContext containerRequestContext, boolean readCache, long asyncAfter) {
         this.containerRequestContext = containerRequestContext;
         this.readCache = readCache;
+        this.asyncAfter = asyncAfter;
         this.searchableHeaders = containerRequestContext != null ?
                 Utils.headersToLowerCase(containerRequestContext.getHeaders()) :
                 new MultivaluedHashMap<>();
@@ -66,6 +86,19 @@ public class RequestContext {
         return readCache;
     }
 
+    public long getAsyncAfter() {
+        return asyncAfter;
+    }
+
+    /**
+     * Whether the user accepts an asynchronous response to this request.
+     *
+     * @return true unless the request is always answered synchronously
+     */
+    public boolean isAsynchronous() {
+        return asyncAfter != DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE;
+    }
+
     public AtomicLong getNumberOfIncoming() {
         return numberOfIncoming;
     }
@@ -73,4 +106,15 @@ public class RequestContext {
     public AtomicLong getNumberOfOutgoing() {
         return numberOfOutgoing;
     }
+
+    /**
+     * Get the cache entries read ahead of the queries of this request, by cache key.
+     * <p>
+     * A key read ahead but missing from the cache maps to an empty entry.
+     *
+     * @return the prefetched cache entries
+     */
+    public Map<String, Optional<TupleDataCache.DataEntry<String, Long, String>>> getPrefetchedCacheEntries() {
+        return prefetchedCacheEntries;
+    }
 }
@@ -5,6 +5,8 @@ package com.yahoo.bard.webservice.web.handlers;
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.EMPTY_INTERVAL_FORMAT;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.druid.model.query.Granularity;
@@ -22,7 +24,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,24 +38,53 @@ import javax.ws.rs.core.Response;
  * Request handler breaks a query up into smaller time grain queries for parallel processing.
  * <p>
  * It creates a common response processor which serves as an accumulator to receive all replies before delegating to the
- * result set processing.
+ * result set processing. When the next handler is a {@link CacheV2RequestHandler}, the cached results of all the
+ * sub-queries are read in one round trip before the sub-queries are sent.
+ * <p>
+ * Adjacent time buckets are coalesced into one sub-query when there are more buckets than
+ * {@code split_query_max_splits}, and the sub-queries are sent on by a {@link SplitQueryScheduler}, which bounds how
+ * many are in flight.
  */
 public class SplitQueryRequestHandler implements DataRequestHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(SplitQueryRequestHandler.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
     public static final Meter SPLIT_QUERIES = REGISTRY.meter("queries.meter.split_queries.sub_queries");
     public static final Meter SPLITS = REGISTRY.meter("queries.meter.split_queries.splits");
 
+    /**
+     * Most sub-queries to split a query into, coalescing adjacent time buckets into one sub-query. 0 for no limit.
+     */
+    public static final int MAX_SPLITS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("split_query_max_splits"),
+            0
+    );
+
     protected final @NotNull DataRequestHandler next;
+    protected final @NotNull SplitQueryScheduler scheduler;
+    protected final int maxSplits;
 
     /**
      * Build a Split Query Request Handler.
      *
      * @param next  The next handler in the chain
+     * @param scheduler  The scheduler sending the sub-queries on
+     * @param maxSplits  Most sub-queries to split a query into, 0 for no limit
      */
-    public SplitQueryRequestHandler(DataRequestHandler next) {
+    public SplitQueryRequestHandler(DataRequestHandler next, SplitQueryScheduler scheduler, int maxSplits) {
         this.next = next;
+        this.scheduler = scheduler;
+        this.maxSplits = maxSplits;
+    }
+
+    /**
+     * Build a Split Query Request Handler with its own scheduler and the configured limits.
+     *
+     * @param next  The next handler in the chain
+     */
+    public SplitQueryRequestHandler(DataRequestHandler next) {
+        this(next, new SplitQueryScheduler(), MAX_SPLITS);
     }
 
     @Override
@@ -70,7 +103,7 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
         }
 
         Map<Interval, AtomicInteger> expectedIntervals = Collections.unmodifiableMap(
-                IntervalUtils.getSlicedIntervals(queryIntervals, granularity)
+                coalesce(IntervalUtils.getSlicedIntervals(queryIntervals, granularity).keySet(), maxSplits)
         );
 
         int numberOfIntervals = expectedIntervals.size();
@@ -113,15 +146,50 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
         if (numberOfIntervals > 1) {
             SPLITS.mark(1);
             SPLIT_QUERIES.mark(numberOfIntervals);
+
+            // Read the cached results of all the sub-queries in one round trip, rather than one for each
+            if (next instanceof CacheV2RequestHandler) {
+                ((CacheV2RequestHandler) next).prefetch(context, queries);
+            }
         }
 
-        queries.stream().forEach(
-                q -> {
-                    RequestLog.restore(logCtx);
-                    next.handleRequest(context, request, q, mergingResponse);
-                }
-        );
+        scheduler.schedule(context, request, queries, mergingResponse, next, logCtx);
 
         return true;
     }
+
+    /**
+     * Coalesce runs of adjacent time buckets into intervals, so that there are about as many intervals as splits.
+     * <p>
+     * Buckets which are not adjacent are never coalesced, so there may be more intervals than splits when the buckets
+     * have gaps.
+     *
+     * @param buckets  The time buckets, in order
+     * @param maxSplits  Most intervals to coalesce the buckets into, 0 for no limit
+     *
+     * @return the intervals, with their index
+     */
+    protected static Map<Interval, AtomicInteger> coalesce(Collection<Interval> buckets, int maxSplits) {
+        int bucketsPerSplit = maxSplits <= 0 ? 1 : (buckets.size() + maxSplits - 1) / maxSplits;
+
+        Map<Interval, AtomicInteger> intervals = new LinkedHashMap<>();
+        Interval current = null;
+        int currentBuckets = 0;
+        for (Interval bucket : buckets) {
+            if (current != null && currentBuckets < bucketsPerSplit && current.abuts(bucket)) {
+                current = new Interval(current.getStart(), bucket.getEnd());
+                currentBuckets++;
+                continue;
+            }
+            if (current != null) {
+                intervals.put(current, new AtomicInteger(intervals.size()));
+            }
+            current = bucket;
+            currentBuckets = 1;
+        }
+        if (current != null) {
+            intervals.put(current, new AtomicInteger(intervals.size()));
+        }
+        return intervals;
+    }
 }
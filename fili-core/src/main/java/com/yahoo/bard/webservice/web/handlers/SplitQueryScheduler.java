@@ -0,0 +1,343 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProcessor;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.SecurityContext;
+
+/**
+ * Sends the sub-queries of split queries on, bounding how many are in flight.
+ * <p>
+ * At most {@code split_query_max_in_flight} sub-queries are in flight at once, and at most
+ * {@code split_query_max_in_flight_per_request} of them for each request (0 for no limit). Sub-queries waiting for a
+ * slot are queued by user, and users take turns, so that a user splitting large requests does not hold back the other
+ * users. A sub-query leaves its slot when its response, failure or error reaches its response processor. Once a
+ * sub-query of a request fails, the queued sub-queries of the request are dropped.
+ * <p>
+ * Sub-queries are sent on the thread scheduling them while slots are free. The queued sub-queries taking the slots
+ * that completed sub-queries leave are sent by {@code split_query_dispatch_threads} dispatch threads, so that the
+ * thread completing a sub-query, usually an IO thread of the druid client, does not run the handlers sending them.
+ * <p>
+ * The number of queued sub-queries is kept in the {@code queries.counter.split_queries.queue_depth} counter, and the
+ * time they wait in the {@code queries.timer.split_queries.queue_wait} timer.
+ */
+public class SplitQueryScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SplitQueryScheduler.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    public static final int MAX_IN_FLIGHT = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("split_query_max_in_flight"),
+            0
+    );
+    public static final int MAX_IN_FLIGHT_PER_REQUEST = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("split_query_max_in_flight_per_request"),
+            0
+    );
+    public static final int DISPATCH_THREADS = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("split_query_dispatch_threads"),
+            2
+    );
+
+    public static final Counter QUEUE_DEPTH = REGISTRY.counter("queries.counter.split_queries.queue_depth");
+    public static final Timer QUEUE_WAIT = REGISTRY.timer("queries.timer.split_queries.queue_wait");
+
+    private static final Executor DISPATCHER = Executors.newFixedThreadPool(
+            Math.max(DISPATCH_THREADS, 1),
+            runnable -> {
+                Thread thread = new Thread(runnable, "split-query-dispatch");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final int maxInFlight;
+    private final int maxInFlightPerRequest;
+    private final Executor dispatcher;
+
+    // Sub-queries completing while this thread sends sub-queries are followed by the sending loop, not a nested one
+    private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> false);
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Deque<Fanout>> fanoutsByUser = new LinkedHashMap<>();
+    private int inFlight;
+
+    /**
+     * Constructor.
+     *
+     * @param maxInFlight  Most sub-queries in flight at once, 0 for no limit
+     * @param maxInFlightPerRequest  Most sub-queries of a request in flight at once, 0 for no limit
+     * @param dispatcher  The executor sending queued sub-queries once slots free up, off the completing thread
+     */
+    public SplitQueryScheduler(int maxInFlight, int maxInFlightPerRequest, Executor dispatcher) {
+        this.maxInFlight = maxInFlight <= 0 ? Integer.MAX_VALUE : maxInFlight;
+        this.maxInFlightPerRequest = maxInFlightPerRequest <= 0 ? Integer.MAX_VALUE : maxInFlightPerRequest;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Constructor, using the shared dispatch threads.
+     *
+     * @param maxInFlight  Most sub-queries in flight at once, 0 for no limit
+     * @param maxInFlightPerRequest  Most sub-queries of a request in flight at once, 0 for no limit
+     */
+    public SplitQueryScheduler(int maxInFlight, int maxInFlightPerRequest) {
+        this(maxInFlight, maxInFlightPerRequest, DISPATCHER);
+    }
+
+    /**
+     * Constructor, using the configured limits.
+     */
+    public SplitQueryScheduler() {
+        this(MAX_IN_FLIGHT, MAX_IN_FLIGHT_PER_REQUEST);
+    }
+
+    /**
+     * Send the sub-queries of a request on to the next handler as slots free up.
+     *
+     * @param context  The context of the request
+     * @param request  The request
+     * @param queries  The sub-queries, in the order to send them
+     * @param response  The response processor of the sub-queries
+     * @param next  The handler to send the sub-queries to
+     * @param logCtx  The request log to send the sub-queries with
+     */
+    public void schedule(
+            RequestContext context,
+            DataApiRequest request,
+            List<DruidAggregationQuery<?>> queries,
+            SplitQueryResponseProcessor response,
+            DataRequestHandler next,
+            RequestLog logCtx
+    ) {
+        Fanout fanout = new Fanout(context, request, response, next, logCtx);
+        response.setSubQueryListener(failed -> complete(fanout, failed));
+        long now = System.nanoTime();
+        for (DruidAggregationQuery<?> query : queries) {
+            fanout.pending.add(new SubQuery(fanout, query, now));
+        }
+        synchronized (lock) {
+            fanoutsByUser.computeIfAbsent(getUser(context), ignored -> new ArrayDeque<>()).add(fanout);
+        }
+        QUEUE_DEPTH.inc(queries.size());
+        dispatch();
+    }
+
+    /**
+     * Get the number of sub-queries in flight.
+     *
+     * @return the number of sub-queries sent on and not completed
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Send queued sub-queries while there are free slots.
+     * <p>
+     * The request log of the calling thread is kept, since a scheduling thread or a dispatch thread sends the queued
+     * sub-queries of any request.
+     */
+    private void dispatch() {
+        if (dispatching.get()) {
+            return;
+        }
+        dispatching.set(true);
+        RequestLog callerLog = RequestLog.copy();
+        try {
+            SubQuery subQuery;
+            while ((subQuery = poll()) != null) {
+                send(subQuery);
+            }
+        } finally {
+            RequestLog.restore(callerLog);
+            dispatching.set(false);
+        }
+    }
+
+    /**
+     * Take the next sub-query to send, taking a slot for it.
+     * <p>
+     * Users take turns: the user of the sub-query taken moves behind the other users with queued sub-queries.
+     *
+     * @return the next sub-query to send, or null if there is no free slot or no sub-query it could be sent in
+     */
+    private SubQuery poll() {
+        synchronized (lock) {
+            if (inFlight >= maxInFlight) {
+                return null;
+            }
+            Iterator<Map.Entry<String, Deque<Fanout>>> users = fanoutsByUser.entrySet().iterator();
+            while (users.hasNext()) {
+                Map.Entry<String, Deque<Fanout>> user = users.next();
+                Iterator<Fanout> fanouts = user.getValue().iterator();
+                while (fanouts.hasNext()) {
+                    Fanout fanout = fanouts.next();
+                    if (fanout.pending.isEmpty()) {
+                        fanouts.remove();
+                    } else if (fanout.inFlight < maxInFlightPerRequest) {
+                        SubQuery subQuery = fanout.pending.poll();
+                        fanout.inFlight++;
+                        inFlight++;
+                        if (fanout.pending.isEmpty()) {
+                            fanouts.remove();
+                        }
+                        users.remove();
+                        if (!user.getValue().isEmpty()) {
+                            fanoutsByUser.put(user.getKey(), user.getValue());
+                        }
+                        return subQuery;
+                    }
+                }
+                if (user.getValue().isEmpty()) {
+                    users.remove();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Send a sub-query on to the next handler.
+     *
+     * @param subQuery  The sub-query to send
+     */
+    private void send(SubQuery subQuery) {
+        QUEUE_DEPTH.dec();
+        QUEUE_WAIT.update(System.nanoTime() - subQuery.queuedNanos, TimeUnit.NANOSECONDS);
+
+        Fanout fanout = subQuery.fanout;
+        RequestLog.restore(fanout.logCtx);
+        try {
+            fanout.next.handleRequest(fanout.context, fanout.request, subQuery.query, fanout.response);
+        } catch (RuntimeException e) {
+            LOG.error("Sub-query could not be sent", e);
+            fanout.response.getFailureCallback(subQuery.query).invoke(e);
+        }
+    }
+
+    /**
+     * Leave the slot of a completed sub-query, and have the dispatcher send the queued sub-queries which can take free
+     * slots.
+     *
+     * @param fanout  The request of the sub-query
+     * @param failed  Whether the sub-query failed, dropping the queued sub-queries of the request
+     */
+    private void complete(Fanout fanout, boolean failed) {
+        int dropped = 0;
+        boolean queued;
+        synchronized (lock) {
+            fanout.inFlight--;
+            inFlight--;
+            if (failed) {
+                dropped = fanout.pending.size();
+                fanout.pending.clear();
+            }
+            queued = !fanoutsByUser.isEmpty();
+        }
+        QUEUE_DEPTH.dec(dropped);
+        // A sub-query completing while this thread sends sub-queries is followed by the sending loop
+        if (queued && !dispatching.get()) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Get the name of the user making a request.
+     *
+     * @param context  The context of the request
+     *
+     * @return the name of the user, or an empty string for anonymous requests
+     */
+    private static String getUser(RequestContext context) {
+        SecurityContext securityContext = context.getSecurityContext();
+        Principal user = securityContext == null ? null : securityContext.getUserPrincipal();
+        return user == null || user.getName() == null ? "" : user.getName();
+    }
+
+    /**
+     * The sub-queries of a request.
+     */
+    private static class Fanout {
+        private final RequestContext context;
+        private final DataApiRequest request;
+        private final SplitQueryResponseProcessor response;
+        private final DataRequestHandler next;
+        private final RequestLog logCtx;
+        private final Deque<SubQuery> pending = new ArrayDeque<>();
+        private int inFlight;
+
+        /**
+         * Constructor.
+         *
+         * @param context  The context of the request
+         * @param request  The request
+         * @param response  The response processor of the sub-queries
+         * @param next  The handler to send the sub-queries to
+         * @param logCtx  The request log to send the sub-queries with
+         */
+        Fanout(
+                RequestContext context,
+                DataApiRequest request,
+                SplitQueryResponseProcessor response,
+                DataRequestHandler next,
+                RequestLog logCtx
+        ) {
+            this.context = context;
+            this.request = request;
+            this.response = response;
+            this.next = next;
+            this.logCtx = logCtx;
+        }
+    }
+
+    /**
+     * A sub-query waiting to be sent.
+     */
+    private static class SubQuery {
+        private final Fanout fanout;
+        private final DruidAggregationQuery<?> query;
+        private final long queuedNanos;
+
+        /**
+         * Constructor.
+         *
+         * @param fanout  The request of the sub-query
+         * @param query  The sub-query
+         * @param queuedNanos  When the sub-query was queued, in nanoseconds
+         */
+        SubQuery(Fanout fanout, DruidAggregationQuery<?> query, long queuedNanos) {
+            this.fanout = fanout;
+            this.query = query;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
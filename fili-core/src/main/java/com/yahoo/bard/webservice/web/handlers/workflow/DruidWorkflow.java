@@ -9,14 +9,19 @@ import com.yahoo.bard.webservice.data.volatility.VolatileIntervalsService;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.metadata.QuerySigningService;
 import com.yahoo.bard.webservice.table.PhysicalTableDictionary;
+import com.yahoo.bard.webservice.web.handlers.AdmissionControlRequestHandler;
+import com.yahoo.bard.webservice.web.handlers.AdmissionController;
 import com.yahoo.bard.webservice.web.handlers.AsyncWebServiceRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.CacheRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.CacheV2RequestHandler;
+import com.yahoo.bard.webservice.web.handlers.CoalescingRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.DataRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.DebugRequestHandler;
+import com.yahoo.bard.webservice.web.handlers.IntervalCacheV2RequestHandler;
 import com.yahoo.bard.webservice.web.handlers.PaginationRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.PartialDataRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.SplitQueryRequestHandler;
+import com.yahoo.bard.webservice.web.handlers.SplitQueryScheduler;
 import com.yahoo.bard.webservice.web.handlers.DateTimeSortRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.TopNMapperRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.VolatileDataRequestHandler;
@@ -35,8 +40,10 @@ import javax.validation.constraints.NotNull;
  * The Druid Workflow proceeds until a druid data request is returned or an error response is written.
  * <ul>
  *     <li>Partial data filtering is attached to the response. (Feature flagged)
+ *     <li>Requests are charged their estimated cost against per user and global budgets. (Feature flagged)
  *     <li>Requests are routed by selecting a druid web service.
  *     <li>The cache is checked for responses matching the query. (Feature flagged)
+ *     <li>Identical queries in flight at the same time are sent to druid once. (Feature flagged)
  *     <li>Non UI requests may pass through an asynchronous druid query to test the aggregation cost.
  *     <li>Requests are sent asynchronously to the druid web service
  * </ul>
@@ -99,9 +106,23 @@ public class DruidWorkflow implements RequestWorkflowProvider {
         DataRequestHandler uiHandler = new AsyncWebServiceRequestHandler(uiWebService, mapper);
         DataRequestHandler nonUiHandler = new AsyncWebServiceRequestHandler(nonUiWebService, mapper);
 
+        // If query coalescing is enabled, identical queries in flight at the same time are sent once
+        if (BardFeatureFlag.QUERY_COALESCING.isOn()) {
+            uiHandler = new CoalescingRequestHandler(uiHandler, uiWebService, querySigningService, mapper);
+            nonUiHandler = new CoalescingRequestHandler(nonUiHandler, nonUiWebService, querySigningService, mapper);
+        }
+
         // If query caching is enabled, the cache is checked before sending the request
         if (BardFeatureFlag.DRUID_CACHE.isOn()) {
-            if (BardFeatureFlag.DRUID_CACHE_V2.isOn()) {
+            if (BardFeatureFlag.DRUID_CACHE_V2.isOn() && BardFeatureFlag.DRUID_CACHE_V2_INTERVALS.isOn()) {
+                uiHandler = new IntervalCacheV2RequestHandler(uiHandler, dataCache, querySigningService, mapper);
+                nonUiHandler = new IntervalCacheV2RequestHandler(
+                        nonUiHandler,
+                        dataCache,
+                        querySigningService,
+                        mapper
+                );
+            } else if (BardFeatureFlag.DRUID_CACHE_V2.isOn()) {
                 uiHandler = new CacheV2RequestHandler(uiHandler, dataCache, querySigningService, mapper);
                 nonUiHandler = new CacheV2RequestHandler(nonUiHandler, dataCache, querySigningService, mapper);
             } else {
@@ -111,8 +132,10 @@ public class DruidWorkflow implements RequestWorkflowProvider {
         }
 
         if (BardFeatureFlag.QUERY_SPLIT.isOn()) {
-            uiHandler = new SplitQueryRequestHandler(uiHandler);
-            nonUiHandler = new SplitQueryRequestHandler(nonUiHandler);
+            // The in flight sub-queries of UI and non-UI requests are bounded together
+            SplitQueryScheduler scheduler = new SplitQueryScheduler();
+            uiHandler = new SplitQueryRequestHandler(uiHandler, scheduler, SplitQueryRequestHandler.MAX_SPLITS);
+            nonUiHandler = new SplitQueryRequestHandler(nonUiHandler, scheduler, SplitQueryRequestHandler.MAX_SPLITS);
         }
 
         // Requests sent to the NonUI we service are checked to see if they are too heavy to process
@@ -130,6 +153,11 @@ public class DruidWorkflow implements RequestWorkflowProvider {
                 mapper
          );
 
+        // If admission control is enabled, requests wait until their cost fits the user and global budgets
+        if (BardFeatureFlag.ADMISSION_CONTROL.isOn()) {
+            handler = new AdmissionControlRequestHandler(handler, new AdmissionController(), mapper);
+        }
+
         //The PaginationRequestHandler adds a mapper to the mapper chain that strips the result set down to just the
         //page desired. That mapper should be one of the last mappers to execute, so the handler that adds the mapper
         //to the chain needs to be one of the first handlers to execute.
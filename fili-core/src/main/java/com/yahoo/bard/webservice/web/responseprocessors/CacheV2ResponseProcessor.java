@@ -91,7 +91,7 @@ public class CacheV2ResponseProcessor implements ResponseProcessor {
                 valueString = writer.writeValueAsString(json);
                 int valueLength = valueString.length();
                 if (valueLength <= maxDruidResponseLengthToCache) {
-                    dataCache.set(
+                    dataCache.setAsync(
                             cacheKey,
                             querySigningService.getSegmentSetId(druidQuery).orElse(null),
                             valueString
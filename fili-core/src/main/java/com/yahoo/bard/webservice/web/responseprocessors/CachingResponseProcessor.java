@@ -86,7 +86,7 @@ public class CachingResponseProcessor implements ResponseProcessor {
                 valueString = writer.writeValueAsString(json);
                 int valueLength = valueString.length();
                 if (valueLength <= maxDruidResponseLengthToCache) {
-                    dataCache.set(cacheKey, valueString);
+                    dataCache.setAsync(cacheKey, valueString);
                 } else {
                     LOG.debug(
                             "Response not cached. Length of {} exceeds max value length of {}",
@@ -0,0 +1,44 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A response processor which can take the response of a query in parts, in order, instead of as one JSON document.
+ * <p>
+ * The parts of a response are given to {@link #processPartialResponse} one at a time, and may be released by the caller
+ * once they have been processed. {@link #completeResponse} is called once every part has been processed. If a part
+ * fails instead, the failure callback of the query is invoked, and the response is never completed.
+ */
+public interface IncrementalResponseProcessor extends ResponseProcessor {
+
+    /**
+     * Whether this processor takes responses in parts.
+     * <p>
+     * Processors which only pass responses on to another processor take parts only if that processor does.
+     *
+     * @return true if responses can be given to this processor in parts
+     */
+    default boolean acceptsPartialResponses() {
+        return true;
+    }
+
+    /**
+     * Process the next part of the response, which follows every part processed before.
+     *
+     * @param json  The json of the part, in the format of a druid data response
+     * @param query  The query with the schema for processing this response
+     */
+    void processPartialResponse(JsonNode json, DruidAggregationQuery<?> query);
+
+    /**
+     * Respond to the original web request with the parts of the response processed.
+     *
+     * @param query  The query with the schema for processing this response
+     * @param metadata  The LoggingContext to use
+     */
+    void completeResponse(DruidAggregationQuery<?> query, LoggingContext metadata);
+}
@@ -0,0 +1,217 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import static com.yahoo.bard.webservice.web.handlers.PartialDataRequestHandler.getPartialIntervalsWithDefault;
+import static com.yahoo.bard.webservice.web.handlers.VolatileDataRequestHandler.getVolatileIntervalsWithDefault;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.metadata.QuerySigningService;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response processor which assembles the response of a query from its cached buckets and the response for its
+ * missing buckets, caching each of the buckets received on its own.
+ * <p>
+ * Rows of the response are assigned to buckets by their timestamp. Buckets overlapping missing or volatile intervals
+ * are not cached. If some rows do not fall in a bucket of the query, nothing is cached, and the rows received follow
+ * the cached rows.
+ */
+public class IntervalCacheV2ResponseProcessor implements ResponseProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IntervalCacheV2ResponseProcessor.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private final long maxDruidResponseLengthToCache = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_max_response_length_to_cache"),
+            Long.MAX_VALUE
+    );
+
+    private final ResponseProcessor next;
+    private final DruidAggregationQuery<?> druidQuery;
+    private final Map<Interval, DruidAggregationQuery<?>> bucketQueries;
+    private final Map<Interval, String> cacheKeys;
+    private final Map<Interval, JsonNode> cachedBuckets;
+    private final TupleDataCache<String, Long, String> dataCache;
+    private final QuerySigningService<Long> querySigningService;
+    private final ObjectWriter writer;
+
+    /**
+     * Constructor.
+     *
+     * @param next  Next ResponseProcessor in the chain
+     * @param druidQuery  The query whose response is assembled
+     * @param bucketQueries  The query restricted to each of its buckets, in bucket order
+     * @param cacheKeys  The cache key of each bucket
+     * @param cachedBuckets  The responses of the buckets read from the cache
+     * @param dataCache  The cache into which to write the buckets received
+     * @param querySigningService  Service to use for signing the buckets with their segments
+     * @param mapper  An object mapper to use for processing Json
+     */
+    public IntervalCacheV2ResponseProcessor(
+            ResponseProcessor next,
+            DruidAggregationQuery<?> druidQuery,
+            Map<Interval, DruidAggregationQuery<?>> bucketQueries,
+            Map<Interval, String> cacheKeys,
+            Map<Interval, JsonNode> cachedBuckets,
+            TupleDataCache<String, Long, String> dataCache,
+            QuerySigningService<Long> querySigningService,
+            ObjectMapper mapper
+    ) {
+        this.next = next;
+        this.druidQuery = druidQuery;
+        this.bucketQueries = bucketQueries;
+        this.cacheKeys = cacheKeys;
+        this.cachedBuckets = cachedBuckets;
+        this.dataCache = dataCache;
+        this.querySigningService = querySigningService;
+        this.writer = mapper.writer();
+    }
+
+    @Override
+    public ResponseContext getResponseContext() {
+        return next.getResponseContext();
+    }
+
+    @Override
+    public FailureCallback getFailureCallback(DruidAggregationQuery<?> druidQuery) {
+        return next.getFailureCallback(druidQuery);
+    }
+
+    @Override
+    public HttpErrorCallback getErrorCallback(DruidAggregationQuery<?> druidQuery) {
+        return next.getErrorCallback(druidQuery);
+    }
+
+    /**
+     * Cache the buckets of the response for the missing buckets, and send on the response for every bucket.
+     *
+     * @param json  The response for the missing buckets
+     * @param missingQuery  The query for the missing buckets
+     * @param metadata  Logging context of the response
+     */
+    @Override
+    public void processResponse(JsonNode json, DruidAggregationQuery<?> missingQuery, LoggingContext metadata) {
+        if (!json.isArray()) {
+            next.processResponse(json, druidQuery, metadata);
+            return;
+        }
+        ArrayNode merged = JsonNodeFactory.instance.arrayNode();
+        Map<Interval, ArrayNode> receivedBuckets = splitByBucket((ArrayNode) json);
+        if (receivedBuckets == null) {
+            LOG.warn("Response rows outside of the buckets of query {}, buckets not cached", druidQuery);
+            cachedBuckets.values().forEach(bucketResponse -> merged.addAll((ArrayNode) bucketResponse));
+            merged.addAll((ArrayNode) json);
+            next.processResponse(merged, druidQuery, metadata);
+            return;
+        }
+        cacheBuckets(receivedBuckets);
+
+        for (Interval bucket : bucketQueries.keySet()) {
+            JsonNode bucketResponse = cachedBuckets.containsKey(bucket)
+                    ? cachedBuckets.get(bucket)
+                    : receivedBuckets.get(bucket);
+            merged.addAll((ArrayNode) bucketResponse);
+        }
+        next.processResponse(merged, druidQuery, metadata);
+    }
+
+    /**
+     * Split the rows of the response for the missing buckets by the bucket holding their timestamp.
+     *
+     * @param json  The response for the missing buckets
+     *
+     * @return the rows of each missing bucket, in bucket order, or null if some rows do not fall in a missing bucket
+     */
+    private Map<Interval, ArrayNode> splitByBucket(ArrayNode json) {
+        TreeMap<Long, Interval> bucketsByStart = new TreeMap<>();
+        Map<Interval, ArrayNode> receivedBuckets = new LinkedHashMap<>();
+        for (Interval bucket : bucketQueries.keySet()) {
+            if (!cachedBuckets.containsKey(bucket)) {
+                bucketsByStart.put(bucket.getStartMillis(), bucket);
+                receivedBuckets.put(bucket, JsonNodeFactory.instance.arrayNode());
+            }
+        }
+
+        for (JsonNode row : json) {
+            JsonNode timestamp = row.get("timestamp");
+            if (timestamp == null || !timestamp.isTextual()) {
+                return null;
+            }
+            long millis;
+            try {
+                millis = new DateTime(timestamp.asText()).getMillis();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            Map.Entry<Long, Interval> bucket = bucketsByStart.floorEntry(millis);
+            if (bucket == null || !bucket.getValue().contains(millis)) {
+                return null;
+            }
+            receivedBuckets.get(bucket.getValue()).add(row);
+        }
+        return receivedBuckets;
+    }
+
+    /**
+     * Cache the response of each bucket which does not overlap missing or volatile intervals.
+     *
+     * @param receivedBuckets  The rows of each bucket received
+     */
+    private void cacheBuckets(Map<Interval, ArrayNode> receivedBuckets) {
+        SimplifiedIntervalList uncacheableIntervals = getPartialIntervalsWithDefault(getResponseContext())
+                .union(getVolatileIntervalsWithDefault(getResponseContext()));
+
+        for (Map.Entry<Interval, ArrayNode> receivedBucket : receivedBuckets.entrySet()) {
+            Interval bucket = receivedBucket.getKey();
+            if (uncacheableIntervals.stream().anyMatch(bucket::overlaps)) {
+                continue;
+            }
+            String valueString = null;
+            try {
+                valueString = writer.writeValueAsString(receivedBucket.getValue());
+                if (valueString.length() <= maxDruidResponseLengthToCache) {
+                    dataCache.setAsync(
+                            cacheKeys.get(bucket),
+                            querySigningService.getSegmentSetId(bucketQueries.get(bucket)).orElse(null),
+                            valueString
+                    );
+                } else {
+                    LOG.debug(
+                            "Bucket {} not cached. Length of {} exceeds max value length of {}",
+                            bucket,
+                            valueString.length(),
+                            maxDruidResponseLengthToCache
+                    );
+                }
+            } catch (Exception e) {
+                LOG.warn(
+                        "Unable to cache {}value of size: {}",
+                        valueString == null ? "null " : "",
+                        valueString == null ? "N/A" : valueString.length(),
+                        e
+                );
+            }
+        }
+    }
+}
@@ -9,12 +9,14 @@ import static com.yahoo.bard.webservice.web.responseprocessors.ResponseContextKe
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite;
 import com.yahoo.bard.webservice.async.ResponseException;
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.DruidResponseParser;
 import com.yahoo.bard.webservice.data.HttpResponseMaker;
 import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.ResultSetSchema;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.metric.LogicalMetric;
+import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
@@ -24,7 +26,9 @@ import com.yahoo.bard.webservice.table.Column;
 import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.PageNotFoundException;
 import com.yahoo.bard.webservice.web.PreResponse;
+import com.yahoo.bard.webservice.web.ResponseFormatType;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.joda.time.DateTimeZone;
@@ -33,10 +37,12 @@ import org.slf4j.LoggerFactory;
 
 import rx.subjects.Subject;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.ws.rs.core.Response.Status;
@@ -44,7 +50,8 @@ import javax.ws.rs.core.Response.Status;
 /**
  * Callback handler for JSON to be processed into result sets.
  */
-public class ResultSetResponseProcessor extends MappingResponseProcessor implements ResponseProcessor {
+public class ResultSetResponseProcessor extends MappingResponseProcessor
+        implements StreamingResponseProcessor, IncrementalResponseProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(ResultSetResponseProcessor.class);
 
@@ -53,6 +60,10 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
     protected final DruidResponseParser druidResponseParser;
     protected HttpResponseMaker httpResponseMaker;
 
+    // The rows of the parts of the response processed so far, or the failure to parse a part
+    private ResultSet partialResults;
+    private RuntimeException partialFailure;
+
     /**
      * Constructor.
      *
@@ -88,9 +99,124 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
 
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        processResultSet(
+                () -> buildResultSet(json, druidQuery, apiRequest.getTimeZone()),
+                druidQuery,
+                metadata
+        );
+    }
+
+    /**
+     * Process the druid response stream.
+     * <p>
+     * When the response can be streamed, the rows are parsed from the druid response as the response to the original
+     * web request is written, and the parser is closed once they have been read. Otherwise the result set is built
+     * from the whole response before responding.
+     *
+     * @param parser  Parser over the json representing the druid response
+     * @param druidQuery  The druid query being processed
+     * @param metadata  The LoggingContext to use
+     */
+    @Override
+    public void processResponse(JsonParser parser, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        if (isStreamingResponse()) {
+            processResultSet(
+                    () -> druidResponseParser.stream(
+                            parser,
+                            buildResultSetSchema(druidQuery),
+                            druidQuery.getQueryType(),
+                            apiRequest.getTimeZone()
+                    ),
+                    druidQuery,
+                    metadata
+            );
+            return;
+        }
+        processResultSet(
+                () -> {
+                    try (JsonParser closingParser = parser) {
+                        return buildResultSet(closingParser, druidQuery, apiRequest.getTimeZone());
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                },
+                druidQuery,
+                metadata
+        );
+    }
+
+    /**
+     * Whether the response to the original web request is written as the rows are parsed from the druid response.
+     * <p>
+     * Only synchronous JSON, CSV and Avro responses are streamed, since asynchronous responses are stored whole and
+     * other formats need every row at once, and only when every result set mapper maps rows independently.
+     *
+     * @return true if the rows of the response are streamed
+     */
+    protected boolean isStreamingResponse() {
+        ResponseFormatType format = apiRequest.getFormat();
+        return BardFeatureFlag.STREAMING_DATA_RESPONSE.isOn()
+                && apiRequest.getAsyncAfter() == DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE
+                && (format == null || format == ResponseFormatType.JSON || format == ResponseFormatType.CSV
+                        || format == ResponseFormatType.AVRO)
+                && mappers.stream().allMatch(ResultSetMapper::mapsRowsIndependently);
+    }
+
+    /**
+     * Parse the rows of the next part of the druid response, adding them to the rows of the parts before it.
+     * <p>
+     * A part which cannot be parsed fails the response once it is completed.
+     *
+     * @param json  The json of the part
+     * @param druidQuery  The druid query being processed
+     */
+    @Override
+    public void processPartialResponse(JsonNode json, DruidAggregationQuery<?> druidQuery) {
+        if (partialFailure != null) {
+            return;
+        }
+        try {
+            if (partialResults == null) {
+                partialResults = druidResponseParser.buildResultSet(buildResultSetSchema(druidQuery));
+            }
+            druidResponseParser.parseInto(json, partialResults, druidQuery.getQueryType(), apiRequest.getTimeZone());
+        } catch (RuntimeException e) {
+            partialFailure = e;
+            partialResults = null;
+        }
+    }
+
+    @Override
+    public void completeResponse(DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        processResultSet(
+                () -> {
+                    if (partialFailure != null) {
+                        throw partialFailure;
+                    }
+                    return partialResults == null
+                            ? druidResponseParser.buildResultSet(buildResultSetSchema(druidQuery))
+                            : partialResults;
+                },
+                druidQuery,
+                metadata
+        );
+    }
+
+    /**
+     * Build, map and emit the result set for the druid response.
+     *
+     * @param resultSetBuilder  Builds the initial result set from the druid response
+     * @param druidQuery  The druid query being processed
+     * @param metadata  The LoggingContext to use
+     */
+    protected void processResultSet(
+            Supplier<ResultSet> resultSetBuilder,
+            DruidAggregationQuery<?> druidQuery,
+            LoggingContext metadata
+    ) {
         try {
             RequestLog.restore(metadata.getRequestLog());
-            ResultSet resultSet = buildResultSet(json, druidQuery, apiRequest.getTimeZone());
+            ResultSet resultSet = resultSetBuilder.get();
             resultSet = mapResultSet(resultSet);
 
             LinkedHashSet<String> apiMetricColumnNames = apiRequest.getLogicalMetrics().stream()
@@ -149,12 +275,47 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
      * @return The initial result set from the json node.
      */
     public ResultSet buildResultSet(JsonNode json, DruidAggregationQuery<?> druidQuery, DateTimeZone dateTimeZone) {
+        return druidResponseParser.parse(
+                json,
+                buildResultSetSchema(druidQuery),
+                druidQuery.getQueryType(),
+                dateTimeZone
+        );
+    }
 
+    /**
+     * Build a result set using the api request time grain, reading the druid response from a stream.
+     *
+     * @param parser  Parser over the json representing the druid response.
+     * @param druidQuery  The druid query being processed
+     * @param dateTimeZone  The date time zone for parsing result rows
+     *
+     * @return The initial result set from the json stream.
+     */
+    public ResultSet buildResultSet(
+            JsonParser parser,
+            DruidAggregationQuery<?> druidQuery,
+            DateTimeZone dateTimeZone
+    ) {
+        return druidResponseParser.parse(
+                parser,
+                buildResultSetSchema(druidQuery),
+                druidQuery.getQueryType(),
+                dateTimeZone
+        );
+    }
+
+    /**
+     * Build the schema of the result set for a druid query using the api request time grain.
+     *
+     * @param druidQuery  The druid query being processed
+     *
+     * @return The schema of the result set
+     */
+    protected ResultSetSchema buildResultSetSchema(DruidAggregationQuery<?> druidQuery) {
         LinkedHashSet<Column> columns = druidResponseParser.buildSchemaColumns(druidQuery)
                 .collect(Collectors.toCollection(LinkedHashSet::new));
 
-        ResultSetSchema resultSetSchema = new ResultSetSchema(granularity, columns);
-
-        return druidResponseParser.parse(json, resultSetSchema, druidQuery.getQueryType(), dateTimeZone);
+        return new ResultSetSchema(granularity, columns);
     }
 }
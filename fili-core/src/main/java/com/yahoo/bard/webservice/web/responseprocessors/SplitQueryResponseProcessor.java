@@ -22,11 +22,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * This response processor receives a list of expected intervals.  As responses arrives, it stores the responses until
  * all expected intervals have arrived, at which point it passes the concatenated Json content from each of the calls
  * to its next processor.
+ * <p>
+ * When the next processor is an {@link IncrementalResponseProcessor} taking partial responses, responses are passed on
+ * in interval order as soon as the responses of all earlier intervals have been passed on, and are released once
+ * passed on, so only the responses arriving ahead of a slower earlier interval are held.
  */
 public class SplitQueryResponseProcessor implements ResponseProcessor {
 
@@ -35,13 +40,18 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
     public static final String UNEXPECTED_INTERVAL_FORMAT = "Split query received an interval it wasn't expecting: %s";
 
     private final ResponseProcessor next;
+    private final IncrementalResponseProcessor incrementalNext;
 
     private final DruidAggregationQuery<?> queryBeforeSplit;
     private final Map<Interval, AtomicInteger> expectedIntervals;
     private final List<Pair<JsonNode, LoggingContext>> completedIntervals;
     private final AtomicInteger completed;
     private final AtomicBoolean failed = new AtomicBoolean(false);
+    // Responses are passed on by one thread at a time, which also passes on the responses of threads arriving meanwhile
+    private final AtomicInteger passingOn = new AtomicInteger(0);
+    private int passedOn;
     private final RequestLog logCtx;
+    private volatile Consumer<Boolean> subQueryListener = ignored -> { };
 
     /**
      * Constructor.
@@ -61,6 +71,10 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
             RequestLog logCtx
     ) {
         this.next = next;
+        this.incrementalNext = next instanceof IncrementalResponseProcessor
+                && ((IncrementalResponseProcessor) next).acceptsPartialResponses()
+                ? (IncrementalResponseProcessor) next
+                : null;
         this.queryBeforeSplit = druidQuery;
         this.expectedIntervals = expectedIntervals;
         this.completedIntervals = Arrays.asList(new Pair[expectedIntervals.size()]);
@@ -68,6 +82,18 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
         this.logCtx = logCtx;
     }
 
+    /**
+     * Set the listener told of each sub-query completing.
+     * <p>
+     * The listener is called once for each sub-query, with true if the sub-query failed or errored, or if the response
+     * of the split query has already failed, and with false once its response has been processed otherwise.
+     *
+     * @param subQueryListener  The listener
+     */
+    public void setSubQueryListener(Consumer<Boolean> subQueryListener) {
+        this.subQueryListener = subQueryListener;
+    }
+
     @Override
     public ResponseContext getResponseContext() {
         return next.getResponseContext();
@@ -80,8 +106,12 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
             @Override
             public void invoke(Throwable error) {
-                if (failed.compareAndSet(false, true)) {
-                    nextFail.invoke(error);
+                try {
+                    if (failed.compareAndSet(false, true)) {
+                        nextFail.invoke(error);
+                    }
+                } finally {
+                    subQueryListener.accept(true);
                 }
             }
         };
@@ -94,8 +124,12 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
             @Override
             public void invoke(int statusCode, String reasonPhrase, String responseBody) {
-                if (failed.compareAndSet(false, true)) {
-                    nextError.invoke(statusCode, reasonPhrase, responseBody);
+                try {
+                    if (failed.compareAndSet(false, true)) {
+                        nextError.invoke(statusCode, reasonPhrase, responseBody);
+                    }
+                } finally {
+                    subQueryListener.accept(true);
                 }
             }
         };
@@ -103,6 +137,21 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        try {
+            mergeResponse(json, druidQuery, metadata);
+        } finally {
+            subQueryListener.accept(failed.get());
+        }
+    }
+
+    /**
+     * Keep the response of a sub-query, sending the merged responses on once every sub-query has responded.
+     *
+     * @param json  The response of the sub-query
+     * @param druidQuery  The sub-query
+     * @param metadata  The logging context of the response
+     */
+    private void mergeResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
         if (failed.get()) {
             return;
         }
@@ -122,13 +171,52 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
         completedIntervals.set(index, new Pair<>(json, metadata));
 
-        if (completed.decrementAndGet() == 0) {
+        int remaining = completed.decrementAndGet();
+        if (incrementalNext != null) {
+            if (passingOn.getAndIncrement() == 0) {
+                do {
+                    passOnLeadingResponses();
+                } while (passingOn.decrementAndGet() != 0);
+            }
+        } else if (remaining == 0) {
             Pair<JsonNode, LoggingContext> mergedResponse = mergeResponses(completedIntervals);
             RequestLog.restore(mergedResponse.getValue().getRequestLog());
             next.processResponse(mergedResponse.getKey(), queryBeforeSplit, mergedResponse.getValue());
         }
     }
 
+    /**
+     * Pass the responses of the leading intervals which have arrived on to the next processor, in interval order,
+     * completing the response once the last interval has been passed on.
+     * <p>
+     * Only the logging context of the responses passed on is kept.
+     */
+    private void passOnLeadingResponses() {
+        Pair<JsonNode, LoggingContext> leading;
+        while (!failed.get()
+                && passedOn < completedIntervals.size()
+                && (leading = completedIntervals.get(passedOn)) != null
+        ) {
+            try {
+                incrementalNext.processPartialResponse(leading.getKey(), queryBeforeSplit);
+            } catch (RuntimeException e) {
+                LOG.error("Split query response could not be passed on", e);
+                if (failed.compareAndSet(false, true)) {
+                    next.getFailureCallback(queryBeforeSplit).invoke(e);
+                }
+                return;
+            }
+            completedIntervals.set(passedOn, new Pair<>(null, leading.getValue()));
+            passedOn++;
+
+            if (passedOn == completedIntervals.size()) {
+                LoggingContext mergedContext = mergeLoggingContexts(completedIntervals);
+                RequestLog.restore(mergedContext.getRequestLog());
+                incrementalNext.completeResponse(queryBeforeSplit, mergedContext);
+            }
+        }
+    }
+
     /**
      * Fail the request.
      *
@@ -140,7 +228,9 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
         String message = String.format(format, interval);
         Exception e = new IllegalStateException(message);
         LOG.error(message, e);
-        getFailureCallback(druidQuery).invoke(e);
+        if (failed.compareAndSet(false, true)) {
+            next.getFailureCallback(druidQuery).invoke(e);
+        }
     }
 
     /**
@@ -153,14 +243,26 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
     private Pair<JsonNode, LoggingContext> mergeResponses(List<Pair<JsonNode, LoggingContext>> responses) {
         JsonNodeFactory factory = new JsonNodeFactory(true);
         ArrayNode result = factory.arrayNode();
-        RequestLog.restore(logCtx);
         for (Pair<JsonNode, LoggingContext> entry : responses) {
             for (JsonNode jsonNode : entry.getKey()) {
                 result.add(jsonNode);
             }
+        }
+        return new Pair<>(result, mergeLoggingContexts(responses));
+    }
+
+    /**
+     * Merge the request logs of the responses into the request log of the split query.
+     *
+     * @param responses  A list of pairs that encompass JSON nodes and response metadata
+     *
+     * @return the aggregate request log context
+     */
+    private LoggingContext mergeLoggingContexts(List<Pair<JsonNode, LoggingContext>> responses) {
+        RequestLog.restore(logCtx);
+        for (Pair<JsonNode, LoggingContext> entry : responses) {
             RequestLog.accumulate(entry.getValue().getRequestLog());
         }
-        RequestLog updatedCtx = RequestLog.dump();
-        return new Pair<>(result, new LoggingContext(updatedCtx));
+        return new LoggingContext(RequestLog.dump());
     }
 }
@@ -0,0 +1,25 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A response processor which can consume the druid response directly from a stream of JSON tokens, without the
+ * response first being built into a JsonNode tree.
+ */
+public interface StreamingResponseProcessor extends ResponseProcessor {
+
+    /**
+     * Process the response stream and respond to the original web request.
+     * <p>
+     * The processor owns the parser, and closes it once it has read the response, which may be after this returns.
+     *
+     * @param parser  Parser over the json representing a druid data response
+     * @param query  The query with the schema for processing this response
+     * @param metadata  The LoggingContext to use
+     */
+    void processResponse(JsonParser parser, DruidAggregationQuery<?> query, LoggingContext metadata);
+}
@@ -15,7 +15,7 @@ import com.fasterxml.jackson.databind.JsonNode;
  * A response processor which wraps a timer around the outer most response processor only in the event of an error
  * response.
  */
-public class WeightCheckResponseProcessor implements ResponseProcessor {
+public class WeightCheckResponseProcessor implements IncrementalResponseProcessor {
 
     private final ResponseProcessor next;
 
@@ -63,4 +63,20 @@ public class WeightCheckResponseProcessor implements ResponseProcessor {
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
         next.processResponse(json, druidQuery, metadata);
     }
+
+    @Override
+    public boolean acceptsPartialResponses() {
+        return next instanceof IncrementalResponseProcessor
+                && ((IncrementalResponseProcessor) next).acceptsPartialResponses();
+    }
+
+    @Override
+    public void processPartialResponse(JsonNode json, DruidAggregationQuery<?> druidQuery) {
+        ((IncrementalResponseProcessor) next).processPartialResponse(json, druidQuery);
+    }
+
+    @Override
+    public void completeResponse(DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        ((IncrementalResponseProcessor) next).completeResponse(druidQuery, metadata);
+    }
 }
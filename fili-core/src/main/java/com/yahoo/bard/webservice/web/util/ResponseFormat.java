@@ -26,6 +26,30 @@ public class ResponseFormat {
      * @return A content disposition header telling the browser the name of the CSV file to be downloaded
      */
     public static String getCsvContentDispositionValue(UriInfo uriInfo) {
+        return getContentDispositionValue(uriInfo, "csv");
+    }
+
+    /**
+     * Build a content-disposition header value with a proposed filename for an Avro download, in the same format as
+     * {@link #getCsvContentDispositionValue(UriInfo)}.
+     *
+     * @param uriInfo  UriInfo of the request
+     *
+     * @return A content disposition header telling the browser the name of the Avro file to be downloaded
+     */
+    public static String getAvroContentDispositionValue(UriInfo uriInfo) {
+        return getContentDispositionValue(uriInfo, "avro");
+    }
+
+    /**
+     * Build a content-disposition header value with a filename made from the path and interval of the request.
+     *
+     * @param uriInfo  UriInfo of the request
+     * @param extension  The extension of the file name
+     *
+     * @return A content disposition header telling the browser the name of the file to be downloaded
+     */
+    private static String getContentDispositionValue(UriInfo uriInfo, String extension) {
         String uriPath = uriInfo.getPathSegments().stream()
                 .map(PathSegment::getPath)
                 .collect(Collectors.joining("-"));
@@ -38,6 +62,6 @@ public class ResponseFormat {
             interval = "_" + interval.replace("/", "_").replace(",", "__");
         }
 
-        return "attachment; filename=" + uriPath + interval + ".csv";
+        return "attachment; filename=" + uriPath + interval + "." + extension;
     }
 }
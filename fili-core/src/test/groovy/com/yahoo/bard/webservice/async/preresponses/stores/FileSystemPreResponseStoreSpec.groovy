@@ -0,0 +1,130 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.async.preresponses.stores
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.data.PreResponseDeserializer
+import com.yahoo.bard.webservice.data.StreamingResultSet
+import com.yahoo.bard.webservice.data.dimension.DimensionDictionary
+import com.yahoo.bard.webservice.data.time.StandardGranularityParser
+import com.yahoo.bard.webservice.web.PreResponse
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+/**
+ * Verifies that the FileSystemPreResponseStore satisfies the PreResponseStore interface, most tests may be found in
+ * {@link PreResponseStoreSpec}, and that it chunks and expires the PreResponses it stores.
+ */
+class FileSystemPreResponseStoreSpec extends PreResponseStoreSpec {
+
+    static final long TTL = TimeUnit.HOURS.toMillis(1)
+
+    Path directory
+    PreResponseDeserializer preResponseDeserializer
+    long now
+
+    @Override
+    PreResponseStore getStore() {
+        directory = Files.createTempDirectory("preresponses")
+        ObjectMapper typePreservingMapper = new ObjectMappersSuite().mapper
+        typePreservingMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL)
+        preResponseDeserializer = new PreResponseDeserializer(
+                new DimensionDictionary(),
+                new ObjectMappersSuite().mapper,
+                typePreservingMapper,
+                new StandardGranularityParser()
+        )
+        now = System.currentTimeMillis()
+        return store(1024)
+    }
+
+    FileSystemPreResponseStore store(long chunkSize) {
+        return new FileSystemPreResponseStore(directory, preResponseDeserializer, chunkSize, TTL, { now })
+    }
+
+    @Override
+    def childCleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "A PreResponse larger than a chunk is written to several chunks and read back whole"() {
+        given:
+        PreResponse preResponse = PreResponseTestingUtils.buildPreResponse("2016-04-24T00:00:00.000-05:00")
+        FileSystemPreResponseStore store = store(16)
+
+        when:
+        store.save("chunked", preResponse).toBlocking().first()
+
+        then:
+        Files.list(directory.resolve("ticket-chunked")).count() > 1
+        store.get("chunked").toBlocking().single() == preResponse
+    }
+
+    def "A streamed PreResponse reads its results from the chunks as they are iterated"() {
+        given:
+        PreResponse preResponse = PreResponseTestingUtils.buildPreResponse("2016-04-24T00:00:00.000-05:00")
+        FileSystemPreResponseStore store = store(16)
+        store.save("chunked", preResponse).toBlocking().first()
+
+        when:
+        PreResponse streamed = store.stream("chunked").toBlocking().single()
+
+        then:
+        streamed.resultSet instanceof StreamingResultSet
+        streamed.resultSet.schema == store.get("chunked").toBlocking().single().resultSet.schema
+        streamed.responseContext == preResponse.responseContext
+        streamed.resultSet.iterator().toList() == preResponse.resultSet
+        store.stream("missing").toList().toBlocking().single() == []
+    }
+
+    def "A store with a cleanup period deletes expired PreResponses in the background until it is closed"() {
+        given:
+        FileSystemPreResponseStore store = new FileSystemPreResponseStore(
+                directory,
+                preResponseDeserializer,
+                1024,
+                TTL,
+                { now },
+                10
+        )
+
+        when:
+        now += TTL + 1
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert Files.list(directory).count() == 0
+        }
+
+        cleanup:
+        store.close()
+    }
+
+    def "A PreResponse older than the time to live is no longer returned"() {
+        when:
+        now += TTL + 1
+
+        then:
+        preResponseStore.get("0").toList().toBlocking().single() == []
+        !Files.exists(directory.resolve("ticket-0"))
+    }
+
+    def "Expired PreResponses are deleted"() {
+        given:
+        now += TTL + 1
+
+        when:
+        ((FileSystemPreResponseStore) preResponseStore).deleteExpired()
+
+        then:
+        Files.list(directory).count() == 0
+    }
+}
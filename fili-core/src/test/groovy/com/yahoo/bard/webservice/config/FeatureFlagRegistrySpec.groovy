@@ -35,10 +35,17 @@ class FeatureFlagRegistrySpec extends Specification {
                 .collect(Collectors.toSet()) as Set
 
         then:
-        values == ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled", "query_split_enabled",
-                   "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
+        values == ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled",
+                   "druid_cache_v2_intervals_enabled", "query_split_enabled", "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
                    "updated_metadata_collection_names_enabled", "druid_coordinator_metadata_enabled",
-                   "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled"] as Set
+                   "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled",
+                   "streaming_druid_response_enabled", "columnar_result_set_enabled",
+                   "streaming_data_response_enabled",
+                   "response_compression_enabled",
+                   "query_coalescing_enabled",
+                   "admission_control_enabled",
+                   "druid_dispatch_lanes_enabled",
+                   "druid_hedging_enabled"] as Set
     }
 
     @Unroll
@@ -47,9 +54,16 @@ class FeatureFlagRegistrySpec extends Specification {
         flagRegistry.forName(flagName) instanceof FeatureFlag
 
         where:
-        flagName << ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled", "query_split_enabled",
-                     "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
+        flagName << ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled",
+                     "druid_cache_v2_intervals_enabled", "query_split_enabled", "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
                      "updated_metadata_collection_names_enabled", "druid_coordinator_metadata_enabled",
-                     "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled"]
+                     "druid_dimensions_loader_enabled", "case_sensitive_keys_enabled",
+                     "streaming_druid_response_enabled", "columnar_result_set_enabled",
+                     "streaming_data_response_enabled",
+                     "response_compression_enabled",
+                     "query_coalescing_enabled",
+                     "admission_control_enabled",
+                     "druid_dispatch_lanes_enabled",
+                     "druid_hedging_enabled"]
     }
 }
@@ -0,0 +1,184 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn
+import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ColumnarResultSetSpec extends Specification {
+
+    Dimension dimension = Mock(Dimension)
+    DimensionColumn dimensionColumn = new DimensionColumn(dimension)
+    MetricColumn metricColumn = new MetricColumn("metric")
+    ResultSetSchema schema = new ResultSetSchema(DAY, [dimensionColumn, metricColumn] as Set)
+
+    DateTime start = new DateTime("2017-01-01", DateTimeZone.forID("America/Chicago"))
+
+    def setup() {
+        dimension.getApiName() >> "dimension"
+        dimension.getKey() >> BardDimensionField.ID
+        dimension.getDimensionFields() >> ([BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet)
+    }
+
+    Result buildResult(int day, String dimensionKey, Map<MetricColumn, Object> metrics) {
+        DimensionRow row = BardDimensionField.makeDimensionRow(dimension, dimensionKey, dimensionKey + "_desc")
+        new Result([(dimensionColumn): row], metrics, start.plusDays(day))
+    }
+
+    @Unroll
+    def "Metric values #values read back equal to the values added"() {
+        given:
+        List<Result> results = values.withIndex().collect { value, i ->
+            buildResult(i, "key$i", [(metricColumn): value])
+        }
+
+        when:
+        ColumnarResultSet resultSet = new ColumnarResultSet(schema, results)
+
+        then:
+        resultSet.size() == results.size()
+        resultSet == results
+        resultSet.collect { it.getMetricValue(metricColumn) } == values
+        resultSet*.timeStamp*.zone == [start.zone] * values.size()
+
+        where:
+        values << [
+                [1G, 2G, -3G],
+                [1.5G, 0.25G, null],
+                [1G, 1.5G, 2G],
+                [1.50G, 2G],
+                [Long.MAX_VALUE as BigDecimal, (Long.MAX_VALUE as BigDecimal) + 1],
+                [null, 0.5G, 1G],
+                ["a", true, JsonNodeFactory.instance.objectNode().put("foo", 1)]
+        ]
+    }
+
+    def "Missing metric values stay missing rather than becoming null"() {
+        given:
+        MetricColumn other = new MetricColumn("other")
+        List<Result> results = [
+                buildResult(0, "a", [(metricColumn): 1G]),
+                buildResult(1, "b", [(metricColumn): 2G, (other): null])
+        ]
+
+        when:
+        ResultSet resultSet = new ColumnarResultSet(schema, results)
+
+        then:
+        !resultSet[0].metricValues.containsKey(other)
+        resultSet[1].metricValues.containsKey(other)
+        resultSet[1].getMetricValue(other) == null
+        resultSet == results
+    }
+
+    def "Equal dimension rows are interned to a single instance"() {
+        given:
+        ResultSet resultSet = new ColumnarResultSet(
+                schema,
+                (0..2).collect { buildResult(it, "same", [(metricColumn): it as BigDecimal]) }
+        )
+
+        expect:
+        resultSet[0].getDimensionRow(dimensionColumn).is(resultSet[2].getDimensionRow(dimensionColumn))
+    }
+
+    def "Rows in a different time zone are rejected"() {
+        given:
+        ColumnarResultSet resultSet = new ColumnarResultSet(schema, [buildResult(0, "a", [(metricColumn): 1G])])
+
+        when:
+        resultSet.add(new Result([:], [(metricColumn): 1G], new DateTime("2017-01-01", DateTimeZone.UTC)))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    @Unroll
+    def "Changing a columnar result set with #operation changes it like a list"() {
+        given:
+        List<Result> results = (0..4).collect {
+            buildResult(it, "key${it % 2}", [(metricColumn): it % 3 ? it as BigDecimal : null])
+        }
+        List<Result> expected = new ArrayList<>(results)
+        ColumnarResultSet resultSet = new ColumnarResultSet(schema, results)
+
+        and: "the mutations, built here since data providers cannot see the columns of the spec"
+        Map<String, Closure> mutations = [
+                "set"       : { it.set(1, buildResult(9, "other", [(metricColumn): 1.5G])) },
+                "set empty" : { it.set(2, new Result([:], [:], it[2].timeStamp)) },
+                "add"       : { it.add(1, buildResult(7, "key7", [(metricColumn): 7G])) },
+                "addAll"    : { it.addAll(2, [buildResult(7, "a", [:]), buildResult(8, "b", [(metricColumn): 8G])]) },
+                "remove"    : { it.remove(1) },
+                "remove row": { it.remove(it[3]) },
+                "removeIf"  : { it.removeIf { Result r -> r.getMetricValue(metricColumn) == null } },
+                "replaceAll": { it.replaceAll { Result r -> r.withMetricValue(metricColumn, 2G) } },
+                "sort"      : { it.sort({ Result a, Result b -> b.timeStamp <=> a.timeStamp } as Comparator) },
+                "subList"   : { it.subList(1, 3).clear() },
+                "iterator"  : { Iterator i = it.iterator(); i.next(); i.remove() },
+                "clear"     : { it.clear() }
+        ]
+
+        when:
+        mutations[operation](expected)
+        mutations[operation](resultSet)
+
+        then:
+        resultSet == expected
+        resultSet.size() == expected.size()
+
+        where:
+        operation << [
+                "set",
+                "set empty",
+                "add",
+                "addAll",
+                "remove",
+                "remove row",
+                "removeIf",
+                "replaceAll",
+                "sort",
+                "subList",
+                "iterator",
+                "clear"
+        ]
+    }
+
+    def "Mapping a columnar result set produces a columnar result set"() {
+        given:
+        List<Result> results = (0..3).collect { buildResult(it, "key$it", [(metricColumn): it as BigDecimal]) }
+        MetricColumn filterColumn = metricColumn
+        ResultSetMapper oddRowFilter = new ResultSetMapper() {
+            @Override
+            protected Result map(Result result, ResultSetSchema resultSetSchema) {
+                result.getMetricValueAsNumber(filterColumn).intValue() % 2 ? result : null
+            }
+
+            @Override
+            protected ResultSetSchema map(ResultSetSchema resultSetSchema) {
+                resultSetSchema
+            }
+        }
+
+        when:
+        ResultSet mapped = oddRowFilter.map(new ColumnarResultSet(schema, results))
+
+        then:
+        mapped instanceof ColumnarResultSet
+        mapped.schema == schema
+        mapped == [results[1], results[3]]
+    }
+}
@@ -4,6 +4,7 @@ package com.yahoo.bard.webservice.data
 
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn
 import com.yahoo.bard.webservice.data.dimension.DimensionDictionary
@@ -398,6 +399,112 @@ class DruidResponseParserSpec extends Specification {
         queryType << [DefaultQueryType.GROUP_BY, DefaultQueryType.TOP_N, DefaultQueryType.TIMESERIES]
     }
 
+    @Unroll
+    def "Streaming parse of a #queryType response with #metrics matches the tree parse"() {
+        given: "A response from Druid"
+        String druidResponse = buildResponse(queryType, metrics)
+        ResultSetSchema schema = buildSchema(metrics.keySet().collect { it[1..-2] })
+
+        when: "We parse the response both as a tree and as a stream"
+        ResultSet treeResultSet = buildResultSet(druidResponse, schema, queryType)
+        ResultSet streamedResultSet = responseParser.parse(
+                new ObjectMapper().getFactory().createParser(druidResponse),
+                schema,
+                queryType,
+                DateTimeZone.UTC
+        )
+
+        then: "The result sets are the same"
+        streamedResultSet.getSchema() == schema
+        streamedResultSet == treeResultSet
+
+        where:
+        [queryType, metrics] << [
+                [DefaultQueryType.GROUP_BY, DefaultQueryType.TOP_N, DefaultQueryType.TIMESERIES],
+                [
+                        ['"pageViews"': 1, '"time_spent"': 2.5],
+                        ['"luckyNumbers"': '"1, 3, 7"', '"true"': true, '"null"': null],
+                        ['"luckyNumbers"': '{"values": "1, 3, 7", "length": 3}']
+                ]
+        ].combinations()
+    }
+
+    def "Streaming parse handles a timestamp that follows the rows of a bucket"() {
+        given: "A top N response with the timestamp after the result rows"
+        String druidResponse = """
+        [ {
+            "result" : [ { "ageBracket" : "4", "pageViews" : 1 }, { "ageBracket" : "1", "pageViews" : 2 } ],
+            "timestamp" : "2012-01-04T00:00:00.000Z"
+        } ]
+        """
+        ResultSetSchema schema = new ResultSetSchema(DAY, [ageColumn, new MetricColumn("pageViews")].toSet())
+
+        when:
+        ResultSet resultSet = responseParser.parse(
+                new ObjectMapper().getFactory().createParser(druidResponse),
+                schema,
+                DefaultQueryType.TOP_N,
+                DateTimeZone.UTC
+        )
+
+        then:
+        resultSet == buildResultSet(druidResponse, schema, DefaultQueryType.TOP_N)
+        resultSet*.timeStamp == [new DateTime("2012-01-04T00:00:00.000Z", DateTimeZone.UTC)] * 2
+    }
+
+    @Unroll
+    def "Streaming a #queryType response reads the rows of the tree parse once, in order"() {
+        given:
+        String druidResponse = buildResponse(queryType, ['"pageViews"': 1, '"luckyNumbers"': '"1, 3, 7"'])
+        ResultSetSchema schema = buildSchema(["pageViews", "luckyNumbers"])
+        JsonParser parser = new ObjectMapper().getFactory().createParser(druidResponse)
+
+        when:
+        StreamingResultSet resultSet = responseParser.stream(parser, schema, queryType, DateTimeZone.UTC)
+
+        then: "nothing is read until the rows are"
+        resultSet.getSchema() == schema
+        !parser.isClosed()
+
+        when:
+        List<Result> rows = resultSet.iterator().toList()
+
+        then: "the rows match the tree parse, and the parser is closed once they are read"
+        rows == buildResultSet(druidResponse, schema, queryType)
+        parser.isClosed()
+
+        when:
+        resultSet.iterator()
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        queryType << [DefaultQueryType.GROUP_BY, DefaultQueryType.TOP_N, DefaultQueryType.TIMESERIES]
+    }
+
+    @Unroll
+    def "With columnar result sets enabled a #queryType response parses into an equal ColumnarResultSet"() {
+        given:
+        String druidResponse = buildResponse(queryType, ['"pageViews"': 1, '"luckyNumbers"': '"1, 3, 7"'])
+        ResultSetSchema schema = buildSchema(["pageViews", "luckyNumbers"])
+        ResultSet expected = buildResultSet(druidResponse, schema, queryType)
+        BardFeatureFlag.COLUMNAR_RESULT_SET.setOn(true)
+
+        when:
+        ResultSet resultSet = buildResultSet(druidResponse, schema, queryType)
+
+        then:
+        resultSet instanceof ColumnarResultSet
+        resultSet == expected
+
+        cleanup:
+        BardFeatureFlag.COLUMNAR_RESULT_SET.setOn(false)
+
+        where:
+        queryType << [DefaultQueryType.GROUP_BY, DefaultQueryType.TOP_N, DefaultQueryType.TIMESERIES]
+    }
+
     def "Attempting to parse an unknown query type throws an UnsupportedOperationException"() {
         given:
         QueryType mysteryType = Mock(QueryType)
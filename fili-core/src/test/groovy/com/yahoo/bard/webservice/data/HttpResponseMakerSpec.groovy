@@ -131,6 +131,23 @@ class HttpResponseMakerSpec extends Specification {
         apiRequest.getFormat() >> ResponseFormatType.CSV
     }
 
+    def "An Avro DataApiRequest builds a response with the Avro content type header set"() {
+
+        setup: "A ResultSetResponseProcessor"
+        responseContext.put("headers", resultSetResponseProcessor.getHeaders())
+        PreResponse preResponse = new PreResponse(resultSet, responseContext)
+
+        when: "The Response is built"
+        Response actual = httpResponseMaker.buildResponse(preResponse, apiRequest.format, apiRequest.uriInfo)
+
+        then: "The header is set correctly"
+        actual.getHeaderString(HttpHeaders.CONTENT_TYPE) == "avro/binary"
+        actual.getHeaderString(HttpHeaders.CONTENT_DISPOSITION) == "attachment; filename=theMockPath_a_b__c_d.avro"
+
+        and: "Mock override: An Avro-formatted request"
+        apiRequest.getFormat() >> ResponseFormatType.AVRO
+    }
+
     def "createResponseBuilder() returns a non-null ResponseBuilder"() {
 
         when:
@@ -53,6 +53,19 @@ class PreResponseDeSerializationSpec extends Specification {
         GroovyTestUtils.compareObjects(resources.resultSet,  preResponseObj.resultSet)
     }
 
+    def "PreResponse de-serialization from a stream matches de-serialization from a string"() {
+        setup:
+        PreResponse fromString = preResponseDeSerializer.deserialize(resources.serializedPreResponse)
+        PreResponse fromStream = preResponseDeSerializer.deserialize(
+                new ByteArrayInputStream(resources.serializedPreResponse.getBytes("UTF-8"))
+        )
+
+        expect:
+        GroovyTestUtils.compareObjects(resources.resultSet, fromStream.resultSet)
+        fromStream.resultSet.schema == fromString.resultSet.schema
+        fromStream.responseContext == fromString.responseContext
+    }
+
     def "ResponseContext de-Serialization from serialized ResponseContext object validation"() {
         setup:
 
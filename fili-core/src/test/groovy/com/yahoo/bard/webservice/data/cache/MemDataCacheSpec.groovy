@@ -0,0 +1,125 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import net.spy.memcached.BinaryConnectionFactory
+import net.spy.memcached.MemcachedClient
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+@Timeout(30)
+class MemDataCacheSpec extends Specification {
+
+    TestMemcachedServer server = new TestMemcachedServer()
+    MemcachedClient client = new MemcachedClient(new BinaryConnectionFactory(), [server.address])
+
+    def cleanup() {
+        server.releaseWrites()
+        client.shutdown(1, TimeUnit.SECONDS)
+        server.close()
+    }
+
+    def "Values set are read back, one key or many at a time"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<>(client)
+
+        when:
+        cache.setAsync("key1", "value1").get()
+        cache.setAsync("key2", "value2").get()
+
+        then:
+        cache.get("key1") == "value1"
+        cache.getAsync("key2").get() == "value2"
+        cache.getAsync("missing").get() == null
+        cache.getMulti(["key1", "missing", "key2"]) == [key1: "value1", key2: "value2"]
+        cache.getMultiAsync(["key2", "missing"]).get() == [key2: "value2"]
+    }
+
+    def "Setting a value waits for memcached to store it"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<>(client)
+
+        expect:
+        cache.set("key", "value")
+        server.containsKey("key")
+    }
+
+    def "Setting a value asynchronously returns without waiting for memcached to store it"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<>(client)
+        server.holdWrites()
+
+        when:
+        CompletableFuture<Boolean> stored = cache.setAsync("key", "value")
+
+        then: "the write is sent, but not stored yet"
+        !stored.done
+        !server.containsKey("key")
+
+        when:
+        server.releaseWrites()
+
+        then:
+        stored.get()
+        cache.get("key") == "value"
+    }
+
+    def "Writes past the in-flight limit are dropped until earlier writes complete"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<>(client, 2)
+        long dropped = MemDataCache.DROPPED_WRITES.count
+        server.holdWrites()
+
+        when:
+        List<CompletableFuture<Boolean>> stored = (1..3).collect {
+            cache.setAsync("key$it" as String, "value$it" as String)
+        }
+
+        then: "the last write is dropped at once, while the others wait on memcached"
+        stored*.done == [false, false, true]
+        !stored[2].get()
+        MemDataCache.DROPPED_WRITES.count == dropped + 1
+
+        when:
+        server.releaseWrites()
+        cache.getAsync("key1").get()
+
+        then: "the acknowledged writes free their slots"
+        cache.setAsync("key3", "value3").get()
+        cache.getMulti(["key1", "key2", "key3"]) == [key1: "value1", key2: "value2", key3: "value3"]
+    }
+
+    def "Reads from an unreachable server complete as misses"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<>(client)
+        server.close()
+        client.shutdown()
+
+        expect:
+        cache.getAsync("key").get() == null
+        cache.getMultiAsync(["key"]).get() == [:]
+        cache.getMulti(["key"]) == [:]
+    }
+
+    def "Tuple caches read many entries by their unhashed keys, leaving out hash collisions"() {
+        given:
+        MemTupleDataCache<String> cache = new MemTupleDataCache<>(client)
+        cache.set("key1", 1L, "value1")
+        cache.set("key2", 2L, "value2")
+        // An entry for another key stored under the hash of key3
+        cache.setAsync(cache.hash("key3"), new MemTupleDataCache.DataEntry<String>("other", 3L, "value3")).get()
+        cache.getAsync("key1").get()
+
+        when:
+        Map<String, TupleDataCache.DataEntry> entries = cache.getMulti(["key1", "key2", "key3", "missing"])
+
+        then:
+        entries.keySet() == ["key1", "key2"] as Set
+        entries["key1"].meta == 1L
+        entries["key2"].value == "value2"
+        cache.getMultiAsync(["key2", "key3"]).get().keySet() == ["key2"] as Set
+    }
+}
@@ -0,0 +1,121 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+
+class TieredTupleDataCacheSpec extends Specification {
+
+    TupleDataCache<String, Long, String> remoteCache = Mock(TupleDataCache)
+    TieredTupleDataCache cache = new TieredTupleDataCache(remoteCache, 1024 * 1024)
+    ObjectMapper mapper = new ObjectMapper()
+
+    def "Entries read from the remote tier are kept in the local tier"() {
+        given:
+        long l1Hits = TieredTupleDataCache.L1_HITS.count
+        long l2Hits = TieredTupleDataCache.L2_HITS.count
+
+        when:
+        TupleDataCache.DataEntry<String, Long, String> first = cache.get("key")
+        TupleDataCache.DataEntry<String, Long, String> second = cache.get("key")
+
+        then: "only the first read goes to the remote tier"
+        1 * remoteCache.get("key") >> new MemTupleDataCache.DataEntry<String>("key", 1L, '[1]')
+        first.is(second)
+        second.meta == 1L
+        second.value == '[1]'
+        TieredTupleDataCache.L1_HITS.count == l1Hits + 1
+        TieredTupleDataCache.L2_HITS.count == l2Hits + 1
+    }
+
+    def "Misses and entries of colliding keys are not kept in the local tier"() {
+        when:
+        cache.get("missing")
+        cache.get("missing")
+        cache.get("key")
+        cache.getDataValue("key")
+
+        then:
+        2 * remoteCache.get("missing") >> null
+        2 * remoteCache.get("key") >> new MemTupleDataCache.DataEntry<String>("other", 1L, '[1]')
+    }
+
+    def "Entries written go to both tiers, replacing stale local entries"() {
+        given:
+        remoteCache.get("key") >> new MemTupleDataCache.DataEntry<String>("key", 1L, '[1]')
+        cache.get("key")
+
+        when:
+        cache.set("key", 2L, '[2]')
+
+        then:
+        1 * remoteCache.set("key", 2L, '[2]') >> true
+        cache.get("key").meta == 2L
+        cache.getDataValue("key") == '[2]'
+    }
+
+    def "The parsed value is kept, and serialized again when asked for"() {
+        given:
+        cache.set("key", 1L, '{"a":[1,2]}')
+        TieredTupleDataCache.LocalDataEntry entry = cache.get("key") as TieredTupleDataCache.LocalDataEntry
+
+        expect:
+        entry.getJson(mapper).is(entry.getJson(mapper))
+        entry.getJson(mapper) == mapper.readTree('{"a":[1,2]}')
+        entry.value == '{"a":[1,2]}'
+    }
+
+    def "Reading many keys reads only the keys missing from the local tier from the remote tier"() {
+        given:
+        cache.set("local", 1L, '[1]')
+
+        when:
+        Map<String, TupleDataCache.DataEntry> entries = cache.getMulti(["local", "remote", "missing"])
+
+        then:
+        1 * remoteCache.getMulti(["remote", "missing"]) >> [
+                remote: new MemTupleDataCache.DataEntry<String>("remote", 2L, '[2]')
+        ]
+        entries.keySet() == ["local", "remote"] as Set
+        entries.remote.meta == 2L
+
+        when:
+        entries = cache.getMulti(["local", "remote"])
+
+        then:
+        0 * remoteCache.getMulti(_)
+        entries.keySet() == ["local", "remote"] as Set
+    }
+
+    def "An entry is weighed by its parsed tree once parsed, and dropped if the tree does not fit"() {
+        given:
+        String value = "[" + (["1"] * 200).join(",") + "]"
+        TieredTupleDataCache smallCache = new TieredTupleDataCache(remoteCache, 4000)
+        smallCache.set("key", 1L, value)
+        TieredTupleDataCache.LocalDataEntry entry = smallCache.get("key") as TieredTupleDataCache.LocalDataEntry
+
+        expect: "The tree is estimated far larger than the serialized value"
+        TieredTupleDataCache.estimateTreeBytes(mapper.readTree(value)) > 4000
+
+        when:
+        entry.getJson(mapper)
+        smallCache.get("key")
+
+        then:
+        1 * remoteCache.get("key") >> null
+    }
+
+    def "Entries larger than the local tier are not kept"() {
+        given:
+        TieredTupleDataCache smallCache = new TieredTupleDataCache(remoteCache, 100)
+
+        when:
+        smallCache.set("key", 1L, "x" * 1000)
+        smallCache.get("key")
+
+        then:
+        1 * remoteCache.get("key") >> null
+    }
+}
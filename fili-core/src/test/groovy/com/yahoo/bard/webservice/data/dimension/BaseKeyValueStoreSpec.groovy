@@ -174,4 +174,22 @@ abstract class BaseKeyValueStoreSpec extends Specification {
         null == previousValues.get("key2")
         "oldValue3" == previousValues.get("key3")
     }
+
+    def "getAll returns the values of the keys that are set, in key order"() {
+        given:
+        store1.putAll(["key1": "value1", "key3": "value3"])
+        store1.remove("key2")
+
+        when: 'getting multiple keys'
+        Map<String, String> values = store1.getAll(["key3", "key2", "key1"])
+
+        then: 'only the set keys are returned, in the order requested'
+        values == ["key3": "value3", "key1": "value1"]
+        values.keySet() as List == ["key3", "key1"]
+    }
+
+    def "getAll of no keys returns an empty map"() {
+        expect:
+        store1.getAll([]).isEmpty()
+    }
 }
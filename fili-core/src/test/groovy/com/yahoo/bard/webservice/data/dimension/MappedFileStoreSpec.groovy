@@ -0,0 +1,175 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import com.yahoo.bard.webservice.config.SystemConfigProvider
+import com.yahoo.bard.webservice.util.Utils
+
+import spock.lang.Requires
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+@Requires({ SystemConfigProvider.getInstance().getListProperty(
+        SystemConfigProvider.getInstance().getPackageVariableName("key_value_store_tests"), ["memory"]).contains("mapped_file") })
+class MappedFileStoreSpec extends BaseKeyValueStoreSpec {
+
+    static final int SMALL_CHUNK_BYTES = 4096
+
+    Path directory = Paths.get("./target/tmp/MappedFileStoreSpec")
+
+    def KeyValueStore getInstance(String storeName) {
+        return MappedFileStoreManager.getInstance(storeName);
+    }
+
+    def void removeInstance(String storeName) {
+        MappedFileStoreManager.removeInstance(storeName);
+    }
+
+    def cleanup() {
+        if (Files.exists(directory)) {
+            Utils.deleteFiles(directory.toString())
+        }
+    }
+
+    def "Entries survive closing and reopening the store"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+        store.putAll(["key1": "value1", "key2": "value2", "key3": "värde3"])
+        store.remove("key2")
+        store.close()
+
+        when:
+        MappedFileStore reopened = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+
+        then:
+        reopened.get("key1") == "value1"
+        reopened.get("key2") == null
+        reopened.get("key3") == "värde3"
+
+        cleanup:
+        reopened.close()
+    }
+
+    def "The index grows and the log spans chunks as entries are added"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+        Map<String, String> entries = (0..<5000).collectEntries { ["key$it" as String, "value$it" as String] }
+
+        when:
+        store.putAll(entries)
+
+        then:
+        store.getLogBytes() > 10 * SMALL_CHUNK_BYTES
+        store.getAll(entries.keySet()) == entries
+
+        cleanup:
+        store.close()
+    }
+
+    def "The index is rebuilt from the log when it is missing"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+        (0..<2000).each { store.put("key$it" as String, "value$it" as String) }
+        store.remove("key7")
+        store.close()
+        Files.delete(directory.resolve("index.bin"))
+
+        when:
+        MappedFileStore reopened = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+
+        then:
+        reopened.get("key1999") == "value1999"
+        reopened.get("key7") == null
+
+        cleanup:
+        reopened.close()
+    }
+
+    def "Overwritten entries are compacted out of the log"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+
+        when: "a few keys are overwritten many times"
+        (0..<5000).each { store.put("key${it % 10}" as String, "value$it" as String) }
+
+        then: "the log stays within a few chunks and keeps the latest values"
+        store.getLogBytes() < 3 * SMALL_CHUNK_BYTES
+        (0..<10).every { store.get("key$it" as String) == "value${4990 + it}" as String }
+
+        when: "the store is reopened after compaction"
+        store.close()
+        store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+
+        then:
+        store.get("key3") == "value4993"
+
+        cleanup:
+        store.close()
+    }
+
+    def "removeAllKeys empties the store and leaves it usable"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+        store.putAll(["key1": "value1", "key2": "value2"])
+
+        when:
+        store.removeAllKeys()
+        store.put("key3", "value3")
+
+        then:
+        store.getAll(["key1", "key2", "key3"]) == ["key3": "value3"]
+
+        cleanup:
+        store.close()
+    }
+
+    def "Entries larger than a chunk are rejected"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+
+        when:
+        store.put("key", "x" * SMALL_CHUNK_BYTES)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        store.close()
+    }
+
+    def "A store whose index cannot grow rejects new keys once it is three quarters full"() {
+        given: "An index of at most 1024 slots"
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES, 1024)
+        (0..<768).each { store.put("key$it" as String, "value$it" as String) }
+
+        when:
+        store.put("one too many", "value")
+
+        then:
+        IllegalStateException exception = thrown()
+        exception.message.contains("is full")
+
+        and: "Existing keys can still be read and changed, and missing keys are not found"
+        store.get("key1") == "value1"
+        store.put("key1", "changed") == "value1"
+        store.get("one too many") == null
+
+        cleanup:
+        store.close()
+    }
+
+    def "A closed store rejects reads"() {
+        given:
+        MappedFileStore store = new MappedFileStore(directory, SMALL_CHUNK_BYTES)
+        store.close()
+
+        when:
+        store.get("key")
+
+        then:
+        thrown(IllegalStateException)
+        !store.isOpen()
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import redis.clients.jedis.Jedis
+import redis.clients.jedis.JedisPool
+import redis.clients.jedis.Pipeline
+import redis.clients.jedis.Response
+
+import spock.lang.Specification
+
+/**
+ * Runs the RedisStore against an in-memory stand-in for Redis, counting the commands that reach the server.
+ */
+class RedisStoreBatchingSpec extends Specification {
+
+    static final int BATCH_SIZE = 2
+
+    Map<String, String> redis = [:]
+    Map<String, Integer> commandCounts = [:].withDefault { 0 }
+
+    Jedis jedis = Mock(Jedis)
+    Pipeline pipeline = Mock(Pipeline)
+    JedisPool pool = Mock(JedisPool)
+
+    RedisStore store
+
+    def setup() {
+        pool.getResource() >> jedis
+        pool.isClosed() >> false
+        jedis.ping() >> "PONG"
+        jedis.pipelined() >> pipeline
+        jedis.get(_ as String) >> { String key -> count("get"); redis[key] }
+        jedis.mget(_ as String[]) >> { List args -> count("mget"); (args[0] as List).collect { redis[it] } }
+        pipeline.mget(_ as String[]) >> { List args ->
+            count("mget")
+            List<String> values = (args[0] as List).collect { redis[it] }
+            response(values)
+        }
+        pipeline.mset(_ as String[]) >> { List args ->
+            count("mset")
+            (args[0] as List).collate(2).each { redis[it[0]] = it[1] }
+            response("OK")
+        }
+        pipeline.del(_ as String[]) >> { List args ->
+            count("del")
+            (args[0] as List).each { redis.remove(it) }
+            response((args[0] as List).size() as Long)
+        }
+        pipeline.sync() >> { count("sync") }
+
+        store = new RedisStore("store", pool, "ns", BATCH_SIZE)
+    }
+
+    void count(String command) {
+        commandCounts[command] = commandCounts[command] + 1
+    }
+
+    Response response(Object value) {
+        Response response = Mock(Response)
+        response.get() >> value
+        response
+    }
+
+    def "putAll writes, removes and returns previous values in one round trip per batch"() {
+        given:
+        redis["ns-store-key1"] = "old1"
+        redis["ns-store-key4"] = "old4"
+
+        when:
+        Map<String, String> previous = store.putAll(
+                ["key1": "value1", "key2": "value2", "key3": "value3", "key4": null, "key5": "value5"]
+        )
+
+        then: "the stored values are updated"
+        redis == ["ns-store-key1": "value1", "ns-store-key2": "value2", "ns-store-key3": "value3",
+                  "ns-store-key5": "value5"]
+
+        and: "the previous values are those from before the write"
+        previous == ["key1": "old1", "key2": null, "key3": null, "key4": "old4", "key5": null]
+
+        and: "five keys in batches of two take three pipelined round trips and no single key commands"
+        commandCounts["sync"] == 3
+        commandCounts["mget"] == 3
+        commandCounts["mset"] == 3
+        commandCounts["del"] == 1
+        commandCounts["get"] == 0
+    }
+
+    def "getAll reads the keys with one MGET per batch"() {
+        given:
+        redis["ns-store-a"] = "1"
+        redis["ns-store-c"] = "3"
+
+        when:
+        Map<String, String> values = store.getAll(["a", "b", "c"])
+
+        then:
+        values == ["a": "1", "c": "3"]
+        commandCounts["mget"] == 2
+        commandCounts["get"] == 0
+    }
+
+    def "Batch size must be positive"() {
+        when:
+        new RedisStore("store", pool, "ns", 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,163 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension.impl
+
+import com.yahoo.bard.webservice.data.dimension.MapStore
+import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
+
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+
+class ChunkedKeyIndexSpec extends Specification {
+
+    MapStore store = new MapStore()
+    ChunkedKeyIndex keyIndex = new ChunkedKeyIndex(store, new ObjectMapper(), 4)
+
+    def setup() {
+        keyIndex.initialize()
+    }
+
+    def "Adding keys counts only the keys that were not in the index"() {
+        when:
+        int added = keyIndex.addAll(["a", "b", "c"])
+        int addedAgain = keyIndex.addAll(["c", "d"])
+
+        then:
+        added == 3
+        addedAgain == 1
+        keyIndex.size() == 4
+        store.get(DimensionStoreKeyUtils.getCardinalityKey()) == "4"
+        keyIndex.getKeys() as Set == ["a", "b", "c", "d"] as Set
+    }
+
+    def "Adding or removing a key writes only the chunk it belongs to and the cardinality"() {
+        given:
+        keyIndex.addAll((0..<40).collect { "key$it" as String })
+        Map<String, String> before = new HashMap<>(store.store)
+
+        when:
+        keyIndex.addAll(["new key"])
+
+        then:
+        changedEntries(before, store.store) == [
+                DimensionStoreKeyUtils.getCardinalityKey(),
+                chunkKeyOf("new key")
+        ] as Set
+
+        when:
+        before = new HashMap<>(store.store)
+        keyIndex.removeAll(["key7"])
+
+        then:
+        changedEntries(before, store.store) == [
+                DimensionStoreKeyUtils.getCardinalityKey(),
+                chunkKeyOf("key7")
+        ] as Set
+        keyIndex.size() == 40
+        !keyIndex.getKeys().contains("key7")
+    }
+
+    def "The chunks split as the index grows, keeping every key"() {
+        given:
+        List<String> keys = (0..<500).collect { "key$it" as String }
+
+        when:
+        keys.each { keyIndex.addAll([it]) }
+
+        then: "16 chunks of 4 keys are split until 500 keys fit in 128 chunks"
+        store.get(DimensionStoreKeyUtils.getKeyIndexChunkCountKey()) == "128"
+        keyIndex.size() == 500
+        keyIndex.getKeys().sort() == keys.sort()
+    }
+
+    def "Adding many keys at once splits the chunks until they fit"() {
+        given:
+        List<String> keys = (0..<500).collect { "key$it" as String }
+
+        when:
+        keyIndex.addAll(keys)
+
+        then:
+        store.get(DimensionStoreKeyUtils.getKeyIndexChunkCountKey()) == "128"
+        keyIndex.size() == 500
+        keyIndex.getKeys().sort() == keys.sort()
+    }
+
+    def "Clearing the index removes every chunk"() {
+        given:
+        keyIndex.addAll(["a", "b"])
+
+        when:
+        keyIndex.clear()
+
+        then:
+        store.store == [(DimensionStoreKeyUtils.getCardinalityKey()): "0"]
+        keyIndex.getKeys().isEmpty()
+    }
+
+    def "An array of keys written by earlier versions is read before, and moved into chunks by, initializing"() {
+        given:
+        MapStore legacyStore = new MapStore()
+        legacyStore.put(DimensionStoreKeyUtils.getAllValuesKey(), '["a","b","c"]')
+        ChunkedKeyIndex legacyIndex = new ChunkedKeyIndex(legacyStore, new ObjectMapper(), 4)
+
+        expect:
+        legacyIndex.getKeys() == ["a", "b", "c"]
+
+        when:
+        legacyIndex.initialize()
+
+        then:
+        legacyStore.get(DimensionStoreKeyUtils.getAllValuesKey()) == null
+        legacyIndex.size() == 3
+        legacyIndex.getKeys() as Set == ["a", "b", "c"] as Set
+    }
+
+    def "Migrating writes the chunks, then the number of chunks, and removes the array of keys last"() {
+        given:
+        List<String> keys = (0..<100).collect { "key$it" as String }
+        MapStore legacyStore = Spy(MapStore)
+        legacyStore.put(DimensionStoreKeyUtils.getAllValuesKey(), new ObjectMapper().writeValueAsString(keys))
+        ChunkedKeyIndex legacyIndex = new ChunkedKeyIndex(legacyStore, new ObjectMapper(), 4)
+
+        when:
+        legacyIndex.initialize()
+
+        then: "32 chunks of 4 keys hold the 100 keys, and are written with the number of keys"
+        1 * legacyStore.putAll({ it.size() == 33 && it[DimensionStoreKeyUtils.getCardinalityKey()] == "100" })
+
+        then:
+        1 * legacyStore.put(DimensionStoreKeyUtils.getKeyIndexChunkCountKey(), "32")
+
+        then:
+        1 * legacyStore.remove(DimensionStoreKeyUtils.getAllValuesKey())
+
+        and:
+        legacyIndex.getKeys().sort() == keys.sort()
+    }
+
+    /**
+     * Get the store key of the chunk a key belongs to.
+     *
+     * @param key  The key
+     *
+     * @return the store key of its chunk
+     */
+    String chunkKeyOf(String key) {
+        int chunkCount = store.get(DimensionStoreKeyUtils.getKeyIndexChunkCountKey()) as int
+        DimensionStoreKeyUtils.getKeyIndexChunkKey(Math.floorMod(key.hashCode(), chunkCount))
+    }
+
+    /**
+     * Get the keys whose values differ between two snapshots of a store.
+     *
+     * @param before  The earlier snapshot
+     * @param after  The later snapshot
+     *
+     * @return the changed keys
+     */
+    Set<String> changedEntries(Map<String, String> before, Map<String, String> after) {
+        (before.keySet() + after.keySet()).findAll { before[it] != after[it] } as Set
+    }
+}
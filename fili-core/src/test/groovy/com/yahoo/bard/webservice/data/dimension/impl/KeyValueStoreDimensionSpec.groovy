@@ -8,6 +8,7 @@ import com.yahoo.bard.webservice.data.dimension.DimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionRow
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore
 import com.yahoo.bard.webservice.data.dimension.MapStoreManager
+import com.yahoo.bard.webservice.data.dimension.MappedFileStoreManager
 import com.yahoo.bard.webservice.data.dimension.RedisStoreManager
 import com.yahoo.bard.webservice.data.dimension.SearchProvider
 import com.yahoo.bard.webservice.web.ApiFilter
@@ -60,6 +61,9 @@ class KeyValueStoreDimensionSpec extends Specification {
             case DimensionBackend.REDIS:
                 keyValueStore = RedisStoreManager.getInstance(fileName)
                 break
+            case DimensionBackend.MAPPED_FILE:
+                keyValueStore = MappedFileStoreManager.getInstance(fileName)
+                break
             case DimensionBackend.MEMORY:
                 keyValueStore = MapStoreManager.getInstance(fileName)
                 break
@@ -161,6 +165,77 @@ class KeyValueStoreDimensionSpec extends Specification {
         kvsDimension.getLastUpdated() == null
     }
 
+    def "Repeated row lookups are served from the row cache"() {
+        setup:
+        long hits = KeyValueStoreDimension.ROW_CACHE_HITS.count
+        long misses = KeyValueStoreDimension.ROW_CACHE_MISSES.count
+        kvsDimension.setLastUpdated(lastUpdated)
+
+        when:
+        DimensionRow first = kvsDimension.findDimensionRowByKeyValue("row1")
+        DimensionRow second = kvsDimension.findDimensionRowByKeyValue("row1")
+
+        then:
+        first == dimensionRow1
+        second == first
+        KeyValueStoreDimension.ROW_CACHE_MISSES.count == misses + 1
+        KeyValueStoreDimension.ROW_CACHE_HITS.count == hits + 1
+    }
+
+    def "Rows served from the row cache are copies which callers may modify"() {
+        setup:
+        kvsDimension.setLastUpdated(lastUpdated)
+        DimensionRow first = kvsDimension.findDimensionRowByKeyValue("row1")
+
+        when:
+        first.put(first.keySet().last(), "modified")
+        DimensionRow second = kvsDimension.findDimensionRowByKeyValue("row1")
+
+        then:
+        !second.is(first)
+        second == dimensionRow1
+    }
+
+    def "Adding a row replaces the cached row"() {
+        setup:
+        DimensionRow original = BardDimensionField.makeDimensionRow(kvsDimension, "row7", "original")
+        DimensionRow updated = BardDimensionField.makeDimensionRow(kvsDimension, "row7", "updated")
+
+        expect: "The missing row is cached as missing"
+        kvsDimension.findDimensionRowByKeyValue("row7") == null
+        kvsDimension.findDimensionRowByKeyValue("row7") == null
+
+        when:
+        kvsDimension.addDimensionRow(original)
+
+        then:
+        kvsDimension.findDimensionRowByKeyValue("row7") == original
+
+        when:
+        kvsDimension.addDimensionRow(updated)
+
+        then:
+        kvsDimension.findDimensionRowByKeyValue("row7") == updated
+    }
+
+    def "Deleting all rows drops the cached rows"() {
+        setup:
+        DimensionRow row = BardDimensionField.makeDimensionRow(kvsDimension, "row8", "this is a row8")
+        kvsDimension.addDimensionRow(row)
+
+        expect:
+        kvsDimension.findDimensionRowByKeyValue("row8") == row
+
+        when:
+        kvsDimension.deleteAllDimensionRows()
+
+        then:
+        kvsDimension.findDimensionRowByKeyValue("row8") == null
+
+        cleanup:
+        runSetup = true
+    }
+
     class TestThread extends Thread {
         Throwable cause = null
 
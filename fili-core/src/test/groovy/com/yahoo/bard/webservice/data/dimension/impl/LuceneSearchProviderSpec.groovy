@@ -3,11 +3,19 @@
 package com.yahoo.bard.webservice.data.dimension.impl
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.MapStore
 import com.yahoo.bard.webservice.data.dimension.TimeoutException
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
+import com.yahoo.bard.webservice.util.Utils
+import com.yahoo.bard.webservice.web.ApiFilter
 import com.yahoo.bard.webservice.web.RowLimitReachedException
 import com.yahoo.bard.webservice.web.util.PaginationParameters
+import org.apache.lucene.search.BooleanQuery
+import org.apache.lucene.search.Query
+import org.apache.lucene.search.WildcardQuery
 import org.apache.lucene.store.FSDirectory
+
+import spock.lang.Unroll
 /**
  * Specification for behavior specific to the LuceneSearchProvider
  */
@@ -86,6 +94,110 @@ class LuceneSearchProviderSpec extends SearchProviderSpec<LuceneSearchProvider>
         thrown RowLimitReachedException
     }
 
+    def "Index updates are searchable as soon as they are made, and the refresh is timed"() {
+        given:
+        long refreshes = LuceneSearchProvider.REFRESH_LATENCY.count
+        DimensionRow badger = BardDimensionField.makeDimensionRow(keyValueStoreDimension, "badger", "mushroom")
+
+        when:
+        keyValueStoreDimension.addDimensionRow(badger)
+
+        then:
+        searchProvider.findAllDimensionRows().contains(badger)
+        LuceneSearchProvider.REFRESH_LATENCY.count == refreshes + 1
+    }
+
+    def "Closing the provider commits the index, so a provider reopening its files finds the rows"() {
+        given:
+        searchProvider.close()
+
+        when:
+        LuceneSearchProvider reopened = new LuceneSearchProvider(
+                searchProvider.luceneIndexPath,
+                PaginationParameters.EVERYTHING_IN_ONE_PAGE.getPerPage()
+        )
+        reopened.setDimension(keyValueStoreDimension)
+        reopened.setKeyValueStore(searchProvider.keyValueStore)
+
+        then:
+        reopened.findAllDimensionRows() == dimensionRows as Set
+
+        cleanup:
+        reopened.close()
+    }
+
+    @Unroll
+    def "With n-grams indexed, contains[#values] on #field finds the same rows as without"() {
+        given: "A provider indexing 3-grams over the same rows"
+        String ngramIndexPath = "./target/tmp/LuceneSearchProviderSpec/ngram"
+        LuceneSearchProvider ngramProvider = new LuceneSearchProvider(
+                ngramIndexPath,
+                PaginationParameters.EVERYTHING_IN_ONE_PAGE.getPerPage(),
+                searchTimeout,
+                3
+        )
+        KeyValueStoreDimension ngramDimension = new KeyValueStoreDimension(
+                "animal",
+                "animal-description",
+                keyValueStoreDimension.dimensionFields,
+                new MapStore(),
+                ngramProvider
+        )
+        ngramDimension.addAllDimensionRows(dimensionRows as Set)
+        searchProvider.maxResults = PaginationParameters.EVERYTHING_IN_ONE_PAGE.getPerPage()
+        Set<ApiFilter> filters = [buildFilter("animal|$field-contains[$values]")]
+
+        expect:
+        ngramProvider.findFilteredDimensionRows(filters) == searchProvider.findFilteredDimensionRows(filters)
+        !ngramProvider.findFilteredDimensionRows(filters).isEmpty()
+
+        cleanup:
+        ngramProvider.close()
+        Utils.deleteFiles(ngramIndexPath)
+
+        where:
+        field  | values
+        "desc" | "raptor"
+        "desc" | "agent's worst"
+        "id"   | "spider"
+        "id"   | "spider,ator"
+        "id"   | "关卡"
+        "id"   | "ey"
+    }
+
+    def "With n-grams indexed, contains filters at least an n-gram long do not use wildcard queries"() {
+        given:
+        String ngramIndexPath = "./target/tmp/LuceneSearchProviderSpec/ngramQuery"
+        LuceneSearchProvider ngramProvider = new LuceneSearchProvider(ngramIndexPath, rowLimit, searchTimeout, 3)
+
+        when:
+        Query query = ngramProvider.getFilterQuery([buildFilter("animal|desc-contains[raptor,ow]")] as Set)
+
+        then: "Only the value shorter than an n-gram is matched by a wildcard"
+        wildcardQueries(query)*.term*.text() == ["*ow*"]
+
+        cleanup:
+        ngramProvider.close()
+        Utils.deleteFiles(ngramIndexPath)
+    }
+
+    /**
+     * Collect the wildcard queries nested in a query.
+     *
+     * @param query  The query to search
+     *
+     * @return the wildcard queries
+     */
+    List<WildcardQuery> wildcardQueries(Query query) {
+        if (query instanceof WildcardQuery) {
+            return [query]
+        }
+        if (query instanceof BooleanQuery) {
+            return query.clauses().collectMany { wildcardQueries(it.query) }
+        }
+        return []
+    }
+
     @Override
     boolean indicesHaveBeenCleared() {
         //A file is a Lucene index file iff it has one of the following extensions
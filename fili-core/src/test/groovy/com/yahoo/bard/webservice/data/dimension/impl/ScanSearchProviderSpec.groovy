@@ -2,8 +2,11 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl
 
+import com.yahoo.bard.webservice.data.dimension.MapStore
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
 
+import com.fasterxml.jackson.databind.ObjectMapper
+
 /**
  * Specification for behavior specific to the ScanSearchProvider.
  */
@@ -23,6 +26,28 @@ class ScanSearchProviderSpec extends SearchProviderSpec<ScanSearchProvider> {
     boolean indicesHaveBeenCleared() {
         return searchProvider.keyValueStore.store.size() == 2 &&
                 searchProvider.keyValueStore[DimensionStoreKeyUtils.getCardinalityKey()] == "0" &&
-                searchProvider.keyValueStore[DimensionStoreKeyUtils.getAllValuesKey()] == "[]"
+                searchProvider.keyValueStore[DimensionStoreKeyUtils.getKeyIndexChunkCountKey()] != null
+    }
+
+    def "A store holding a single array of row keys is migrated to the chunked key index"() {
+        given: "A store laid out the way earlier versions wrote it"
+        MapStore legacyStore = new MapStore()
+        dimensionRows.each {
+            String rowKey = DimensionStoreKeyUtils.getRowKey(keyValueStoreDimension.key.name, it.getKeyValue())
+            legacyStore.put(rowKey, searchProvider.keyValueStore.get(rowKey))
+        }
+        List<String> rowKeys = legacyStore.store.keySet() as List
+        legacyStore.put(DimensionStoreKeyUtils.getAllValuesKey(), new ObjectMapper().writeValueAsString(rowKeys))
+        legacyStore.put(DimensionStoreKeyUtils.getCardinalityKey(), rowKeys.size() as String)
+        ScanSearchProvider migratedProvider = new ScanSearchProvider()
+        migratedProvider.setDimension(keyValueStoreDimension)
+
+        when:
+        migratedProvider.setKeyValueStore(legacyStore)
+
+        then:
+        legacyStore.get(DimensionStoreKeyUtils.getAllValuesKey()) == null
+        migratedProvider.getDimensionCardinality() == dimensionRows.size()
+        migratedProvider.findAllDimensionRows() == dimensionRows as Set
     }
 }
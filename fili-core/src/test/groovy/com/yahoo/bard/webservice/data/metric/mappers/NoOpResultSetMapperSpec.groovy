@@ -7,6 +7,7 @@ import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 import com.yahoo.bard.webservice.data.Result
 import com.yahoo.bard.webservice.data.ResultSet
 import com.yahoo.bard.webservice.data.ResultSetSchema
+import com.yahoo.bard.webservice.data.StreamingResultSet
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn
 import com.yahoo.bard.webservice.data.dimension.DimensionField
@@ -15,6 +16,8 @@ import com.yahoo.bard.webservice.data.dimension.MapStoreManager
 import com.yahoo.bard.webservice.data.dimension.impl.KeyValueStoreDimension
 import com.yahoo.bard.webservice.data.dimension.impl.ScanSearchProviderManager
 import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.druid.model.orderby.SortDirection
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList
 
 import org.joda.time.DateTime
 
@@ -68,4 +71,60 @@ class NoOpResultSetMapperSpec extends Specification {
         //check for schema
         schema.equals(resultSetMapper.map(schema))
     }
+
+    def "A streaming result set is mapped row by row as it is read, by mappers which map rows independently"() {
+        given:
+        ResultSetSchema schema = new ResultSetSchema(DAY, Collections.emptySet())
+        List<Result> rows = (1..3).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+        List<Result> read = []
+        Iterator<Result> source = rows.iterator()
+        ResultSet resultSet = new StreamingResultSet(schema, [
+                hasNext: { source.hasNext() },
+                next: { Result row = source.next(); read.add(row); row }
+        ] as Iterator<Result>)
+        ResultSetMapper dropSecondRow = new ResultSetMapper() {
+            @Override
+            protected Result map(Result result, ResultSetSchema resultSetSchema) {
+                result == rows[1] ? null : result
+            }
+
+            @Override
+            protected ResultSetSchema map(ResultSetSchema resultSetSchema) {
+                resultSetSchema
+            }
+
+            @Override
+            boolean mapsRowsIndependently() {
+                true
+            }
+        }
+
+        when:
+        ResultSet mapped = dropSecondRow.map(resultSet)
+
+        then:
+        mapped instanceof StreamingResultSet
+        read.isEmpty()
+        mapped.iterator().toList() == [rows[0], rows[2]]
+        read == rows
+
+        and: "only the mappers which say so are taken to map rows independently"
+        dropSecondRow.mapsRowsIndependently()
+        new NoOpResultSetMapper().mapsRowsIndependently()
+        new SketchRoundUpMapper("metric").mapsRowsIndependently()
+        new PartialDataResultSetMapper(new SimplifiedIntervalList(), { new SimplifiedIntervalList() }).mapsRowsIndependently()
+        !new ResultSetMapper() {
+            @Override
+            protected Result map(Result result, ResultSetSchema resultSetSchema) {
+                result
+            }
+
+            @Override
+            protected ResultSetSchema map(ResultSetSchema resultSetSchema) {
+                resultSetSchema
+            }
+        }.mapsRowsIndependently()
+        !new RowNumMapper().mapsRowsIndependently()
+        !new DateTimeSortMapper(SortDirection.DESC).mapsRowsIndependently()
+    }
 }
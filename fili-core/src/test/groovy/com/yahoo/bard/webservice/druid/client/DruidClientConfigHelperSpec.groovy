@@ -97,4 +97,40 @@ class DruidClientConfigHelperSpec extends Specification {
         expect:
         DruidClientConfigHelper.getDruidNonUiTimeout() == Integer.parseInt(expectedNonUiRequestTimeout)
     }
+
+    def "Connection pools are unlimited and kept alive unless configured"() {
+        when:
+        DruidConnectionPoolConfig poolConfig = DruidClientConfigHelper.getDruidNonUiConnectionPoolConfig()
+
+        then:
+        poolConfig.name == "non_ui_druid"
+        poolConfig.maxConnections == DruidConnectionPoolConfig.UNLIMITED
+        poolConfig.maxConnectionsPerHost == DruidConnectionPoolConfig.UNLIMITED
+        poolConfig.pooledConnectionIdleTimeout == null
+        poolConfig.keepAlive
+    }
+
+    def "Connection pool settings are read with the prefix of their pool"() {
+        given:
+        String maxConnectionsKey = systemConfig.getPackageVariableName("ui_druid_max_connections")
+        String idleTimeoutKey = systemConfig.getPackageVariableName("ui_druid_pooled_connection_idle_timeout")
+        String keepAliveKey = systemConfig.getPackageVariableName("ui_druid_keep_alive")
+        systemConfig.setProperty(maxConnectionsKey, "40")
+        systemConfig.setProperty(idleTimeoutKey, "30000")
+        systemConfig.setProperty(keepAliveKey, "false")
+
+        when:
+        DruidConnectionPoolConfig poolConfig = DruidClientConfigHelper.getUiServiceConfig().connectionPoolConfig
+
+        then:
+        poolConfig.name == "ui_druid"
+        poolConfig.maxConnections == 40
+        poolConfig.pooledConnectionIdleTimeout == 30000
+        !poolConfig.keepAlive
+
+        cleanup:
+        systemConfig.clearProperty(maxConnectionsKey)
+        systemConfig.clearProperty(idleTimeoutKey)
+        systemConfig.clearProperty(keepAliveKey)
+    }
 }
@@ -0,0 +1,107 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory
+
+import org.asynchttpclient.AsyncCompletionHandler
+import org.asynchttpclient.Response
+import org.asynchttpclient.exception.TooManyConnectionsException
+import org.asynchttpclient.handler.AsyncHandlerExtensions
+
+import io.netty.channel.embedded.EmbeddedChannel
+
+import spock.lang.Specification
+
+class DruidConnectionPoolMetricsSpec extends Specification {
+
+    DruidConnectionPoolMetrics metrics = DruidConnectionPoolMetrics.forPool("spec")
+    InetSocketAddress broker = InetSocketAddress.createUnresolved("broker", 8082)
+
+    List<Throwable> failures = []
+    AsyncCompletionHandler<Response> handler = new AsyncCompletionHandler<Response>() {
+        @Override
+        Response onCompleted(Response response) {
+            return response
+        }
+
+        @Override
+        void onThrowable(Throwable t) {
+            failures.add(t)
+        }
+    }
+
+    def "Pools with the same name share their metrics"() {
+        expect:
+        DruidConnectionPoolMetrics.forPool("spec").is(metrics)
+        MetricRegistryFactory.registry.gauges.containsKey("druid.pool.spec.gauge.active")
+    }
+
+    def "A request waits for a connection, holds it until answered, and leaves it idle until it is closed"() {
+        given:
+        int pending = metrics.pending
+        int active = metrics.active
+        int idle = metrics.idle
+        long opened = MetricRegistryFactory.registry.meter("druid.pool.spec.meter.opened").count
+        EmbeddedChannel connection = new EmbeddedChannel()
+
+        when: "The request is sent"
+        AsyncCompletionHandler<Response> tracked = metrics.track(handler)
+
+        then:
+        metrics.pending == pending + 1
+
+        when: "It connects"
+        ((AsyncHandlerExtensions) tracked).onTcpConnectSuccess(broker, connection)
+
+        then:
+        metrics.pending == pending
+        metrics.active == active + 1
+        MetricRegistryFactory.registry.meter("druid.pool.spec.meter.opened").count == opened + 1
+
+        when: "It is answered"
+        tracked.onCompleted(Mock(Response))
+
+        then:
+        metrics.active == active
+        metrics.idle == idle + 1
+
+        when: "The connection is closed"
+        connection.close()
+
+        then:
+        metrics.idle == idle
+    }
+
+    def "A request on a kept alive connection counts as reused"() {
+        given:
+        long reused = MetricRegistryFactory.registry.meter("druid.pool.spec.meter.reused").count
+        int active = metrics.active
+
+        when:
+        AsyncCompletionHandler<Response> tracked = metrics.track(handler)
+        ((AsyncHandlerExtensions) tracked).onConnectionPooled(new EmbeddedChannel())
+
+        then:
+        metrics.active == active + 1
+        MetricRegistryFactory.registry.meter("druid.pool.spec.meter.reused").count == reused + 1
+
+        cleanup:
+        tracked.onCompleted(Mock(Response))
+    }
+
+    def "A request rejected by a full pool stops waiting and is failed"() {
+        given:
+        long rejected = MetricRegistryFactory.registry.meter("druid.pool.spec.meter.rejected").count
+        int pending = metrics.pending
+        Throwable full = new TooManyConnectionsException(10)
+
+        when:
+        metrics.track(handler).onThrowable(full)
+
+        then:
+        metrics.pending == pending
+        MetricRegistryFactory.registry.meter("druid.pool.spec.meter.rejected").count == rejected + 1
+        failures == [full]
+    }
+}
@@ -0,0 +1,189 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl
+
+import com.yahoo.bard.webservice.druid.client.DruidServiceConfig
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.client.SuccessCallback
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+
+import org.asynchttpclient.AsyncHttpClient
+import org.asynchttpclient.DefaultAsyncHttpClient
+
+import spock.lang.Specification
+import spock.util.concurrent.BlockingVariable
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+class HedgingDruidWebServiceImplSpec extends Specification {
+
+    static final String PATH = "/druid/v2/"
+
+    List<HttpServer> servers = []
+    List<ExecutorService> serverExecutors = []
+    Map<String, AtomicInteger> hits = [:]
+
+    AsyncHttpClient client = new DefaultAsyncHttpClient()
+    ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor()
+
+    BlockingVariable<JsonNode> answer = new BlockingVariable<>(5)
+    SuccessCallback success = { JsonNode rootNode -> answer.set(rootNode) } as SuccessCallback
+    HttpErrorCallback error = Mock(HttpErrorCallback)
+    FailureCallback failure = Mock(FailureCallback)
+
+    def cleanup() {
+        servers*.stop(0)
+        serverExecutors*.shutdownNow()
+        hedgeScheduler.shutdownNow()
+        client.close()
+    }
+
+    /**
+     * Start a stub broker, answering with its name after a delay.
+     *
+     * @param name  The name of the broker
+     * @param delayMillis  How long the broker takes to answer
+     *
+     * @return the URL of the broker
+     */
+    String broker(String name, long delayMillis) {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+        ExecutorService executor = Executors.newCachedThreadPool()
+        server.executor = executor
+        hits[name] = new AtomicInteger()
+        server.createContext(PATH) { HttpExchange exchange ->
+            hits[name].incrementAndGet()
+            Thread.sleep(delayMillis)
+            byte[] body = """{"broker": "$name"}""".bytes
+            exchange.sendResponseHeaders(200, body.length)
+            exchange.responseBody.withStream { it.write(body) }
+        }
+        server.start()
+        servers.add(server)
+        serverExecutors.add(executor)
+        return "http://localhost:${server.address.port}$PATH"
+    }
+
+    /**
+     * Record past latencies of a broker.
+     *
+     * @param url  The URL of the broker
+     * @param millis  The latency of each past request
+     */
+    void prime(String url, long millis) {
+        5.times { HedgingDruidWebServiceImpl.getLatencyTimer(url).update(millis, TimeUnit.MILLISECONDS) }
+    }
+
+    HedgingDruidWebServiceImpl webService(String... urls) {
+        return new HedgingDruidWebServiceImpl(
+                new DruidServiceConfig("Broker", urls.join(","), 5000, 1),
+                client,
+                new ObjectMapper(),
+                { [:] } as Supplier,
+                AsyncDruidWebServiceImpl.DEFAULT_JSON_NODE_BUILDER_STRATEGY,
+                5,
+                10,
+                hedgeScheduler
+        )
+    }
+
+    def "Requests go to the broker with the lowest median latency"() {
+        given:
+        String slow = broker("slow", 2000)
+        String fast = broker("fast", 0)
+        prime(slow, 5000)
+        prime(fast, 1000)
+
+        when:
+        webService(slow, fast).getJsonObject(success, error, failure, "")
+
+        then:
+        answer.get().get("broker").asText() == "fast"
+        hits["slow"].get() == 0
+    }
+
+    def "A request slower than the 95th percentile of its broker is hedged to the next broker, which wins"() {
+        given:
+        String stalled = broker("stalled", 3000)
+        String healthy = broker("healthy", 0)
+        prime(stalled, 20)
+        prime(healthy, 100)
+        long hedged = HedgingDruidWebServiceImpl.HEDGED.count
+        long wins = HedgingDruidWebServiceImpl.HEDGE_WINS.count
+        long stalledSamples = HedgingDruidWebServiceImpl.getLatencyTimer(stalled).count
+        long stalledWaits = HedgingDruidWebServiceImpl.getCensoredLatencyTimer(stalled).count
+
+        when:
+        webService(stalled, healthy).getJsonObject(success, error, failure, "")
+
+        then:
+        answer.get().get("broker").asText() == "healthy"
+        hits["stalled"].get() == 1
+        HedgingDruidWebServiceImpl.HEDGED.count == hedged + 1
+        HedgingDruidWebServiceImpl.HEDGE_WINS.count == wins + 1
+
+        and: "The time the cancelled request waited is kept apart from the latencies of its broker"
+        HedgingDruidWebServiceImpl.getLatencyTimer(stalled).count == stalledSamples
+        HedgingDruidWebServiceImpl.getCensoredLatencyTimer(stalled).count == stalledWaits + 1
+    }
+
+    def "A request to a broker refusing connections fails over to the next broker, and counts as a timeout"() {
+        given:
+        ServerSocket socket = new ServerSocket(0)
+        String dead = "http://localhost:${socket.localPort}$PATH"
+        socket.close()
+        String healthy = broker("failover", 0)
+        prime(dead, 1000)
+        prime(healthy, 2000)
+        long failovers = HedgingDruidWebServiceImpl.FAILOVERS.count
+        long deadSamples = HedgingDruidWebServiceImpl.getLatencyTimer(dead).count
+
+        when:
+        webService(dead, healthy).getJsonObject(success, error, failure, "")
+
+        then:
+        answer.get().get("broker").asText() == "failover"
+        HedgingDruidWebServiceImpl.FAILOVERS.count == failovers + 1
+        HedgingDruidWebServiceImpl.getLatencyTimer(dead).count == deadSamples + 1
+        HedgingDruidWebServiceImpl.getLatencyTimer(dead).snapshot.max == TimeUnit.MILLISECONDS.toNanos(5000)
+    }
+
+    def "A request answered before the 95th percentile of its broker is not hedged"() {
+        given:
+        String primary = broker("primary", 0)
+        String secondary = broker("secondary", 0)
+        prime(primary, 2000)
+        prime(secondary, 3000)
+
+        when:
+        webService(primary, secondary).getJsonObject(success, error, failure, "")
+
+        then:
+        answer.get().get("broker").asText() == "primary"
+        hits["secondary"].get() == 0
+    }
+
+    def "Brokers are read from a comma separated service URL"() {
+        when:
+        DruidServiceConfig config = new DruidServiceConfig(
+                "Broker",
+                "http://a:8082/druid/v2, http://b:8082/druid/v2",
+                5,
+                1
+        )
+
+        then:
+        config.urls == ["http://a:8082/druid/v2", "http://b:8082/druid/v2"]
+        config.url == "http://a:8082/druid/v2"
+    }
+}
@@ -0,0 +1,201 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl
+
+import static com.yahoo.bard.webservice.druid.client.impl.PriorityDispatchDruidWebService.Lane.BATCH
+import static com.yahoo.bard.webservice.druid.client.impl.PriorityDispatchDruidWebService.Lane.INTERACTIVE
+import static com.yahoo.bard.webservice.druid.client.impl.PriorityDispatchDruidWebService.Lane.STANDARD
+import static com.yahoo.bard.webservice.druid.model.query.QueryContext.Param.PRIORITY
+import static com.yahoo.bard.webservice.druid.model.query.QueryContext.Param.TIMEOUT
+
+import com.yahoo.bard.webservice.druid.client.DruidWebService
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback
+import com.yahoo.bard.webservice.druid.client.SuccessCallback
+import com.yahoo.bard.webservice.druid.model.query.DruidQuery
+import com.yahoo.bard.webservice.druid.model.query.QueryContext
+import com.yahoo.bard.webservice.web.DataApiRequestTypeIdentifier
+import com.yahoo.bard.webservice.web.handlers.RequestContext
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeoutException
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+
+class PriorityDispatchDruidWebServiceSpec extends Specification {
+
+    DruidWebService delegate = Mock(DruidWebService)
+    long now = 0
+    List<DruidQuery> sent = []
+    Map<DruidQuery, SuccessCallback> successes = [:]
+    List<Throwable> failures = []
+
+    HttpErrorCallback error = Mock(HttpErrorCallback)
+    FailureCallback failure = { Throwable throwable -> failures.add(throwable) } as FailureCallback
+    SuccessCallback success = { JsonNode rootNode -> } as SuccessCallback
+
+    RequestContext standard = new RequestContext(null, false)
+    RequestContext batch = new RequestContext(null, false, 1000)
+    RequestContext interactive
+
+    PriorityDispatchDruidWebService webService
+
+    def setup() {
+        delegate.getTimeout() >> 1000
+        delegate.postDruidQuery(_, _, _, _, _) >> {
+            sent.add(it[4])
+            successes.put(it[4], it[1])
+            return null
+        }
+
+        MultivaluedHashMap<String, String> headers = new MultivaluedHashMap<>()
+        headers.putSingle(
+                DataApiRequestTypeIdentifier.CLIENT_HEADER_NAME,
+                DataApiRequestTypeIdentifier.CLIENT_HEADER_VALUE
+        )
+        headers.putSingle("referer", "http://localhost")
+        ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext) {
+            getHeaders() >> headers
+        }
+        interactive = new RequestContext(containerRequestContext, false)
+
+        // Two queries in flight at a time, one of them at most in the batch lane
+        webService = new PriorityDispatchDruidWebService(
+                delegate,
+                2,
+                [(INTERACTIVE): 2, (STANDARD): 2, (BATCH): 1],
+                { Runnable runnable -> runnable.run() } as Executor,
+                { now }
+        )
+    }
+
+    DruidQuery query(Map<QueryContext.Param, Object> context = [:]) {
+        QueryContext queryContext = new QueryContext(context)
+        return Mock(DruidQuery) {
+            getContext() >> queryContext
+        }
+    }
+
+    void post(RequestContext context, DruidQuery query) {
+        webService.postDruidQuery(context, success, error, failure, query)
+    }
+
+    void complete(DruidQuery query) {
+        successes[query].invoke(null)
+    }
+
+    def "Queries are picked a lane by the kind of request they answer"() {
+        expect:
+        PriorityDispatchDruidWebService.Lane.of(interactive) == INTERACTIVE
+        PriorityDispatchDruidWebService.Lane.of(standard) == STANDARD
+        PriorityDispatchDruidWebService.Lane.of(batch) == BATCH
+        PriorityDispatchDruidWebService.Lane.of(new RequestContext(null, false, -1)) == BATCH
+    }
+
+    def "Queries are sent right away while there is room for them"() {
+        given:
+        DruidQuery first = query()
+        DruidQuery second = query()
+
+        when:
+        post(standard, first)
+        post(interactive, second)
+
+        then:
+        sent == [first, second]
+        webService.queueDepth == 0
+    }
+
+    def "A lane at its most queries in flight holds its queries back until one of them completes"() {
+        given:
+        DruidQuery firstBatch = query()
+        DruidQuery secondBatch = query()
+        DruidQuery user = query()
+
+        when:
+        post(batch, firstBatch)
+        post(batch, secondBatch)
+        post(standard, user)
+
+        then: "The other lanes still have room"
+        sent == [firstBatch, user]
+        webService.queueDepth == 1
+
+        when:
+        complete(firstBatch)
+
+        then:
+        sent == [firstBatch, user, secondBatch]
+        webService.queueDepth == 0
+    }
+
+    def "Waiting queries are sent by lane, then by priority, then earliest deadline first"() {
+        given: "Two queries filling the room in flight"
+        DruidQuery first = query()
+        DruidQuery second = query()
+        post(standard, first)
+        post(standard, second)
+
+        and: "Queries waiting in each lane"
+        DruidQuery export = query()
+        DruidQuery late = query([(TIMEOUT): 5000])
+        DruidQuery soon = query([(TIMEOUT): 2000])
+        DruidQuery urgent = query([(TIMEOUT): 9000, (PRIORITY): 5])
+        DruidQuery dashboard = query()
+        post(batch, export)
+        post(standard, late)
+        post(standard, soon)
+        post(standard, urgent)
+        post(interactive, dashboard)
+
+        when:
+        [first, second, dashboard, urgent, soon].each { complete(it) }
+
+        then:
+        sent == [first, second, dashboard, urgent, soon, late, export]
+    }
+
+    def "A query still waiting at its deadline fails instead of being sent"() {
+        given:
+        DruidQuery first = query()
+        DruidQuery second = query()
+        DruidQuery waiting = query([(TIMEOUT): 100])
+        post(standard, first)
+        post(standard, second)
+        post(standard, waiting)
+
+        when:
+        now += 200
+        complete(first)
+
+        then:
+        failures.size() == 1
+        failures[0] instanceof TimeoutException
+        sent == [first, second]
+        webService.queueDepth == 0
+    }
+
+    def "Streaming success callbacks are still streaming once wrapped"() {
+        given:
+        StreamingSuccessCallback streaming = Mock(StreamingSuccessCallback)
+        DruidQuery druidQuery = query()
+        JsonParser parser = new ObjectMapper().getFactory().createParser("{}")
+
+        when:
+        webService.postDruidQuery(standard, streaming, error, failure, druidQuery)
+        SuccessCallback wrapped = successes[druidQuery]
+        (wrapped as StreamingSuccessCallback).invoke(parser)
+
+        then:
+        wrapped instanceof StreamingSuccessCallback
+        1 * streaming.invoke(parser)
+    }
+}
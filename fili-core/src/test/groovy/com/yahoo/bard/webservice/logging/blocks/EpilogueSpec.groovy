@@ -33,6 +33,7 @@ class EpilogueSpec extends Specification {
                 "code": $OK.statusCode,
                 "logMessage": "Help I'm trapped in a lumbermill!",
                 "responseLength": ${messages ? messages[-1] : Epilogue.LENGTH_UNKNOWN},
+                "uncompressedResponseLength": ${messages ? messages[-1] : Epilogue.LENGTH_UNKNOWN},
                 "connectionClosedPrematurely": $connectionClosedPrematurely
         }"""
 
@@ -64,4 +65,28 @@ class EpilogueSpec extends Specification {
 
         errorType = error ? error.getClass() : "no error"
     }
+
+    def "A compressed response serializes the length before compression along with the length sent"() {
+        given: "Observers for the length sent and the length before compression"
+        CacheLastObserver<Long> responseLengthObserver = new CacheLastObserver<>()
+        CacheLastObserver<Long> uncompressedLengthObserver = new CacheLastObserver<>()
+        Epilogue epilogue = new Epilogue("Compressed", OK, responseLengthObserver, uncompressedLengthObserver)
+
+        when: "Both lengths are received"
+        responseLengthObserver.onNext(120l)
+        uncompressedLengthObserver.onNext(4096l)
+
+        then: "Both lengths are serialized"
+        GroovyTestUtils.compareJson(
+                JSON_SERIALIZER.writeValueAsString(epilogue),
+                """{
+                        "status": "$OK.reasonPhrase",
+                        "code": $OK.statusCode,
+                        "logMessage": "Compressed",
+                        "responseLength": 120,
+                        "uncompressedResponseLength": 4096,
+                        "connectionClosedPrematurely": false
+                }"""
+        )
+    }
 }
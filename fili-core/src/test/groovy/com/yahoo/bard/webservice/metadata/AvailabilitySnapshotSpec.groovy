@@ -0,0 +1,64 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata
+
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class AvailabilitySnapshotSpec extends Specification {
+
+    AvailabilitySnapshot snapshot
+
+    def setup() {
+        snapshot = new AvailabilitySnapshot(
+                1,
+                [
+                        column1: new SimplifiedIntervalList([new Interval("2017/2019")]),
+                        column2: new SimplifiedIntervalList([new Interval("2018/2020")]),
+                        column3: new SimplifiedIntervalList([new Interval("2014/2015")])
+                ]
+        )
+    }
+
+    def "The union of all the columns is built with the snapshot"() {
+        expect:
+        snapshot.unionedIntervals == new SimplifiedIntervalList([new Interval("2014/2015"), new Interval("2017/2020")])
+    }
+
+    @Unroll
+    def "The intersection of #columns is #expected"() {
+        expect:
+        snapshot.getIntersectedIntervals(columns as Set) == new SimplifiedIntervalList(
+                expected.collect { new Interval(it) }
+        )
+
+        where:
+        columns                        | expected
+        ["column1", "column2"]         | ["2018/2019"]
+        ["column1"]                    | ["2017/2019"]
+        ["column1", "column3"]         | []
+        ["column1", "missing"]         | []
+        []                             | []
+    }
+
+    def "Intersections are kept for each set of columns, and can be computed up front"() {
+        when:
+        SimplifiedIntervalList intersection = snapshot.getIntersectedIntervals(["column1", "column2"] as Set)
+
+        then: "The same intersection is returned for the same set of columns"
+        snapshot.getIntersectedIntervals(["column2", "column1"] as Set).is(intersection)
+        snapshot.columnSets == [["column1", "column2"] as Set] as Set
+
+        when: "A new snapshot is given the column sets of the previous one"
+        AvailabilitySnapshot next = new AvailabilitySnapshot(2, snapshot.allAvailableIntervals, snapshot.columnSets)
+
+        then: "It has already computed their intersections"
+        next.version == 2
+        next.columnSets == snapshot.columnSets
+        next.getIntersectedIntervals(["column1", "column2"] as Set) == intersection
+    }
+}
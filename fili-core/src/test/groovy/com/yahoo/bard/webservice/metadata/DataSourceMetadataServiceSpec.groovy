@@ -3,8 +3,11 @@
 package com.yahoo.bard.webservice.metadata
 
 import com.yahoo.bard.webservice.application.JerseyTestBinder
+import com.yahoo.bard.webservice.application.MetricRegistryFactory
 import com.yahoo.bard.webservice.data.config.names.DataSourceName
 
+import com.codahale.metrics.Gauge
+
 import org.joda.time.DateTime
 import org.joda.time.Interval
 
@@ -52,6 +55,43 @@ class DataSourceMetadataServiceSpec extends BaseDataSourceMetadataSpec {
         jtb.tearDown()
     }
 
+    def "updates replace the availability snapshot, computing again the column sets asked for before"() {
+        setup:
+        DataSourceName dataSourceName = DataSourceName.of(tableName)
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        Set<String> columns = [dimensions123.get(0), metrics123.get(0)] as Set
+
+        when:
+        metadataService.update(dataSourceName, metadata)
+        AvailabilitySnapshot first = metadataService.getAvailabilitySnapshot(dataSourceName)
+        first.getIntersectedIntervals(columns)
+        metadataService.update(dataSourceName, metadata)
+        AvailabilitySnapshot second = metadataService.getAvailabilitySnapshot(dataSourceName)
+
+        then:
+        second.version > first.version
+        second.columnSets == [columns] as Set
+        second.getIntersectedIntervals(columns) == [interval12]
+    }
+
+    def "the snapshot age gauge reports the age of the oldest snapshot in use"() {
+        setup:
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+        Gauge<Long> age = MetricRegistryFactory.registry.gauges.get(DataSourceMetadataService.SNAPSHOT_AGE)
+
+        expect: "No snapshots yet"
+        age.value == 0
+
+        when:
+        metadataService.update(DataSourceName.of(tableName), metadata)
+        long oldest = metadataService.getAvailabilitySnapshot(DataSourceName.of(tableName)).createdMillis
+        metadataService.update(DataSourceName.of("other"), metadata)
+
+        then:
+        age.value >= 0
+        age.value <= System.currentTimeMillis() - oldest
+    }
+
     def "grouping segment data by date time behave as expected"() {
         given:
         ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segmentByTime = DataSourceMetadataService.groupSegmentByTime(metadata)
@@ -1,6 +1,7 @@
 package com.yahoo.bard.webservice.table.availability
 
 import com.yahoo.bard.webservice.data.config.names.DataSourceName
+import com.yahoo.bard.webservice.metadata.DataSourceMetadataService
 import com.yahoo.bard.webservice.metadata.TestDataSourceMetadataService
 import com.yahoo.bard.webservice.table.resolver.PhysicalDataSourceConstraint
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList
@@ -46,6 +47,20 @@ class StrictAvailabilitySpec extends Specification{
         ] as LinkedHashMap
     }
 
+    def "A metadata service without a snapshot of the data source leaves no intervals available"() {
+        given:
+        StrictAvailability availability = new StrictAvailability(
+                DataSourceName.of('table'),
+                Mock(DataSourceMetadataService)
+        )
+        PhysicalDataSourceConstraint dataSourceConstraint = Mock(PhysicalDataSourceConstraint)
+        dataSourceConstraint.allColumnPhysicalNames >> [columnPhysicalName1]
+
+        expect:
+        availability.getAvailableIntervals(dataSourceConstraint) == new SimplifiedIntervalList()
+        availability.getAllAvailableIntervals() == [:]
+    }
+
     @Unroll
     def "getAvailableIntervals returns the intersection of the requested column available intervals when there is #description"() {
         given:
@@ -97,4 +112,19 @@ class StrictAvailabilitySpec extends Specification{
         expect:
         strictAvailability.getAvailableIntervals(constraint) == new SimplifiedIntervalList()
     }
+
+    def "The intervals returned, which the snapshot shares, cannot be changed"() {
+        given:
+        PhysicalDataSourceConstraint dataSourceConstraint = Mock(PhysicalDataSourceConstraint)
+        dataSourceConstraint.allColumnPhysicalNames >> [columnPhysicalName1, columnPhysicalName2]
+        SimplifiedIntervalList expected = strictAvailability.getAvailableIntervals(dataSourceConstraint)
+
+        when:
+        strictAvailability.getAvailableIntervals(dataSourceConstraint).clear()
+
+        then:
+        thrown(UnsupportedOperationException)
+        !expected.isEmpty()
+        strictAvailability.getAvailableIntervals(dataSourceConstraint) == expected
+    }
 }
@@ -3,6 +3,7 @@
 package com.yahoo.bard.webservice.util
 
 import com.yahoo.bard.webservice.async.jobs.jobrows.JobRow
+import com.yahoo.bard.webservice.data.StreamingResultSet
 import com.yahoo.bard.webservice.druid.model.aggregation.LongSumAggregation
 
 import org.joda.time.DateTime
@@ -66,7 +67,8 @@ class ClassScannerSpec extends Specification {
                 AbstractMap,
                 AbstractMap.SimpleEntry,
                 LinkedHashMap,
-                JobRow
+                JobRow,
+                StreamingResultSet
         ]
 
         for (Class cls : classScanner.classes) {
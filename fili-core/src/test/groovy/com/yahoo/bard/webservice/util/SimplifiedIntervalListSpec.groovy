@@ -55,10 +55,10 @@ class SimplifiedIntervalListSpec extends Specification {
         Interval interval = new Interval(addend)
 
         when:
-        workingList.appendWithMerge(interval)
+        List<Interval> merged = (workingList + [interval]).stream().collect(SimplifiedIntervalList.getCollector())
 
         then:
-        workingList == expectedList
+        merged == expectedList
 
         where:
         [original, addend, expected] << appendWithMergeData()
@@ -162,6 +162,65 @@ class SimplifiedIntervalListSpec extends Specification {
         []                  | []                | []
     }
 
+    @Unroll
+    def "#interval #isContained by a single interval of #supply"() {
+        setup:
+        SimplifiedIntervalList supplyList = buildIntervalListNum(supply)
+        Interval testInterval = new Interval(interval[0], interval[1])
+
+        expect:
+        supplyList.containsInterval(testInterval) == contained
+        new SimplifiedIntervalList.IsSubinterval(supplyList).test(testInterval) == contained
+
+        where:
+        supply            | interval | contained
+        tinyEvenIntervals | [2, 4]   | true
+        tinyEvenIntervals | [7, 9]   | true
+        tinyEvenIntervals | [14, 30] | true
+        tinyEvenIntervals | [1, 3]   | false
+        tinyEvenIntervals | [3, 7]   | false
+        tinyEvenIntervals | [10, 12] | false
+        tinyEvenIntervals | [29, 31] | false
+        tinyEvenIntervals | [30, 30] | false
+        tinyEvenIntervals | [0, 1]   | false
+        []                | [2, 4]   | false
+
+        isContained = contained ? "is contained" : "is not contained"
+    }
+
+    def "Subintervals are found in any order"() {
+        setup:
+        SimplifiedIntervalList supplyList = buildIntervalListNum(tinyEvenIntervals)
+        SimplifiedIntervalList.IsSubinterval isSubinterval = new SimplifiedIntervalList.IsSubinterval(supplyList)
+
+        expect: "Intervals tested out of order are found"
+        isSubinterval.test(new Interval(15, 20))
+        isSubinterval.test(new Interval(2, 3))
+        !isSubinterval.test(new Interval(4, 6))
+    }
+
+    @Unroll
+    def "Simplified interval lists cannot be changed with #operation"() {
+        setup:
+        SimplifiedIntervalList intervals = buildIntervalListNum(tinyEvenIntervals)
+
+        when:
+        change(intervals)
+
+        then:
+        thrown(UnsupportedOperationException)
+        intervals == buildIntervalListNum(tinyEvenIntervals)
+
+        where:
+        operation    | change
+        "set"        | { it.set(0, new Interval(0, 4)) }
+        "remove"     | { it.remove(0) }
+        "add"        | { it.add(0, new Interval(40, 50)) }
+        "clear"      | { it.clear() }
+        "iterator"   | { Iterator<Interval> iterator = it.iterator(); iterator.next(); iterator.remove() }
+        "replaceAll" | { it.replaceAll { new Interval(it.startMillis + 100, it.endMillis + 100) } }
+    }
+
     @Unroll
     def "Period Iterator creates period sliced starting at #expected when dividing #rawIntervals by #period"() {
 
@@ -32,6 +32,9 @@ import com.yahoo.bard.webservice.util.SimplifiedIntervalList
 
 import com.fasterxml.jackson.dataformat.csv.CsvSchema
 
+import org.apache.avro.file.DataFileStream
+import org.apache.avro.generic.GenericDatumReader
+import org.apache.avro.generic.GenericRecord
 import org.joda.time.DateTime
 import org.joda.time.DateTimeZone
 import org.joda.time.Interval
@@ -377,6 +380,9 @@ class ResponseSpec extends Specification {
         "boolean" | true                                 | false
         "JsonNode"| '{"values": "1, 3, 7", "length": 3}' | '{"values": "2", "length": 1}'
         "null"    | null                                 | null
+        "double"  | 1.5d                                 | 2.25d
+        "long"    | 7L                                   | 8L
+        "integer" | 7                                    | 8
     }
 
     @Unroll
@@ -542,6 +548,103 @@ class ResponseSpec extends Specification {
         csvResponse == expectedCSV
     }
 
+    def "test Avro response"() {
+        setup:
+        apiRequest.getFormat() >> ResponseFormatType.AVRO
+        response = new Response(resultSet, apiRequest, NO_INTERVALS, NO_INTERVALS, [:], (Pagination) null, MAPPERS)
+
+        when:
+        response.write(os)
+        DataFileStream<GenericRecord> rows = new DataFileStream<>(
+                new ByteArrayInputStream(os.toByteArray()),
+                new GenericDatumReader<GenericRecord>()
+        )
+        List<GenericRecord> records = rows.collect()
+
+        then: "the columns are those of the CSV response, with their names kept in the column property"
+        rows.schema.fields*.name() == [
+                "dateTime",
+                "product_id",
+                "product_desc",
+                "platform_id",
+                "platform_desc",
+                "property_desc",
+                "pageViews",
+                "timeSpent"
+        ]
+        rows.schema.fields*.getProp(AvroResponseWriter.COLUMN_PROPERTY)[1..5] ==
+                ["product|id", "product|desc", "platform|id", "platform|desc", "property|desc"]
+
+        and: "the rows are written as a batch of columns, with dictionary encoded dimension fields"
+        records.size() == 1
+        records[0].get("dateTime").toList() == [dateTime.millis, dateTime.millis]
+        records[0].get("product_id").get("dictionary")*.toString() == ["ymail", "ysports"]
+        records[0].get("product_id").get("indices").toList() == [0, 1]
+        records[0].get("platform_desc").get("dictionary")*.toString() == ["mobile \" desc..", 'desktop ," desc..']
+        records[0].get("platform_desc").get("indices").toList() == [0, 1]
+        records[0].get("pageViews").schema.name == "LongVector"
+        records[0].get("pageViews").get("values").toList() == [10L, 10L]
+        records[0].get("pageViews").get("nulls").toList() == []
+    }
+
+    def "Avro responses are written in batches of at most the batch size"() {
+        given:
+        AvroResponseWriter writer = new AvroResponseWriter(
+                resultSet.getSchema(),
+                [new MetricColumn("pageViews")] as LinkedHashSet,
+                [:] as LinkedHashMap,
+                1
+        )
+
+        when:
+        writer.write(os, resultSet)
+        List<GenericRecord> records = new DataFileStream<>(
+                new ByteArrayInputStream(os.toByteArray()),
+                new GenericDatumReader<GenericRecord>()
+        ).collect()
+
+        then:
+        records*.get("dateTime")*.toList() == [[dateTime.millis], [dateTime.millis]]
+        records*.get("pageViews")*.get("values")*.toList() == [[10L], [10L]]
+    }
+
+    @Unroll
+    def "Avro responses write #type metrics as #expected"() {
+        setup:
+        apiRequest.getFormat() >> ResponseFormatType.AVRO
+        metricColumnsMap.put(new MetricColumn("pageViews"), value)
+        response = new Response(
+                buildTestResultSet(metricColumnsMap, defaultRequestedMetrics),
+                apiRequest,
+                NO_INTERVALS,
+                NO_INTERVALS,
+                [:],
+                (Pagination) null,
+                MAPPERS
+        )
+
+        when:
+        response.write(os)
+        DataFileStream<GenericRecord> rows = new DataFileStream<>(
+                new ByteArrayInputStream(os.toByteArray()),
+                new GenericDatumReader<GenericRecord>()
+        )
+
+        GenericRecord pageViews = rows.next().get("pageViews")
+
+        then:
+        pageViews.schema.name == vector
+        pageViews.get("values").toList() == [expected, expected]
+
+        where:
+        type                    | value                                   | vector         | expected
+        "long"                  | 9007199254740993L                       | "LongVector"   | 9007199254740993L
+        "integral decimal"      | new BigDecimal("9007199254740993")      | "LongVector"   | 9007199254740993L
+        "fractional decimal"    | new BigDecimal("1.5")                   | "DoubleVector" | 1.5d
+        "double"                | 2.25d                                   | "DoubleVector" | 2.25d
+        "decimal beyond a long" | new BigDecimal("18446744073709551616")  | "DoubleVector" | 18446744073709551616d
+    }
+
     @Unroll
     def "test for existence of missing intervals in response when #arePaginating"() {
         setup:
@@ -0,0 +1,197 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.filters
+
+import com.yahoo.bard.webservice.config.BardFeatureFlag
+import com.yahoo.bard.webservice.util.CacheLastObserver
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+import java.util.zip.GZIPInputStream
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.container.ContainerResponseContext
+import javax.ws.rs.core.HttpHeaders
+import javax.ws.rs.core.MultivaluedHashMap
+import javax.ws.rs.core.MultivaluedMap
+import javax.ws.rs.ext.WriterInterceptorContext
+
+class ResponseCompressionFilterSpec extends Specification {
+
+    static final int MIN_BYTES = 64
+
+    @Subject ResponseCompressionFilter filter = new ResponseCompressionFilter(6, MIN_BYTES)
+
+    Map<String, Object> requestProperties = [:]
+    MultivaluedMap<String, Object> responseHeaders = new MultivaluedHashMap<>()
+
+    def setup() {
+        BardFeatureFlag.RESPONSE_COMPRESSION.setOn(true)
+    }
+
+    def cleanup() {
+        BardFeatureFlag.RESPONSE_COMPRESSION.setOn(false)
+    }
+
+    @Unroll
+    def "A compression level of #level is rejected when the filter is built"() {
+        when:
+        new ResponseCompressionFilter(level, MIN_BYTES)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        level << [-1, 10]
+    }
+
+    def "Compression levels from 0 to 9 are accepted"() {
+        when:
+        (0..9).each { new ResponseCompressionFilter(it, MIN_BYTES) }
+
+        then:
+        noExceptionThrown()
+    }
+
+    @Unroll
+    def "Accept-Encoding '#acceptEncoding' #accepts gzip"() {
+        expect:
+        ResponseCompressionFilter.acceptsGzip(acceptEncoding) == accepted
+
+        where:
+        acceptEncoding                  | accepted
+        null                            | false
+        ""                              | false
+        "identity"                      | false
+        "gzip"                          | true
+        "GZIP"                          | true
+        "deflate, gzip;q=0.5"           | true
+        "x-gzip"                        | true
+        "*"                             | true
+        "gzip;q=0"                      | false
+        "gzip;q=0.0, *"                 | false
+        "br, *;q=0"                     | false
+        "gzip;q=bad"                    | false
+
+        accepts = accepted ? "accepts" : "does not accept"
+    }
+
+    def "A response is compressed when the client accepts gzip"() {
+        when:
+        filter.filter(buildRequest("gzip, deflate"), buildResponse(true))
+
+        then:
+        responseHeaders.get(HttpHeaders.VARY) == [HttpHeaders.ACCEPT_ENCODING]
+        requestProperties.values().contains(ResponseCompressionFilter.GZIP)
+        requestProperties.get(ResponseCompressionFilter.PROPERTY_UNCOMPRESSED_LENGTH) instanceof CacheLastObserver
+    }
+
+    @Unroll
+    def "A response is not compressed when #reason"() {
+        given:
+        if (encoded) {
+            responseHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, "br")
+        }
+        BardFeatureFlag.RESPONSE_COMPRESSION.setOn(enabled)
+
+        when:
+        filter.filter(buildRequest(acceptEncoding), buildResponse(hasEntity))
+
+        then:
+        requestProperties.isEmpty()
+
+        where:
+        acceptEncoding | hasEntity | encoded | enabled | reason
+        "identity"     | true      | false   | true    | "the client does not accept gzip"
+        "gzip"         | false     | false   | true    | "there is no entity"
+        "gzip"         | true      | true    | true    | "the response is already encoded"
+        "gzip"         | true      | false   | false   | "compression is disabled"
+    }
+
+    def "An entity as long as the threshold is gzipped as it is written, and both lengths are recorded"() {
+        given:
+        filter.filter(buildRequest("gzip"), buildResponse(true))
+        byte[] entity = ("a,b,c\n" * 1000).bytes
+        ByteArrayOutputStream sent = new ByteArrayOutputStream()
+
+        when:
+        filter.aroundWriteTo(buildWriterContext(sent, entity))
+
+        then: "The entity is sent gzipped, with the content encoding header"
+        responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING) == ResponseCompressionFilter.GZIP
+        !responseHeaders.containsKey(HttpHeaders.CONTENT_LENGTH)
+        sent.size() < entity.length
+        new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray())).bytes == entity
+
+        and: "The length before compression is published"
+        uncompressedLength.getLastMessageReceived().get() == (long) entity.length
+    }
+
+    def "An entity shorter than the threshold is sent uncompressed"() {
+        given:
+        filter.filter(buildRequest("gzip"), buildResponse(true))
+        byte[] entity = "{\"rows\":[]}".bytes
+        ByteArrayOutputStream sent = new ByteArrayOutputStream()
+
+        when:
+        filter.aroundWriteTo(buildWriterContext(sent, entity))
+
+        then:
+        !responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING)
+        responseHeaders.getFirst(HttpHeaders.CONTENT_LENGTH) == entity.length
+        sent.toByteArray() == entity
+        uncompressedLength.getLastMessageReceived().get() == (long) entity.length
+    }
+
+    def "An entity is written untouched when compression was not chosen"() {
+        given:
+        byte[] entity = ("a,b,c\n" * 1000).bytes
+        ByteArrayOutputStream sent = new ByteArrayOutputStream()
+
+        when:
+        filter.aroundWriteTo(buildWriterContext(sent, entity))
+
+        then:
+        !responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING)
+        sent.toByteArray() == entity
+    }
+
+    CacheLastObserver<Long> getUncompressedLength() {
+        return requestProperties.get(ResponseCompressionFilter.PROPERTY_UNCOMPRESSED_LENGTH) as CacheLastObserver<Long>
+    }
+
+    ContainerRequestContext buildRequest(String acceptEncoding) {
+        ContainerRequestContext request = Mock(ContainerRequestContext)
+        request.getHeaderString(HttpHeaders.ACCEPT_ENCODING) >> acceptEncoding
+        request.setProperty(_, _) >> { requestProperties.put(it[0], it[1]) }
+        return request
+    }
+
+    ContainerResponseContext buildResponse(boolean hasEntity) {
+        ContainerResponseContext response = Mock(ContainerResponseContext)
+        response.hasEntity() >> hasEntity
+        response.getHeaders() >> responseHeaders
+        return response
+    }
+
+    /**
+     * Build a writer interceptor context which writes the entity in small chunks, closing the stream as the entity
+     * providers do.
+     */
+    WriterInterceptorContext buildWriterContext(OutputStream target, byte[] entity) {
+        responseHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, entity.length)
+        OutputStream outputStream = target
+        WriterInterceptorContext context = Mock(WriterInterceptorContext)
+        context.getProperty(_) >> { requestProperties.get(it[0]) }
+        context.getHeaders() >> responseHeaders
+        context.getOutputStream() >> { outputStream }
+        context.setOutputStream(_) >> { outputStream = it[0] }
+        context.proceed() >> {
+            entity.toList().collate(10).each { outputStream.write(it as byte[]) }
+            outputStream.close()
+        }
+        return context
+    }
+}
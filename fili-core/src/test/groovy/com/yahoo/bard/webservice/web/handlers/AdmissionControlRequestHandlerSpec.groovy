@@ -0,0 +1,85 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.RequestUtils
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+
+class AdmissionControlRequestHandlerSpec extends Specification {
+
+    DataRequestHandler next = Mock(DataRequestHandler)
+    ScheduledExecutorService queueScheduler = Mock(ScheduledExecutorService)
+    ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext)
+    ResponseProcessor response = Mock(ResponseProcessor)
+    HttpErrorCallback errorCallback = Mock(HttpErrorCallback)
+
+    GroupByQuery groupByQuery = RequestUtils.buildGroupByQuery()
+    DataApiRequest apiRequest = Mock(DataApiRequest)
+    MultivaluedHashMap<String, String> headers = new MultivaluedHashMap<>()
+
+    List<Runnable> drains = []
+
+    AdmissionControlRequestHandler handler
+
+    def setup() {
+        containerRequestContext.getHeaders() >> headers
+        queueScheduler.schedule(_ as Runnable, _ as Long, TimeUnit.NANOSECONDS) >> {
+            drains.add(it[0])
+            return Mock(ScheduledFuture)
+        }
+        response.getErrorCallback(groupByQuery) >> errorCallback
+
+        // Budgets with room for one request, which never refill, and no time to wait
+        AdmissionController controller = new AdmissionController(1, 0, 1, 0, 0, 1000, 1000, queueScheduler, { it.run() }, { 0L })
+        handler = new AdmissionControlRequestHandler(next, controller, new ObjectMapper())
+    }
+
+    def "Requests within the budgets are sent on, and requests over them are rejected"() {
+        when:
+        handler.handleRequest(new RequestContext(containerRequestContext, true), apiRequest, groupByQuery, response)
+
+        then:
+        1 * next.handleRequest(_, apiRequest, groupByQuery, response) >> true
+
+        when:
+        boolean handled = handler.handleRequest(
+                new RequestContext(containerRequestContext, true),
+                apiRequest,
+                groupByQuery,
+                response
+        )
+        drains*.run()
+
+        then:
+        handled
+        0 * next.handleRequest(_, _, _, _)
+        1 * errorCallback.dispatch(429, _, _)
+    }
+
+    def "Bypass requests are not charged"() {
+        given:
+        headers.putSingle("Bard-Testing", "###BYPASS###")
+
+        when:
+        3.times {
+            handler.handleRequest(new RequestContext(containerRequestContext, true), apiRequest, groupByQuery, response)
+        }
+
+        then:
+        3 * next.handleRequest(_, apiRequest, groupByQuery, response) >> true
+    }
+}
@@ -0,0 +1,225 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.web.RequestUtils
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class AdmissionControllerSpec extends Specification {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1)
+
+    ScheduledExecutorService queueScheduler = Mock(ScheduledExecutorService)
+    long now = 0
+    List<Runnable> drains = []
+    List<Runnable> dispatched = []
+    Executor dispatcher = { dispatched.add(it) } as Executor
+    List<String> outcomes = []
+
+    AdmissionController controller
+
+    def setup() {
+        queueScheduler.schedule(_ as Runnable, _ as Long, TimeUnit.NANOSECONDS) >> {
+            drains.add(it[0])
+            return Mock(ScheduledFuture)
+        }
+        // Global budget of 100 refilling at 10 a second, user budgets of 40 refilling at 10 a second, 5 second queue
+        controller = new AdmissionController(100, 10, 40, 10, 5000, 1000, 1000, queueScheduler, dispatcher, { now })
+    }
+
+    void enqueue(String user, long cost, String name) {
+        controller.enqueue(user, cost, { outcomes.add("admitted " + name) }, { outcomes.add("rejected " + name) })
+    }
+
+    void drain() {
+        List<Runnable> scheduled = new ArrayList<>(drains)
+        drains.clear()
+        scheduled*.run()
+        dispatch()
+    }
+
+    void dispatch() {
+        List<Runnable> handedOff = new ArrayList<>(dispatched)
+        dispatched.clear()
+        handedOff*.run()
+    }
+
+    def "Requests are charged against the budget of their user until it runs out"() {
+        expect:
+        controller.tryAdmit("alice", 30)
+        !controller.tryAdmit("alice", 30)
+
+        and: "Other users still have their budgets"
+        controller.tryAdmit("bob", 30)
+    }
+
+    def "Requests are charged against the global budget"() {
+        expect:
+        controller.tryAdmit("alice", 40)
+        controller.tryAdmit("bob", 40)
+        !controller.tryAdmit("carol", 40)
+        controller.tryAdmit("carol", 20)
+    }
+
+    def "A request costing more than a budget is charged the whole budget"() {
+        expect:
+        controller.tryAdmit("alice", 1000)
+        !controller.tryAdmit("alice", 1)
+    }
+
+    def "Budgets refill over time, up to their capacity"() {
+        given:
+        controller.tryAdmit("alice", 40)
+
+        when:
+        now += 2 * SECOND
+
+        then:
+        controller.tryAdmit("alice", 20)
+        !controller.tryAdmit("alice", 1)
+
+        when:
+        now += 100 * SECOND
+
+        then:
+        controller.tryAdmit("alice", 40)
+        !controller.tryAdmit("alice", 1)
+    }
+
+    def "Waiting requests are admitted once the budgets refill"() {
+        given:
+        controller.tryAdmit("alice", 40)
+
+        when:
+        enqueue("alice", 20, "first")
+        drain()
+
+        then: "The request waits"
+        outcomes == []
+        controller.queueDepth == 1
+        drains.size() == 1
+
+        and: "Requests do not get ahead of waiting requests"
+        !controller.tryAdmit("bob", 1)
+
+        when:
+        now += 2 * SECOND
+        drain()
+
+        then:
+        outcomes == ["admitted first"]
+        controller.queueDepth == 0
+    }
+
+    def "Waiting requests are rejected once they have waited too long"() {
+        given: "User budgets refilling at 1 a second"
+        controller = new AdmissionController(100, 10, 40, 1, 5000, 1000, 1000, queueScheduler, dispatcher, { now })
+        controller.tryAdmit("alice", 40)
+        enqueue("alice", 40, "first")
+        drain()
+
+        when:
+        now += 3 * SECOND
+        drain()
+
+        then:
+        outcomes == []
+
+        when:
+        now += 2 * SECOND
+        drain()
+
+        then:
+        outcomes == ["rejected first"]
+        controller.queueDepth == 0
+    }
+
+    def "A request waiting on the budget of its user does not hold back other users"() {
+        given:
+        controller.tryAdmit("alice", 40)
+        enqueue("alice", 40, "alice")
+        enqueue("bob", 10, "bob")
+
+        when:
+        drain()
+
+        then:
+        outcomes == ["admitted bob"]
+    }
+
+    def "Requests behind a request waiting on the global budget wait their turn"() {
+        given:
+        controller.tryAdmit("alice", 40)
+        controller.tryAdmit("bob", 40)
+        enqueue("carol", 40, "carol")
+        enqueue("dave", 10, "dave")
+
+        when:
+        drain()
+
+        then:
+        outcomes == []
+
+        when:
+        now += 3 * SECOND
+        drain()
+
+        then:
+        outcomes == ["admitted carol", "admitted dave"]
+    }
+
+    def "Admitted and rejected requests are continued on the dispatcher, not on the thread of the queue"() {
+        given:
+        controller.tryAdmit("alice", 40)
+        enqueue("alice", 20, "first")
+        now += 2 * SECOND
+
+        when:
+        List<Runnable> scheduled = new ArrayList<>(drains)
+        drains.clear()
+        scheduled*.run()
+
+        then:
+        outcomes == []
+        dispatched.size() == 1
+        controller.queueDepth == 0
+
+        when:
+        dispatch()
+
+        then:
+        outcomes == ["admitted first"]
+    }
+
+    def "Cost is the number of time buckets plus the scaled most rows and worst case weight"() {
+        given: "A daily query over a week, without sketches"
+        GroupByQuery query = RequestUtils.buildGroupByQuery().withAllIntervals([new Interval("2017-01-01/2017-01-08")])
+
+        expect:
+        controller.estimateCost(query) == 7
+        controller.estimateCost(RequestUtils.buildGroupByQuery()) == 1
+    }
+
+    def "Cost grows with the cardinalities of the grouping dimensions"() {
+        given: "A daily query over a week, grouped by dimensions of 100 and 50 values, and one of unknown cardinality"
+        Dimension large = Stub(Dimension) { getCardinality() >> 100 }
+        Dimension small = Stub(Dimension) { getCardinality() >> 50 }
+        Dimension unknown = Stub(Dimension) { getCardinality() >> 0 }
+        GroupByQuery query = RequestUtils.buildGroupByQuery()
+                .withAllIntervals([new Interval("2017-01-01/2017-01-08")])
+                .withDimensions([large, small, unknown])
+
+        expect: "7 time buckets, plus 7 * 100 * 50 rows at 1000 rows per unit of cost"
+        controller.estimateCost(query) == 7 + 35
+    }
+}
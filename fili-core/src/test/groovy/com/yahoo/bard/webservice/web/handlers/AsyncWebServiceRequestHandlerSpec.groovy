@@ -2,12 +2,16 @@
 // Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag
 import com.yahoo.bard.webservice.druid.client.DruidWebService
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback
 import com.yahoo.bard.webservice.druid.client.SuccessCallback
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.web.DataApiRequest
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor
 
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.ObjectWriter
@@ -53,4 +57,43 @@ class AsyncWebServiceRequestHandlerSpec extends Specification {
         then:
         1 * response.processResponse(rootNode, groupByQuery, _)
     }
+
+    def "Streaming processors get a streaming callback only when streaming is enabled"() {
+        setup:
+        BardFeatureFlag.STREAMING_DRUID_RESPONSE.setOn(enabled)
+        DruidWebService dws = Mock(DruidWebService)
+        GroupByQuery groupByQuery = Mock(GroupByQuery)
+        StreamingResponseProcessor response = Mock(StreamingResponseProcessor)
+        JsonParser parser = Mock(JsonParser)
+
+        ObjectMapper mapper = Mock(ObjectMapper)
+        mapper.writer() >> Mock(ObjectWriter)
+        AsyncWebServiceRequestHandler handler = new AsyncWebServiceRequestHandler(dws, mapper)
+
+        SuccessCallback sc = null
+
+        when:
+        handler.handleRequest(Mock(RequestContext), Mock(DataApiRequest), groupByQuery, response)
+
+        then:
+        1 * dws.postDruidQuery(_, _, _, _, groupByQuery) >> { a0, a1, a2, a3, a4 ->
+            sc = a1
+            return Mock(Future)
+        }
+        (sc instanceof StreamingSuccessCallback) == enabled
+
+        when:
+        if (enabled) {
+            ((StreamingSuccessCallback) sc).invoke(parser)
+        }
+
+        then:
+        (enabled ? 1 : 0) * response.processResponse(parser, groupByQuery, _)
+
+        cleanup:
+        BardFeatureFlag.STREAMING_DRUID_RESPONSE.setOn(false)
+
+        where:
+        enabled << [true, false]
+    }
 }
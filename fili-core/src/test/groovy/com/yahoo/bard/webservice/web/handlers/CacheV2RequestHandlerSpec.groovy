@@ -3,6 +3,7 @@
 package com.yahoo.bard.webservice.web.handlers
 
 import com.yahoo.bard.webservice.data.cache.MemTupleDataCache
+import com.yahoo.bard.webservice.data.cache.TieredTupleDataCache
 import com.yahoo.bard.webservice.data.cache.TupleDataCache
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.druid.model.query.TimeSeriesQuery
@@ -106,6 +107,50 @@ class CacheV2RequestHandlerSpec extends Specification {
         requestProcessed
     }
 
+    def "Hits on entries kept in memory reuse the parsed response"() {
+        given:
+        TieredTupleDataCache.LocalDataEntry entry = new TieredTupleDataCache.LocalDataEntry("key1", 1234L, "[]")
+        dataCache.get(_) >> entry
+        List<JsonNode> responses = []
+        response.processResponse(_, groupByQuery, _) >> { responses << it[0] }
+
+        when: "The same entry answers a query twice"
+        handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
+        handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
+
+        then: "Both hits get the same tree"
+        responses == [json, json]
+        responses[0].is(responses[1])
+    }
+
+    def "Entries prefetched for many queries are used instead of reading the cache again"() {
+        setup:
+        String groupByKey = handler.getKey(groupByQuery)
+
+        when: "The entries of two queries are read ahead"
+        handler.prefetch(requestContext, [groupByQuery, topNQuery])
+
+        then: "They are read in one round trip"
+        1 * dataCache.getMulti({ it.size() == 2 }) >> [
+                (groupByKey): new MemTupleDataCache.DataEntry<String>("key1", 1234L, "[]")
+        ]
+
+        when: "The query with a prefetched entry is handled"
+        handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
+
+        then: "It is answered from the prefetched entry"
+        0 * dataCache.get(_)
+        1 * response.processResponse(json, groupByQuery, _)
+
+        when: "The query prefetched as missing is handled"
+        handler.handleRequest(requestContext, apiRequest, topNQuery, response)
+
+        then: "It goes to the next handler without reading the cache"
+        0 * dataCache.get(_)
+        1 * next.handleRequest(requestContext, apiRequest, topNQuery, _ as CacheV2ResponseProcessor) >> true
+        requestContext.prefetchedCacheEntries.isEmpty()
+    }
+
     def "Test handle request cache miss delegates response to next handler"() {
         when: "A request is sent that has a cache miss"
         boolean requestProcessed = handler.handleRequest(requestContext, apiRequest, groupByQuery, response)
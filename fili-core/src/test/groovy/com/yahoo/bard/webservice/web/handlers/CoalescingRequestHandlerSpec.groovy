@@ -0,0 +1,220 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.druid.client.DruidWebService
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.metadata.QuerySigningService
+import com.yahoo.bard.webservice.metadata.SegmentIntervalsHashIdGenerator
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.RequestUtils
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
+
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+
+class CoalescingRequestHandlerSpec extends Specification {
+
+    ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module().configureAbsentsAsNulls(false))
+
+    DataRequestHandler next = Mock(DataRequestHandler)
+    DruidWebService webService = Mock(DruidWebService)
+    QuerySigningService<Long> querySigningService = Mock(SegmentIntervalsHashIdGenerator)
+    ScheduledExecutorService timeoutScheduler = Mock(ScheduledExecutorService)
+
+    CoalescingRequestHandler handler
+
+    GroupByQuery groupByQuery = RequestUtils.buildGroupByQuery()
+    DataApiRequest apiRequest = Mock(DataApiRequest)
+    JsonNode json = mapper.readTree('[{"version": "v1", "timestamp": "2014-06-10T00:00:00.000Z", "event": {}}]')
+
+    ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext)
+
+    // The response processors the leading queries were sent on with
+    List<ResponseProcessor> sent = []
+    List<Runnable> timeouts = []
+
+    def setup() {
+        containerRequestContext.getHeaders() >> (["Bard-Testing": "###BYPASS###", "ClientId": "UI"] as
+                MultivaluedHashMap<String, String>)
+        querySigningService.getSegmentSetId(_) >> Optional.of(1234L)
+        next.handleRequest(_, _, _, _) >> {
+            sent.add(it[3])
+            return true
+        }
+        timeoutScheduler.schedule(_ as Runnable, _ as Long, TimeUnit.MILLISECONDS) >> {
+            timeouts.add(it[0])
+            return Mock(ScheduledFuture)
+        }
+        handler = new CoalescingRequestHandler(next, webService, querySigningService, mapper, timeoutScheduler)
+    }
+
+    RequestContext buildContext(boolean readCache = true) {
+        return new RequestContext(containerRequestContext, readCache)
+    }
+
+    def "Identical queries in flight at the same time are sent once, and each is given the response"() {
+        given:
+        ResponseProcessor first = Mock(ResponseProcessor)
+        ResponseProcessor second = Mock(ResponseProcessor)
+        GroupByQuery otherContext = groupByQuery.withContext(groupByQuery.context.withQueryId("other"))
+        long coalesced = CoalescingRequestHandler.COALESCED.count
+
+        when: "An identical query, differing only in its context, arrives while the first is in flight"
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, first)
+        handler.handleRequest(buildContext(), apiRequest, otherContext, second)
+
+        then: "Only the first is sent on"
+        sent.size() == 1
+        CoalescingRequestHandler.COALESCED.count == coalesced + 1
+
+        when: "The response arrives"
+        sent[0].processResponse(json, groupByQuery, null)
+
+        then: "Each query is given the response"
+        1 * second.processResponse(json, otherContext, _)
+        1 * first.processResponse(json, groupByQuery, _)
+    }
+
+    def "A query arriving once the flight has completed is sent on"() {
+        given:
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, Mock(ResponseProcessor))
+        sent[0].processResponse(json, groupByQuery, null)
+
+        when:
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, Mock(ResponseProcessor))
+
+        then:
+        sent.size() == 2
+    }
+
+    def "Queries over different segments, or bypassing the cache, are sent on"() {
+        given:
+        QuerySigningService<Long> signingService = Mock(SegmentIntervalsHashIdGenerator)
+        signingService.getSegmentSetId(_) >>> [Optional.of(1L), Optional.of(2L)]
+        handler = new CoalescingRequestHandler(next, webService, signingService, mapper, timeoutScheduler)
+
+        when: "The segments of the query change while it is in flight"
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, Mock(ResponseProcessor))
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, Mock(ResponseProcessor))
+
+        and: "A request bypasses the cache"
+        handler.handleRequest(buildContext(false), apiRequest, groupByQuery, Mock(ResponseProcessor))
+
+        then:
+        sent.size() == 3
+    }
+
+    def "A failure of the query in flight fails each waiting query"() {
+        given:
+        ResponseProcessor first = Mock(ResponseProcessor)
+        ResponseProcessor second = Mock(ResponseProcessor)
+        FailureCallback firstFailure = Mock(FailureCallback)
+        FailureCallback secondFailure = Mock(FailureCallback)
+        first.getFailureCallback(_) >> firstFailure
+        second.getFailureCallback(_) >> secondFailure
+        Throwable failure = new IOException("Connection refused")
+
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, first)
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, second)
+
+        when:
+        sent[0].getFailureCallback(groupByQuery).invoke(failure)
+
+        then:
+        1 * secondFailure.invoke(failure)
+        1 * firstFailure.invoke(failure)
+    }
+
+    def "An http error of the query in flight is given to each waiting query"() {
+        given:
+        ResponseProcessor first = Mock(ResponseProcessor)
+        ResponseProcessor second = Mock(ResponseProcessor)
+        HttpErrorCallback firstError = Mock(HttpErrorCallback)
+        HttpErrorCallback secondError = Mock(HttpErrorCallback)
+        first.getErrorCallback(_) >> firstError
+        second.getErrorCallback(_) >> secondError
+
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, first)
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, second)
+
+        when:
+        sent[0].getErrorCallback(groupByQuery).invoke(500, "Internal Server Error", "{}")
+
+        then:
+        1 * secondError.invoke(500, "Internal Server Error", "{}")
+        1 * firstError.invoke(500, "Internal Server Error", "{}")
+    }
+
+    def "A waiting query times out after its own timeout, and is not given the response"() {
+        given:
+        ResponseProcessor first = Mock(ResponseProcessor)
+        ResponseProcessor second = Mock(ResponseProcessor)
+        FailureCallback secondFailure = Mock(FailureCallback)
+        second.getFailureCallback(_) >> secondFailure
+        GroupByQuery shortTimeout = groupByQuery.withContext(groupByQuery.context.withTimeout(50))
+
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, first)
+
+        when:
+        handler.handleRequest(buildContext(), apiRequest, shortTimeout, second)
+
+        then: "The timeout of the waiting query is scheduled"
+        1 * timeoutScheduler.schedule(_ as Runnable, 50, TimeUnit.MILLISECONDS) >> {
+            timeouts.add(it[0])
+            return Mock(ScheduledFuture)
+        }
+
+        when: "The timeout passes before the response arrives"
+        timeouts[0].run()
+        sent[0].processResponse(json, groupByQuery, null)
+
+        then:
+        1 * secondFailure.invoke({ it instanceof TimeoutException })
+        0 * second.processResponse(_, _, _)
+        1 * first.processResponse(json, groupByQuery, _)
+    }
+
+    def "A streaming query in flight streams the response unless a query is waiting for it"() {
+        given:
+        StreamingResponseProcessor first = Mock(StreamingResponseProcessor)
+        StreamingResponseProcessor second = Mock(StreamingResponseProcessor)
+        ResponseProcessor third = Mock(ResponseProcessor)
+        JsonParser parser = mapper.getFactory().createParser(mapper.writeValueAsString(json))
+
+        when: "The query is alone in flight"
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, first)
+        (sent[0] as StreamingResponseProcessor).processResponse(parser, groupByQuery, null)
+
+        then: "It is given the parser"
+        1 * first.processResponse(parser, groupByQuery, _)
+
+        when: "A query is waiting for the response"
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, second)
+        handler.handleRequest(buildContext(), apiRequest, groupByQuery, third)
+        (sent[1] as StreamingResponseProcessor).processResponse(
+                mapper.getFactory().createParser(mapper.writeValueAsString(json)),
+                groupByQuery,
+                null
+        )
+
+        then: "Both are given the response read into a tree"
+        1 * third.processResponse(json, groupByQuery, _)
+        1 * second.processResponse(json, groupByQuery, _)
+    }
+}
@@ -0,0 +1,226 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import static com.yahoo.bard.webservice.web.responseprocessors.ResponseContextKeys.VOLATILE_INTERVALS_CONTEXT_KEY
+
+import com.yahoo.bard.webservice.data.cache.MemTupleDataCache
+import com.yahoo.bard.webservice.data.cache.TupleDataCache
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery
+import com.yahoo.bard.webservice.druid.model.query.TimeSeriesQuery
+import com.yahoo.bard.webservice.metadata.QuerySigningService
+import com.yahoo.bard.webservice.metadata.SegmentIntervalsHashIdGenerator
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.RequestUtils
+import com.yahoo.bard.webservice.web.responseprocessors.IntervalCacheV2ResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+
+class IntervalCacheV2RequestHandlerSpec extends Specification {
+
+    ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module().configureAbsentsAsNulls(false))
+
+    Map<String, TupleDataCache.DataEntry<String, Long, String>> store = [:]
+    TupleDataCache<String, Long, String> dataCache = Stub(TupleDataCache) {
+        getMulti(_) >> { store.subMap(it[0].findAll { store.containsKey(it) }) }
+        set(_, _, _) >> { String key, Long meta, String value ->
+            store[key] = new MemTupleDataCache.DataEntry<String>(key, meta, value)
+            true
+        }
+        setAsync(_, _, _) >> { String key, Long meta, String value ->
+            store[key] = new MemTupleDataCache.DataEntry<String>(key, meta, value)
+            CompletableFuture.completedFuture(true)
+        }
+    }
+
+    // Each bucket is signed by its start, standing in for the hash of the segments of the bucket
+    QuerySigningService<Long> querySigningService = Stub(SegmentIntervalsHashIdGenerator) {
+        getSegmentSetId(_) >> { DruidAggregationQuery<?> query -> Optional.of(query.intervals[0].startMillis) }
+    }
+
+    DataRequestHandler next = Mock(DataRequestHandler)
+    IntervalCacheV2RequestHandler handler = new IntervalCacheV2RequestHandler(
+            next,
+            dataCache,
+            querySigningService,
+            mapper
+    )
+
+    DataApiRequest apiRequest = Mock(DataApiRequest)
+    ResponseContext responseContext = new ResponseContext()
+    ResponseProcessor response = Mock(ResponseProcessor) { getResponseContext() >> responseContext }
+    RequestContext requestContext
+
+    TimeSeriesQuery query = RequestUtils.buildTimeSeriesQuery().withAllIntervals([interval("2017-01-01/2017-01-04")])
+
+    def setup() {
+        ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext)
+        containerRequestContext.getHeaders() >> (["Bard-Testing": "###BYPASS###", "ClientId": "UI"] as
+                MultivaluedHashMap<String, String>)
+        requestContext = new RequestContext(containerRequestContext, true)
+    }
+
+    def "Buckets missing from the cache are queried at once and cached one by one"() {
+        given:
+        cacheBucket("2017-01-02/2017-01-03", '[{"timestamp":"2017-01-02T00:00:00.000Z","result":{"m":2}}]')
+        ResponseProcessor nextResponse
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, query, response)
+
+        then: "only the first and last days are queried"
+        1 * next.handleRequest(requestContext, apiRequest, _, _ as IntervalCacheV2ResponseProcessor) >> {
+            DruidAggregationQuery<?> missingQuery = it[2]
+            assert missingQuery.intervals == [interval("2017-01-01/2017-01-02"), interval("2017-01-03/2017-01-04")]
+            nextResponse = it[3]
+            true
+        }
+
+        when: "Druid answers the missing days"
+        nextResponse.processResponse(
+                json('''[
+                        {"timestamp":"2017-01-01T00:00:00.000Z","result":{"m":1}},
+                        {"timestamp":"2017-01-03T00:00:00.000Z","result":{"m":3}}
+                ]'''),
+                query,
+                null
+        )
+
+        then: "the days are sent on in order"
+        1 * response.processResponse(_, query, _) >> {
+            assert it[0].collect { row -> row.result.m.asInt() } == [1, 2, 3]
+        }
+
+        and: "each day is cached on its own"
+        store.size() == 3
+        cachedBucket("2017-01-03/2017-01-04") == '[{"timestamp":"2017-01-03T00:00:00.000Z","result":{"m":3}}]'
+    }
+
+    def "A query whose buckets are all cached is answered from the cache"() {
+        given:
+        cacheBucket("2017-01-01/2017-01-02", '[{"timestamp":"2017-01-01T00:00:00.000Z","result":{"m":1}}]')
+        cacheBucket("2017-01-02/2017-01-03", '[]')
+        cacheBucket("2017-01-03/2017-01-04", '[{"timestamp":"2017-01-03T00:00:00.000Z","result":{"m":3}}]')
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, query, response)
+
+        then:
+        0 * next.handleRequest(*_)
+        1 * response.processResponse(_, query, _) >> {
+            assert it[0].collect { row -> row.result.m.asInt() } == [1, 3]
+        }
+    }
+
+    def "Buckets signed by other segments are queried again"() {
+        given:
+        cacheBucket("2017-01-01/2017-01-02", '[]')
+        store.values().each {
+            store[it.key] = new MemTupleDataCache.DataEntry<String>(it.key, it.meta + 1, it.value)
+        }
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, query, response)
+
+        then:
+        1 * next.handleRequest(requestContext, apiRequest, { it.intervals == query.intervals }, _) >> true
+    }
+
+    def "Volatile buckets are not cached"() {
+        given:
+        responseContext.put(
+                VOLATILE_INTERVALS_CONTEXT_KEY.name,
+                new SimplifiedIntervalList([interval("2017-01-03/2017-01-04")])
+        )
+        ResponseProcessor nextResponse
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, query, response)
+        nextResponse.processResponse(json('[{"timestamp":"2017-01-03T00:00:00.000Z","result":{"m":3}}]'), query, null)
+
+        then:
+        1 * next.handleRequest(*_) >> { nextResponse = it[3]; true }
+        store.keySet() == [handler.getKey(bucketQuery("2017-01-01/2017-01-02")),
+                           handler.getKey(bucketQuery("2017-01-02/2017-01-03"))] as Set
+    }
+
+    def "Queries with a single bucket are cached as a whole"() {
+        given:
+        TimeSeriesQuery oneDay = query.withAllIntervals([interval("2017-01-01/2017-01-02")])
+
+        when:
+        handler.handleRequest(requestContext, apiRequest, oneDay, response)
+
+        then:
+        1 * next.handleRequest(requestContext, apiRequest, oneDay, { !(it instanceof IntervalCacheV2ResponseProcessor) })
+    }
+
+    /**
+     * Parse an interval.
+     *
+     * @param text  The interval in ISO 8601 format
+     *
+     * @return the interval
+     */
+    static Interval interval(String text) {
+        new Interval(text)
+    }
+
+    /**
+     * Parse JSON.
+     *
+     * @param text  The JSON text
+     *
+     * @return the JSON tree
+     */
+    JsonNode json(String text) {
+        mapper.readTree(text)
+    }
+
+    /**
+     * Get the query restricted to a bucket.
+     *
+     * @param bucket  The bucket
+     *
+     * @return the query of the bucket
+     */
+    TimeSeriesQuery bucketQuery(String bucket) {
+        query.withAllIntervals([interval(bucket)])
+    }
+
+    /**
+     * Cache the response of a bucket, signed as the handler expects.
+     *
+     * @param bucket  The bucket
+     * @param value  The response of the bucket
+     */
+    void cacheBucket(String bucket, String value) {
+        TimeSeriesQuery bucketQuery = bucketQuery(bucket)
+        dataCache.set(handler.getKey(bucketQuery), querySigningService.getSegmentSetId(bucketQuery).get(), value)
+    }
+
+    /**
+     * Get the cached response of a bucket.
+     *
+     * @param bucket  The bucket
+     *
+     * @return the cached response
+     */
+    String cachedBucket(String bucket) {
+        store[handler.getKey(bucketQuery(bucket))]?.value
+    }
+}
@@ -71,6 +71,77 @@ class SplitQueryRequestHandlerSpec extends Specification {
         12        | MONTH     | year
     }
   
+    @Unroll
+    def "A cache handler next reads the cache entries of #intervals sub-queries ahead #times times"() {
+        setup:
+        CacheV2RequestHandler cacheHandler = Mock(CacheV2RequestHandler)
+        SplitQueryRequestHandler cachingHandler = new SplitQueryRequestHandler(cacheHandler)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [interval]
+        groupByQuery.withAllIntervals(_) >> groupByQuerySplit
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+
+        when:
+        cachingHandler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then: "The entries are prefetched before any sub-query is handled"
+        times * cacheHandler.prefetch(rc, { it.size() == intervals })
+
+        then:
+        intervals * cacheHandler.handleRequest(rc, apiRequest, groupByQuerySplit, _ as SplitQueryResponseProcessor)
+
+        where:
+        intervals | times | interval
+        7         | 1     | week
+        1         | 0     | new Interval(startInstant, Duration.standardDays(1))
+    }
+
+    @Unroll
+    def "Coalescing #buckets day buckets into at most #maxSplits splits gives #expected intervals"() {
+        setup:
+        List<Interval> days = (0..<buckets).collect { new Interval(startInstant.plusDays(it), Duration.standardDays(1)) }
+
+        expect:
+        SplitQueryRequestHandler.coalesce(days, maxSplits).keySet().collect { it.toDuration().standardDays } == expected
+
+        where:
+        buckets | maxSplits | expected
+        7       | 0         | [1] * 7
+        7       | 7         | [1] * 7
+        7       | 3         | [3, 3, 1]
+        31      | 4         | [8, 8, 8, 7]
+        2       | 5         | [1, 1]
+    }
+
+    def "Buckets which do not abut are not coalesced"() {
+        setup:
+        List<Interval> buckets = [
+                new Interval(startInstant, Duration.standardDays(1)),
+                new Interval(startInstant.plusDays(2), Duration.standardDays(1))
+        ]
+
+        expect:
+        SplitQueryRequestHandler.coalesce(buckets, 1).keySet() as List == buckets
+    }
+
+    def "Handler sends one sub-query for each coalesced interval"() {
+        setup:
+        SplitQueryRequestHandler coalescingHandler = new SplitQueryRequestHandler(next, new SplitQueryScheduler(), 2)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [week]
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+
+        when:
+        coalescingHandler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then: "the intervals are compared by instant, since their time zone depends on the default when they are built"
+        1 * groupByQuery.withAllIntervals({ spans(it, startInstant, startInstant.plusDays(4)) }) >> groupByQuerySplit
+        1 * groupByQuery.withAllIntervals({ spans(it, startInstant.plusDays(4), week.end) }) >> groupByQuerySplit
+        2 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _ as SplitQueryResponseProcessor)
+    }
+
     @Unroll 
     def "Handler skips splitting for all time grain when the interval is #interval"() {
         groupByQuery.granularity >> timeGrain
@@ -113,4 +184,8 @@ class SplitQueryRequestHandlerSpec extends Specification {
     SimplifiedIntervalList buildIntervals(List<String> intervals) {
         intervals.collect({ new Interval(it) }) as SimplifiedIntervalList
     }
+
+    boolean spans(List<Interval> intervals, DateTime start, DateTime end) {
+        intervals.size() == 1 && intervals[0].startMillis == start.millis && intervals[0].endMillis == end.millis
+    }
 }
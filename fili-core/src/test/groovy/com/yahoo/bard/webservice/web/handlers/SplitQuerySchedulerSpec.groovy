@@ -0,0 +1,158 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.logging.RequestLog
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProcessor
+
+import spock.lang.Specification
+
+import java.security.Principal
+import java.util.concurrent.Executor
+import java.util.function.Consumer
+
+import javax.ws.rs.core.SecurityContext
+
+class SplitQuerySchedulerSpec extends Specification {
+
+    DataApiRequest apiRequest = Mock(DataApiRequest)
+    Executor direct = { Runnable runnable -> runnable.run() } as Executor
+    List<DruidAggregationQuery<?>> sent = []
+    DataRequestHandler next = Mock(DataRequestHandler) {
+        handleRequest(*_) >> { sent.add(it[2]); true }
+    }
+
+    RequestContext contextOf(String user) {
+        Principal principal = Mock(Principal) { getName() >> user }
+        SecurityContext securityContext = Mock(SecurityContext) { getUserPrincipal() >> principal }
+        return Mock(RequestContext) { getSecurityContext() >> securityContext }
+    }
+
+    List<DruidAggregationQuery<?>> queries(int count) {
+        (1..count).collect { Mock(GroupByQuery) }
+    }
+
+    /**
+     * Schedule sub-queries, returning the listener the scheduler set on their response processor.
+     */
+    Consumer<Boolean> schedule(SplitQueryScheduler scheduler, String user, List<DruidAggregationQuery<?>> subQueries) {
+        Consumer<Boolean> listener = null
+        SplitQueryResponseProcessor response = Mock(SplitQueryResponseProcessor) {
+            setSubQueryListener(_) >> { listener = it[0] }
+        }
+        scheduler.schedule(contextOf(user), apiRequest, subQueries, response, next, RequestLog.copy())
+        return listener
+    }
+
+    def "Sub-queries of a request past the per request limit wait for earlier sub-queries to complete"() {
+        given:
+        SplitQueryScheduler scheduler = new SplitQueryScheduler(0, 2, direct)
+        List<DruidAggregationQuery<?>> subQueries = queries(5)
+        long depth = SplitQueryScheduler.QUEUE_DEPTH.count
+
+        when:
+        Consumer<Boolean> listener = schedule(scheduler, "user", subQueries)
+
+        then:
+        sent == subQueries[0..1]
+        scheduler.inFlight == 2
+        SplitQueryScheduler.QUEUE_DEPTH.count == depth + 3
+
+        when:
+        listener.accept(false)
+
+        then:
+        sent == subQueries[0..2]
+        scheduler.inFlight == 2
+
+        when:
+        4.times { listener.accept(false) }
+
+        then:
+        sent == subQueries
+        scheduler.inFlight == 0
+        SplitQueryScheduler.QUEUE_DEPTH.count == depth
+    }
+
+    def "Queued sub-queries are sent by the dispatcher rather than the thread completing a sub-query"() {
+        given:
+        List<Runnable> dispatches = []
+        Executor dispatcher = { Runnable runnable -> dispatches.add(runnable) } as Executor
+        SplitQueryScheduler scheduler = new SplitQueryScheduler(0, 1, dispatcher)
+        List<DruidAggregationQuery<?>> subQueries = queries(2)
+
+        when:
+        Consumer<Boolean> listener = schedule(scheduler, "user", subQueries)
+        listener.accept(false)
+
+        then: "the completing thread only hands the queued sub-query to the dispatcher"
+        sent == subQueries[0..0]
+        dispatches.size() == 1
+
+        when:
+        dispatches.remove(0).run()
+        listener.accept(false)
+
+        then: "nothing is handed to the dispatcher once no sub-query is queued"
+        sent == subQueries
+        dispatches.isEmpty()
+    }
+
+    def "Users take turns for the slots freed under the global limit"() {
+        given:
+        SplitQueryScheduler scheduler = new SplitQueryScheduler(2, 0, direct)
+        List<DruidAggregationQuery<?>> heavy = queries(4)
+        List<DruidAggregationQuery<?>> light = queries(2)
+
+        when:
+        Consumer<Boolean> heavyListener = schedule(scheduler, "heavy", heavy)
+        Consumer<Boolean> lightListener = schedule(scheduler, "light", light)
+
+        then: "the global limit holds back the later request"
+        sent == heavy[0..1]
+
+        when:
+        3.times { heavyListener.accept(false) }
+        lightListener.accept(false)
+
+        then: "the users alternate"
+        sent == [heavy[0], heavy[1], heavy[2], light[0], heavy[3], light[1]]
+    }
+
+    def "Queued sub-queries of a request are dropped once one of its sub-queries fails"() {
+        given:
+        SplitQueryScheduler scheduler = new SplitQueryScheduler(0, 1, direct)
+        List<DruidAggregationQuery<?>> subQueries = queries(3)
+        long depth = SplitQueryScheduler.QUEUE_DEPTH.count
+
+        when:
+        Consumer<Boolean> listener = schedule(scheduler, "user", subQueries)
+        listener.accept(true)
+
+        then:
+        sent == subQueries[0..0]
+        scheduler.inFlight == 0
+        SplitQueryScheduler.QUEUE_DEPTH.count == depth
+    }
+
+    def "A sub-query which cannot be sent fails the request"() {
+        given:
+        SplitQueryScheduler scheduler = new SplitQueryScheduler(0, 0, direct)
+        RuntimeException error = new IllegalStateException("Unable to send")
+        DataRequestHandler failing = Mock(DataRequestHandler) { handleRequest(*_) >> { throw error } }
+        FailureCallback failureCallback = Mock(FailureCallback)
+        SplitQueryResponseProcessor response = Mock(SplitQueryResponseProcessor) {
+            getFailureCallback(_) >> failureCallback
+        }
+
+        when:
+        scheduler.schedule(contextOf("user"), apiRequest, queries(1), response, failing, RequestLog.copy())
+
+        then:
+        1 * failureCallback.invoke(error)
+    }
+}
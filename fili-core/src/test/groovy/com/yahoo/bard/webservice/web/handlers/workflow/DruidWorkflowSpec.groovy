@@ -4,6 +4,7 @@ package com.yahoo.bard.webservice.web.handlers.workflow
 
 import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE
 import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE_V2
+import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE_V2_INTERVALS
 import static com.yahoo.bard.webservice.config.BardFeatureFlag.QUERY_SPLIT
 
 import com.yahoo.bard.webservice.data.PartialDataHandler
@@ -20,6 +21,7 @@ import com.yahoo.bard.webservice.web.handlers.CacheV2RequestHandler
 import com.yahoo.bard.webservice.web.handlers.DataRequestHandler
 import com.yahoo.bard.webservice.web.handlers.DebugRequestHandler
 import com.yahoo.bard.webservice.web.handlers.DefaultWebServiceHandlerSelector
+import com.yahoo.bard.webservice.web.handlers.IntervalCacheV2RequestHandler
 import com.yahoo.bard.webservice.web.handlers.SplitQueryRequestHandler
 import com.yahoo.bard.webservice.web.handlers.WebServiceSelectorRequestHandler
 import com.yahoo.bard.webservice.web.handlers.WeightCheckRequestHandler
@@ -36,6 +38,7 @@ class DruidWorkflowSpec extends Specification {
 
     boolean cacheStatus
     boolean cacheV2Status
+    boolean cacheV2IntervalsStatus
     boolean splittingStatus
 
     DruidWorkflow dw
@@ -51,12 +54,14 @@ class DruidWorkflowSpec extends Specification {
     def setup() {
         cacheStatus = DRUID_CACHE.isOn()
         cacheV2Status = DRUID_CACHE_V2.isOn()
+        cacheV2IntervalsStatus = DRUID_CACHE_V2_INTERVALS.isOn()
         splittingStatus = QUERY_SPLIT.isOn()
     }
 
     def cleanup() {
         DRUID_CACHE.setOn(cacheStatus)
         DRUID_CACHE_V2.setOn(cacheV2Status)
+        DRUID_CACHE_V2_INTERVALS.setOn(cacheV2IntervalsStatus)
         QUERY_SPLIT.setOn(splittingStatus)
     }
 
@@ -113,6 +118,33 @@ class DruidWorkflowSpec extends Specification {
         true    | true
     }
 
+    def "With interval caching on, buckets are cached by the interval cache handler"() {
+        setup:
+        DRUID_CACHE.setOn(true)
+        DRUID_CACHE_V2.setOn(true)
+        DRUID_CACHE_V2_INTERVALS.setOn(true)
+        dw = new DruidWorkflow(
+                Mock(TupleDataCache),
+                uiWebService,
+                nonUiWebService,
+                weightUtil,
+                physicalTableDictionary,
+                partialDataHandler,
+                querySigningService,
+                volatileIntervalsService,
+                MAPPER
+        )
+
+        when:
+        WebServiceSelectorRequestHandler select = getHandlerChain(dw.buildWorkflow())
+                .find(byClass(WebServiceSelectorRequestHandler))
+        def defaultHandler = select.handlerSelector as DefaultWebServiceHandlerSelector
+
+        then:
+        getHandlerChain(defaultHandler.uiWebServiceHandler.next).find(byClass(IntervalCacheV2RequestHandler))
+        getHandlerChain(defaultHandler.nonUiWebServiceHandler.next).find(byClass(IntervalCacheV2RequestHandler))
+    }
+
     def "Test workflow contains standard handlers"() {
         setup:
         dw = new DruidWorkflow(
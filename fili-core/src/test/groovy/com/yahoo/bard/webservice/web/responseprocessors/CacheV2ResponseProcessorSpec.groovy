@@ -100,7 +100,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
 
         then:
         1 * next.processResponse(json, groupByQuery, null)
-        1 * dataCache.set(cacheKey, segmentId, '[]')
+        1 * dataCache.setAsync(cacheKey, segmentId, '[]')
         next.getResponseContext() >> responseContext
 
     }
@@ -112,7 +112,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        1 * dataCache.set(cacheKey, segmentId, '[]') >> { throw new IllegalStateException() }
+        1 * dataCache.setAsync(cacheKey, segmentId, '[]') >> { throw new IllegalStateException() }
     }
 
     def "After json serialization error of the cache value, process response continues"() {
@@ -130,7 +130,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
     }
 
     def "Partial data doesn't cache and then continues"() {
@@ -143,7 +143,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
     }
 
     def "Volatile data doesn't cache and then continues"() {
@@ -156,7 +156,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
     }
 
     def "Overly long data doesn't cache and then continues"() {
@@ -184,7 +184,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
 
         then: "Set is never called on the cache and the next handler is called"
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
 
         cleanup: "Restore the original setting for max-length-to-cache"
         SYSTEM_CONFIG.resetProperty(max_druid_response_length_to_cache_key, oldMaxLength.toString())
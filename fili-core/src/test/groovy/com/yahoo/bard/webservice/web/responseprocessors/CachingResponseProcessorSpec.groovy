@@ -90,7 +90,7 @@ class CachingResponseProcessorSpec extends Specification {
 
         then:
         1 * next.processResponse(json, groupByQuery, null)
-        1 * dataCache.set(cacheKey, '[]')
+        1 * dataCache.setAsync(cacheKey, '[]')
         next.getResponseContext() >> responseContext
 
     }
@@ -102,7 +102,7 @@ class CachingResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        1 * dataCache.set(cacheKey, '[]') >> { throw new IllegalStateException() }
+        1 * dataCache.setAsync(cacheKey, '[]') >> { throw new IllegalStateException() }
     }
 
     def "After json serialization error of the cache value, process response continues"() {
@@ -120,7 +120,7 @@ class CachingResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
     }
 
     def "Partial data doesn't cache and then continues"() {
@@ -133,7 +133,7 @@ class CachingResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
     }
 
     def "Volatile data doesn't cache and then continues"() {
@@ -146,7 +146,7 @@ class CachingResponseProcessorSpec extends Specification {
         then:
         2 * next.getResponseContext() >> responseContext
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
     }
 
     def "Overly long data doesn't cache and then continues"() {
@@ -174,7 +174,7 @@ class CachingResponseProcessorSpec extends Specification {
 
         then: "Set is never called on the cache and the next handler is called"
         1 * next.processResponse(json, groupByQuery, null)
-        0 * dataCache.set(*_)
+        0 * dataCache.setAsync(*_)
 
         cleanup: "Restore the original setting for max-length-to-cache"
         SYSTEM_CONFIG.resetProperty(max_druid_response_length_to_cache_key, oldMaxLength.toString())
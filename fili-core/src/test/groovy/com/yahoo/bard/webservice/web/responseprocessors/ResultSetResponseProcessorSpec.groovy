@@ -6,11 +6,14 @@ import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 import static com.yahoo.bard.webservice.druid.model.DefaultQueryType.GROUP_BY
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.config.BardFeatureFlag
 import com.yahoo.bard.webservice.data.DruidResponseParser
 import com.yahoo.bard.webservice.data.HttpResponseChannel
 import com.yahoo.bard.webservice.data.HttpResponseMaker
+import com.yahoo.bard.webservice.data.Result
 import com.yahoo.bard.webservice.data.ResultSet
 import com.yahoo.bard.webservice.data.ResultSetSchema
+import com.yahoo.bard.webservice.data.StreamingResultSet
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.Dimension
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn
@@ -35,6 +38,7 @@ import com.yahoo.bard.webservice.table.TableTestUtils
 import com.yahoo.bard.webservice.web.DataApiRequest
 import com.yahoo.bard.webservice.web.ResponseFormatType
 
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
@@ -45,6 +49,9 @@ import org.joda.time.DateTimeZone
 import rx.subjects.PublishSubject
 import rx.subjects.Subject
 import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.function.Supplier
 
 import javax.ws.rs.container.AsyncResponse
 import javax.ws.rs.core.MultivaluedMap
@@ -350,4 +357,136 @@ class ResultSetResponseProcessorSpec extends Specification {
                 [new DimensionColumn(dim), new MetricColumn(metric1Name), new MetricColumn(metric2Name)]
         )
     }
+
+    @Unroll
+    def "A #format response with asyncAfter #asyncAfter is streamed: #streamed (flag #flag, row mapper #independent)"() {
+        setup:
+        BardFeatureFlag.STREAMING_DATA_RESPONSE.setOn(flag)
+        DataApiRequest request = Mock(DataApiRequest)
+        request.getLogicalMetrics() >> ([lm1] as Set)
+        request.getGranularity() >> DAY
+        request.getFormat() >> format
+        request.getAsyncAfter() >> asyncAfter
+        rsm1.mapsRowsIndependently() >> independent
+        ResultSet built = null
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                request,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        ) {
+            @Override
+            protected void processResultSet(
+                    Supplier<ResultSet> resultSetBuilder,
+                    DruidAggregationQuery<?> druidQuery,
+                    LoggingContext metadata
+            ) {
+                built = resultSetBuilder.get()
+            }
+        }
+        druidResponseParser.buildSchemaColumns(groupByQuery) >> { [dim1Column].stream() }
+        JsonParser parser = MAPPER.getFactory().createParser("[]")
+        StreamingResultSet streamingResultSet = new StreamingResultSet(rs1.getSchema(), Collections.emptyIterator())
+
+        when:
+        processor.processResponse(parser, groupByQuery, new LoggingContext(RequestLog.dump()))
+
+        then:
+        (streamed ? 1 : 0) * druidResponseParser.stream(parser, _, GROUP_BY, _) >> streamingResultSet
+        (streamed ? 0 : 1) * druidResponseParser.parse(parser, _, GROUP_BY, _) >> rs1
+        built == (streamed ? streamingResultSet : rs1)
+        parser.isClosed() == !streamed
+
+        cleanup:
+        BardFeatureFlag.STREAMING_DATA_RESPONSE.setOn(false)
+
+        where:
+        format                  | asyncAfter                                   | flag  | independent || streamed
+        ResponseFormatType.JSON | DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE | true  | true        || true
+        ResponseFormatType.CSV  | DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE | true  | true        || true
+        null                    | DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE | true  | true        || true
+        ResponseFormatType.JSON | DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE | false | true        || false
+        ResponseFormatType.JSON | 100                                          | true  | true        || false
+        ResponseFormatType.JSON | DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE | true  | false       || false
+        ResponseFormatType.JSONAPI | DataApiRequest.SYNCHRONOUS_ASYNC_AFTER_VALUE | true | true     || false
+    }
+
+    def "Partial responses are parsed into one result set, in order, when the response completes"() {
+        setup:
+        List<ResultSet> processed = []
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                apiRequest,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        ) {
+            @Override
+            protected void processResultSet(
+                    Supplier<ResultSet> resultSetBuilder,
+                    DruidAggregationQuery<?> druidQuery,
+                    LoggingContext metadata
+            ) {
+                processed.add(resultSetBuilder.get())
+            }
+        }
+        JsonNode part1 = MAPPER.readTree("[1]")
+        JsonNode part2 = MAPPER.readTree("[2, 3]")
+        druidResponseParser.buildSchemaColumns(groupByQuery) >> { [dim1Column].stream() }
+        druidResponseParser.buildResultSet(_) >> { new ResultSet(it[0], []) }
+        List<Result> rows = (1..3).collect { Mock(Result) }
+
+        when:
+        processor.processPartialResponse(part1, groupByQuery)
+        processor.processPartialResponse(part2, groupByQuery)
+
+        then:
+        1 * druidResponseParser.parseInto(part1, _, GROUP_BY, _) >> { it[1].add(rows[0]) }
+        1 * druidResponseParser.parseInto(part2, _, GROUP_BY, _) >> { it[1].addAll(rows[1..2]) }
+        processed.isEmpty()
+
+        when:
+        processor.completeResponse(groupByQuery, new LoggingContext(RequestLog.dump()))
+
+        then:
+        processed.size() == 1
+        processed[0] == rows
+        processed[0].schema.columns == [dim1Column] as LinkedHashSet
+    }
+
+    def "A partial response which cannot be parsed fails the response when it completes"() {
+        setup:
+        IllegalStateException error = new IllegalStateException("Unparseable")
+        Supplier<ResultSet> builder = null
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                apiRequest,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        ) {
+            @Override
+            protected void processResultSet(
+                    Supplier<ResultSet> resultSetBuilder,
+                    DruidAggregationQuery<?> druidQuery,
+                    LoggingContext metadata
+            ) {
+                builder = resultSetBuilder
+            }
+        }
+        druidResponseParser.buildSchemaColumns(groupByQuery) >> { [dim1Column].stream() }
+        druidResponseParser.buildResultSet(_) >> { new ResultSet(it[0], []) }
+        druidResponseParser.parseInto(*_) >> { throw error }
+
+        when:
+        processor.processPartialResponse(MAPPER.readTree("[1]"), groupByQuery)
+        processor.processPartialResponse(MAPPER.readTree("[2]"), groupByQuery)
+        processor.completeResponse(groupByQuery, new LoggingContext(RequestLog.dump()))
+        builder.get()
+
+        then:
+        IllegalStateException thrown = thrown()
+        thrown == error
+    }
 }
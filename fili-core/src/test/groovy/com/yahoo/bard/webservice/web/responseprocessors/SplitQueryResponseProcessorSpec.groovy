@@ -189,4 +189,75 @@ public class SplitQueryResponseProcessorSpec extends Specification {
         1 * nextFail.invoke() { it -> captureT = it }
         captureT.getMessage() == expectedError
     }
+
+    def "Responses are passed on to an incremental processor in interval order as soon as earlier intervals arrive"() {
+        setup:
+        Interval interval3 = new Interval(4, 6)
+        expectedIntervals.put(interval3, new AtomicInteger(2))
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor) {
+            acceptsPartialResponses() >> true
+        }
+        SplitQueryResponseProcessor streaming = new SplitQueryResponseProcessor(
+                incrementalNext,
+                apiRequest,
+                groupByQuery1,
+                expectedIntervals,
+                RequestLog.dump()
+        )
+        GroupByQuery query1 = Mock(GroupByQuery) { getIntervals() >> [interval1] }
+        GroupByQuery query2 = Mock(GroupByQuery) { getIntervals() >> [interval2] }
+        GroupByQuery query3 = Mock(GroupByQuery) { getIntervals() >> [interval3] }
+        JsonNode node3 = MAPPER.readTree("[]")
+
+        when: "a later interval arrives first"
+        streaming.processResponse(node2, query2, new LoggingContext(RequestLog.dump()))
+
+        then: "it is held"
+        0 * incrementalNext.processPartialResponse(*_)
+        streaming.completedIntervals[1].key == node2
+
+        when: "the first interval arrives"
+        streaming.processResponse(node1, query1, new LoggingContext(RequestLog.dump()))
+
+        then: "both are passed on in order, and released"
+        1 * incrementalNext.processPartialResponse(node1, groupByQuery1)
+
+        then:
+        1 * incrementalNext.processPartialResponse(node2, groupByQuery1)
+        0 * incrementalNext.completeResponse(*_)
+        streaming.completedIntervals.every { it == null || it.key == null }
+
+        when: "the last interval arrives"
+        streaming.processResponse(node3, query3, new LoggingContext(RequestLog.dump()))
+
+        then: "the response is completed"
+        1 * incrementalNext.processPartialResponse(node3, groupByQuery1)
+
+        then:
+        1 * incrementalNext.completeResponse(groupByQuery1, _ as LoggingContext)
+        0 * incrementalNext.processResponse(*_)
+    }
+
+    def "Responses are merged when the incremental processor does not take partial responses"() {
+        setup:
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor) {
+            acceptsPartialResponses() >> false
+        }
+        SplitQueryResponseProcessor merging = new SplitQueryResponseProcessor(
+                incrementalNext,
+                apiRequest,
+                groupByQuery1,
+                expectedIntervals,
+                RequestLog.dump()
+        )
+        groupByQuery2.getIntervals() >> [interval2] >> [interval1]
+
+        when:
+        merging.processResponse(node2, groupByQuery2, new LoggingContext(RequestLog.dump()))
+        merging.processResponse(node1, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        0 * incrementalNext.processPartialResponse(*_)
+        1 * incrementalNext.processResponse(nodeExpected, groupByQuery1, _)
+    }
 }
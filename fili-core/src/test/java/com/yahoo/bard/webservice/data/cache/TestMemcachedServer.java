@@ -0,0 +1,316 @@
+// Copyright 2017 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE.md file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for a memcached server, speaking the binary protocol.
+ * <p>
+ * It supports the get, set, delete, flush, noop and version commands, which is what the memcached client uses for
+ * the data caches. Writes can be held back with {@link #holdWrites()} to simulate a slow server.
+ */
+public class TestMemcachedServer implements Closeable {
+
+    private static final int REQUEST_MAGIC = 0x80;
+    private static final int RESPONSE_MAGIC = 0x81;
+    private static final int HEADER_BYTES = 24;
+
+    private static final int GET = 0x00;
+    private static final int SET = 0x01;
+    private static final int DELETE = 0x04;
+    private static final int FLUSH = 0x08;
+    private static final int GETQ = 0x09;
+    private static final int NOOP = 0x0a;
+    private static final int VERSION = 0x0b;
+    private static final int GETK = 0x0c;
+    private static final int GETKQ = 0x0d;
+    private static final int SETQ = 0x11;
+    private static final int FLUSHQ = 0x18;
+
+    private static final int STATUS_OK = 0x0000;
+    private static final int STATUS_NOT_FOUND = 0x0001;
+    private static final int STATUS_UNKNOWN_COMMAND = 0x0081;
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+    private final AtomicLong casCounter = new AtomicLong();
+    private final AtomicInteger getRequests = new AtomicInteger();
+    private final AtomicInteger setRequests = new AtomicInteger();
+    private volatile CountDownLatch writeGate = new CountDownLatch(0);
+
+    /**
+     * Start a server on an ephemeral port of the loopback interface.
+     */
+    public TestMemcachedServer() {
+        try {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Thread acceptor = new Thread(this::accept, "test-memcached-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    /**
+     * Get the number of keys read, counting each key of a bulk read.
+     *
+     * @return the number of keys read
+     */
+    public int getGetRequests() {
+        return getRequests.get();
+    }
+
+    public int getSetRequests() {
+        return setRequests.get();
+    }
+
+    /**
+     * Check whether a value is stored under a key.
+     *
+     * @param key  The key to check
+     *
+     * @return true if the key has a value
+     */
+    public boolean containsKey(String key) {
+        return items.containsKey(key);
+    }
+
+    /**
+     * Hold back the responses to writes, and everything after them on the same connection, until released.
+     */
+    public void holdWrites() {
+        writeGate = new CountDownLatch(1);
+    }
+
+    /**
+     * Release the writes held back by {@link #holdWrites()}.
+     */
+    public void releaseWrites() {
+        writeGate.countDown();
+    }
+
+    @Override
+    public void close() {
+        releaseWrites();
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+    }
+
+    /**
+     * Accept connections until the server is closed, serving each on its own thread.
+     */
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> serve(socket), "test-memcached-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                // The server socket was closed
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serve the requests of a connection until it is closed.
+     *
+     * @param socket  The socket of the connection
+     */
+    private void serve(Socket socket) {
+        try (
+                Socket closing = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))
+        ) {
+            while (true) {
+                handle(in, out);
+                // Send the responses once the client has nothing more pipelined
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | InterruptedException e) {
+            // The connection was closed
+        } catch (IOException e) {
+            // The connection was reset
+        }
+    }
+
+    /**
+     * Read a request and write its response.
+     *
+     * @param in  The stream of requests
+     * @param out  The stream of responses
+     *
+     * @throws IOException if the connection fails
+     * @throws InterruptedException if interrupted while writes are held
+     */
+    private void handle(DataInputStream in, DataOutputStream out) throws IOException, InterruptedException {
+        byte[] header = new byte[HEADER_BYTES];
+        in.readFully(header);
+        if ((header[0] & 0xff) != REQUEST_MAGIC) {
+            throw new IOException("Bad request magic " + header[0]);
+        }
+        int opcode = header[1] & 0xff;
+        int keyLength = ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+        int extrasLength = header[4] & 0xff;
+        int bodyLength = ((header[8] & 0xff) << 24) | ((header[9] & 0xff) << 16)
+                | ((header[10] & 0xff) << 8) | (header[11] & 0xff);
+        byte[] opaque = Arrays.copyOfRange(header, 12, 16);
+
+        byte[] extras = new byte[extrasLength];
+        in.readFully(extras);
+        byte[] keyBytes = new byte[keyLength];
+        in.readFully(keyBytes);
+        byte[] value = new byte[bodyLength - extrasLength - keyLength];
+        in.readFully(value);
+        String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+        switch (opcode) {
+            case GET:
+            case GETQ:
+            case GETK:
+            case GETKQ:
+                getRequests.incrementAndGet();
+                Item item = items.get(key);
+                boolean quiet = opcode == GETQ || opcode == GETKQ;
+                boolean withKey = opcode == GETK || opcode == GETKQ;
+                byte[] responseKey = withKey ? keyBytes : null;
+                if (item != null) {
+                    respond(out, opcode, opaque, STATUS_OK, item.cas, item.flags, responseKey, item.value);
+                } else if (!quiet) {
+                    byte[] notFound = "Not found".getBytes(StandardCharsets.UTF_8);
+                    respond(out, opcode, opaque, STATUS_NOT_FOUND, 0, null, responseKey, notFound);
+                }
+                break;
+            case SET:
+            case SETQ:
+                setRequests.incrementAndGet();
+                writeGate.await();
+                long cas = casCounter.incrementAndGet();
+                items.put(key, new Item(Arrays.copyOfRange(extras, 0, 4), value, cas));
+                if (opcode == SET) {
+                    respond(out, opcode, opaque, STATUS_OK, cas, null, null, null);
+                }
+                break;
+            case DELETE:
+                boolean deleted = items.remove(key) != null;
+                respond(out, opcode, opaque, deleted ? STATUS_OK : STATUS_NOT_FOUND, 0, null, null, null);
+                break;
+            case FLUSH:
+            case FLUSHQ:
+                items.clear();
+                if (opcode == FLUSH) {
+                    respond(out, opcode, opaque, STATUS_OK, 0, null, null, null);
+                }
+                break;
+            case NOOP:
+                respond(out, opcode, opaque, STATUS_OK, 0, null, null, null);
+                break;
+            case VERSION:
+                respond(out, opcode, opaque, STATUS_OK, 0, null, null, "1.4.0".getBytes(StandardCharsets.UTF_8));
+                break;
+            default:
+                respond(out, opcode, opaque, STATUS_UNKNOWN_COMMAND, 0, null, null, null);
+        }
+    }
+
+    /**
+     * Write a response.
+     *
+     * @param out  The stream of responses
+     * @param opcode  The opcode of the request
+     * @param opaque  The opaque bytes of the request, echoed back
+     * @param status  The status of the response
+     * @param cas  The CAS value of the item
+     * @param extras  The extras of the response, or null
+     * @param key  The key of the response, or null
+     * @param value  The value of the response, or null
+     *
+     * @throws IOException if the connection fails
+     */
+    private static void respond(
+            DataOutputStream out,
+            int opcode,
+            byte[] opaque,
+            int status,
+            long cas,
+            byte[] extras,
+            byte[] key,
+            byte[] value
+    ) throws IOException {
+        int extrasLength = extras == null ? 0 : extras.length;
+        int keyLength = key == null ? 0 : key.length;
+        int valueLength = value == null ? 0 : value.length;
+
+        out.writeByte(RESPONSE_MAGIC);
+        out.writeByte(opcode);
+        out.writeShort(keyLength);
+        out.writeByte(extrasLength);
+        out.writeByte(0);
+        out.writeShort(status);
+        out.writeInt(extrasLength + keyLength + valueLength);
+        out.write(opaque);
+        out.writeLong(cas);
+        if (extras != null) {
+            out.write(extras);
+        }
+        if (key != null) {
+            out.write(key);
+        }
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    /**
+     * A stored value, with the flags the client stored it with.
+     */
+    private static class Item {
+        private final byte[] flags;
+        private final byte[] value;
+        private final long cas;
+
+        /**
+         * Constructor.
+         *
+         * @param flags  The flags the value was stored with
+         * @param value  The value
+         * @param cas  The CAS value of the item
+         */
+        Item(byte[] flags, byte[] value, long cas) {
+            this.flags = flags;
+            this.value = value;
+            this.cas = cas;
+        }
+    }
+}
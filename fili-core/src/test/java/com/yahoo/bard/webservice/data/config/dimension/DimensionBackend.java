@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 public enum DimensionBackend {
 
     REDIS,
+    MAPPED_FILE,
     MEMORY;
 
     private static final Logger LOG = LoggerFactory.getLogger(DimensionBackend.class);
@@ -34,6 +35,9 @@ public enum DimensionBackend {
         if ("redis".equalsIgnoreCase(dimensionBackend)) {
             return REDIS;
         }
+        if ("mapped_file".equalsIgnoreCase(dimensionBackend)) {
+            return MAPPED_FILE;
+        }
         return MEMORY;
     }
 }
@@ -18,6 +18,8 @@ import com.yahoo.bard.webservice.data.config.names.TestLogicalTableName;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
 import com.yahoo.bard.webservice.data.dimension.MapStoreManager;
+import com.yahoo.bard.webservice.data.dimension.MappedFileStore;
+import com.yahoo.bard.webservice.data.dimension.MappedFileStoreManager;
 import com.yahoo.bard.webservice.data.dimension.RedisStore;
 import com.yahoo.bard.webservice.data.dimension.RedisStoreManager;
 import com.yahoo.bard.webservice.data.dimension.SearchProvider;
@@ -158,6 +160,12 @@ public class TestDimensions {
                 store.removeAllKeys();
                 return store;
 
+            case MAPPED_FILE:
+                MappedFileStore mappedFileStore = MappedFileStoreManager.getInstance(storeName.asName());
+                // Mapped files persist between tests, so remove the key/values to give the test a clean environment.
+                mappedFileStore.removeAllKeys();
+                return mappedFileStore;
+
             case MEMORY:
             default:
                 return MapStoreManager.getInstance(storeName.asName());
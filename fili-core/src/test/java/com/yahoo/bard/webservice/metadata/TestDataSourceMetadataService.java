@@ -38,13 +38,16 @@ public class TestDataSourceMetadataService extends DataSourceMetadataService {
     }
 
     @Override
-    public Map<String, SimplifiedIntervalList> getAvailableIntervalsByDataSource(DataSourceName dataSourceName) {
-        return testAvailableIntervals.entrySet().stream()
-                .collect(
-                        Collectors.toMap(
-                                Map.Entry::getKey,
-                                entry -> new SimplifiedIntervalList(entry.getValue())
+    public AvailabilitySnapshot getAvailabilitySnapshot(DataSourceName dataSourceName) {
+        return new AvailabilitySnapshot(
+                0,
+                testAvailableIntervals.entrySet().stream()
+                        .collect(
+                                Collectors.toMap(
+                                        Map.Entry::getKey,
+                                        entry -> new SimplifiedIntervalList(entry.getValue())
+                                )
                         )
-                );
+        );
     }
 }